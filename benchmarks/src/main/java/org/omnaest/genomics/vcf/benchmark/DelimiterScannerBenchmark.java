@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.omnaest.genomics.vcf.components.DelimiterScanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the scalar and the Vector API {@link DelimiterScanner} of the multi-release jar on dbSNP-style lines. Both benchmarks run the same
+ * code, the vectorized fork only resolves the jdk.incubator.vector module, which switches the scanner to its vector path.
+ * 
+ * @author omnaest
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DelimiterScannerBenchmark
+{
+    private static final int NUMBER_OF_LINES = 10000;
+
+    private byte[] buffer;
+
+    @Setup
+    public void setup()
+    {
+        StringBuilder lines = new StringBuilder();
+        for (int ii = 0; ii < NUMBER_OF_LINES; ii++)
+        {
+            long position = 10177 + ii * 37L;
+            lines.append("1\t")
+                 .append(position)
+                 .append("\trs")
+                 .append(367896724 + ii)
+                 .append("\tA\tAC\t.\t.\tRS=")
+                 .append(367896724 + ii)
+                 .append(";RSPOS=")
+                 .append(position)
+                 .append(";dbSNPBuildID=138;SSR=0;SAO=0;VP=0x050000020005170026000200;GENEINFO=DDX11L1:100287102;WGT=1;VC=DIV;R5;ASP")
+                 .append(";CAF=0.5747,0.4253;COMMON=1;TOPMED=0.72715,0.27285\n");
+        }
+        this.buffer = lines.toString()
+                           .getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Benchmark
+    @Fork(1)
+    public int scalar()
+    {
+        return this.scanLinesAndTabs();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+    public int vectorized()
+    {
+        return this.scanLinesAndTabs();
+    }
+
+    @Benchmark
+    @Fork(1)
+    public boolean scalarNonAscii()
+    {
+        return new DelimiterScanner(this.buffer).containsNonAscii(0, this.buffer.length);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+    public boolean vectorizedNonAscii()
+    {
+        return new DelimiterScanner(this.buffer).containsNonAscii(0, this.buffer.length);
+    }
+
+    /**
+     * Splits the buffer into lines and finds all tabs of each line, like the byte oriented parsers do
+     * 
+     * @return
+     */
+    private int scanLinesAndTabs()
+    {
+        DelimiterScanner scanner = new DelimiterScanner(this.buffer);
+        int numberOfTabs = 0;
+        int start = 0;
+        while (start < this.buffer.length)
+        {
+            int end = scanner.indexOf((byte) '\n', start, this.buffer.length);
+            if (end < 0)
+            {
+                end = this.buffer.length;
+            }
+            for (int tab = scanner.indexOf((byte) '\t', start, end); tab >= 0; tab = scanner.indexOf((byte) '\t', tab + 1, end))
+            {
+                numberOfTabs++;
+            }
+            start = end + 1;
+        }
+        return numberOfTabs;
+    }
+}
@@ -37,43 +37,84 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.FileWriterWithEncoding;
-import org.apache.commons.lang3.RegExUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.omnaest.genomics.vcf.components.AsciiVCFParser;
+import org.omnaest.genomics.vcf.components.ConcurrentVCFIngestor;
+import org.omnaest.genomics.vcf.components.ContigOrder;
+import org.omnaest.genomics.vcf.components.ExternalVCFSorter;
+import org.omnaest.genomics.vcf.components.GeneIndex;
 import org.omnaest.genomics.vcf.components.GenomeApplicatorImpl;
+import org.omnaest.genomics.vcf.components.IdIndex;
+import org.omnaest.genomics.vcf.components.IdIndexedVCFFile;
+import org.omnaest.genomics.vcf.components.OverlapIndex;
+import org.omnaest.genomics.vcf.components.PipelinedVCFParser;
+import org.omnaest.genomics.vcf.components.PositionIndex;
+import org.omnaest.genomics.vcf.components.SortedVCFAnnotator;
+import org.omnaest.genomics.vcf.components.VariantBloomFilter;
+import org.omnaest.genomics.vcf.components.VariantDeduplicator;
+import org.omnaest.genomics.vcf.components.SortedVCFMerger;
+import org.omnaest.genomics.vcf.components.StreamPublisher;
+import org.omnaest.genomics.vcf.components.StreamingGenomeApplicatorImpl;
 import org.omnaest.genomics.vcf.components.VCFParserManager;
+import org.omnaest.genomics.vcf.components.VCFRecordBatchBuilder;
+import org.omnaest.genomics.vcf.components.VCFWriterEngine;
+import org.omnaest.genomics.vcf.components.filter.VariantFilter;
+import org.omnaest.genomics.vcf.components.parser.ColumnProjection;
+import org.omnaest.genomics.vcf.components.parser.LineFilter;
 import org.omnaest.genomics.vcf.components.parser.VCFParser;
 import org.omnaest.genomics.vcf.components.parser.VCFParser_4_1;
+import org.omnaest.genomics.vcf.domain.GenomicRegion;
+import org.omnaest.genomics.vcf.domain.VCFContent;
 import org.omnaest.genomics.vcf.domain.VCFData;
+import org.omnaest.genomics.vcf.domain.VCFData.StreamingGenomeApplicator;
+import org.omnaest.genomics.vcf.domain.VCFData.VCFMetaInfo;
 import org.omnaest.genomics.vcf.domain.VCFRecord;
-import org.omnaest.utils.IterableUtils;
+import org.omnaest.genomics.vcf.domain.VCFRecord.Column;
+import org.omnaest.genomics.vcf.domain.VCFRecordBatch;
 import org.omnaest.utils.ListUtils;
 import org.omnaest.utils.MatcherUtils;
 import org.omnaest.utils.MatcherUtils.Match;
 import org.omnaest.utils.PatternUtils;
 import org.omnaest.utils.StreamUtils;
-import org.omnaest.utils.element.bi.BiElement;
 import org.omnaest.utils.zip.ZipUtils;
+import org.reactivestreams.Publisher;
 
 /**
  * Utils regarding the variant call format<br>
@@ -172,246 +213,1700 @@ public class VCFUtils
          */
         public VCFReader from(String vcfContent);
 
+        /**
+         * Enables the pipelined parsing of {@link InputStream} sources. Reading, decoding and record mapping run on separate threads which are
+         * connected by bounded queues of line batches, while the order of the {@link VCFRecord}s is preserved. {@link Reader} and {@link String}
+         * sources are parsed sequentially. The threads end when the {@link VCFRecord}s are read completely or their {@link Stream} is closed, so
+         * short-circuiting consumers of {@link #parseOnce()} must close the {@link Stream}.
+         * 
+         * @param numberOfDecoderThreads
+         * @return
+         */
+        public VCFReader pipelined(int numberOfDecoderThreads);
+
+        /**
+         * Similar to {@link #pipelined(int)} using the number of available processors minus one (at least one) as decoder threads
+         * 
+         * @return
+         */
+        public VCFReader pipelined();
+
+        /**
+         * Reads {@link InputStream} sources as raw bytes instead of using an {@link InputStreamReader}. Tab delimiters are located on the bytes and
+         * ASCII lines are converted without charset decoding. Lines with non ASCII bytes are decoded as UTF-8, so this should only be used for
+         * ASCII or UTF-8 encoded files. Can be combined with {@link #pipelined()}.
+         * 
+         * @return
+         */
+        public VCFReader asAscii();
+
+        /**
+         * Restricts the parsed {@link VCFRecord}s to the given {@link Column}s. Line scanning stops after the last requested {@link Column}, so
+         * sample columns are not touched unless {@link Column#SAMPLES} is requested. Not projected fields of the {@link VCFRecord}s are null.
+         * 
+         * @param columns
+         * @return
+         */
+        public VCFReader columns(Column... columns);
+
+        /**
+         * Similar to {@link #columns(Column...)} with the site columns {@link Column#CHROM} to {@link Column#INFO}, skipping the
+         * {@link Column#FORMAT} and all sample columns
+         * 
+         * @return
+         */
+        public VCFReader sitesOnly();
+
+        /**
+         * Restricts the sample columns of the parsed {@link VCFRecord}s to the given sample names. The samples are resolved to their column
+         * indexes once from the header line and only these columns are copied into the {@link VCFRecord#getSampleFields()}. Can be combined with
+         * {@link #columns(Column...)}, which then additionally includes the {@link Column#FORMAT} and the selected sample columns.
+         * 
+         * @param samples
+         * @return
+         * @throws IllegalArgumentException
+         *             during parsing if a sample is not present within the header line
+         */
+        public VCFReader samples(Set<String> samples);
+
+        /**
+         * Skips all data lines rejected by the given {@link LineFilter} before they are mapped to {@link VCFRecord}s. The built in filters like
+         * {@link LineFilter#passOnly()}, {@link LineFilter#chromosomes(java.util.Collection)}, {@link LineFilter#positionRange(long, long)} or
+         * {@link LineFilter#infoHasKey(String)} operate on the unparsed line, so rejected lines do not create any {@link VCFRecord}. Multiple
+         * filters are combined by a logical and.
+         * 
+         * @param filter
+         * @return
+         */
+        public VCFReader filter(LineFilter filter);
+
+        /**
+         * Skips all {@link VCFRecord}s which do not match the given {@link VariantFilter} expression, e.g.
+         * 
+         * <pre>
+         * FILTER=="PASS" && INFO/AF < 0.01 && GT=="0/1"
+         * </pre>
+         * 
+         * The expression is compiled against the field types of the VCF header. In contrast to {@link #filter(LineFilter)} the expression is
+         * evaluated on the mapped {@link VCFRecord}s, so both can be combined. Multiple expressions are combined by a logical and.
+         * 
+         * @see VariantFilter
+         * @param expression
+         * @return
+         * @throws IllegalArgumentException
+         *             if the expression is invalid
+         */
+        public VCFReader filter(String expression);
+
         /**
          * Parses the {@link VCFRecord}s and closes the underlying parser. This operation is not repeatable. This operation does not load the content into
-         * memory and is implemented for large vcf file {@link Stream} processing.
+         * memory and is implemented for large vcf file {@link Stream} processing. The {@link VCFRecord}s keep their {@link VCFRecord#getRawLine()}, so
+         * unmodified records can be written without rebuilding their line.<br>
+         * <br>
+         * The underlying source is released by closing the {@link Stream}. Consumers which short-circuit the {@link Stream}, e.g. by
+         * {@link Stream#findFirst()} or {@link Stream#limit(long)}, must close it, e.g. by a try-with-resources block, since a {@link #pipelined(int)}
+         * reader otherwise keeps its threads parked.
          * 
          * @return
          */
         public Stream<VCFRecord> parseOnce();
 
-        /**
-         * Parses the {@link VCFRecord}s and constructs an in memory {@link VCFData} instance with the complete content
-         * 
-         * @return
-         */
-        public VCFData parse();
+        /**
+         * Similar to {@link #parseOnce()} but additionally provides the {@link VCFMetaInfo} of the header. The {@link VCFMetaInfo} is complete as
+         * soon as the first {@link VCFRecord} has been read from the {@link VCFContent#getRecords()} {@link Stream}.
+         * 
+         * @return
+         */
+        public VCFContent parseOnceWithMetaInfo();
+
+        /**
+         * Similar to {@link #parseOnce()} but returns the {@link VCFRecord}s as columnar {@link VCFRecordBatch}es of the given size, where only the
+         * last batch can be smaller. The sample columns are not part of the {@link VCFRecordBatch}es, so this can be combined with
+         * {@link #sitesOnly()}. With {@link #asAscii()} the batches are filled directly from the line bytes without creating a {@link VCFRecord}
+         * per line, unless a {@link #filter(String)} expression is defined.
+         * 
+         * @param batchSize
+         * @return
+         */
+        public Stream<VCFRecordBatch> parseBatches(int batchSize);
+
+        /**
+         * Returns a Reactive Streams {@link Publisher} of the {@link VCFRecord}s. The source is opened on subscription and only read as fast as
+         * the requested demand, while the emission runs as tasks on the given {@link Executor}. Similar to {@link #parseOnce()} only a single
+         * subscription is supported.
+         * 
+         * @param executor
+         * @return
+         */
+        public Publisher<VCFRecord> publish(Executor executor);
+
+        /**
+         * Similar to {@link #publish(Executor)} but emits {@link VCFRecordBatch}es as in {@link #parseBatches(int)}
+         * 
+         * @param batchSize
+         * @param executor
+         * @return
+         */
+        public Publisher<VCFRecordBatch> publishBatches(int batchSize, Executor executor);
+
+        /**
+         * Parses the {@link VCFRecord}s and constructs an in memory {@link VCFData} instance with the complete content
+         * 
+         * @return
+         */
+        public VCFData parse();
+
+        /**
+         * Returns a {@link StreamingGenomeApplicator} which applies the coordinate sorted {@link VCFRecord}s to the reference genome without loading
+         * them into memory. Similar to {@link #parseOnce()} this operation is not repeatable.
+         * 
+         * @see VCFData#applicator()
+         * @return
+         */
+        public StreamingGenomeApplicator applicator();
+
+    }
+
+    /**
+     * Concurrent ingest of multiple VCF sources into a single in memory {@link VCFData}
+     * 
+     * @see VCFUtils#ingest()
+     * @author omnaest
+     */
+    public static interface VCFIngest
+    {
+        /**
+         * Adds the given {@link File} as source, which is named by the file name
+         * 
+         * @param file
+         * @return
+         */
+        public VCFIngest from(File file);
+
+        public VCFIngest from(Collection<File> files);
+
+        /**
+         * Adds a named source, where the {@link InputStream} is opened not before the source is parsed
+         * 
+         * @param sourceName
+         * @param inputStream
+         * @return
+         */
+        public VCFIngest from(String sourceName, Supplier<InputStream> inputStream);
+
+        /**
+         * Configures the {@link VCFReader} of each source, e.g. by {@link VCFReader#asAscii()} or {@link VCFReader#filter(String)}
+         * 
+         * @param readerConfiguration
+         * @return
+         */
+        public VCFIngest withReaderConfiguration(UnaryOperator<VCFReader> readerConfiguration);
+
+        /**
+         * Limits the number of concurrently parsed and open sources. Default is {@value ConcurrentVCFIngestor#DEFAULT_MAX_OPEN_SOURCES}.
+         * 
+         * @param maxOpenFiles
+         * @return
+         */
+        public VCFIngest withMaxOpenFiles(int maxOpenFiles);
+
+        /**
+         * Limits the number of parsed {@link VCFRecord}s which are not yet aggregated into the {@link VCFData}
+         * 
+         * @param maxInFlightRecords
+         * @return
+         */
+        public VCFIngest withMaxInFlightRecords(int maxInFlightRecords);
+
+        /**
+         * Parses all sources concurrently and returns a chromosome partitioned {@link VCFData} of all {@link VCFRecord}s, where each
+         * {@link VCFRecord} is tagged with its source name, see {@link VCFRecord#getSource()}. The {@link VCFMetaInfo} is taken from the first
+         * source, while its sample names are the union of the sample names of all sources.
+         * 
+         * @return
+         * @throws IllegalStateException
+         *             if any source fails
+         */
+        public VCFData parse();
+    }
+
+    /**
+     * Returns a {@link VCFIngest} which parses many VCF sources concurrently into a single {@link VCFData}. Sources are parsed on virtual
+     * threads on Java 21+ and on a fixed thread pool otherwise.<br>
+     * <br>
+     * Example:
+     * 
+     * <pre>
+     * VCFData vcfData = VCFUtils.ingest()
+     *                           .from(files)
+     *                           .withMaxOpenFiles(32)
+     *                           .parse();
+     * </pre>
+     * 
+     * @return
+     */
+    public static VCFIngest ingest()
+    {
+        return new VCFIngest()
+        {
+            private List<ConcurrentVCFIngestor.Source> sources             = new ArrayList<>();
+            private UnaryOperator<VCFReader>           readerConfiguration = reader -> reader;
+            private int                                maxOpenFiles        = ConcurrentVCFIngestor.DEFAULT_MAX_OPEN_SOURCES;
+            private int                                maxInFlightChunks   = ConcurrentVCFIngestor.DEFAULT_MAX_IN_FLIGHT_CHUNKS;
+
+            @Override
+            public VCFIngest from(File file)
+            {
+                return this.from(file.getName(), () ->
+                {
+                    try
+                    {
+                        return new FileInputStream(file);
+                    }
+                    catch (FileNotFoundException e)
+                    {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+
+            @Override
+            public VCFIngest from(Collection<File> files)
+            {
+                files.forEach(this::from);
+                return this;
+            }
+
+            @Override
+            public VCFIngest from(String sourceName, Supplier<InputStream> inputStream)
+            {
+                this.sources.add(new ConcurrentVCFIngestor.Source(sourceName, () -> this.readerConfiguration.apply(read().from(inputStream.get()))
+                                                                                                            .parseOnceWithMetaInfo()));
+                return this;
+            }
+
+            @Override
+            public VCFIngest withReaderConfiguration(UnaryOperator<VCFReader> readerConfiguration)
+            {
+                this.readerConfiguration = readerConfiguration;
+                return this;
+            }
+
+            @Override
+            public VCFIngest withMaxOpenFiles(int maxOpenFiles)
+            {
+                this.maxOpenFiles = maxOpenFiles;
+                return this;
+            }
+
+            @Override
+            public VCFIngest withMaxInFlightRecords(int maxInFlightRecords)
+            {
+                this.maxInFlightChunks = Math.max(1, maxInFlightRecords / ConcurrentVCFIngestor.DEFAULT_CHUNK_SIZE);
+                return this;
+            }
+
+            @Override
+            public VCFData parse()
+            {
+                ConcurrentVCFIngestor ingestor = new ConcurrentVCFIngestor(this.maxOpenFiles, this.maxInFlightChunks,
+                                                                           ConcurrentVCFIngestor.DEFAULT_CHUNK_SIZE);
+                Map<String, List<VCFRecord>> chromosomeToRecords = ingestor.ingest(this.sources, VCFRecord::normalizeChromosome);
+                return createVCFData(chromosomeToRecords, createMergedMetaInfo(ingestor.getMetaInfos()));
+            }
+        };
+    }
+
+    /**
+     * Streaming merge of coordinate sorted VCF sources into a single coordinate sorted {@link VCFContent}
+     * 
+     * @see VCFUtils#merge()
+     * @author omnaest
+     */
+    public static interface VCFMerge
+    {
+        /**
+         * Adds the given coordinate sorted {@link File} as source
+         * 
+         * @param file
+         * @return
+         */
+        public VCFMerge from(File file);
+
+        public VCFMerge from(Collection<File> files);
+
+        /**
+         * Adds the given coordinate sorted {@link VCFContent} as source, e.g. from {@link VCFReader#parseOnceWithMetaInfo()}
+         * 
+         * @param content
+         * @return
+         */
+        public VCFMerge from(VCFContent content);
+
+        /**
+         * Configures the {@link VCFReader} of each {@link File} source
+         * 
+         * @param readerConfiguration
+         * @return
+         */
+        public VCFMerge withReaderConfiguration(UnaryOperator<VCFReader> readerConfiguration);
+
+        /**
+         * Defines the order of the contigs within the sources. Default is the order of the ##contig header lines of the first source and the
+         * natural {@link ContigOrder} for contigs without a header line.
+         * 
+         * @param contigs
+         * @return
+         */
+        public VCFMerge withContigOrder(List<String> contigs);
+
+        /**
+         * Collapses identical sites of multiple sources, which have the same contig, position, REF and ALT, into a single multi sample
+         * {@link VCFRecord} with a sample field for each sample of all sources
+         * 
+         * @return
+         */
+        public VCFMerge collapseSites();
+
+        /**
+         * Opens all sources and returns their lazily merged {@link VCFContent}. The {@link VCFMetaInfo} is taken from the first source, while its
+         * sample names are the union of the sample names of all sources. Similar to {@link VCFReader#parseOnce()} the merged {@link VCFRecord}s can
+         * only be read once.
+         * 
+         * @return
+         */
+        public VCFContent merge();
+    }
+
+    /**
+     * Returns a {@link VCFMerge} which merges many coordinate sorted VCF sources, like per chromosome shards or single sample files, by a streaming
+     * k-way merge. Only the current record of each source is held in memory.<br>
+     * <br>
+     * Example:
+     * 
+     * <pre>
+     * VCFContent merged = VCFUtils.merge()
+     *                             .from(files)
+     *                             .collapseSites()
+     *                             .merge();
+     * </pre>
+     * 
+     * @return
+     */
+    public static VCFMerge merge()
+    {
+        return new VCFMerge()
+        {
+            private List<Supplier<VCFContent>> sources             = new ArrayList<>();
+            private UnaryOperator<VCFReader>   readerConfiguration = reader -> reader;
+            private ContigOrder                contigOrder         = null;
+            private boolean                    collapseSites       = false;
+
+            @Override
+            public VCFMerge from(File file)
+            {
+                this.sources.add(() ->
+                {
+                    try
+                    {
+                        return this.readerConfiguration.apply(read().from(file))
+                                                       .parseOnceWithMetaInfo();
+                    }
+                    catch (FileNotFoundException e)
+                    {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                return this;
+            }
+
+            @Override
+            public VCFMerge from(Collection<File> files)
+            {
+                files.forEach(this::from);
+                return this;
+            }
+
+            @Override
+            public VCFMerge from(VCFContent content)
+            {
+                this.sources.add(() -> content);
+                return this;
+            }
+
+            @Override
+            public VCFMerge withReaderConfiguration(UnaryOperator<VCFReader> readerConfiguration)
+            {
+                this.readerConfiguration = readerConfiguration;
+                return this;
+            }
+
+            @Override
+            public VCFMerge withContigOrder(List<String> contigs)
+            {
+                this.contigOrder = ContigOrder.of(contigs);
+                return this;
+            }
+
+            @Override
+            public VCFMerge collapseSites()
+            {
+                this.collapseSites = true;
+                return this;
+            }
+
+            @Override
+            public VCFContent merge()
+            {
+                List<VCFContent> contents = this.sources.stream()
+                                                        .map(Supplier::get)
+                                                        .collect(Collectors.toList());
+                Supplier<VCFMetaInfo> metaInfo = () -> createMergedMetaInfo(contents.stream()
+                                                                                    .map(VCFContent::getMetaInfo)
+                                                                                    .collect(Collectors.toList()));
+                ContigOrder contigOrder = this.contigOrder;
+                Supplier<ContigOrder> contigOrderSupplier = () ->
+                {
+                    VCFMetaInfo firstMetaInfo = contents.isEmpty() ? null
+                            : contents.get(0)
+                                      .getMetaInfo();
+                    return contigOrder != null ? contigOrder : ContigOrder.ofMetaLines(firstMetaInfo != null ? firstMetaInfo.getMetaLines() : null);
+                };
+                SortedVCFMerger merger = new SortedVCFMerger(contigOrderSupplier);
+                if (this.collapseSites)
+                {
+                    merger.withCollapsedSites(() -> metaInfo.get()
+                                                            .getSampleNames());
+                }
+                Stream<VCFRecord> records = merger.merge(contents.stream()
+                                                                 .map(VCFContent::getRecords)
+                                                                 .collect(Collectors.toList()));
+                return new VCFContent()
+                {
+                    @Override
+                    public Stream<VCFRecord> getRecords()
+                    {
+                        return records;
+                    }
+
+                    @Override
+                    public VCFMetaInfo getMetaInfo()
+                    {
+                        return metaInfo.get();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Disk spilling sort of VCF sources by contig and position
+     * 
+     * @see VCFUtils#sort(VCFContent)
+     * @author omnaest
+     */
+    public static interface VCFSort
+    {
+        /**
+         * Limits the estimated heap size of all buffered {@link VCFRecord}s. Default is {@value ExternalVCFSorter#DEFAULT_MEMORY_BUDGET} bytes.
+         * 
+         * @param memoryBudget
+         *            in bytes
+         * @return
+         */
+        public VCFSort withMemoryBudget(long memoryBudget);
+
+        /**
+         * Defines the parent directory of the temporary sorted runs. Default is the system temporary directory.
+         * 
+         * @param tempDirectory
+         * @return
+         */
+        public VCFSort withTempDirectory(File tempDirectory);
+
+        /**
+         * Defines the number of threads which sort and write or merge runs. Default is {@value ExternalVCFSorter#DEFAULT_PARALLELISM}.
+         * 
+         * @param parallelism
+         * @return
+         */
+        public VCFSort withParallelism(int parallelism);
+
+        /**
+         * Defines the order of the contigs. Default is the order of the ##contig header lines of the source and the natural {@link ContigOrder}
+         * for contigs without a header line.
+         * 
+         * @param contigs
+         * @return
+         */
+        public VCFSort withContigOrder(List<String> contigs);
+
+        /**
+         * Sorts the source and returns the sorted {@link VCFContent}, which is merged lazily from the sorted runs. The sorted {@link VCFRecord}s can
+         * only be read once and closing their {@link Stream} deletes the temporary files.
+         * 
+         * @return
+         * @throws IllegalStateException
+         *             if writing a sorted run fails
+         */
+        public VCFContent sorted();
+
+        /**
+         * Sorts the source and writes the sorted VCF into the given {@link File}
+         * 
+         * @param file
+         * @throws IOException
+         */
+        public void into(File file) throws IOException;
+
+        /**
+         * Sorts the source and writes the sorted VCF into the given {@link Writer} and closes it
+         * 
+         * @param writer
+         * @throws IOException
+         */
+        public void into(Writer writer) throws IOException;
+    }
+
+    /**
+     * Similar to {@link #sort(VCFContent)} for a VCF {@link File}
+     * 
+     * @param file
+     * @return
+     * @throws FileNotFoundException
+     */
+    public static VCFSort sort(File file) throws FileNotFoundException
+    {
+        return sort(read().from(file)
+                          .parseOnceWithMetaInfo());
+    }
+
+    /**
+     * Returns a {@link VCFSort} for the given unsorted source, e.g. from {@link VCFReader#parseOnceWithMetaInfo()}. Sources larger than the
+     * memory budget are spilled as sorted runs in a compact binary form to a temporary directory, so inputs much larger than the heap can be
+     * sorted.<br>
+     * <br>
+     * Example:
+     * 
+     * <pre>
+     * VCFUtils.sort(unsortedFile)
+     *         .withMemoryBudget(512 * 1024 * 1024)
+     *         .into(sortedFile);
+     * </pre>
+     * 
+     * @see ExternalVCFSorter
+     * @param source
+     * @return
+     */
+    public static VCFSort sort(VCFContent source)
+    {
+        return new VCFSort()
+        {
+            private long        memoryBudget  = ExternalVCFSorter.DEFAULT_MEMORY_BUDGET;
+            private File        tempDirectory = null;
+            private int         parallelism   = ExternalVCFSorter.DEFAULT_PARALLELISM;
+            private ContigOrder contigOrder   = null;
+
+            @Override
+            public VCFSort withMemoryBudget(long memoryBudget)
+            {
+                this.memoryBudget = memoryBudget;
+                return this;
+            }
+
+            @Override
+            public VCFSort withTempDirectory(File tempDirectory)
+            {
+                this.tempDirectory = tempDirectory;
+                return this;
+            }
+
+            @Override
+            public VCFSort withParallelism(int parallelism)
+            {
+                this.parallelism = parallelism;
+                return this;
+            }
+
+            @Override
+            public VCFSort withContigOrder(List<String> contigs)
+            {
+                this.contigOrder = ContigOrder.of(contigs);
+                return this;
+            }
+
+            @Override
+            public VCFContent sorted()
+            {
+                ContigOrder contigOrder = this.contigOrder;
+                Supplier<ContigOrder> contigOrderSupplier = () -> contigOrder != null ? contigOrder
+                        : ContigOrder.ofMetaLines(source.getMetaInfo() != null ? source.getMetaInfo()
+                                                                                       .getMetaLines()
+                                : null);
+                Stream<VCFRecord> records = new ExternalVCFSorter(contigOrderSupplier, this.memoryBudget, this.tempDirectory,
+                                                                  this.parallelism).sort(source.getRecords());
+                return new VCFContent()
+                {
+                    @Override
+                    public Stream<VCFRecord> getRecords()
+                    {
+                        return records;
+                    }
+
+                    @Override
+                    public VCFMetaInfo getMetaInfo()
+                    {
+                        return source.getMetaInfo();
+                    }
+                };
+            }
+
+            @Override
+            public void into(File file) throws IOException
+            {
+                VCFContent sorted = this.sorted();
+                try (Stream<VCFRecord> records = sorted.getRecords())
+                {
+                    write(records).withMetaInfo(sorted.getMetaInfo())
+                                  .into(file);
+                }
+            }
+
+            @Override
+            public void into(Writer writer) throws IOException
+            {
+                VCFContent sorted = this.sorted();
+                try (Stream<VCFRecord> records = sorted.getRecords())
+                {
+                    write(records).withMetaInfo(sorted.getMetaInfo())
+                                  .into(writer);
+                }
+            }
+        };
+    }
+
+    /**
+     * Streaming annotation of coordinate sorted {@link VCFRecord}s from a coordinate sorted reference VCF
+     * 
+     * @see VCFUtils#annotate(VCFContent)
+     * @author omnaest
+     */
+    public static interface VCFAnnotation
+    {
+        /**
+         * Defines the coordinate sorted reference VCF {@link File}, like dbSNP or ClinVar
+         * 
+         * @param referenceFile
+         * @return
+         * @throws FileNotFoundException
+         */
+        public VCFAnnotation from(File referenceFile) throws FileNotFoundException;
+
+        /**
+         * Defines the coordinate sorted reference, e.g. from {@link VCFReader#parseOnceWithMetaInfo()}
+         * 
+         * @param reference
+         * @return
+         */
+        public VCFAnnotation from(VCFContent reference);
+
+        /**
+         * Defines the INFO keys which are copied from the reference. Their ##INFO header lines are copied as well. Values of Number=A and Number=R
+         * keys are reduced to the ALT alleles of the annotated record, see {@link SortedVCFAnnotator}.
+         * 
+         * @param infoKeys
+         * @return
+         */
+        public VCFAnnotation copyInfo(String... infoKeys);
+
+        /**
+         * Disables adding the IDs of the reference, which is enabled by default
+         * 
+         * @return
+         */
+        public VCFAnnotation withoutId();
+
+        /**
+         * Defines the order of the contigs. Default is the order of the ##contig header lines of the annotated source and the natural
+         * {@link ContigOrder} for contigs without a header line.
+         * 
+         * @param contigs
+         * @return
+         */
+        public VCFAnnotation withContigOrder(List<String> contigs);
+
+        /**
+         * Defines a {@link VariantBloomFilter} of the reference, e.g. from {@link VCFUtils#openBloomFilter(File, double, long)}. Records which are
+         * definitely not part of the reference are passed through without being matched against it.
+         * 
+         * @param prefilter
+         * @return
+         */
+        public VCFAnnotation withPrefilter(VariantBloomFilter prefilter);
+
+        /**
+         * Returns the lazily annotated {@link VCFContent}, which can only be read once
+         * 
+         * @return
+         * @throws IllegalStateException
+         *             while reading, if the source or the reference is not coordinate sorted
+         */
+        public VCFContent annotate();
+    }
+
+    /**
+     * Returns a {@link VCFAnnotation} which annotates the given coordinate sorted source with IDs and INFO fields of a coordinate sorted reference
+     * by a single pass merge join on contig, position, REF and ALT. Both sources are read sequentially and only the reference records of the
+     * current position are held in memory.<br>
+     * <br>
+     * Example:
+     * 
+     * <pre>
+     * VCFContent annotated = VCFUtils.annotate(VCFUtils.read()
+     *                                                  .from(sampleFile)
+     *                                                  .parseOnceWithMetaInfo())
+     *                                .from(dbSnpFile)
+     *                                .copyInfo("CAF", "COMMON")
+     *                                .annotate();
+     * </pre>
+     * 
+     * @see SortedVCFAnnotator
+     * @param source
+     * @return
+     */
+    public static VCFAnnotation annotate(VCFContent source)
+    {
+        return new VCFAnnotation()
+        {
+            private VCFContent         reference;
+            private List<String>       infoKeys    = new ArrayList<>();
+            private boolean            copyId      = true;
+            private ContigOrder        contigOrder = null;
+            private VariantBloomFilter prefilter   = null;
+
+            @Override
+            public VCFAnnotation from(File referenceFile) throws FileNotFoundException
+            {
+                return this.from(read().from(referenceFile)
+                                       .parseOnceWithMetaInfo());
+            }
+
+            @Override
+            public VCFAnnotation from(VCFContent reference)
+            {
+                this.reference = reference;
+                return this;
+            }
+
+            @Override
+            public VCFAnnotation copyInfo(String... infoKeys)
+            {
+                this.infoKeys.addAll(Arrays.asList(infoKeys));
+                return this;
+            }
+
+            @Override
+            public VCFAnnotation withoutId()
+            {
+                this.copyId = false;
+                return this;
+            }
+
+            @Override
+            public VCFAnnotation withContigOrder(List<String> contigs)
+            {
+                this.contigOrder = ContigOrder.of(contigs);
+                return this;
+            }
+
+            @Override
+            public VCFAnnotation withPrefilter(VariantBloomFilter prefilter)
+            {
+                this.prefilter = prefilter;
+                return this;
+            }
+
+            @Override
+            public VCFContent annotate()
+            {
+                if (this.reference == null)
+                {
+                    throw new IllegalStateException("No reference defined for the annotation");
+                }
+                VCFContent reference = this.reference;
+                List<String> infoKeys = new ArrayList<>(this.infoKeys);
+                ContigOrder contigOrder = this.contigOrder;
+                Supplier<ContigOrder> contigOrderSupplier = () -> contigOrder != null ? contigOrder
+                        : ContigOrder.ofMetaLines(source.getMetaInfo() != null ? source.getMetaInfo()
+                                                                                       .getMetaLines()
+                                : null);
+                Supplier<Map<String, String>> infoNumbers = () -> determineInfoNumbers(reference.getMetaInfo());
+                SortedVCFAnnotator annotator = new SortedVCFAnnotator(contigOrderSupplier, infoKeys, this.copyId).withPrefilter(this.prefilter)
+                                                                                                                 .withInfoNumbers(infoNumbers);
+                Stream<VCFRecord> records = annotator.annotate(source.getRecords(), reference.getRecords());
+                return new VCFContent()
+                {
+                    @Override
+                    public Stream<VCFRecord> getRecords()
+                    {
+                        return records;
+                    }
+
+                    @Override
+                    public VCFMetaInfo getMetaInfo()
+                    {
+                        return createAnnotatedMetaInfo(source.getMetaInfo(), reference.getMetaInfo(), infoKeys);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Removal of duplicate sites from a {@link Stream} of {@link VCFRecord}s
+     * 
+     * @see VCFUtils#deduplicate(Stream)
+     * @author omnaest
+     */
+    public static interface VCFDeduplication
+    {
+        /**
+         * Assumes coordinate sorted input and keeps only the site keys within the given number of positions, so the memory stays bounded on large
+         * inputs. 0 requires strictly coordinate sorted input, a larger window tolerates records lagging behind by that many positions, e.g. after
+         * left normalization.
+         * 
+         * @param positions
+         * @return
+         */
+        public VCFDeduplication withSortedWindow(long positions);
+
+        /**
+         * Returns the lazily deduplicated {@link VCFRecord}s
+         * 
+         * @return
+         * @throws IllegalStateException
+         *             while reading, if a window is defined and the input is not coordinate sorted within it
+         */
+        public Stream<VCFRecord> deduplicated();
+    }
+
+    /**
+     * Returns a {@link VCFDeduplication} which drops all {@link VCFRecord}s of the given {@link Stream}, whose contig, position, REF and ALT equal
+     * the ones of a previous {@link VCFRecord}. Only 128 bit fingerprints of the sites are held off-heap.<br>
+     * <br>
+     * Example:
+     * 
+     * <pre>
+     * Stream&lt;VCFRecord&gt; records = VCFUtils.deduplicate(VCFUtils.read()
+     *                                                        .from(sortedFile)
+     *                                                        .parseOnce())
+     *                                       .withSortedWindow(0)
+     *                                       .deduplicated();
+     * </pre>
+     * 
+     * @see VariantDeduplicator
+     * @param records
+     * @return
+     */
+    public static VCFDeduplication deduplicate(Stream<VCFRecord> records)
+    {
+        return new VCFDeduplication()
+        {
+            private long window = -1;
+
+            @Override
+            public VCFDeduplication withSortedWindow(long positions)
+            {
+                if (positions < 0)
+                {
+                    throw new IllegalArgumentException("Window must not be negative: " + positions);
+                }
+                this.window = positions;
+                return this;
+            }
+
+            @Override
+            public Stream<VCFRecord> deduplicated()
+            {
+                return new VariantDeduplicator(this.window).deduplicate(records);
+            }
+        };
+    }
+
+    public static VCFReader read()
+    {
+        return new VCFReader()
+        {
+            private Reader           reader;
+            private InputStream      inputStream;
+            private Charset          charset;
+            private int              numberOfDecoderThreads = 0;
+            private boolean          ascii                  = false;
+            private ColumnProjection projection             = ColumnProjection.all();
+            private Set<String>      samples                = null;
+            private LineFilter       filter                 = LineFilter.ALL;
+            private String           filterExpression       = null;
+
+            @Override
+            public VCFReader from(File file) throws FileNotFoundException
+            {
+                return this.from(file, StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public VCFReader fromFile(String fileName) throws FileNotFoundException
+            {
+                return this.from(new File(fileName));
+            }
+
+            @Override
+            public VCFReader from(File file, Charset charset) throws FileNotFoundException
+            {
+                return this.from(new FileInputStream(file), charset);
+            }
+
+            @Override
+            public VCFReader from(InputStream inputStream, Charset charset)
+            {
+                this.reader = null;
+                this.inputStream = inputStream;
+                this.charset = charset;
+                return this;
+            }
+
+            @Override
+            public VCFReader from(InputStream inputStream)
+            {
+                return this.from(inputStream, StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public VCFReader from(byte[] data)
+            {
+                return this.from(new ByteArrayInputStream(data));
+            }
+
+            @Override
+            public VCFReader from(Reader reader)
+            {
+                this.reader = IOUtils.toBufferedReader(reader, 32 * 1024 * 1024);
+                this.inputStream = null;
+                return this;
+            }
+
+            @Override
+            public VCFReader pipelined()
+            {
+                return this.pipelined(Math.max(1, Runtime.getRuntime()
+                                                         .availableProcessors()
+                        - 1));
+            }
+
+            @Override
+            public VCFReader pipelined(int numberOfDecoderThreads)
+            {
+                this.numberOfDecoderThreads = numberOfDecoderThreads;
+                return this;
+            }
+
+            @Override
+            public VCFReader asAscii()
+            {
+                this.ascii = true;
+                return this;
+            }
+
+            @Override
+            public VCFReader columns(Column... columns)
+            {
+                this.projection = ColumnProjection.of(columns);
+                return this;
+            }
+
+            @Override
+            public VCFReader sitesOnly()
+            {
+                this.projection = ColumnProjection.sitesOnly();
+                return this;
+            }
+
+            @Override
+            public VCFReader samples(Set<String> samples)
+            {
+                this.samples = samples;
+                return this;
+            }
+
+            @Override
+            public VCFReader filter(LineFilter filter)
+            {
+                this.filter = this.filter.and(filter);
+                return this;
+            }
+
+            @Override
+            public VCFReader filter(String expression)
+            {
+                VariantFilter.compile(expression);
+                this.filterExpression = this.filterExpression == null ? expression : "(" + this.filterExpression + ") && (" + expression + ")";
+                return this;
+            }
+
+            @Override
+            public VCFReader from(String vcfContent)
+            {
+                return this.from(new StringReader(vcfContent));
+            }
+
+            @Override
+            public VCFData parse()
+            {
+                VCFParser parser = this.createParser();
+                Map<String, List<VCFRecord>> chromosomeToRecords = this.getRecords(parser)
+                                                                       .collect(Collectors.groupingBy(record -> VCFRecord.normalizeChromosome(record.getChromosome())));
+                return createVCFData(chromosomeToRecords, createMetaInfo(parser));
+            }
+
+            @Override
+            public Stream<VCFRecord> parseOnce()
+            {
+                return this.getRecords(this.createParser()
+                                            .withRawLines(true));
+            }
+
+            @Override
+            public VCFContent parseOnceWithMetaInfo()
+            {
+                VCFParser parser = this.createParser()
+                                       .withRawLines(true);
+                Stream<VCFRecord> records = this.getRecords(parser);
+                VCFMetaInfo metaInfo = createMetaInfo(parser);
+                return new VCFContent()
+                {
+                    @Override
+                    public Stream<VCFRecord> getRecords()
+                    {
+                        return records;
+                    }
+
+                    @Override
+                    public VCFMetaInfo getMetaInfo()
+                    {
+                        return metaInfo;
+                    }
+                };
+            }
+
+            @Override
+            public Stream<VCFRecordBatch> parseBatches(int batchSize)
+            {
+                VCFParser parser = this.createParser();
+                if (parser instanceof AsciiVCFParser && this.filterExpression == null)
+                {
+                    return ((AsciiVCFParser) parser).getBatches(batchSize);
+                }
+
+                VCFRecordBatchBuilder batchBuilder = new VCFRecordBatchBuilder(batchSize);
+                Stream<VCFRecord> records = this.getRecords(parser);
+                Iterator<VCFRecord> recordIterator = records.iterator();
+                Iterator<VCFRecordBatch> batchIterator = new Iterator<VCFRecordBatch>()
+                {
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return recordIterator.hasNext();
+                    }
+
+                    @Override
+                    public VCFRecordBatch next()
+                    {
+                        if (!this.hasNext())
+                        {
+                            throw new NoSuchElementException();
+                        }
+                        while (!batchBuilder.isFull() && recordIterator.hasNext())
+                        {
+                            batchBuilder.add(recordIterator.next());
+                        }
+                        return batchBuilder.build();
+                    }
+                };
+                return StreamSupport.stream(Spliterators.spliteratorUnknownSize(batchIterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                                    .onClose(records::close);
+            }
+
+            @Override
+            public Publisher<VCFRecord> publish(Executor executor)
+            {
+                return new StreamPublisher<>(this::parseOnce, executor);
+            }
+
+            @Override
+            public Publisher<VCFRecordBatch> publishBatches(int batchSize, Executor executor)
+            {
+                return new StreamPublisher<>(() -> this.parseBatches(batchSize), executor);
+            }
+
+            @Override
+            public StreamingGenomeApplicator applicator()
+            {
+                VCFParser parser = this.createParser();
+                return new StreamingGenomeApplicatorImpl(this.getRecords(parser), () -> parser.getComments()
+                                                                                          .get("contig"));
+            }
+
+            private Stream<VCFRecord> getRecords(VCFParser parser)
+            {
+                Stream<VCFRecord> records = parser.getRecords();
+                if (this.filterExpression != null)
+                {
+                    records = records.filter(VariantFilter.compile(this.filterExpression, () -> createMetaInfo(parser)));
+                }
+                return records;
+            }
+
+            private VCFParser createParser()
+            {
+                return this.createUnprojectedParser()
+                           .withProjection(this.samples != null ? this.projection.withSamples(this.samples) : this.projection)
+                           .withFilter(this.filter);
+            }
+
+            private VCFParser createUnprojectedParser()
+            {
+                if (this.inputStream != null && this.numberOfDecoderThreads > 0)
+                {
+                    PipelinedVCFParser parser = new PipelinedVCFParser(parserManager, this.inputStream, this.charset, this.numberOfDecoderThreads);
+                    return this.ascii ? parser.asAscii() : parser;
+                }
+
+                if (this.inputStream != null && this.ascii)
+                {
+                    return new AsciiVCFParser(parserManager, this.inputStream);
+                }
+
+                if (this.inputStream != null)
+                {
+                    this.from(new InputStreamReader(this.inputStream, this.charset));
+                }
+                Stream<String> lines = StreamUtils.fromReaderAsLines(this.reader)
+                                                  .filter(line -> !StringUtils.isBlank(line));
+
+                return parserManager.getInstance(lines);
+            }
+
+            @Override
+            public VCFReader fromGZip(File file) throws FileNotFoundException
+            {
+                try
+                {
+                    return this.from(ZipUtils.read()
+                                             .fromGzip(file)
+                                             .asInputStream());
+                }
+                catch (FileNotFoundException e)
+                {
+                    throw e;
+                }
+                catch (IOException e)
+                {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+        };
+    }
+
+    /**
+     * Creates a {@link VCFMetaInfo} which reads the header information of the given {@link VCFParser} on demand
+     * 
+     * @param parser
+     * @return
+     */
+    private static VCFMetaInfo createMetaInfo(VCFParser parser)
+    {
+        Map<String, List<String>> comments = parser.getComments();
+        return new VCFMetaInfo()
+        {
+            @Override
+            public String getReference()
+            {
+                return ListUtils.first(comments.get("reference"));
+            }
+
+            @Override
+            public String getParsedHumanReferenceGenome()
+            {
+                String reference = this.getReference();
+                Optional<Stream<Match>> matches = PatternUtils.matcher()
+                                                              .of(Pattern.compile("hg[0-9]+|GRCH[0-9]+", Pattern.CASE_INSENSITIVE))
+                                                              .findIn(reference);
+                if (!matches.isPresent())
+                {
+                    return null;
+                }
+                else
+                {
+                    return matches.get()
+                                  .findFirst()
+                                  .get()
+                                  .getMatchRegion();
+                }
+            }
+
+            @Override
+            public String getFileFormat()
+            {
+                return ListUtils.first(comments.get("fileformat"));
+            }
+
+            @Override
+            public String getFileDate()
+            {
+                return ListUtils.first(comments.get("fileDate"));
+            }
+
+            @Override
+            public SampleInfos getSampleInfos()
+            {
+                Map<String, Map<String, String>> retmap = new LinkedHashMap<>();
+
+                String sampleStr = ListUtils.first(comments.get("SAMPLE"));
+
+                MatcherUtils.matcher()
+                            .of(Pattern.compile("\\<([^\\>]*)\\>"))
+                            .findIn(sampleStr)
+                            .ifPresent(matches ->
+                            {
+                                matches.forEach(match ->
+                                {
+                                    String singleSampleStr = match.getSubGroupsAsStream()
+                                                                  .findFirst()
+                                                                  .orElse(null);
+                                    Map<String, String> sampleMap = new LinkedHashMap<>();
+                                    org.omnaest.utils.StringUtils.splitToStream(singleSampleStr, ",")
+                                                                 .forEach(keyAndValue ->
+                                                                 {
+                                                                     MatcherUtils.matcher()
+                                                                                 .of(Pattern.compile("([^\\=]+)\\=(.*)"))
+                                                                                 .matchAgainst(keyAndValue)
+                                                                                 .map(keyAndValueMatch -> keyAndValueMatch.getGroups())
+                                                                                 .ifPresent(keyAndValueMatchGroups ->
+                                                                                 {
+                                                                                     String key = keyAndValueMatchGroups.get(1);
+                                                                                     String value = keyAndValueMatchGroups.get(2);
+
+                                                                                     sampleMap.put(key, value);
+                                                                                 });
+                                                                 });
+
+                                    String id = sampleMap.get("ID");
+                                    retmap.put(id, sampleMap);
+                                });
+                            });
+
+                return new SampleInfos()
+                {
+                    @Override
+                    public Map<String, String> getSampleInfo(String id)
+                    {
+                        return retmap.get(id);
+                    }
+
+                    @Override
+                    public Set<String> getIds()
+                    {
+                        return retmap.keySet();
+                    }
+                };
+            }
 
+            @Override
+            public List<String> getMetaLines()
+            {
+                return Collections.unmodifiableList(parser.getMetaLines());
+            }
+
+            @Override
+            public List<String> getSampleNames()
+            {
+                return parser.getSampleNames();
+            }
+        };
     }
 
-    public static VCFReader read()
+    private static VCFData createVCFData(Map<String, List<VCFRecord>> chromosomeToRecords, VCFMetaInfo metaInfo)
     {
-        return new VCFReader()
+        return new VCFData()
         {
-            private Reader reader;
+            private PositionIndex positionIndex;
+            private OverlapIndex  overlapIndex;
+            private IdIndex       idIndex;
+            private GeneIndex     geneIndex;
 
             @Override
-            public VCFReader from(File file) throws FileNotFoundException
+            public Stream<VCFRecord> getRecords()
             {
-                return this.from(file, StandardCharsets.UTF_8);
+                return chromosomeToRecords.values()
+                                          .stream()
+                                          .flatMap(records -> records.stream());
             }
 
             @Override
-            public VCFReader fromFile(String fileName) throws FileNotFoundException
+            public Stream<VCFRecord> getRecords(String chromosome, long start, long end)
             {
-                return this.from(new File(fileName));
+                return this.getPositionIndex()
+                           .getRecords(chromosome, start, end)
+                           .stream();
             }
 
             @Override
-            public VCFReader from(File file, Charset charset) throws FileNotFoundException
+            public List<List<VCFRecord>> getRecords(List<GenomicRegion> regions)
             {
-                return this.from(new FileInputStream(file), charset);
+                return this.getPositionIndex()
+                           .getRecords(regions);
+            }
+
+            private synchronized PositionIndex getPositionIndex()
+            {
+                if (this.positionIndex == null)
+                {
+                    this.positionIndex = PositionIndex.of(chromosomeToRecords, VCFRecord::normalizeChromosome);
+                }
+                return this.positionIndex;
             }
 
             @Override
-            public VCFReader from(InputStream inputStream, Charset charset)
+            public Stream<VCFRecord> getOverlappingRecords(String chromosome, long start, long end)
+            {
+                return this.getOverlapIndex()
+                           .getOverlappingRecords(chromosome, start, end)
+                           .stream();
+            }
+
+            private synchronized OverlapIndex getOverlapIndex()
             {
-                return this.from(new InputStreamReader(inputStream, charset));
+                if (this.overlapIndex == null)
+                {
+                    this.overlapIndex = OverlapIndex.of(chromosomeToRecords, VCFRecord::normalizeChromosome);
+                }
+                return this.overlapIndex;
             }
 
             @Override
-            public VCFReader from(InputStream inputStream)
+            public Stream<VCFRecord> getRecordsById(String id)
             {
-                return this.from(inputStream, StandardCharsets.UTF_8);
+                return this.getIdIndex()
+                           .getRecords(id)
+                           .stream();
+            }
+
+            private synchronized IdIndex getIdIndex()
+            {
+                if (this.idIndex == null)
+                {
+                    this.idIndex = IdIndex.of(chromosomeToRecords.values());
+                }
+                return this.idIndex;
             }
 
             @Override
-            public VCFReader from(byte[] data)
+            public Stream<VCFRecord> getRecordsByGene(String gene)
             {
-                return this.from(new ByteArrayInputStream(data));
+                return this.getGeneIndex()
+                           .getRecords(gene)
+                           .stream();
             }
 
             @Override
-            public VCFReader from(Reader reader)
+            public Stream<VCFRecord> getRecordsByGenes(Collection<String> genes)
             {
-                this.reader = IOUtils.toBufferedReader(reader, 32 * 1024 * 1024);
-                return this;
+                return this.getGeneIndex()
+                           .getRecords(genes)
+                           .stream();
+            }
+
+            private synchronized GeneIndex getGeneIndex()
+            {
+                if (this.geneIndex == null)
+                {
+                    this.geneIndex = GeneIndex.of(chromosomeToRecords.values(), determineCsqSymbolIndex(metaInfo));
+                }
+                return this.geneIndex;
             }
 
             @Override
-            public VCFReader from(String vcfContent)
+            public Stream<VCFRecord> getRecords(String filterExpression)
             {
-                return this.from(new StringReader(vcfContent));
+                return this.getRecords()
+                           .filter(VariantFilter.compile(filterExpression, metaInfo));
             }
 
             @Override
-            public VCFData parse()
+            public GenomeApplicator applicator()
             {
-                BiElement<Stream<VCFRecord>, Map<String, List<String>>> recordsWithComments = this.parseOnceWithComments();
-                Map<String, List<VCFRecord>> chromosomeToRecords = recordsWithComments.getFirst()
-                                                                                      .collect(Collectors.groupingBy(record -> RegExUtils.replaceAll(StringUtils.upperCase(record.getChromosome()),
-                                                                                                                                                     "CHR",
-                                                                                                                                                     "")));
-                Map<String, List<String>> comments = recordsWithComments.getSecond();
+                return new GenomeApplicatorImpl(chromosomeToRecords);
+            }
 
-                return new VCFData()
-                {
-                    @Override
-                    public Stream<VCFRecord> getRecords()
-                    {
-                        return chromosomeToRecords.values()
-                                                  .stream()
-                                                  .flatMap(records -> records.stream());
-                    }
+            @Override
+            public VCFMetaInfo getMetaInfo()
+            {
+                return metaInfo;
+            }
 
-                    @Override
-                    public GenomeApplicator applicator()
-                    {
-                        return new GenomeApplicatorImpl(chromosomeToRecords);
-                    }
+        };
+    }
 
-                    @Override
-                    public VCFMetaInfo getMetaInfo()
-                    {
-                        return new VCFMetaInfo()
-                        {
-                            @Override
-                            public String getReference()
-                            {
-                                return ListUtils.first(comments.get("reference"));
-                            }
+    /**
+     * Returns a {@link VCFMetaInfo} which uses the meta information of the first given {@link VCFMetaInfo} and the sample names of all given
+     * {@link VCFMetaInfo}s
+     * 
+     * @param metaInfos
+     * @return
+     */
+    private static VCFMetaInfo createMergedMetaInfo(List<VCFMetaInfo> metaInfos)
+    {
+        VCFMetaInfo metaInfo = metaInfos.stream()
+                                        .filter(info -> info != null)
+                                        .findFirst()
+                                        .orElse(null);
+        List<String> sampleNames = metaInfos.stream()
+                                            .filter(info -> info != null)
+                                            .flatMap(info -> info.getSampleNames()
+                                                                 .stream())
+                                            .distinct()
+                                            .collect(Collectors.toList());
+        return new VCFMetaInfo()
+        {
+            @Override
+            public String getFileFormat()
+            {
+                return metaInfo != null ? metaInfo.getFileFormat() : null;
+            }
 
-                            @Override
-                            public String getParsedHumanReferenceGenome()
-                            {
-                                String reference = this.getReference();
-                                Optional<Stream<Match>> matches = PatternUtils.matcher()
-                                                                              .of(Pattern.compile("hg[0-9]+|GRCH[0-9]+", Pattern.CASE_INSENSITIVE))
-                                                                              .findIn(reference);
-                                if (!matches.isPresent())
-                                {
-                                    return null;
-                                }
-                                else
-                                {
-                                    return matches.get()
-                                                  .findFirst()
-                                                  .get()
-                                                  .getMatchRegion();
-                                }
-                            }
-
-                            @Override
-                            public String getFileFormat()
-                            {
-                                return ListUtils.first(comments.get("fileformat"));
-                            }
+            @Override
+            public String getFileDate()
+            {
+                return metaInfo != null ? metaInfo.getFileDate() : null;
+            }
 
-                            @Override
-                            public String getFileDate()
-                            {
-                                return ListUtils.first(comments.get("fileDate"));
-                            }
+            @Override
+            public String getReference()
+            {
+                return metaInfo != null ? metaInfo.getReference() : null;
+            }
 
-                            @Override
-                            public SampleInfos getSampleInfos()
-                            {
-                                Map<String, Map<String, String>> retmap = new LinkedHashMap<>();
-
-                                String sampleStr = ListUtils.first(comments.get("SAMPLE"));
-
-                                MatcherUtils.matcher()
-                                            .of(Pattern.compile("\\<([^\\>]*)\\>"))
-                                            .findIn(sampleStr)
-                                            .ifPresent(matches ->
-                                            {
-                                                matches.forEach(match ->
-                                                {
-                                                    String singleSampleStr = match.getSubGroupsAsStream()
-                                                                                  .findFirst()
-                                                                                  .orElse(null);
-                                                    Map<String, String> sampleMap = new LinkedHashMap<>();
-                                                    org.omnaest.utils.StringUtils.splitToStream(singleSampleStr, ",")
-                                                                                 .forEach(keyAndValue ->
-                                                                                 {
-                                                                                     MatcherUtils.matcher()
-                                                                                                 .of(Pattern.compile("([^\\=]+)\\=(.*)"))
-                                                                                                 .matchAgainst(keyAndValue)
-                                                                                                 .map(keyAndValueMatch -> keyAndValueMatch.getGroups())
-                                                                                                 .ifPresent(keyAndValueMatchGroups ->
-                                                                                                 {
-                                                                                                     String key = keyAndValueMatchGroups.get(1);
-                                                                                                     String value = keyAndValueMatchGroups.get(2);
-
-                                                                                                     sampleMap.put(key, value);
-                                                                                                 });
-                                                                                 });
+            @Override
+            public String getParsedHumanReferenceGenome()
+            {
+                return metaInfo != null ? metaInfo.getParsedHumanReferenceGenome() : null;
+            }
 
-                                                    String id = sampleMap.get("ID");
-                                                    retmap.put(id, sampleMap);
-                                                });
-                                            });
+            @Override
+            public SampleInfos getSampleInfos()
+            {
+                return metaInfo != null ? metaInfo.getSampleInfos() : null;
+            }
 
-                                return new SampleInfos()
-                                {
-                                    @Override
-                                    public Map<String, String> getSampleInfo(String id)
-                                    {
-                                        return retmap.get(id);
-                                    }
-
-                                    @Override
-                                    public Set<String> getIds()
-                                    {
-                                        return retmap.keySet();
-                                    }
-                                };
-                            }
-                        };
-                    }
+            @Override
+            public List<String> getMetaLines()
+            {
+                return metaInfo != null ? metaInfo.getMetaLines() : Collections.emptyList();
+            }
 
-                };
+            @Override
+            public List<String> getSampleNames()
+            {
+                return Collections.unmodifiableList(sampleNames);
             }
+        };
+    }
 
+    /**
+     * Returns the given {@link VCFMetaInfo} with the additional ##INFO meta lines of the given INFO keys from the reference {@link VCFMetaInfo}
+     * 
+     * @param metaInfo
+     * @param referenceMetaInfo
+     * @param infoKeys
+     * @return
+     */
+    private static VCFMetaInfo createAnnotatedMetaInfo(VCFMetaInfo metaInfo, VCFMetaInfo referenceMetaInfo, List<String> infoKeys)
+    {
+        List<String> metaLines = new ArrayList<>(metaInfo != null ? metaInfo.getMetaLines() : Collections.emptyList());
+        if (referenceMetaInfo != null)
+        {
+            for (String infoKey : infoKeys)
+            {
+                String infoMetaLinePrefix = "##INFO=<ID=" + infoKey + ",";
+                if (metaLines.stream()
+                             .noneMatch(metaLine -> StringUtils.startsWith(metaLine, infoMetaLinePrefix)))
+                {
+                    referenceMetaInfo.getMetaLines()
+                                     .stream()
+                                     .filter(metaLine -> StringUtils.startsWith(metaLine, infoMetaLinePrefix))
+                                     .findFirst()
+                                     .ifPresent(metaLines::add);
+                }
+            }
+        }
+        return new VCFMetaInfo()
+        {
             @Override
-            public Stream<VCFRecord> parseOnce()
+            public String getFileFormat()
             {
-                return this.parseOnceWithComments()
-                           .getFirst();
+                return metaInfo != null ? metaInfo.getFileFormat() : null;
+            }
 
+            @Override
+            public String getFileDate()
+            {
+                return metaInfo != null ? metaInfo.getFileDate() : null;
             }
 
-            public BiElement<Stream<VCFRecord>, Map<String, List<String>>> parseOnceWithComments()
+            @Override
+            public String getReference()
             {
-                Stream<String> lines = StreamUtils.fromReaderAsLines(this.reader)
-                                                  .filter(line -> !StringUtils.isBlank(line));
+                return metaInfo != null ? metaInfo.getReference() : null;
+            }
 
-                VCFParser parser = parserManager.getInstance(lines);
+            @Override
+            public String getParsedHumanReferenceGenome()
+            {
+                return metaInfo != null ? metaInfo.getParsedHumanReferenceGenome() : null;
+            }
 
-                return BiElement.of(parser.getRecords(), parser.getComments());
+            @Override
+            public SampleInfos getSampleInfos()
+            {
+                return metaInfo != null ? metaInfo.getSampleInfos() : null;
+            }
 
+            @Override
+            public List<String> getMetaLines()
+            {
+                return Collections.unmodifiableList(metaLines);
             }
 
             @Override
-            public VCFReader fromGZip(File file) throws FileNotFoundException
+            public List<String> getSampleNames()
             {
-                try
-                {
-                    return this.from(ZipUtils.read()
-                                             .fromGzip(file)
-                                             .asInputStream());
-                }
-                catch (FileNotFoundException e)
+                return metaInfo != null ? metaInfo.getSampleNames() : Collections.emptyList();
+            }
+        };
+    }
+
+    /**
+     * Returns the Number of each INFO key declared by the ##INFO header lines of the given {@link VCFMetaInfo}
+     * 
+     * @param metaInfo
+     * @return
+     */
+    private static Map<String, String> determineInfoNumbers(VCFMetaInfo metaInfo)
+    {
+        Map<String, String> infoKeyToNumber = new HashMap<>();
+        if (metaInfo != null)
+        {
+            for (String metaLine : metaInfo.getMetaLines())
+            {
+                if (StringUtils.startsWith(metaLine, "##INFO=<"))
                 {
-                    throw e;
+                    String infoKey = StringUtils.substringBetween(metaLine, "ID=", ",");
+                    String number = StringUtils.substringBetween(metaLine, "Number=", ",");
+                    if (infoKey != null && number != null)
+                    {
+                        infoKeyToNumber.put(infoKey, number);
+                    }
                 }
-                catch (IOException e)
+            }
+        }
+        return infoKeyToNumber;
+    }
+
+    /**
+     * Returns the position of the SYMBOL within the CSQ values as defined by the 'Format: ...' description of the CSQ header line or
+     * {@link VCFRecord#DEFAULT_CSQ_SYMBOL_INDEX} if it is not defined
+     * 
+     * @param metaInfo
+     * @return
+     */
+    private static int determineCsqSymbolIndex(VCFMetaInfo metaInfo)
+    {
+        if (metaInfo != null)
+        {
+            for (String metaLine : metaInfo.getMetaLines())
+            {
+                if (StringUtils.startsWith(metaLine, "##INFO=<ID=CSQ,"))
                 {
-                    throw new IllegalStateException(e);
+                    String format = StringUtils.substringBefore(StringUtils.substringAfter(metaLine, "Format:"), "\"");
+                    int index = Arrays.stream(StringUtils.splitPreserveAllTokens(format, '|'))
+                                      .map(StringUtils::trim)
+                                      .collect(Collectors.toList())
+                                      .indexOf("SYMBOL");
+                    if (index >= 0)
+                    {
+                        return index;
+                    }
                 }
             }
+        }
+        return VCFRecord.DEFAULT_CSQ_SYMBOL_INDEX;
+    }
 
-        };
+    /**
+     * Opens the given uncompressed VCF {@link File} for lookups of records by rs id. The persisted id index is stored next to the VCF file and
+     * created on the first call, later calls only memory map it.
+     * 
+     * @see IdIndexedVCFFile
+     * @param vcfFile
+     * @return
+     */
+    public static IdIndexedVCFFile openIdIndexed(File vcfFile)
+    {
+        return IdIndexedVCFFile.open(parserManager, vcfFile);
+    }
+
+    /**
+     * Returns the {@link VariantBloomFilter} over the contig, position, REF and ALT keys of the given VCF {@link File}. The filter is persisted as
+     * '&lt;file&gt;.bloom' next to the VCF file and is rebuilt, if it does not exist or is older than the VCF file.
+     * 
+     * @see VCFAnnotation#withPrefilter(VariantBloomFilter)
+     * @param vcfFile
+     * @param falsePositiveRate
+     *            e.g. 0.01
+     * @param memoryBudget
+     *            maximum size of the filter in bytes
+     * @return
+     */
+    public static VariantBloomFilter openBloomFilter(File vcfFile, double falsePositiveRate, long memoryBudget)
+    {
+        File filterFile = new File(vcfFile.getPath() + ".bloom");
+        if (filterFile.exists() && filterFile.lastModified() >= vcfFile.lastModified())
+        {
+            try
+            {
+                return VariantBloomFilter.read(filterFile);
+            }
+            catch (IllegalArgumentException e)
+            {
+                // written by an older version, so it is rebuilt
+            }
+        }
+
+        VariantBloomFilter filter = VariantBloomFilter.build(() ->
+        {
+            try
+            {
+                return read().from(vcfFile)
+                             .sitesOnly()
+                             .parseOnce();
+            }
+            catch (FileNotFoundException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }, falsePositiveRate, memoryBudget);
+        filter.writeTo(filterFile);
+        return filter;
     }
 
     public static VCFParserManager getParserManager()
@@ -422,52 +1917,148 @@ public class VCFUtils
     public static interface VCFWriter
     {
 
+        /**
+         * Writes the {@link VCFRecord}s into the given {@link Writer} and closes it. Records which are still unmodified from parsing are written
+         * using their {@link VCFRecord#getRawLine()} without rebuilding the line from its fields.
+         * 
+         * @param writer
+         * @throws IOException
+         */
         void into(Writer writer) throws IOException;
 
+        /**
+         * Writes the {@link VCFRecord}s as UTF-8 into the given {@link OutputStream} and closes it. If {@link #asAscii()} is active the characters
+         * are written as single bytes without charset encoding.
+         * 
+         * @param outputStream
+         * @throws IOException
+         */
+        void into(OutputStream outputStream) throws IOException;
+
         void into(File file) throws IOException;
 
         void intoFile(String fileName) throws IOException;
 
         void into(File file, Charset encoding) throws IOException;
 
+        /**
+         * Defines the number of characters or bytes which are buffered before they are written to the target. Default is
+         * {@value VCFWriterEngine#DEFAULT_FLUSH_SIZE}
+         * 
+         * @param flushSize
+         * @return
+         */
+        VCFWriter withFlushSize(int flushSize);
+
+        /**
+         * Writes the meta lines and sample names of the given {@link VCFMetaInfo} as header. Without {@link VCFMetaInfo} a default header with the
+         * sample names of the first {@link VCFRecord} is written.
+         * 
+         * @param metaInfo
+         * @return
+         */
+        VCFWriter withMetaInfo(VCFMetaInfo metaInfo);
+
+        /**
+         * Writes ASCII bytes without charset encoding for {@link #into(OutputStream)}, {@link #into(File)} and {@link #intoFile(String)}. Non ASCII
+         * characters fall back to UTF-8 encoding.
+         * 
+         * @return
+         */
+        VCFWriter asAscii();
+
+    }
+
+    /**
+     * Similar to {@link #write(Stream)} but also writes the header of the given {@link VCFContent} like e.g. a {@link VCFData} instance or the
+     * result of {@link VCFReader#parseOnceWithMetaInfo()}
+     * 
+     * @param vcfContent
+     * @return
+     */
+    public static VCFWriter write(VCFContent vcfContent)
+    {
+        return write(vcfContent.getRecords()).withMetaInfo(vcfContent.getMetaInfo());
     }
 
     public static VCFWriter write(Stream<VCFRecord> vcfData)
     {
         return new VCFWriter()
         {
+            private int         flushSize = VCFWriterEngine.DEFAULT_FLUSH_SIZE;
+            private VCFMetaInfo metaInfo;
+            private boolean     ascii     = false;
+
+            @Override
+            public VCFWriter withFlushSize(int flushSize)
+            {
+                this.flushSize = flushSize;
+                return this;
+            }
+
+            @Override
+            public VCFWriter withMetaInfo(VCFMetaInfo metaInfo)
+            {
+                this.metaInfo = metaInfo;
+                return this;
+            }
+
+            @Override
+            public VCFWriter asAscii()
+            {
+                this.ascii = true;
+                return this;
+            }
+
             @Override
             public void into(Writer writer) throws IOException
             {
-                //
-                writer.write("##fileformat=VCFv4.3\n");
-                writer.write("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\t000000001\n");
-
-                //
-                for (VCFRecord record : IterableUtils.from(vcfData.iterator()))
-                {
-                    List<String> list = new ArrayList<>();
-
-                    list.add(record.getChromosome());
-                    list.add(record.getPosition());
-                    list.add(record.getId());
-                    list.add(record.getReference());
-                    list.add(record.getAlternativeAlleles());
-                    list.add(record.getQuality());
-                    list.add(record.getFilter());
-                    list.add(record.getInfo());
-                    list.add(record.getFormat());
-                    list.addAll(record.getSampleFields()
-                                      .values());
-
-                    writer.write(list.stream()
-                                     .collect(Collectors.joining("\t")));
-                    writer.write("\n");
+                this.writeInto(VCFWriterEngine.of(writer, this.flushSize));
+            }
+
+            @Override
+            public void into(OutputStream outputStream) throws IOException
+            {
+                if (this.ascii)
+                {
+                    this.writeInto(VCFWriterEngine.ofAscii(outputStream, this.flushSize));
+                }
+                else
+                {
+                    this.into(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
                 }
+            }
+
+            private void writeInto(VCFWriterEngine engine) throws IOException
+            {
+                try (VCFWriterEngine writerEngine = engine)
+                {
+                    Iterator<VCFRecord> iterator = vcfData.iterator();
+
+                    // reading the first record ensures the header of streamed sources has been parsed
+                    VCFRecord firstRecord = iterator.hasNext() ? iterator.next() : null;
+                    List<String> metaLines = this.metaInfo != null ? this.metaInfo.getMetaLines() : null;
+                    List<String> sampleNames = this.metaInfo != null ? this.metaInfo.getSampleNames() : null;
+                    if (sampleNames == null || (sampleNames.isEmpty() && firstRecord != null && !firstRecord.getSampleFields()
+                                                                                                            .isEmpty()))
+                    {
+                        sampleNames = firstRecord != null ? new ArrayList<>(firstRecord.getSampleFields()
+                                                                                       .keySet())
+                                : Collections.emptyList();
+                    }
+                    boolean formatColumn = firstRecord != null && firstRecord.getFormat() != null;
+                    writerEngine.writeHeader(metaLines, sampleNames, formatColumn);
 
-                //
-                writer.flush();
-                writer.close();
+                    //
+                    if (firstRecord != null)
+                    {
+                        writerEngine.writeRecord(firstRecord);
+                    }
+                    while (iterator.hasNext())
+                    {
+                        writerEngine.writeRecord(iterator.next());
+                    }
+                }
             }
 
             @Override
@@ -480,7 +2071,15 @@ public class VCFUtils
             @Override
             public void into(File file) throws IOException
             {
-                this.into(file, StandardCharsets.UTF_8);
+                if (this.ascii)
+                {
+                    FileUtils.forceMkdirParent(file);
+                    this.into(new FileOutputStream(file));
+                }
+                else
+                {
+                    this.into(file, StandardCharsets.UTF_8);
+                }
             }
 
             @Override
@@ -0,0 +1,269 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.omnaest.genomics.vcf.components.parser.ColumnProjection;
+import org.omnaest.genomics.vcf.components.parser.LineFilter;
+import org.omnaest.genomics.vcf.components.parser.VCFParser;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+import org.omnaest.genomics.vcf.domain.VCFRecordBatch;
+
+/**
+ * {@link VCFParser} which reads an {@link InputStream} as raw bytes using a {@link ByteLineReader} and a {@link ByteLineTokenizer} instead of an
+ * {@link java.io.InputStreamReader}. ASCII lines are tokenized without charset decoding, lines with non ASCII bytes are decoded as UTF-8.
+ * 
+ * @author omnaest
+ */
+public class AsciiVCFParser implements VCFParser
+{
+    private final ByteLineReader lineReader;
+    private final VCFParser      headerParser;
+    private boolean              hasCurrentLine;
+
+    public AsciiVCFParser(VCFParserManager parserManager, InputStream inputStream)
+    {
+        super();
+        this.lineReader = new ByteLineReader(inputStream);
+        this.headerParser = this.createHeaderParser(parserManager);
+    }
+
+    /**
+     * Reads the header lines and creates the version specific {@link VCFParser}. Afterwards the {@link ByteLineReader} is positioned at the first
+     * data line.
+     * 
+     * @param parserManager
+     * @return
+     */
+    private VCFParser createHeaderParser(VCFParserManager parserManager)
+    {
+        try
+        {
+            List<String> headerLines = new ArrayList<>();
+            while ((this.hasCurrentLine = this.lineReader.next()) && (this.lineReader.isBlank() || this.lineReader.startsWith('#')))
+            {
+                if (!this.lineReader.isBlank())
+                {
+                    headerLines.add(this.lineReader.decodeLine());
+                }
+            }
+
+            VCFParser parser = parserManager.getInstance(headerLines.stream());
+            parser.getRecords()
+                  .forEach(record ->
+                  {
+                      // only header lines are available, which are collected by the parser
+                  });
+            return parser;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Unable to read VCF header", e);
+        }
+    }
+
+    @Override
+    public Stream<VCFRecord> getRecords()
+    {
+        ByteLineTokenizer tokenizer = new ByteLineTokenizer();
+        Iterator<VCFRecord> iterator = new Iterator<VCFRecord>()
+        {
+            private VCFRecord next;
+
+            @Override
+            public boolean hasNext()
+            {
+                try
+                {
+                    while (this.next == null && AsciiVCFParser.this.hasCurrentLine)
+                    {
+                        ByteLineReader lineReader = AsciiVCFParser.this.lineReader;
+                        if (!lineReader.isBlank() && !lineReader.startsWith('#'))
+                        {
+                            this.next = tokenizer.mapToRecord(AsciiVCFParser.this.headerParser, lineReader.getBuffer(), lineReader.getStart(),
+                                                              lineReader.getEnd());
+                        }
+                        AsciiVCFParser.this.hasCurrentLine = lineReader.next();
+                    }
+                    return this.next != null;
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public VCFRecord next()
+            {
+                if (!this.hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                VCFRecord record = this.next;
+                this.next = null;
+                return record;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                            .onClose(() ->
+                            {
+                                try
+                                {
+                                    this.lineReader.close();
+                                }
+                                catch (IOException e)
+                                {
+                                    throw new UncheckedIOException(e);
+                                }
+                            });
+    }
+
+    /**
+     * Returns the site columns of the data lines as {@link VCFRecordBatch}es of the given size. The column values are copied from the line bytes
+     * directly into the batches, so no {@link VCFRecord} is created per line.
+     * 
+     * @param batchSize
+     * @return
+     */
+    public Stream<VCFRecordBatch> getBatches(int batchSize)
+    {
+        ByteLineTokenizer tokenizer = new ByteLineTokenizer();
+        VCFRecordBatchBuilder batchBuilder = new VCFRecordBatchBuilder(batchSize);
+        Iterator<VCFRecordBatch> iterator = new Iterator<VCFRecordBatch>()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                try
+                {
+                    while (!batchBuilder.isFull() && AsciiVCFParser.this.hasCurrentLine)
+                    {
+                        ByteLineReader lineReader = AsciiVCFParser.this.lineReader;
+                        if (!lineReader.isBlank() && !lineReader.startsWith('#'))
+                        {
+                            tokenizer.addToBatch(AsciiVCFParser.this.headerParser, lineReader.getBuffer(), lineReader.getStart(), lineReader.getEnd(),
+                                                 batchBuilder);
+                        }
+                        AsciiVCFParser.this.hasCurrentLine = lineReader.next();
+                    }
+                    return !batchBuilder.isEmpty();
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public VCFRecordBatch next()
+            {
+                if (!this.hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                return batchBuilder.build();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                            .onClose(() ->
+                            {
+                                try
+                                {
+                                    this.lineReader.close();
+                                }
+                                catch (IOException e)
+                                {
+                                    throw new UncheckedIOException(e);
+                                }
+                            });
+    }
+
+    @Override
+    public VCFRecord mapToRecord(String line)
+    {
+        return this.headerParser.mapToRecord(line);
+    }
+
+    @Override
+    public VCFRecord mapToRecord(String[] tokens, String line)
+    {
+        return this.headerParser.mapToRecord(tokens, line);
+    }
+
+    @Override
+    public Map<String, List<String>> getComments()
+    {
+        return this.headerParser.getComments();
+    }
+
+    @Override
+    public List<String> getMetaLines()
+    {
+        return this.headerParser.getMetaLines();
+    }
+
+    @Override
+    public List<String> getSampleNames()
+    {
+        return this.headerParser.getSampleNames();
+    }
+
+    @Override
+    public VCFParser withProjection(ColumnProjection projection)
+    {
+        this.headerParser.withProjection(projection);
+        return this;
+    }
+
+    @Override
+    public ColumnProjection getProjection()
+    {
+        return this.headerParser.getProjection();
+    }
+
+    @Override
+    public VCFParser withFilter(LineFilter filter)
+    {
+        this.headerParser.withFilter(filter);
+        return this;
+    }
+
+    @Override
+    public LineFilter getFilter()
+    {
+        return this.headerParser.getFilter();
+    }
+
+    @Override
+    public VCFParser withRawLines(boolean keepRawLines)
+    {
+        this.headerParser.withRawLines(keepRawLines);
+        return this;
+    }
+}
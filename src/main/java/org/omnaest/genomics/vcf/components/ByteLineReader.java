@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads lines from an {@link InputStream} as byte ranges of a reusable buffer without any charset decoding. The current line is available by
+ * {@link #getBuffer()}, {@link #getStart()} and {@link #getEnd()} until {@link #next()} is called again. Line endings \n and \r\n are removed.
+ * 
+ * @author omnaest
+ */
+public class ByteLineReader implements Closeable
+{
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    private static final byte NEW_LINE        = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+
+    private final InputStream inputStream;
+    private byte[]            buffer;
+    private DelimiterScanner  scanner;
+    private int               limit        = 0;
+    private int               position     = 0;
+    private int               scanPosition = 0;
+    private int               lineStart    = 0;
+    private int               lineEnd      = 0;
+    private long              bufferOffset = 0;
+    private boolean           endOfStream  = false;
+
+    public ByteLineReader(InputStream inputStream)
+    {
+        this(inputStream, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ByteLineReader(InputStream inputStream, int bufferSize)
+    {
+        super();
+        this.inputStream = inputStream;
+        this.buffer = new byte[Math.max(16, bufferSize)];
+        this.scanner = new DelimiterScanner(this.buffer);
+    }
+
+    /**
+     * Moves to the next line and returns true if a line is available
+     * 
+     * @return
+     * @throws IOException
+     */
+    public boolean next() throws IOException
+    {
+        while (true)
+        {
+            int newLine = this.scanner.indexOf(NEW_LINE, this.scanPosition, this.limit);
+            if (newLine >= 0)
+            {
+                this.setLine(this.position, newLine);
+                this.position = newLine + 1;
+                this.scanPosition = this.position;
+                return true;
+            }
+            this.scanPosition = this.limit;
+
+            if (this.endOfStream)
+            {
+                if (this.position < this.limit)
+                {
+                    this.setLine(this.position, this.limit);
+                    this.position = this.limit;
+                    return true;
+                }
+                return false;
+            }
+
+            this.fill();
+        }
+    }
+
+    private void setLine(int start, int end)
+    {
+        this.lineStart = start;
+        this.lineEnd = end > start && this.buffer[end - 1] == CARRIAGE_RETURN ? end - 1 : end;
+    }
+
+    private void fill() throws IOException
+    {
+        int remaining = this.limit - this.position;
+        if (this.position > 0)
+        {
+            System.arraycopy(this.buffer, this.position, this.buffer, 0, remaining);
+            this.bufferOffset += this.position;
+            this.scanPosition -= this.position;
+            this.position = 0;
+            this.limit = remaining;
+        }
+        if (this.limit == this.buffer.length)
+        {
+            this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+            this.scanner = this.scanner.forBuffer(this.buffer);
+        }
+
+        int read = this.inputStream.read(this.buffer, this.limit, this.buffer.length - this.limit);
+        if (read < 0)
+        {
+            this.endOfStream = true;
+        }
+        else
+        {
+            this.limit += read;
+        }
+    }
+
+    public byte[] getBuffer()
+    {
+        return this.buffer;
+    }
+
+    public int getStart()
+    {
+        return this.lineStart;
+    }
+
+    public int getEnd()
+    {
+        return this.lineEnd;
+    }
+
+    /**
+     * Returns the byte offset of the current line within the {@link InputStream}
+     * 
+     * @return
+     */
+    public long getLineOffset()
+    {
+        return this.bufferOffset + this.lineStart;
+    }
+
+    public int getLength()
+    {
+        return this.lineEnd - this.lineStart;
+    }
+
+    public boolean isBlank()
+    {
+        for (int ii = this.lineStart; ii < this.lineEnd; ii++)
+        {
+            if ((this.buffer[ii] & 0xFF) > ' ')
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean startsWith(char character)
+    {
+        return this.lineEnd > this.lineStart && this.buffer[this.lineStart] == character;
+    }
+
+    /**
+     * Returns the current line decoded as UTF-8
+     * 
+     * @return
+     */
+    public String decodeLine()
+    {
+        return new String(this.buffer, this.lineStart, this.getLength(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.inputStream.close();
+    }
+}
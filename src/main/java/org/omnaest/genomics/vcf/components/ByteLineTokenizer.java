@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.omnaest.genomics.vcf.components.parser.ColumnProjection;
+import org.omnaest.genomics.vcf.components.parser.LineFilter;
+import org.omnaest.genomics.vcf.components.parser.RawLine;
+import org.omnaest.genomics.vcf.components.parser.VCFParser;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+import org.omnaest.genomics.vcf.domain.VCFRecord.Column;
+
+/**
+ * Tokenizes a VCF line given as a byte range. The tab positions are determined on the raw bytes by a {@link DelimiterScanner} and ASCII lines
+ * are decoded without a charset decoder, while the column values are cut out of the decoded line. Lines containing a non ASCII byte fall back to
+ * full UTF-8 decoding. Scanning stops after the last column of the {@link ColumnProjection} of the {@link VCFParser}.<br>
+ * <br>
+ * Instances reuse an internal buffer and are not thread safe.
+ * 
+ * @author omnaest
+ */
+public class ByteLineTokenizer
+{
+    private static final byte TAB = '\t';
+
+    private int[]            tabPositions = new int[64];
+    private DelimiterScanner scanner      = new DelimiterScanner(new byte[0]);
+    private RawLine          rawLine      = new RawLine();
+
+    /**
+     * Maps the line within the given byte range to a {@link VCFRecord} using the given {@link VCFParser}. Returns null if the line is rejected by
+     * the {@link LineFilter} of the {@link VCFParser}.
+     * 
+     * @param parser
+     * @param buffer
+     * @param start
+     *            inclusive
+     * @param end
+     *            exclusive
+     * @return
+     */
+    public VCFRecord mapToRecord(VCFParser parser, byte[] buffer, int start, int end)
+    {
+        ColumnProjection projection = parser.getProjection();
+        int numberOfColumnsToScan = projection.getNumberOfColumnsToScan();
+
+        this.scanner = this.scanner.forBuffer(buffer);
+        int numberOfTabs = 0;
+        int tab = this.scanner.indexOf(TAB, start, end);
+        while (tab >= 0)
+        {
+            if (numberOfTabs == this.tabPositions.length)
+            {
+                this.tabPositions = Arrays.copyOf(this.tabPositions, numberOfTabs * 2);
+            }
+            this.tabPositions[numberOfTabs++] = tab - start;
+            tab = numberOfTabs < numberOfColumnsToScan ? this.scanner.indexOf(TAB, tab + 1, end) : -1;
+        }
+        int numberOfTokens = Math.min(numberOfTabs + 1, numberOfColumnsToScan);
+        LineFilter filter = parser.getFilter();
+        boolean isFiltered = filter != LineFilter.ALL;
+        int scannedEnd = numberOfTabs < numberOfColumnsToScan || isFiltered ? end : start + this.tabPositions[numberOfColumnsToScan - 1];
+
+        if (this.scanner.containsNonAscii(start, scannedEnd))
+        {
+            String line = new String(buffer, start, scannedEnd - start, StandardCharsets.UTF_8);
+            return !isFiltered || filter.test(this.rawLine.reset(line)) ? parser.mapToRecord(line) : null;
+        }
+
+        String line = new String(buffer, start, scannedEnd - start, StandardCharsets.ISO_8859_1);
+        if (isFiltered && !filter.test(this.rawLine.reset(line)))
+        {
+            return null;
+        }
+
+        String[] tokens = new String[numberOfTokens];
+        int tokenStart = 0;
+        for (int ii = 0; ii < numberOfTokens; ii++)
+        {
+            int tokenEnd = ii < numberOfTabs ? this.tabPositions[ii] : line.length();
+            if (projection.containsColumnIndex(ii))
+            {
+                tokens[ii] = line.substring(tokenStart, tokenEnd);
+            }
+            tokenStart = tokenEnd + 1;
+        }
+        return parser.mapToRecord(tokens, line);
+    }
+
+    /**
+     * Adds the site columns of the line within the given byte range to the given {@link VCFRecordBatchBuilder} without creating a {@link VCFRecord}.
+     * Returns false if the line is rejected by the {@link LineFilter} of the {@link VCFParser}.
+     * 
+     * @param parser
+     * @param buffer
+     * @param start
+     *            inclusive
+     * @param end
+     *            exclusive
+     * @param batchBuilder
+     * @return
+     */
+    public boolean addToBatch(VCFParser parser, byte[] buffer, int start, int end, VCFRecordBatchBuilder batchBuilder)
+    {
+        int numberOfColumnsToScan = Column.INFO.ordinal() + 1;
+
+        this.scanner = this.scanner.forBuffer(buffer);
+        int numberOfTabs = 0;
+        int tab = this.scanner.indexOf(TAB, start, end);
+        while (tab >= 0)
+        {
+            this.tabPositions[numberOfTabs++] = tab - start;
+            tab = numberOfTabs < numberOfColumnsToScan ? this.scanner.indexOf(TAB, tab + 1, end) : -1;
+        }
+
+        LineFilter filter = parser.getFilter();
+        if (filter != LineFilter.ALL && !filter.test(this.rawLine.reset(new String(buffer, start, end - start, StandardCharsets.UTF_8))))
+        {
+            return false;
+        }
+        int scannedEnd = numberOfTabs < numberOfColumnsToScan ? end : start + this.tabPositions[numberOfColumnsToScan - 1];
+        batchBuilder.add(buffer, start, scannedEnd, this.tabPositions, Math.min(numberOfTabs, numberOfColumnsToScan - 1), parser.getProjection());
+        return true;
+    }
+}
@@ -0,0 +1,307 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.omnaest.genomics.vcf.domain.VCFContent;
+import org.omnaest.genomics.vcf.domain.VCFData.VCFMetaInfo;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+/**
+ * Parses multiple {@link VCFContent} sources concurrently and aggregates their {@link VCFRecord}s into a single chromosome partitioned map. Each
+ * {@link VCFRecord} is tagged with the name of its source, see {@link VCFRecord#getSource()}.<br>
+ * <br>
+ * The sources are parsed on virtual threads if the runtime supports them (Java 21+), otherwise on a fixed thread pool. In both cases the number
+ * of concurrently open sources is limited and the parsed {@link VCFRecord}s are handed over to the aggregating thread in chunks through a bounded
+ * queue, which limits the memory of not yet aggregated {@link VCFRecord}s.
+ * 
+ * @author omnaest
+ */
+public class ConcurrentVCFIngestor
+{
+    public static final int DEFAULT_MAX_OPEN_SOURCES     = 16;
+    public static final int DEFAULT_MAX_IN_FLIGHT_CHUNKS = 64;
+    public static final int DEFAULT_CHUNK_SIZE           = 1024;
+
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+    private final int maxOpenSources;
+    private final int maxInFlightChunks;
+    private final int chunkSize;
+
+    private final List<VCFMetaInfo> metaInfos = new ArrayList<>();
+
+    public ConcurrentVCFIngestor(int maxOpenSources, int maxInFlightChunks, int chunkSize)
+    {
+        super();
+        if (maxOpenSources <= 0 || maxInFlightChunks <= 0 || chunkSize <= 0)
+        {
+            throw new IllegalArgumentException("Number of open sources, in flight chunks and chunk size must be positive: " + maxOpenSources + ","
+                    + maxInFlightChunks + "," + chunkSize);
+        }
+        this.maxOpenSources = maxOpenSources;
+        this.maxInFlightChunks = maxInFlightChunks;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Named source of {@link VCFRecord}s which is opened not before it is parsed
+     * 
+     * @author omnaest
+     */
+    public static class Source
+    {
+        private final String               name;
+        private final Supplier<VCFContent> content;
+
+        public Source(String name, Supplier<VCFContent> content)
+        {
+            super();
+            this.name = name;
+            this.content = content;
+        }
+
+        public String getName()
+        {
+            return this.name;
+        }
+
+        public Supplier<VCFContent> getContent()
+        {
+            return this.content;
+        }
+
+    }
+
+    private static class Chunk
+    {
+        private final int             sourceIndex;
+        private final List<VCFRecord> records;
+        private final VCFMetaInfo     metaInfo;
+        private final Throwable       error;
+
+        public Chunk(int sourceIndex, List<VCFRecord> records, VCFMetaInfo metaInfo, Throwable error)
+        {
+            super();
+            this.sourceIndex = sourceIndex;
+            this.records = records;
+            this.metaInfo = metaInfo;
+            this.error = error;
+        }
+
+        public boolean isLast()
+        {
+            return this.records == null;
+        }
+    }
+
+    /**
+     * Parses all given {@link Source}s and returns their {@link VCFRecord}s grouped by the key determined by the given chromosome key
+     * {@link Function}. Within each chromosome the {@link VCFRecord}s are sorted by their position and {@link VCFRecord}s at the same position
+     * are ordered by the index of their {@link Source} and then by their order within the {@link Source}, independent of the order in which the
+     * concurrently parsed chunks arrive.
+     * 
+     * @param sources
+     * @param chromosomeKeyFunction
+     * @return
+     * @throws IllegalStateException
+     *             if a source fails to parse
+     */
+    public Map<String, List<VCFRecord>> ingest(List<Source> sources, Function<String, String> chromosomeKeyFunction)
+    {
+        this.metaInfos.clear();
+        Map<String, List<VCFRecord>> chromosomeToRecords = new LinkedHashMap<>();
+        Map<String, List<List<VCFRecord>>> chromosomeToSourceRecords = new LinkedHashMap<>();
+        VCFMetaInfo[] sourceMetaInfos = new VCFMetaInfo[sources.size()];
+        if (sources.isEmpty())
+        {
+            return chromosomeToRecords;
+        }
+
+        BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(this.maxInFlightChunks);
+        Semaphore openSources = new Semaphore(this.maxOpenSources);
+        ExecutorService executor = this.createExecutor();
+        try
+        {
+            for (int ii = 0; ii < sources.size(); ii++)
+            {
+                int sourceIndex = ii;
+                Source source = sources.get(ii);
+                executor.execute(() -> this.parseSource(sourceIndex, source, openSources, queue));
+            }
+
+            int numberOfFinishedSources = 0;
+            while (numberOfFinishedSources < sources.size())
+            {
+                Chunk chunk = queue.take();
+                if (chunk.error != null)
+                {
+                    throw new IllegalStateException("Failed to ingest source: " + sources.get(chunk.sourceIndex)
+                                                                                          .getName(),
+                                                    chunk.error);
+                }
+                else if (chunk.isLast())
+                {
+                    sourceMetaInfos[chunk.sourceIndex] = chunk.metaInfo;
+                    numberOfFinishedSources++;
+                }
+                else
+                {
+                    for (VCFRecord record : chunk.records)
+                    {
+                        chromosomeToSourceRecords.computeIfAbsent(chromosomeKeyFunction.apply(record.getChromosome()),
+                                                                  key -> createSourceRecords(sources.size()))
+                                                 .get(chunk.sourceIndex)
+                                                 .add(record);
+                    }
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread()
+                  .interrupt();
+            throw new IllegalStateException("Interrupted while ingesting sources", e);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        chromosomeToSourceRecords.forEach((chromosome, sourceRecords) ->
+        {
+            List<VCFRecord> records = new ArrayList<>();
+            sourceRecords.forEach(records::addAll);
+            records.sort((record1, record2) -> Long.compare(record1.getPositionAsLong(), record2.getPositionAsLong()));
+            chromosomeToRecords.put(chromosome, records);
+        });
+        Collections.addAll(this.metaInfos, sourceMetaInfos);
+        return chromosomeToRecords;
+    }
+
+    /**
+     * Returns one {@link List} of {@link VCFRecord}s per source index, so the records of a chromosome can be concatenated in the order of the
+     * sources before they are sorted by position. As {@link List#sort(java.util.Comparator)} is stable, records at the same position keep this order.
+     * 
+     * @param numberOfSources
+     * @return
+     */
+    private static List<List<VCFRecord>> createSourceRecords(int numberOfSources)
+    {
+        List<List<VCFRecord>> sourceRecords = new ArrayList<>(numberOfSources);
+        for (int ii = 0; ii < numberOfSources; ii++)
+        {
+            sourceRecords.add(new ArrayList<>());
+        }
+        return sourceRecords;
+    }
+
+    /**
+     * Returns the {@link VCFMetaInfo}s of the sources of the last {@link #ingest(List, Function)} in the order of the sources
+     * 
+     * @return
+     */
+    public List<VCFMetaInfo> getMetaInfos()
+    {
+        return Collections.unmodifiableList(this.metaInfos);
+    }
+
+    private void parseSource(int sourceIndex, Source source, Semaphore openSources, BlockingQueue<Chunk> queue)
+    {
+        try
+        {
+            openSources.acquire();
+            try
+            {
+                VCFContent content = source.getContent()
+                                           .get();
+                try (Stream<VCFRecord> records = content.getRecords())
+                {
+                    List<VCFRecord> chunk = new ArrayList<>(this.chunkSize);
+                    for (VCFRecord record : (Iterable<VCFRecord>) records::iterator)
+                    {
+                        chunk.add(record.withoutRawLine()
+                                        .withSource(source.getName()));
+                        if (chunk.size() >= this.chunkSize)
+                        {
+                            queue.put(new Chunk(sourceIndex, chunk, null, null));
+                            chunk = new ArrayList<>(this.chunkSize);
+                        }
+                    }
+                    if (!chunk.isEmpty())
+                    {
+                        queue.put(new Chunk(sourceIndex, chunk, null, null));
+                    }
+                }
+                queue.put(new Chunk(sourceIndex, null, content.getMetaInfo(), null));
+            }
+            finally
+            {
+                openSources.release();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread()
+                  .interrupt();
+        }
+        catch (Throwable e)
+        {
+            try
+            {
+                queue.put(new Chunk(sourceIndex, null, null, e));
+            }
+            catch (InterruptedException interruptedException)
+            {
+                Thread.currentThread()
+                      .interrupt();
+            }
+        }
+    }
+
+    private ExecutorService createExecutor()
+    {
+        try
+        {
+            Method virtualThreadExecutorFactory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtualThreadExecutorFactory.invoke(null);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            return Executors.newFixedThreadPool(this.maxOpenSources, runnable ->
+            {
+                Thread thread = new Thread(runnable, "vcf-ingest-" + THREAD_NUMBER.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
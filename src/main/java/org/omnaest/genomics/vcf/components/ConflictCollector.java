@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.omnaest.genomics.translator.domain.NucleicAcidCode;
+import org.omnaest.genomics.vcf.domain.VCFData.ConflictReport;
+import org.omnaest.genomics.vcf.domain.VCFData.ConflictReport.Conflict;
+import org.omnaest.genomics.vcf.domain.VCFData.ConflictReport.ConflictType;
+import org.omnaest.utils.element.lar.UnaryLeftAndRight;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the conflicts of a genome application run. Collecting a conflict only increments a counter and keeps a reference to the conflicting
+ * values for a bounded number of examples, so no {@link String}s are built within the sequence processing. The first conflict of each chromosome
+ * and {@link ConflictType} is logged once.
+ * 
+ * @see #toReport()
+ * @author omnaest
+ */
+public class ConflictCollector
+{
+    private static final Logger LOG = LoggerFactory.getLogger(ConflictCollector.class);
+
+    public static final int DEFAULT_MAX_EXAMPLES_PER_TYPE = 10;
+
+    private final int                          maxExamplesPerType;
+    private final Map<String, AtomicLongArray> chromosomeToTypeCounts = new ConcurrentHashMap<>();
+    private final AtomicLongArray              typeToNumberOfExamples = new AtomicLongArray(ConflictType.values().length);
+    private final List<Conflict>               examples               = Collections.synchronizedList(new ArrayList<>());
+
+    private static class ConflictImpl implements Conflict
+    {
+        private ConflictType type;
+        private String       chromosome;
+        private long         position;
+        private int          allele;
+        private Object       values;
+
+        public ConflictImpl(ConflictType type, String chromosome, long position, int allele, Object values)
+        {
+            super();
+            this.type = type;
+            this.chromosome = chromosome;
+            this.position = position;
+            this.allele = allele;
+            this.values = values;
+        }
+
+        @Override
+        public ConflictType getType()
+        {
+            return this.type;
+        }
+
+        @Override
+        public String getChromosome()
+        {
+            return this.chromosome;
+        }
+
+        @Override
+        public long getPosition()
+        {
+            return this.position;
+        }
+
+        @Override
+        public int getAllele()
+        {
+            return this.allele;
+        }
+
+        @Override
+        public String getDescription()
+        {
+            return String.valueOf(this.values);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Conflict [type=" + this.type + ", chromosome=" + this.chromosome + ", position=" + this.position + ", allele=" + this.allele
+                    + ", description=" + this.getDescription() + "]";
+        }
+
+    }
+
+    public ConflictCollector()
+    {
+        this(DEFAULT_MAX_EXAMPLES_PER_TYPE);
+    }
+
+    public ConflictCollector(int maxExamplesPerType)
+    {
+        super();
+        this.maxExamplesPerType = maxExamplesPerType;
+    }
+
+    /**
+     * Collects a {@link ConflictType#MULTIPLE_REPLACEMENTS} conflict
+     * 
+     * @param chromosome
+     * @param position
+     * @param allele
+     * @param replacements
+     */
+    public void collectMultipleReplacements(String chromosome, long position, int allele, Set<UnaryLeftAndRight<NucleicAcidCode>> replacements)
+    {
+        this.collect(ConflictType.MULTIPLE_REPLACEMENTS, chromosome, position, allele, replacements);
+    }
+
+    /**
+     * Collects a conflict of the given {@link ConflictType}. The given values are only converted into a {@link String} if the conflict is sampled
+     * as an example and its description is requested.
+     * 
+     * @param type
+     * @param chromosome
+     * @param position
+     * @param allele
+     * @param values
+     */
+    public void collect(ConflictType type, String chromosome, long position, int allele, Object values)
+    {
+        long count = this.chromosomeToTypeCounts.computeIfAbsent(chromosome, c -> new AtomicLongArray(ConflictType.values().length))
+                                                .incrementAndGet(type.ordinal());
+        if (count == 1)
+        {
+            LOG.warn("Conflict {} at chromosome position {}:{} ( allele {} ), further conflicts are collected within the conflict report", type,
+                     chromosome, position, allele);
+        }
+
+        if (this.typeToNumberOfExamples.get(type.ordinal()) < this.maxExamplesPerType
+                && this.typeToNumberOfExamples.incrementAndGet(type.ordinal()) <= this.maxExamplesPerType)
+        {
+            this.examples.add(new ConflictImpl(type, chromosome, position, allele, values));
+        }
+    }
+
+    /**
+     * Returns a snapshot {@link ConflictReport} of the currently collected conflicts
+     * 
+     * @return
+     */
+    public ConflictReport toReport()
+    {
+        Map<String, Map<ConflictType, Long>> chromosomeToTypeToCount = new TreeMap<>();
+        this.chromosomeToTypeCounts.forEach((chromosome, counts) ->
+        {
+            Map<ConflictType, Long> typeToCount = new EnumMap<>(ConflictType.class);
+            for (ConflictType type : ConflictType.values())
+            {
+                long count = counts.get(type.ordinal());
+                if (count > 0)
+                {
+                    typeToCount.put(type, count);
+                }
+            }
+            chromosomeToTypeToCount.put(chromosome, Collections.unmodifiableMap(typeToCount));
+        });
+        List<Conflict> examples;
+        synchronized (this.examples)
+        {
+            examples = Collections.unmodifiableList(new ArrayList<>(this.examples));
+        }
+
+        return new ConflictReport()
+        {
+            @Override
+            public long getNumberOfConflicts()
+            {
+                return chromosomeToTypeToCount.values()
+                                              .stream()
+                                              .flatMap(typeToCount -> typeToCount.values()
+                                                                                 .stream())
+                                              .mapToLong(v -> v)
+                                              .sum();
+            }
+
+            @Override
+            public long getNumberOfConflicts(ConflictType conflictType)
+            {
+                return chromosomeToTypeToCount.values()
+                                              .stream()
+                                              .mapToLong(typeToCount -> typeToCount.getOrDefault(conflictType, 0l))
+                                              .sum();
+            }
+
+            @Override
+            public Map<String, Map<ConflictType, Long>> getChromosomeToConflictTypeToCount()
+            {
+                return Collections.unmodifiableMap(chromosomeToTypeToCount);
+            }
+
+            @Override
+            public List<Conflict> getExamples()
+            {
+                return examples;
+            }
+
+            @Override
+            public boolean hasConflicts()
+            {
+                return this.getNumberOfConflicts() > 0;
+            }
+
+            @Override
+            public String toString()
+            {
+                return "ConflictReport [chromosomeToConflictTypeToCount=" + chromosomeToTypeToCount + ", examples=" + examples + "]";
+            }
+        };
+    }
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+/**
+ * Order of contigs for coordinate sorted VCF data. Contig names are compared case insensitive and without a 'chr' prefix, so 'chr1' and '1' are
+ * the same contig.<br>
+ * <br>
+ * The natural order sorts numeric contigs by their number, followed by X, Y, M and MT and finally all other contigs alphabetically. An explicit
+ * order, e.g. from the ##contig header lines of the sources, takes precedence, unknown contigs follow in natural order.
+ * 
+ * @author omnaest
+ */
+public class ContigOrder implements Comparator<String>
+{
+    private static final List<String> SPECIAL_CONTIGS         = Arrays.asList("X", "Y", "M", "MT");
+    private static final String       CONTIG_META_LINE_PREFIX = "##contig=<";
+
+    private final Map<String, Integer> contigToRank;
+
+    private ContigOrder(Map<String, Integer> contigToRank)
+    {
+        super();
+        this.contigToRank = contigToRank;
+    }
+
+    public static ContigOrder natural()
+    {
+        return new ContigOrder(Collections.emptyMap());
+    }
+
+    /**
+     * Returns a {@link ContigOrder} with the given explicit order of contigs
+     * 
+     * @param contigs
+     * @return
+     */
+    public static ContigOrder of(List<String> contigs)
+    {
+        Map<String, Integer> contigToRank = new HashMap<>();
+        for (String contig : contigs)
+        {
+            contigToRank.putIfAbsent(VCFRecord.normalizeChromosome(contig), contigToRank.size());
+        }
+        return new ContigOrder(contigToRank);
+    }
+
+    /**
+     * Returns a {@link ContigOrder} with the order of the ##contig header lines within the given meta lines, like
+     * '##contig=&lt;ID=20,length=62435964&gt;'. Without any ##contig line this is the {@link #natural()} order.
+     * 
+     * @param metaLines
+     * @return
+     */
+    public static ContigOrder ofMetaLines(List<String> metaLines)
+    {
+        List<String> contigs = new ArrayList<>();
+        if (metaLines != null)
+        {
+            for (String metaLine : metaLines)
+            {
+                if (StringUtils.startsWith(metaLine, CONTIG_META_LINE_PREFIX))
+                {
+                    String id = StringUtils.substringBetween(metaLine, "ID=", ",");
+                    contigs.add(id != null ? id : StringUtils.substringBetween(metaLine, "ID=", ">"));
+                }
+            }
+        }
+        return of(contigs);
+    }
+
+    @Override
+    public int compare(String contig1, String contig2)
+    {
+        String key1 = VCFRecord.normalizeChromosome(contig1);
+        String key2 = VCFRecord.normalizeChromosome(contig2);
+        Integer rank1 = this.contigToRank.get(key1);
+        Integer rank2 = this.contigToRank.get(key2);
+        if (rank1 != null || rank2 != null)
+        {
+            return rank1 == null ? 1 : rank2 == null ? -1 : Integer.compare(rank1, rank2);
+        }
+        return compareNaturally(key1, key2);
+    }
+
+    private static int compareNaturally(String key1, String key2)
+    {
+        boolean numeric1 = StringUtils.isNumeric(key1);
+        boolean numeric2 = StringUtils.isNumeric(key2);
+        if (numeric1 && numeric2)
+        {
+            int result = Integer.compare(key1.length(), key2.length());
+            return result != 0 ? result : key1.compareTo(key2);
+        }
+        else if (numeric1 || numeric2)
+        {
+            return numeric1 ? -1 : 1;
+        }
+
+        int special1 = SPECIAL_CONTIGS.indexOf(key1);
+        int special2 = SPECIAL_CONTIGS.indexOf(key2);
+        if (special1 >= 0 || special2 >= 0)
+        {
+            return special1 < 0 ? 1 : special2 < 0 ? -1 : Integer.compare(special1, special2);
+        }
+        return StringUtils.compare(key1, key2);
+    }
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+/**
+ * Scans a byte array for delimiter bytes and non ASCII bytes with plain byte loops. This is the Java 8 variant of the multi-release jar, the
+ * Java 17+ variant in src/main/java17 scans a whole vector per step if the jdk.incubator.vector module is resolved.<br>
+ * <br>
+ * Instances are bound to a single byte array and are not thread safe, see {@link #forBuffer(byte[])} to switch to another array.
+ * 
+ * @author omnaest
+ */
+public class DelimiterScanner
+{
+    private final byte[] buffer;
+
+    public DelimiterScanner(byte[] buffer)
+    {
+        super();
+        this.buffer = buffer;
+    }
+
+    /**
+     * Returns this {@link DelimiterScanner} if it is bound to the given buffer, otherwise a new instance for the given buffer
+     * 
+     * @param buffer
+     * @return
+     */
+    public DelimiterScanner forBuffer(byte[] buffer)
+    {
+        return this.buffer == buffer ? this : new DelimiterScanner(buffer);
+    }
+
+    /**
+     * Returns the index of the first occurrence of the given value within the range or -1 if not present
+     * 
+     * @param value
+     * @param from
+     *            inclusive
+     * @param to
+     *            exclusive
+     * @return
+     */
+    public int indexOf(byte value, int from, int to)
+    {
+        byte[] buffer = this.buffer;
+        for (int ii = from; ii < to; ii++)
+        {
+            if (buffer[ii] == value)
+            {
+                return ii;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns true if the given range contains a byte outside of the ASCII range
+     * 
+     * @param from
+     *            inclusive
+     * @param to
+     *            exclusive
+     * @return
+     */
+    public boolean containsNonAscii(int from, int to)
+    {
+        byte[] buffer = this.buffer;
+        for (int ii = from; ii < to; ii++)
+        {
+            if (buffer[ii] < 0)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,314 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+/**
+ * Disk spilling sort of {@link VCFRecord}s by {@link ContigOrder} and position, which sorts inputs much larger than the heap.<br>
+ * <br>
+ * The input is read into buffers limited by an estimated memory budget. Full buffers are sorted and written as {@link RecordRunFile}s into a
+ * temporary directory on background threads, while the next buffer is filled. If there are more runs than can be merged at once, groups of runs
+ * are merged in parallel into larger runs. The final runs are merged lazily by the {@link SortedVCFMerger}. Inputs which fit into a single buffer
+ * are sorted in memory without any file.<br>
+ * <br>
+ * The sort is stable, so records with the same contig and position keep their input order.
+ * 
+ * @author omnaest
+ */
+public class ExternalVCFSorter
+{
+    public static final long DEFAULT_MEMORY_BUDGET = 256L * 1024 * 1024;
+    public static final int  DEFAULT_PARALLELISM   = 2;
+    public static final int  MAX_MERGE_FAN_IN      = 64;
+
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+    private final Supplier<? extends Comparator<String>> contigOrder;
+    private final long                                   memoryBudget;
+    private final File                                   tempDirectory;
+    private final int                                    parallelism;
+
+    /**
+     * @param contigOrder
+     *            is resolved after the first {@link VCFRecord} has been read, so it can depend on the header of a streamed source
+     * @param memoryBudget
+     *            in bytes for all buffered {@link VCFRecord}s
+     * @param tempDirectory
+     *            parent directory of the temporary run files, null for the default temporary directory
+     * @param parallelism
+     *            number of threads which sort and write or merge runs
+     */
+    public ExternalVCFSorter(Supplier<? extends Comparator<String>> contigOrder, long memoryBudget, File tempDirectory, int parallelism)
+    {
+        super();
+        if (memoryBudget <= 0 || parallelism <= 0)
+        {
+            throw new IllegalArgumentException("Memory budget and parallelism must be positive: " + memoryBudget + "," + parallelism);
+        }
+        this.contigOrder = contigOrder;
+        this.memoryBudget = memoryBudget;
+        this.tempDirectory = tempDirectory;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Reads all given {@link VCFRecord}s, spills sorted runs to disk if necessary and returns the lazily merged sorted {@link VCFRecord}s. Closing
+     * the returned {@link Stream} deletes all temporary files.
+     * 
+     * @param records
+     * @return
+     * @throws IllegalStateException
+     *             if sorting or writing a run fails
+     */
+    public Stream<VCFRecord> sort(Stream<VCFRecord> records)
+    {
+        Iterator<VCFRecord> iterator = records.iterator();
+        boolean hasRecords = iterator.hasNext();
+        Comparator<VCFRecord> recordOrder = Comparator.<VCFRecord, String>comparing(VCFRecord::getChromosome, this.contigOrder.get())
+                                                      .thenComparingLong(VCFRecord::getPositionAsLong);
+
+        long bufferBudget = this.memoryBudget / (this.parallelism + 1);
+        List<VCFRecord> buffer = new ArrayList<>();
+        long bufferSize = 0;
+        while (hasRecords && (buffer.isEmpty() || bufferSize < bufferBudget))
+        {
+            VCFRecord record = withoutRawLine(iterator.next());
+            buffer.add(record);
+            bufferSize += estimateSize(record);
+            hasRecords = iterator.hasNext();
+        }
+        if (!hasRecords)
+        {
+            records.close();
+            buffer.sort(recordOrder);
+            return buffer.stream();
+        }
+
+        ExecutorService executor = this.createExecutor();
+        File directory = this.createTempDirectory();
+        try
+        {
+            Semaphore inFlightBuffers = new Semaphore(this.parallelism);
+            List<Future<File>> runs = new ArrayList<>();
+            runs.add(this.spill(buffer, recordOrder, directory, runs.size(), executor, inFlightBuffers));
+            while (hasRecords)
+            {
+                buffer = new ArrayList<>(buffer.size());
+                bufferSize = 0;
+                while (hasRecords && (buffer.isEmpty() || bufferSize < bufferBudget))
+                {
+                    VCFRecord record = withoutRawLine(iterator.next());
+                    buffer.add(record);
+                    bufferSize += estimateSize(record);
+                    hasRecords = iterator.hasNext();
+                }
+                runs.add(this.spill(buffer, recordOrder, directory, runs.size(), executor, inFlightBuffers));
+            }
+            records.close();
+
+            List<File> runFiles = await(runs);
+            Comparator<String> contigOrder = this.contigOrder.get();
+            while (runFiles.size() > MAX_MERGE_FAN_IN)
+            {
+                runFiles = this.mergeRuns(runFiles, contigOrder, directory, executor);
+            }
+            executor.shutdown();
+
+            List<Stream<VCFRecord>> runStreams = runFiles.stream()
+                                                         .map(RecordRunFile::read)
+                                                         .collect(Collectors.toList());
+            return new SortedVCFMerger(contigOrder).merge(runStreams)
+                                                   .onClose(() -> FileUtils.deleteQuietly(directory));
+        }
+        catch (RuntimeException e)
+        {
+            executor.shutdownNow();
+            FileUtils.deleteQuietly(directory);
+            throw e;
+        }
+    }
+
+    private Future<File> spill(List<VCFRecord> buffer, Comparator<VCFRecord> recordOrder, File directory, int runIndex, ExecutorService executor,
+                               Semaphore inFlightBuffers)
+    {
+        acquire(inFlightBuffers);
+        return executor.submit(() ->
+        {
+            try
+            {
+                buffer.sort(recordOrder);
+                File runFile = new File(directory, "run" + runIndex + ".bin");
+                RecordRunFile.write(runFile, buffer.iterator());
+                return runFile;
+            }
+            finally
+            {
+                inFlightBuffers.release();
+            }
+        });
+    }
+
+    /**
+     * Merges groups of at most {@value #MAX_MERGE_FAN_IN} runs in parallel into new runs and deletes the merged runs
+     * 
+     * @param runFiles
+     * @param contigOrder
+     * @param directory
+     * @param executor
+     * @return
+     */
+    private List<File> mergeRuns(List<File> runFiles, Comparator<String> contigOrder, File directory, ExecutorService executor)
+    {
+        List<Future<File>> mergedRuns = new ArrayList<>();
+        for (int ii = 0; ii < runFiles.size(); ii += MAX_MERGE_FAN_IN)
+        {
+            List<File> group = runFiles.subList(ii, Math.min(runFiles.size(), ii + MAX_MERGE_FAN_IN));
+            File mergedRunFile = new File(directory, "merged" + ii + "_" + System.nanoTime() + ".bin");
+            mergedRuns.add(executor.submit(() ->
+            {
+                List<Stream<VCFRecord>> runStreams = group.stream()
+                                                          .map(RecordRunFile::read)
+                                                          .collect(Collectors.toList());
+                try (Stream<VCFRecord> merged = new SortedVCFMerger(contigOrder).merge(runStreams))
+                {
+                    RecordRunFile.write(mergedRunFile, merged.iterator());
+                }
+                group.forEach(FileUtils::deleteQuietly);
+                return mergedRunFile;
+            }));
+        }
+        return await(mergedRuns);
+    }
+
+    private static List<File> await(List<Future<File>> futures)
+    {
+        List<File> files = new ArrayList<>(futures.size());
+        for (Future<File> future : futures)
+        {
+            try
+            {
+                files.add(future.get());
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread()
+                      .interrupt();
+                throw new IllegalStateException("Interrupted while sorting VCF records", e);
+            }
+            catch (ExecutionException e)
+            {
+                throw new IllegalStateException("Failed to sort VCF records", e.getCause());
+            }
+        }
+        return files;
+    }
+
+    private static void acquire(Semaphore semaphore)
+    {
+        try
+        {
+            semaphore.acquire();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread()
+                  .interrupt();
+            throw new IllegalStateException("Interrupted while sorting VCF records", e);
+        }
+    }
+
+    private File createTempDirectory()
+    {
+        try
+        {
+            return this.tempDirectory != null ? Files.createTempDirectory(this.tempDirectory.toPath(), "vcfsort")
+                                                     .toFile()
+                    : Files.createTempDirectory("vcfsort")
+                           .toFile();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Unable to create temporary sort directory", e);
+        }
+    }
+
+    private ExecutorService createExecutor()
+    {
+        return Executors.newFixedThreadPool(this.parallelism, runnable ->
+        {
+            Thread thread = new Thread(runnable, "vcf-sort-" + THREAD_NUMBER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * The raw line would double the memory of a buffered {@link VCFRecord} and is dropped by the {@link RecordRunFile} anyway
+     */
+    private static VCFRecord withoutRawLine(VCFRecord record)
+    {
+        return record.hasRawLine() ? record.withoutRawLine() : record;
+    }
+
+    /**
+     * Estimates the heap size of the given {@link VCFRecord} in bytes
+     * 
+     * @param record
+     * @return
+     */
+    private static long estimateSize(VCFRecord record)
+    {
+        long size = 96 + estimateSize(record.getChromosome()) + estimateSize(record.getPosition()) + estimateSize(record.getId())
+                + estimateSize(record.getReference()) + estimateSize(record.getAlternativeAlleles()) + estimateSize(record.getQuality())
+                + estimateSize(record.getFilter()) + estimateSize(record.getInfo()) + estimateSize(record.getFormat());
+        Map<String, String> sampleFields = record.getSampleFields();
+        if (sampleFields != null)
+        {
+            size += 64;
+            for (String field : sampleFields.values())
+            {
+                size += 48 + estimateSize(field);
+            }
+        }
+        return size;
+    }
+
+    private static long estimateSize(String value)
+    {
+        return value == null ? 0 : 40 + 2L * value.length();
+    }
+}
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+/**
+ * Inverted index from upper case gene symbols to {@link VCFRecord}s. The index is built in a single pass, which parses the INFO column of each
+ * record once using {@link VCFRecord#getGenes(int)}. Each gene maps to the sorted indexes of its records within a record array.
+ * 
+ * @author omnaest
+ */
+public class GeneIndex
+{
+    private static final int[] NO_HANDLES = new int[0];
+
+    private final VCFRecord[]        records;
+    private final Map<String, int[]> geneToHandles;
+
+    private GeneIndex(VCFRecord[] records, Map<String, int[]> geneToHandles)
+    {
+        super();
+        this.records = records;
+        this.geneToHandles = geneToHandles;
+    }
+
+    /**
+     * Creates a {@link GeneIndex} for the given {@link VCFRecord}s
+     * 
+     * @param recordLists
+     * @return
+     */
+    public static GeneIndex of(Collection<List<VCFRecord>> recordLists)
+    {
+        return of(recordLists, VCFRecord.DEFAULT_CSQ_SYMBOL_INDEX);
+    }
+
+    /**
+     * Creates a {@link GeneIndex} for the given {@link VCFRecord}s with the given position of the SYMBOL within the CSQ values
+     * 
+     * @see VCFRecord#getGenes(int)
+     * @param recordLists
+     * @param csqSymbolIndex
+     * @return
+     */
+    public static GeneIndex of(Collection<List<VCFRecord>> recordLists, int csqSymbolIndex)
+    {
+        VCFRecord[] records = recordLists.stream()
+                                         .flatMap(List::stream)
+                                         .toArray(VCFRecord[]::new);
+        Map<String, List<Integer>> geneToHandleList = new HashMap<>();
+        for (int ii = 0; ii < records.length; ii++)
+        {
+            for (String gene : records[ii].getGenes(csqSymbolIndex))
+            {
+                geneToHandleList.computeIfAbsent(gene, key -> new ArrayList<>())
+                                .add(ii);
+            }
+        }
+
+        Map<String, int[]> geneToHandles = new HashMap<>(geneToHandleList.size() * 2);
+        geneToHandleList.forEach((gene, handles) -> geneToHandles.put(gene, handles.stream()
+                                                                                   .mapToInt(Integer::intValue)
+                                                                                   .toArray()));
+        return new GeneIndex(records, geneToHandles);
+    }
+
+    /**
+     * Returns the {@link VCFRecord}s of the given gene symbol, which is matched case insensitive
+     * 
+     * @param gene
+     * @return
+     */
+    public List<VCFRecord> getRecords(String gene)
+    {
+        return this.toRecords(this.getHandles(gene));
+    }
+
+    /**
+     * Returns the {@link VCFRecord}s of all given gene symbols. A record which belongs to multiple of the given genes is returned only once, all
+     * records are returned in their original order.
+     * 
+     * @param genes
+     * @return
+     */
+    public List<VCFRecord> getRecords(Collection<String> genes)
+    {
+        int[] handles = genes.stream()
+                             .map(this::getHandles)
+                             .flatMapToInt(IntStream::of)
+                             .sorted()
+                             .distinct()
+                             .toArray();
+        return this.toRecords(handles);
+    }
+
+    /**
+     * Returns the upper case gene symbols of the index
+     * 
+     * @return
+     */
+    public Collection<String> getGenes()
+    {
+        return this.geneToHandles.keySet();
+    }
+
+    private int[] getHandles(String gene)
+    {
+        return this.geneToHandles.getOrDefault(StringUtils.upperCase(gene), NO_HANDLES);
+    }
+
+    private List<VCFRecord> toRecords(int[] handles)
+    {
+        return Arrays.asList(IntStream.of(handles)
+                                      .mapToObj(handle -> this.records[handle])
+                                      .toArray(VCFRecord[]::new));
+    }
+}
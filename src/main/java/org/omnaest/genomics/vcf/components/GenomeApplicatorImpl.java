@@ -15,40 +15,45 @@
  ******************************************************************************/
 package org.omnaest.genomics.vcf.components;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.omnaest.genomics.translator.domain.CodeAndPosition;
 import org.omnaest.genomics.translator.domain.NucleicAcidCode;
+import org.omnaest.genomics.vcf.domain.VCFData.ConflictReport;
+import org.omnaest.genomics.vcf.domain.VCFData.ConflictReport.ConflictType;
 import org.omnaest.genomics.vcf.domain.VCFData.GenomeApplicator;
+import org.omnaest.genomics.vcf.domain.VCFData.GenomeApplicator.HaplotypeCodes;
 import org.omnaest.genomics.vcf.domain.VCFData.Replacements;
 import org.omnaest.genomics.vcf.domain.VCFRecord;
 import org.omnaest.genomics.vcf.domain.VCFRecord.SampleFields;
 import org.omnaest.genomics.vcf.domain.VCFRecord.SampleFields.GenoType;
+import org.omnaest.genomics.vcf.domain.VCFRecord.SampleFields.GenoTypeCall;
 import org.omnaest.utils.ConsumerUtils;
 import org.omnaest.utils.SetUtils;
 import org.omnaest.utils.element.lar.UnaryLeftAndRight;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 public class GenomeApplicatorImpl implements GenomeApplicator
 {
-    private static final Logger LOG = LoggerFactory.getLogger(GenomeApplicatorImpl.class);
-
     private final Map<String, List<VCFRecord>> chromosomeToRecords;
+    private final ConflictCollector            conflictCollector = new ConflictCollector();
 
     public static class ReplacementsImpl implements Replacements
     {
         private Map<Integer, Set<UnaryLeftAndRight<NucleicAcidCode>>> alleleToReplacements = new HashMap<>();
+        private Long                                                   phaseSet;
 
         public void addReplacementForAllele(int allele, UnaryLeftAndRight<NucleicAcidCode> replacement)
         {
@@ -79,6 +84,68 @@ public class GenomeApplicatorImpl implements GenomeApplicator
                                                                                               .isEmpty();
         }
 
+        public Long getPhaseSet()
+        {
+            return this.phaseSet;
+        }
+
+        public void setPhaseSet(Long phaseSet)
+        {
+            this.phaseSet = phaseSet;
+        }
+
+    }
+
+    private static class HaplotypeCodesImpl implements HaplotypeCodes
+    {
+        private long                  position;
+        private NucleicAcidCode       referenceCode;
+        private List<NucleicAcidCode> firstCodes;
+        private List<NucleicAcidCode> secondCodes;
+        private Long                  phaseSet;
+
+        public HaplotypeCodesImpl(long position, NucleicAcidCode referenceCode, List<NucleicAcidCode> firstCodes, List<NucleicAcidCode> secondCodes,
+                                  Long phaseSet)
+        {
+            super();
+            this.position = position;
+            this.referenceCode = referenceCode;
+            this.firstCodes = firstCodes;
+            this.secondCodes = secondCodes;
+            this.phaseSet = phaseSet;
+        }
+
+        @Override
+        public long getPosition()
+        {
+            return this.position;
+        }
+
+        @Override
+        public NucleicAcidCode getReferenceCode()
+        {
+            return this.referenceCode;
+        }
+
+        @Override
+        public List<NucleicAcidCode> getCodes(int haplotype)
+        {
+            return haplotype == 0 ? this.firstCodes : this.secondCodes;
+        }
+
+        @Override
+        public Long getPhaseSet()
+        {
+            return this.phaseSet;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "HaplotypeCodes [position=" + this.position + ", referenceCode=" + this.referenceCode + ", firstCodes=" + this.firstCodes
+                    + ", secondCodes=" + this.secondCodes + ", phaseSet=" + this.phaseSet + "]";
+        }
+
     }
 
     public GenomeApplicatorImpl(Map<String, List<VCFRecord>> chromosomeToRecords)
@@ -101,7 +168,12 @@ public class GenomeApplicatorImpl implements GenomeApplicator
     @Override
     public Map<Long, Replacements> getPositionToReplacementForChromosome(String chromosome)
     {
-        return this.determinePositionToReplacement(this.chromosomeToRecords.getOrDefault(StringUtils.upperCase(chromosome), Collections.emptyList()));
+        return this.determinePositionToReplacement(this.getRecordsForChromosome(chromosome));
+    }
+
+    private List<VCFRecord> getRecordsForChromosome(String chromosome)
+    {
+        return this.chromosomeToRecords.getOrDefault(VCFRecord.normalizeChromosome(chromosome), Collections.emptyList());
     }
 
     @Override
@@ -133,44 +205,132 @@ public class GenomeApplicatorImpl implements GenomeApplicator
         {
             for (VCFRecord vcfRecord : records)
             {
-                String reference = vcfRecord.getReference();
-                String alternativeAlleles = vcfRecord.getAlternativeAlleles();
-                long position = NumberUtils.toLong(vcfRecord.getPosition());
+                addReplacements(positionToReplacements, vcfRecord);
+            }
+        }
+
+        return positionToReplacements;
+    }
+
+    private Map<Long, Replacements> determineHaplotypePositionToReplacement(String chromosome, List<VCFRecord> records, String sample)
+    {
+        Map<Long, Replacements> positionToReplacements = new ConcurrentHashMap<>();
+
+        if (records != null)
+        {
+            for (VCFRecord vcfRecord : records)
+            {
+                addHaplotypeReplacements(positionToReplacements, chromosome, vcfRecord, sample, this.conflictCollector);
+            }
+        }
+
+        return positionToReplacements;
+    }
+
+    /**
+     * Adds the {@link Replacements} of the given {@link VCFRecord} to the given position map. The allele is determined from the unique genotype over
+     * all samples.
+     * 
+     * @param positionToReplacements
+     * @param vcfRecord
+     */
+    protected static void addReplacements(Map<Long, Replacements> positionToReplacements, VCFRecord vcfRecord)
+    {
+        String reference = vcfRecord.getReference();
+        String alternativeAlleles = vcfRecord.getAlternativeAlleles();
+        long position = NumberUtils.toLong(vcfRecord.getPosition());
+        SampleFields sampleFields = vcfRecord.parseSampleFields();
 
-                for (int ii = 0; ii < reference.length() || ii < alternativeAlleles.length(); ii++)
+        for (int ii = 0; ii < reference.length() || ii < alternativeAlleles.length(); ii++)
+        {
+            long currentPosition = position + ii;
+            NucleicAcidCode left = ii < reference.length() ? NucleicAcidCode.valueOf(reference.charAt(ii)) : null;
+            NucleicAcidCode right = ii < alternativeAlleles.length() ? NucleicAcidCode.valueOf(alternativeAlleles.charAt(ii)) : null;
+            ReplacementsImpl replacements = (ReplacementsImpl) positionToReplacements.computeIfAbsent(currentPosition, c -> new ReplacementsImpl());
+
+            if (sampleFields.hasGenoType(GenoType.ALTERNATIVE_BOTH))
+            {
+                replacements.addReplacementForAllele(0, new UnaryLeftAndRight<NucleicAcidCode>(left, right));
+                replacements.addReplacementForAllele(1, new UnaryLeftAndRight<NucleicAcidCode>(left, right));
+            }
+            else if (sampleFields.hasGenoType(GenoType.REFERENCE_AND_ALTERNATIVE))
+            {
+                if (sampleFields.hasGenoType(GenoType.SECOND_ALLELE_ALTERNATIVE))
                 {
-                    long currentPosition = position + ii;
-                    NucleicAcidCode left = ii < reference.length() ? NucleicAcidCode.valueOf(reference.charAt(ii)) : null;
-                    NucleicAcidCode right = ii < alternativeAlleles.length() ? NucleicAcidCode.valueOf(alternativeAlleles.charAt(ii)) : null;
-                    ReplacementsImpl replacements = (ReplacementsImpl) positionToReplacements.computeIfAbsent(currentPosition, c -> new ReplacementsImpl());
+                    replacements.addReplacementForAllele(1, new UnaryLeftAndRight<NucleicAcidCode>(left, right));
+                }
+                else
+                {
+                    replacements.addReplacementForAllele(0, new UnaryLeftAndRight<NucleicAcidCode>(left, right));
+                }
+            }
+            else
+            {
+                int allele = Math.min(1, replacements.getMaxAlleleIndex() + 1);
+                replacements.addReplacementForAllele(allele, new UnaryLeftAndRight<NucleicAcidCode>(left, right));
+            }
+        }
+    }
 
-                    SampleFields sampleFields = vcfRecord.parseSampleFields();
-                    if (sampleFields.hasGenoType(GenoType.ALTERNATIVE_BOTH))
-                    {
-                        replacements.addReplacementForAllele(0, new UnaryLeftAndRight<NucleicAcidCode>(left, right));
-                        replacements.addReplacementForAllele(1, new UnaryLeftAndRight<NucleicAcidCode>(left, right));
-                    }
-                    else if (sampleFields.hasGenoType(GenoType.REFERENCE_AND_ALTERNATIVE))
+    /**
+     * Adds the {@link Replacements} of the given {@link VCFRecord} to the given position map using the {@link GenoTypeCall} of the given sample to
+     * determine the haplotype = 0,1 of each ALT allele. If the sample is null the first sample column is used. Records without a genotype fall back to
+     * {@link #addReplacements(Map, VCFRecord)}. ALT alleles which can not be applied are reported as {@link ConflictType#UNSUPPORTED_ALLELE} under
+     * the given normalized chromosome, so they share the bucket of all other conflicts of the applied chromosome.
+     * 
+     * @param positionToReplacements
+     * @param chromosome
+     * @param vcfRecord
+     * @param sample
+     * @param conflictCollector
+     */
+    protected static void addHaplotypeReplacements(Map<Long, Replacements> positionToReplacements, String chromosome, VCFRecord vcfRecord,
+                                                   String sample, ConflictCollector conflictCollector)
+    {
+        String effectiveSample = sample != null ? sample
+                : Optional.ofNullable(vcfRecord.getSampleFields())
+                          .flatMap(sampleFields -> sampleFields.keySet()
+                                                               .stream()
+                                                               .findFirst())
+                          .orElse(null);
+        SampleFields sampleFields = vcfRecord.parseSampleFields();
+        GenoTypeCall genoTypeCall = effectiveSample != null ? sampleFields.getGenoTypeCall(effectiveSample) : null;
+        if (genoTypeCall == null)
+        {
+            addReplacements(positionToReplacements, vcfRecord);
+            return;
+        }
+
+        Long phaseSet = genoTypeCall.isPhased() ? sampleFields.getPhaseSet(effectiveSample) : null;
+        String reference = vcfRecord.getReference();
+        String[] alternativeAlleles = StringUtils.splitPreserveAllTokens(vcfRecord.getAlternativeAlleles(), ",");
+        long position = NumberUtils.toLong(vcfRecord.getPosition());
+        for (int haplotype = 0; haplotype <= 1; haplotype++)
+        {
+            int alleleIndex = genoTypeCall.getAlleleIndex(haplotype);
+            if (alleleIndex > 0 && alternativeAlleles != null && alleleIndex <= alternativeAlleles.length)
+            {
+                String alternativeAllele = alternativeAlleles[alleleIndex - 1];
+                if (StringUtils.isBlank(alternativeAllele) || !StringUtils.containsNone(alternativeAllele, "<>[]*."))
+                {
+                    conflictCollector.collect(ConflictType.UNSUPPORTED_ALLELE, chromosome, position, haplotype, alternativeAllele);
+                }
+                else
+                {
+                    for (int ii = 0; ii < reference.length() || ii < alternativeAllele.length(); ii++)
                     {
-                        if (sampleFields.hasGenoType(GenoType.SECOND_ALLELE_ALTERNATIVE))
-                        {
-                            replacements.addReplacementForAllele(1, new UnaryLeftAndRight<NucleicAcidCode>(left, right));
-                        }
-                        else
+                        NucleicAcidCode left = ii < reference.length() ? NucleicAcidCode.valueOf(reference.charAt(ii)) : null;
+                        NucleicAcidCode right = ii < alternativeAllele.length() ? NucleicAcidCode.valueOf(alternativeAllele.charAt(ii)) : null;
+                        ReplacementsImpl replacements = (ReplacementsImpl) positionToReplacements.computeIfAbsent(position + ii, c -> new ReplacementsImpl());
+                        replacements.addReplacementForAllele(haplotype, new UnaryLeftAndRight<NucleicAcidCode>(left, right));
+                        if (phaseSet != null)
                         {
-                            replacements.addReplacementForAllele(0, new UnaryLeftAndRight<NucleicAcidCode>(left, right));
+                            replacements.setPhaseSet(phaseSet);
                         }
                     }
-                    else
-                    {
-                        int allele = Math.min(1, replacements.getMaxAlleleIndex() + 1);
-                        replacements.addReplacementForAllele(allele, new UnaryLeftAndRight<NucleicAcidCode>(left, right));
-                    }
                 }
             }
         }
-
-        return positionToReplacements;
     }
 
     @Override
@@ -191,7 +351,8 @@ public class GenomeApplicatorImpl implements GenomeApplicator
             public Stream<CodeAndPosition<NucleicAcidCode>> applyToChromosomeCodeAndPositionSequence(String chromosome,
                                                                                                      Stream<CodeAndPosition<NucleicAcidCode>> sequence)
             {
-                Map<Long, Replacements> positionToReplacement = GenomeApplicatorImpl.this.getPositionToReplacementForChromosome(chromosome);
+                String normalizedChromosome = VCFRecord.normalizeChromosome(chromosome);
+                Map<Long, Replacements> positionToReplacement = GenomeApplicatorImpl.this.getPositionToReplacementForChromosome(normalizedChromosome);
 
                 AtomicLong position = new AtomicLong(-1);
                 return sequence.peek(ConsumerUtils.consumeOnce(code ->
@@ -203,67 +364,145 @@ public class GenomeApplicatorImpl implements GenomeApplicator
                 }))
                                .flatMap(code ->
                                {
-                                   //
-                                   Stream<NucleicAcidCode> retval = Stream.of(code.getCode());
-
-                                   //
                                    long currentPosition = code.getPosition();
-                                   Replacements replacementsHolder = positionToReplacement.get(currentPosition);
-                                   Set<UnaryLeftAndRight<NucleicAcidCode>> replacements = replacementsHolder != null
-                                           ? replacementsHolder.getReplacementForAllele(allele)
-                                           : null;
-                                   if (replacements != null)
-                                   {
-                                       UnaryLeftAndRight<NucleicAcidCode> replacement = SetUtils.first(replacements);
-
-                                       if (replacements.size() > 1)
-                                       {
-                                           LOG.warn("More than one replacement for chromosome position and allele available: " + chromosome + ":" + position
-                                                   + " ( allele " + allele + " )");
-                                           LOG.warn(replacements.toString());
-                                       }
+                                   List<NucleicAcidCode> codes = resolveCodes(normalizedChromosome, allele, code.getCode(), currentPosition,
+                                                                              positionToReplacement.get(currentPosition),
+                                                                              GenomeApplicatorImpl.this.conflictCollector);
+                                   return codes.stream()
+                                               .map(c -> new CodeAndPosition<>(c, position.getAndIncrement()));
+                               });
+            }
+        };
+    }
 
-                                       if (replacement != null)
-                                       {
-                                           NucleicAcidCode referenceCode = replacement.getLeft();
-                                           NucleicAcidCode replacementCode = replacement.getRight();
+    @Override
+    public HaplotypeGenomeApplicator usingHaplotypes()
+    {
+        return this.usingHaplotypes(null);
+    }
 
-                                           if (referenceCode == null)
-                                           {
-                                               retval = Stream.of(replacementCode, code.getCode());
-                                           }
-                                           else
-                                           {
-                                               //
-                                               this.assertReferenceCodeMatches(code.getCode(), currentPosition, referenceCode);
-
-                                               //
-                                               if (replacementCode == null)
-                                               {
-                                                   retval = Stream.empty();
-                                               }
-                                               else
-                                               {
-                                                   retval = Stream.of(replacementCode);
-                                               }
-                                           }
-                                       }
-                                   }
+    @Override
+    public HaplotypeGenomeApplicator usingHaplotypes(String sample)
+    {
+        return new HaplotypeGenomeApplicator()
+        {
+            @Override
+            public Stream<HaplotypeCodes> applyToChromosomeSequence(String chromosome, Stream<NucleicAcidCode> sequence)
+            {
+                AtomicLong position = new AtomicLong(1);
+                return this.applyToChromosomeCodeAndPositionSequence(chromosome, sequence.map(code -> new CodeAndPosition<>(code, position.getAndIncrement())));
+            }
 
-                                   return retval.map(c -> new CodeAndPosition<>(c, position.getAndIncrement()));
-                               });
+            @Override
+            public Stream<HaplotypeCodes> applyToChromosomeCodeAndPositionSequence(String chromosome, Stream<CodeAndPosition<NucleicAcidCode>> sequence)
+            {
+                String normalizedChromosome = VCFRecord.normalizeChromosome(chromosome);
+                List<VCFRecord> records = GenomeApplicatorImpl.this.getRecordsForChromosome(normalizedChromosome);
+                Map<Long, Replacements> positionToReplacement = GenomeApplicatorImpl.this.determineHaplotypePositionToReplacement(normalizedChromosome, records,
+                                                                                                                                  sample);
+                return sequence.map(code -> resolveHaplotypeCodes(normalizedChromosome, code.getCode(), code.getPosition(),
+                                                                  positionToReplacement.get(code.getPosition()), GenomeApplicatorImpl.this.conflictCollector));
             }
 
-            private void assertReferenceCodeMatches(NucleicAcidCode code, long currentPosition, NucleicAcidCode referenceCode)
+            @Override
+            public void applyToChromosomeSequence(String chromosome, Stream<NucleicAcidCode> sequence, Consumer<NucleicAcidCode> firstHaplotype,
+                                                  Consumer<NucleicAcidCode> secondHaplotype)
             {
-                if (!code.equals(referenceCode))
-                {
-                    throw new IllegalStateException("Reference code did not match: " + code + "<->" + referenceCode + " at position: " + currentPosition);
-                }
+                this.applyToChromosomeSequence(chromosome, sequence)
+                    .forEach(codes ->
+                    {
+                        codes.getCodes(0)
+                             .forEach(firstHaplotype);
+                        codes.getCodes(1)
+                             .forEach(secondHaplotype);
+                    });
             }
         };
     }
 
+    /**
+     * Resolves the {@link HaplotypeCodes} for both haplotypes of a single reference position
+     * 
+     * @param chromosome
+     * @param code
+     * @param position
+     * @param replacementsHolder
+     * @param conflictCollector
+     * @return
+     */
+    protected static HaplotypeCodes resolveHaplotypeCodes(String chromosome, NucleicAcidCode code, long position, Replacements replacementsHolder,
+                                                          ConflictCollector conflictCollector)
+    {
+        Long phaseSet = replacementsHolder instanceof ReplacementsImpl ? ((ReplacementsImpl) replacementsHolder).getPhaseSet() : null;
+        return new HaplotypeCodesImpl(position, code, resolveCodes(chromosome, 0, code, position, replacementsHolder, conflictCollector),
+                                      resolveCodes(chromosome, 1, code, position, replacementsHolder, conflictCollector), phaseSet);
+    }
+
+    /**
+     * Resolves the {@link NucleicAcidCode}s replacing the given reference code for the given allele. The returned {@link List} is empty for a deletion
+     * and contains the inserted code followed by the reference code for an insertion. If more than one replacement is available the conflict is
+     * forwarded to the given {@link ConflictCollector}.
+     * 
+     * @param chromosome
+     * @param allele
+     * @param code
+     * @param position
+     * @param replacementsHolder
+     * @param conflictCollector
+     * @return
+     */
+    protected static List<NucleicAcidCode> resolveCodes(String chromosome, int allele, NucleicAcidCode code, long position,
+                                                        Replacements replacementsHolder, ConflictCollector conflictCollector)
+    {
+        Set<UnaryLeftAndRight<NucleicAcidCode>> replacements = replacementsHolder != null ? replacementsHolder.getReplacementForAllele(allele) : null;
+        if (replacements == null)
+        {
+            return Collections.singletonList(code);
+        }
+
+        UnaryLeftAndRight<NucleicAcidCode> replacement = SetUtils.first(replacements);
+
+        if (replacements.size() > 1)
+        {
+            conflictCollector.collectMultipleReplacements(chromosome, position, allele, replacements);
+        }
+
+        if (replacement == null)
+        {
+            return Collections.singletonList(code);
+        }
+
+        NucleicAcidCode referenceCode = replacement.getLeft();
+        NucleicAcidCode replacementCode = replacement.getRight();
+        if (referenceCode == null)
+        {
+            return Arrays.asList(replacementCode, code);
+        }
+        else
+        {
+            //
+            assertReferenceCodeMatches(code, position, referenceCode);
+
+            //
+            if (replacementCode == null)
+            {
+                return Collections.emptyList();
+            }
+            else
+            {
+                return Collections.singletonList(replacementCode);
+            }
+        }
+    }
+
+    private static void assertReferenceCodeMatches(NucleicAcidCode code, long currentPosition, NucleicAcidCode referenceCode)
+    {
+        if (!code.equals(referenceCode))
+        {
+            throw new IllegalStateException("Reference code did not match: " + code + "<->" + referenceCode + " at position: " + currentPosition);
+        }
+    }
+
     @Override
     public int getNumberOfAlleles()
     {
@@ -276,4 +515,10 @@ public class GenomeApplicatorImpl implements GenomeApplicator
                        .max()
                        .getAsInt();
     }
+
+    @Override
+    public ConflictReport getConflictReport()
+    {
+        return this.conflictCollector.toReport();
+    }
 }
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+/**
+ * Index of {@link VCFRecord}s by the ids of their ID column. Rs ids are held as primitive rs numbers within a {@link RsIdIndex} which maps to the
+ * index of the record in an array, all other ids are kept in a {@link Map}.
+ * 
+ * @see IdIndexedVCFFile
+ * @author omnaest
+ */
+public class IdIndex
+{
+    private final VCFRecord[]                  records;
+    private final RsIdIndex                    rsIdIndex;
+    private final Map<String, List<VCFRecord>> otherIdToRecords;
+
+    private IdIndex(VCFRecord[] records, RsIdIndex rsIdIndex, Map<String, List<VCFRecord>> otherIdToRecords)
+    {
+        super();
+        this.records = records;
+        this.rsIdIndex = rsIdIndex;
+        this.otherIdToRecords = otherIdToRecords;
+    }
+
+    /**
+     * Creates an {@link IdIndex} for the given {@link VCFRecord}s
+     * 
+     * @param recordLists
+     * @return
+     */
+    public static IdIndex of(Collection<List<VCFRecord>> recordLists)
+    {
+        VCFRecord[] records = recordLists.stream()
+                                         .flatMap(List::stream)
+                                         .toArray(VCFRecord[]::new);
+        long[][] rsNumbers = new long[records.length][];
+        long numberOfRsIds = 0;
+        Map<String, List<VCFRecord>> otherIdToRecords = new HashMap<>();
+        for (int ii = 0; ii < records.length; ii++)
+        {
+            Set<String> ids = records[ii].getIds();
+            long[] recordRsNumbers = new long[ids.size()];
+            int numberOfRecordRsNumbers = 0;
+            for (String id : ids)
+            {
+                long rsNumber = RsIdIndex.parseRsNumber(id);
+                if (rsNumber > 0)
+                {
+                    recordRsNumbers[numberOfRecordRsNumbers++] = rsNumber;
+                }
+                else
+                {
+                    otherIdToRecords.computeIfAbsent(id, key -> new ArrayList<>())
+                                    .add(records[ii]);
+                }
+            }
+            rsNumbers[ii] = recordRsNumbers.length == numberOfRecordRsNumbers ? recordRsNumbers
+                    : Arrays.copyOf(recordRsNumbers, numberOfRecordRsNumbers);
+            numberOfRsIds += numberOfRecordRsNumbers;
+        }
+
+        RsIdIndex rsIdIndex = RsIdIndex.create(numberOfRsIds);
+        for (int ii = 0; ii < records.length; ii++)
+        {
+            for (long rsNumber : rsNumbers[ii])
+            {
+                rsIdIndex.put(rsNumber, ii);
+            }
+        }
+        return new IdIndex(records, rsIdIndex, otherIdToRecords);
+    }
+
+    /**
+     * Returns all {@link VCFRecord}s which have the given id
+     * 
+     * @param id
+     * @return
+     */
+    public List<VCFRecord> getRecords(String id)
+    {
+        long rsNumber = RsIdIndex.parseRsNumber(id);
+        if (rsNumber > 0)
+        {
+            long[] handles = this.rsIdIndex.get(rsNumber);
+            List<VCFRecord> result = new ArrayList<>(handles.length);
+            for (long handle : handles)
+            {
+                result.add(this.records[(int) handle]);
+            }
+            return result;
+        }
+        return this.otherIdToRecords.getOrDefault(id, Collections.emptyList());
+    }
+}
@@ -0,0 +1,277 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+import org.omnaest.genomics.vcf.components.parser.VCFParser;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+/**
+ * Uncompressed VCF file with a persisted {@link RsIdIndex} next to it, which maps the rs numbers of the ID column to the byte offsets of the
+ * record lines. A lookup probes the memory mapped index and reads and parses only the matching lines, so neither the records nor the ids are
+ * held on heap.<br>
+ * <br>
+ * Lookups are thread safe.
+ * 
+ * @see #createIndex(File)
+ * @see #open(VCFParserManager, File)
+ * @author omnaest
+ */
+public class IdIndexedVCFFile implements Closeable
+{
+    public static final String INDEX_FILE_SUFFIX = ".rsidx";
+
+    private static final byte TAB       = '\t';
+    private static final byte SEMICOLON = ';';
+
+    private final FileChannel channel;
+    private final RsIdIndex   index;
+    private final VCFParser   parser;
+
+    private IdIndexedVCFFile(FileChannel channel, RsIdIndex index, VCFParser parser)
+    {
+        super();
+        this.channel = channel;
+        this.index = index;
+        this.parser = parser;
+    }
+
+    /**
+     * Returns the {@link File} of the {@link RsIdIndex} which belongs to the given VCF {@link File}
+     * 
+     * @param vcfFile
+     * @return
+     */
+    public static File getIndexFile(File vcfFile)
+    {
+        return new File(vcfFile.getPath() + INDEX_FILE_SUFFIX);
+    }
+
+    /**
+     * Creates the {@link RsIdIndex} for the given uncompressed VCF {@link File} at {@link #getIndexFile(File)}. The VCF file is read twice, first
+     * to count the rs ids and afterwards to fill the memory mapped index.
+     * 
+     * @param vcfFile
+     * @return the index {@link File}
+     */
+    public static File createIndex(File vcfFile)
+    {
+        AtomicLong numberOfRsIds = new AtomicLong();
+        forEachRsNumber(vcfFile, (rsNumber, offset) -> numberOfRsIds.incrementAndGet());
+
+        File indexFile = getIndexFile(vcfFile);
+        try (RsIdIndex index = RsIdIndex.create(indexFile, numberOfRsIds.get()))
+        {
+            forEachRsNumber(vcfFile, index::put);
+        }
+        return indexFile;
+    }
+
+    /**
+     * Opens the given uncompressed VCF {@link File} for id lookups. The {@link RsIdIndex} is created by {@link #createIndex(File)}, if it does not
+     * exist or is older than the VCF file.
+     * 
+     * @param parserManager
+     * @param vcfFile
+     * @return
+     */
+    public static IdIndexedVCFFile open(VCFParserManager parserManager, File vcfFile)
+    {
+        File indexFile = getIndexFile(vcfFile);
+        if (!indexFile.exists() || indexFile.lastModified() < vcfFile.lastModified())
+        {
+            createIndex(vcfFile);
+        }
+
+        VCFParser parser;
+        try (InputStream inputStream = new FileInputStream(vcfFile))
+        {
+            parser = new AsciiVCFParser(parserManager, inputStream);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Unable to read VCF header of file: " + vcfFile, e);
+        }
+
+        RsIdIndex index = RsIdIndex.open(indexFile);
+        try
+        {
+            return new IdIndexedVCFFile(FileChannel.open(vcfFile.toPath(), StandardOpenOption.READ), index, parser);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Unable to open VCF file: " + vcfFile, e);
+        }
+    }
+
+    @FunctionalInterface
+    private static interface RsNumberAndOffsetConsumer
+    {
+        public void accept(long rsNumber, long offset);
+    }
+
+    private static void forEachRsNumber(File vcfFile, RsNumberAndOffsetConsumer consumer)
+    {
+        try (ByteLineReader lineReader = new ByteLineReader(new FileInputStream(vcfFile)))
+        {
+            DelimiterScanner scanner = new DelimiterScanner(lineReader.getBuffer());
+            while (lineReader.next())
+            {
+                if (!lineReader.isBlank() && !lineReader.startsWith('#'))
+                {
+                    byte[] buffer = lineReader.getBuffer();
+                    scanner = scanner.forBuffer(buffer);
+                    long offset = lineReader.getLineOffset();
+                    int firstTab = scanner.indexOf(TAB, lineReader.getStart(), lineReader.getEnd());
+                    int secondTab = firstTab >= 0 ? scanner.indexOf(TAB, firstTab + 1, lineReader.getEnd()) : -1;
+                    if (secondTab >= 0)
+                    {
+                        int idEnd = scanner.indexOf(TAB, secondTab + 1, lineReader.getEnd());
+                        parseRsNumbers(buffer, secondTab + 1, idEnd >= 0 ? idEnd : lineReader.getEnd(), rsNumber -> consumer.accept(rsNumber, offset));
+                    }
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Unable to read VCF file: " + vcfFile, e);
+        }
+    }
+
+    /**
+     * Parses the semicolon separated rs ids like 'rs123;rs456' within the given byte range without creating {@link String}s
+     * 
+     * @param buffer
+     * @param start
+     * @param end
+     * @param rsNumberConsumer
+     */
+    private static void parseRsNumbers(byte[] buffer, int start, int end, LongConsumer rsNumberConsumer)
+    {
+        int idStart = start;
+        while (idStart < end)
+        {
+            int idEnd = idStart;
+            while (idEnd < end && buffer[idEnd] != SEMICOLON)
+            {
+                idEnd++;
+            }
+            if (idEnd - idStart >= 3 && idEnd - idStart <= 20 && buffer[idStart] == 'r' && buffer[idStart + 1] == 's')
+            {
+                long rsNumber = 0;
+                for (int ii = idStart + 2; ii < idEnd && rsNumber >= 0; ii++)
+                {
+                    int digit = buffer[ii] - '0';
+                    rsNumber = digit >= 0 && digit <= 9 && rsNumber <= (Long.MAX_VALUE - digit) / 10 ? rsNumber * 10 + digit : -1;
+                }
+                if (rsNumber > 0)
+                {
+                    rsNumberConsumer.accept(rsNumber);
+                }
+            }
+            idStart = idEnd + 1;
+        }
+    }
+
+    /**
+     * Returns all {@link VCFRecord}s with the given rs id like 'rs123' in file order. Ids which are not of the form rs\d+ are not indexed and
+     * return an empty {@link List}.
+     * 
+     * @param id
+     * @return
+     */
+    public List<VCFRecord> getRecords(String id)
+    {
+        long[] offsets = this.index.get(id);
+        Arrays.sort(offsets);
+        List<VCFRecord> records = new ArrayList<>(offsets.length);
+        for (long offset : offsets)
+        {
+            records.add(this.parser.mapToRecord(this.readLine(offset)));
+        }
+        return records;
+    }
+
+    private String readLine(long offset)
+    {
+        try
+        {
+            ByteBuffer buffer = ByteBuffer.allocate(4096);
+            int lineEnd = -1;
+            while (lineEnd < 0)
+            {
+                int read = this.channel.read(buffer, offset + buffer.position());
+                for (int ii = buffer.position() - Math.max(0, read); ii < buffer.position() && lineEnd < 0; ii++)
+                {
+                    if (buffer.get(ii) == '\n')
+                    {
+                        lineEnd = ii;
+                    }
+                }
+                if (read < 0)
+                {
+                    lineEnd = buffer.position();
+                }
+                else if (lineEnd < 0 && !buffer.hasRemaining())
+                {
+                    buffer = ByteBuffer.allocate(buffer.capacity() * 2)
+                                       .put((ByteBuffer) buffer.flip());
+                }
+            }
+            if (lineEnd > 0 && buffer.get(lineEnd - 1) == '\r')
+            {
+                lineEnd--;
+            }
+            return new String(buffer.array(), 0, lineEnd, StandardCharsets.UTF_8);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Unable to read VCF record at offset " + offset, e);
+        }
+    }
+
+    /**
+     * Returns the sample names of the VCF file
+     * 
+     * @return
+     */
+    public List<String> getSampleNames()
+    {
+        return this.parser.getSampleNames();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.index.close();
+        this.channel.close();
+    }
+}
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.omnaest.genomics.vcf.domain.GenomicRegion;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+/**
+ * Overlap index of {@link VCFRecord}s by chromosome and their spanned positions. In contrast to the {@link PositionIndex} a record is found
+ * by a query even if it starts before the queried region but spans into it, like a structural variant or deletion does.<br>
+ * <br>
+ * The span of a record is determined by {@link VCFRecord#getEndPositionAsLong()}. Each contig is an augmented interval tree laid out
+ * implicitly over the start sorted records, where every node holds the maximum end of its subtree. A query takes logarithmic time plus the
+ * number of returned records.
+ * 
+ * @see PositionIndex
+ * @author omnaest
+ */
+public class OverlapIndex
+{
+    private final Map<String, ContigTree>  chromosomeToContigTree;
+    private final Function<String, String> chromosomeKeyFunction;
+
+    private OverlapIndex(Map<String, ContigTree> chromosomeToContigTree, Function<String, String> chromosomeKeyFunction)
+    {
+        super();
+        this.chromosomeToContigTree = chromosomeToContigTree;
+        this.chromosomeKeyFunction = chromosomeKeyFunction;
+    }
+
+    /**
+     * Creates a {@link OverlapIndex} for the given chromosome partitioned {@link VCFRecord}s. The chromosome key {@link Function} maps the
+     * queried chromosome names to the keys of the given {@link Map}.
+     * 
+     * @param chromosomeToRecords
+     * @param chromosomeKeyFunction
+     * @return
+     */
+    public static OverlapIndex of(Map<String, List<VCFRecord>> chromosomeToRecords, Function<String, String> chromosomeKeyFunction)
+    {
+        Map<String, ContigTree> chromosomeToContigTree = new HashMap<>();
+        chromosomeToRecords.forEach((chromosome, records) -> chromosomeToContigTree.put(chromosome, new ContigTree(records)));
+        return new OverlapIndex(chromosomeToContigTree, chromosomeKeyFunction);
+    }
+
+    private static class ContigTree
+    {
+        private final VCFRecord[] records;
+        private final long[]      starts;
+        private final long[]      ends;
+        private final long[]      maxEnds;
+
+        public ContigTree(List<VCFRecord> records)
+        {
+            super();
+            this.records = records.toArray(new VCFRecord[records.size()]);
+            Arrays.sort(this.records, Comparator.comparingLong(VCFRecord::getPositionAsLong));
+            this.starts = new long[this.records.length];
+            this.ends = new long[this.records.length];
+            for (int ii = 0; ii < this.records.length; ii++)
+            {
+                this.starts[ii] = this.records[ii].getPositionAsLong();
+                this.ends[ii] = this.records[ii].getEndPositionAsLong();
+            }
+            this.maxEnds = new long[this.records.length];
+            this.computeMaxEnds(0, this.records.length);
+        }
+
+        /**
+         * The node of the subtree over the index range [low, high) is the middle index, its left and right subtrees are the ranges left and
+         * right of it.
+         * 
+         * @param low
+         * @param high
+         * @return
+         */
+        private long computeMaxEnds(int low, int high)
+        {
+            if (low >= high)
+            {
+                return Long.MIN_VALUE;
+            }
+            int middle = (low + high) >>> 1;
+            long maxEnd = Math.max(this.ends[middle], Math.max(this.computeMaxEnds(low, middle), this.computeMaxEnds(middle + 1, high)));
+            this.maxEnds[middle] = maxEnd;
+            return maxEnd;
+        }
+
+        public List<VCFRecord> getOverlappingRecords(long start, long end)
+        {
+            List<VCFRecord> result = new ArrayList<>();
+            this.collectOverlappingRecords(0, this.records.length, start, end, result);
+            return result;
+        }
+
+        private void collectOverlappingRecords(int low, int high, long start, long end, List<VCFRecord> result)
+        {
+            if (low >= high)
+            {
+                return;
+            }
+            int middle = (low + high) >>> 1;
+            if (this.maxEnds[middle] < start)
+            {
+                return;
+            }
+            this.collectOverlappingRecords(low, middle, start, end, result);
+            if (this.starts[middle] <= end)
+            {
+                if (this.ends[middle] >= start)
+                {
+                    result.add(this.records[middle]);
+                }
+                this.collectOverlappingRecords(middle + 1, high, start, end, result);
+            }
+        }
+    }
+
+    /**
+     * Returns all {@link VCFRecord}s of the given chromosome whose span overlaps the positions between start and end, both inclusive. The
+     * {@link VCFRecord}s are sorted by their start position.
+     * 
+     * @param chromosome
+     * @param start
+     * @param end
+     * @return
+     */
+    public List<VCFRecord> getOverlappingRecords(String chromosome, long start, long end)
+    {
+        ContigTree contigTree = this.chromosomeToContigTree.get(this.chromosomeKeyFunction.apply(chromosome));
+        if (contigTree == null || start > end)
+        {
+            return Collections.emptyList();
+        }
+        return contigTree.getOverlappingRecords(start, end);
+    }
+
+    /**
+     * Similar to {@link #getOverlappingRecords(String, long, long)} for a {@link GenomicRegion}
+     * 
+     * @param region
+     * @return
+     */
+    public List<VCFRecord> getOverlappingRecords(GenomicRegion region)
+    {
+        return this.getOverlappingRecords(region.getChromosome(), region.getStart(), region.getEnd());
+    }
+}
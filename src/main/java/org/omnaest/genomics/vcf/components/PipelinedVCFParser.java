@@ -0,0 +1,489 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.commons.lang3.StringUtils;
+import org.omnaest.genomics.vcf.components.parser.ColumnProjection;
+import org.omnaest.genomics.vcf.components.parser.LineFilter;
+import org.omnaest.genomics.vcf.components.parser.RawLine;
+import org.omnaest.genomics.vcf.components.parser.VCFParser;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+/**
+ * {@link VCFParser} which splits the parsing of an {@link InputStream} into pipelined stages:<br>
+ * <ul>
+ * <li>a single reader thread which reads (and inflates) the raw bytes and cuts them into batches at line boundaries</li>
+ * <li>N decoder threads which decode the batches into lines and map them to {@link VCFRecord}s</li>
+ * <li>an order restoring sequencer which returns the decoded batches in their original order</li>
+ * </ul>
+ * The stages are connected by a bounded queue, so the number of batches in flight is limited. The header lines are read upfront on the calling
+ * thread to determine the version specific {@link VCFParser}. The {@link InputStream} is read strictly sequential and does not need to be seekable.<br>
+ * <br>
+ * The threads are shut down and the {@link InputStream} is closed as soon as the {@link VCFRecord} {@link Stream} is exhausted or fails. Consumers
+ * which short-circuit the {@link Stream}, e.g. by {@link Stream#findFirst()} or {@link Stream#limit(long)}, must close the {@link Stream},
+ * otherwise the threads stay parked on the bounded queue.
+ * 
+ * @author omnaest
+ */
+public class PipelinedVCFParser implements VCFParser
+{
+    public static final int DEFAULT_BATCH_SIZE = 1024 * 1024;
+
+    private static final byte          NEW_LINE      = '\n';
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+    private final VCFParser   headerParser;
+    private final InputStream inputStream;
+    private final Charset     charset;
+    private final int         numberOfDecoderThreads;
+    private final int         batchSize;
+    private boolean           ascii     = false;
+
+    public PipelinedVCFParser(VCFParserManager parserManager, InputStream inputStream, Charset charset, int numberOfDecoderThreads)
+    {
+        this(parserManager, inputStream, charset, numberOfDecoderThreads, DEFAULT_BATCH_SIZE);
+    }
+
+    public PipelinedVCFParser(VCFParserManager parserManager, InputStream inputStream, Charset charset, int numberOfDecoderThreads, int batchSize)
+    {
+        super();
+        if (numberOfDecoderThreads <= 0 || batchSize <= 0)
+        {
+            throw new IllegalArgumentException("Number of decoder threads and batch size must be positive: " + numberOfDecoderThreads + ","
+                    + batchSize);
+        }
+        this.inputStream = new BufferedInputStream(inputStream, Math.max(8192, Math.min(batchSize, DEFAULT_BATCH_SIZE)));
+        this.charset = charset;
+        this.numberOfDecoderThreads = numberOfDecoderThreads;
+        this.batchSize = batchSize;
+        this.headerParser = this.createHeaderParser(parserManager);
+    }
+
+    /**
+     * Decodes the line batches byte oriented by a {@link ByteLineTokenizer} instead of the configured {@link Charset}. Lines containing non ASCII
+     * bytes are decoded as UTF-8.
+     * 
+     * @return this
+     */
+    public PipelinedVCFParser asAscii()
+    {
+        this.ascii = true;
+        return this;
+    }
+
+    /**
+     * Reads all leading header and blank lines from the {@link InputStream} and creates the version specific {@link VCFParser} from them. The
+     * {@link InputStream} is afterwards positioned at the start of the first data line.
+     * 
+     * @param parserManager
+     * @return
+     */
+    private VCFParser createHeaderParser(VCFParserManager parserManager)
+    {
+        try
+        {
+            List<String> headerLines = new ArrayList<>();
+            while (true)
+            {
+                this.inputStream.mark(Integer.MAX_VALUE);
+                String line = this.readLine();
+                if (line == null)
+                {
+                    break;
+                }
+                else if (StringUtils.isBlank(line))
+                {
+                    continue;
+                }
+                else if (!StringUtils.startsWith(line, "#"))
+                {
+                    this.inputStream.reset();
+                    break;
+                }
+                headerLines.add(line);
+            }
+
+            VCFParser parser = parserManager.getInstance(headerLines.stream());
+            parser.getRecords()
+                  .forEach(record ->
+                  {
+                      // only header lines are available, which are collected by the parser
+                  });
+            return parser;
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Unable to read VCF header", e);
+        }
+    }
+
+    private String readLine() throws IOException
+    {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int value = this.inputStream.read();
+        if (value < 0)
+        {
+            return null;
+        }
+        while (value >= 0 && value != NEW_LINE)
+        {
+            line.write(value);
+            value = this.inputStream.read();
+        }
+        return StringUtils.removeEnd(new String(line.toByteArray(), this.charset), "\r");
+    }
+
+    @Override
+    public Stream<VCFRecord> getRecords()
+    {
+        ExecutorService decoderExecutor = Executors.newFixedThreadPool(this.numberOfDecoderThreads, runnable -> this.newDaemonThread(runnable,
+                                                                                                                                      "vcf-decoder"));
+        BlockingQueue<Future<List<VCFRecord>>> sequencer = new ArrayBlockingQueue<>(this.numberOfDecoderThreads * 2);
+        Future<List<VCFRecord>> endOfStream = CompletableFuture.completedFuture(null);
+
+        Thread readerThread = this.newDaemonThread(() ->
+        {
+            try
+            {
+                this.readBatches(batch -> sequencer.put(decoderExecutor.submit(() -> this.decodeBatch(batch))));
+                sequencer.put(endOfStream);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread()
+                      .interrupt();
+            }
+            catch (Exception e)
+            {
+                CompletableFuture<List<VCFRecord>> failure = new CompletableFuture<>();
+                failure.completeExceptionally(e);
+                try
+                {
+                    sequencer.put(failure);
+                }
+                catch (InterruptedException e1)
+                {
+                    Thread.currentThread()
+                          .interrupt();
+                }
+            }
+        }, "vcf-reader");
+        readerThread.start();
+
+        Runnable shutdown = () ->
+        {
+            readerThread.interrupt();
+            decoderExecutor.shutdownNow();
+            try
+            {
+                this.inputStream.close();
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        };
+
+        Iterator<VCFRecord> iterator = new Iterator<VCFRecord>()
+        {
+            private Iterator<VCFRecord> batch = Collections.emptyIterator();
+            private boolean             ended = false;
+
+            @Override
+            public boolean hasNext()
+            {
+                while (!this.ended && !this.batch.hasNext())
+                {
+                    try
+                    {
+                        Future<List<VCFRecord>> future = sequencer.take();
+                        if (future == endOfStream)
+                        {
+                            this.ended = true;
+                            shutdown.run();
+                        }
+                        else
+                        {
+                            this.batch = future.get()
+                                               .iterator();
+                        }
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread()
+                              .interrupt();
+                        throw new IllegalStateException(e);
+                    }
+                    catch (ExecutionException e)
+                    {
+                        this.ended = true;
+                        shutdown.run();
+                        throw new IllegalStateException("Failed to parse VCF batch", e.getCause());
+                    }
+                }
+                return this.batch.hasNext();
+            }
+
+            @Override
+            public VCFRecord next()
+            {
+                if (!this.hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                return this.batch.next();
+            }
+        };
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                            .onClose(shutdown);
+    }
+
+    private static interface BatchConsumer
+    {
+        public void accept(byte[] batch) throws InterruptedException;
+    }
+
+    /**
+     * Reads the {@link InputStream} into batches of about the configured batch size which always end at a line boundary. A single line longer than
+     * the batch size results in a larger batch.
+     * 
+     * @param batchConsumer
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private void readBatches(BatchConsumer batchConsumer) throws IOException, InterruptedException
+    {
+        byte[] buffer = new byte[this.batchSize];
+        int length = 0;
+        boolean endOfStream = false;
+        while (!endOfStream)
+        {
+            while (length < buffer.length)
+            {
+                int read = this.inputStream.read(buffer, length, buffer.length - length);
+                if (read < 0)
+                {
+                    endOfStream = true;
+                    break;
+                }
+                length += read;
+            }
+
+            int lastNewLine = this.lastIndexOfNewLine(buffer, length);
+            if (endOfStream)
+            {
+                if (length > 0)
+                {
+                    batchConsumer.accept(Arrays.copyOf(buffer, length));
+                }
+            }
+            else if (lastNewLine < 0)
+            {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            else
+            {
+                batchConsumer.accept(Arrays.copyOf(buffer, lastNewLine + 1));
+                int remaining = length - lastNewLine - 1;
+                System.arraycopy(buffer, lastNewLine + 1, buffer, 0, remaining);
+                length = remaining;
+            }
+        }
+    }
+
+    private int lastIndexOfNewLine(byte[] buffer, int length)
+    {
+        for (int ii = length - 1; ii >= 0; ii--)
+        {
+            if (buffer[ii] == NEW_LINE)
+            {
+                return ii;
+            }
+        }
+        return -1;
+    }
+
+    private List<VCFRecord> decodeBatch(byte[] batch)
+    {
+        if (this.ascii)
+        {
+            return this.decodeAsciiBatch(batch);
+        }
+
+        LineFilter filter = this.headerParser.getFilter();
+        RawLine rawLine = new RawLine();
+        String text = new String(batch, this.charset);
+        List<VCFRecord> records = new ArrayList<>();
+        int start = 0;
+        int length = text.length();
+        while (start < length)
+        {
+            int end = text.indexOf(NEW_LINE, start);
+            if (end < 0)
+            {
+                end = length;
+            }
+            int lineEnd = end > start && text.charAt(end - 1) == '\r' ? end - 1 : end;
+            String line = text.substring(start, lineEnd);
+            if (!StringUtils.isBlank(line) && !StringUtils.startsWith(line, "#")
+                    && (filter == LineFilter.ALL || filter.test(rawLine.reset(line))))
+            {
+                records.add(this.headerParser.mapToRecord(line));
+            }
+            start = end + 1;
+        }
+        return records;
+    }
+
+    private List<VCFRecord> decodeAsciiBatch(byte[] batch)
+    {
+        ByteLineTokenizer tokenizer = new ByteLineTokenizer();
+        DelimiterScanner scanner = new DelimiterScanner(batch);
+        List<VCFRecord> records = new ArrayList<>();
+        int start = 0;
+        while (start < batch.length)
+        {
+            int end = scanner.indexOf(NEW_LINE, start, batch.length);
+            if (end < 0)
+            {
+                end = batch.length;
+            }
+            int lineEnd = end > start && batch[end - 1] == '\r' ? end - 1 : end;
+            if (!this.isBlankOrComment(batch, start, lineEnd))
+            {
+                VCFRecord record = tokenizer.mapToRecord(this.headerParser, batch, start, lineEnd);
+                if (record != null)
+                {
+                    records.add(record);
+                }
+            }
+            start = end + 1;
+        }
+        return records;
+    }
+
+    private boolean isBlankOrComment(byte[] batch, int start, int end)
+    {
+        if (end > start && batch[start] == '#')
+        {
+            return true;
+        }
+        for (int ii = start; ii < end; ii++)
+        {
+            if ((batch[ii] & 0xFF) > ' ')
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Thread newDaemonThread(Runnable runnable, String name)
+    {
+        Thread thread = new Thread(runnable, name + "-" + THREAD_NUMBER.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    @Override
+    public VCFRecord mapToRecord(String line)
+    {
+        return this.headerParser.mapToRecord(line);
+    }
+
+    @Override
+    public VCFRecord mapToRecord(String[] tokens, String line)
+    {
+        return this.headerParser.mapToRecord(tokens, line);
+    }
+
+    @Override
+    public Map<String, List<String>> getComments()
+    {
+        return this.headerParser.getComments();
+    }
+
+    @Override
+    public List<String> getMetaLines()
+    {
+        return this.headerParser.getMetaLines();
+    }
+
+    @Override
+    public List<String> getSampleNames()
+    {
+        return this.headerParser.getSampleNames();
+    }
+
+    @Override
+    public VCFParser withProjection(ColumnProjection projection)
+    {
+        this.headerParser.withProjection(projection);
+        return this;
+    }
+
+    @Override
+    public ColumnProjection getProjection()
+    {
+        return this.headerParser.getProjection();
+    }
+
+    @Override
+    public VCFParser withFilter(LineFilter filter)
+    {
+        this.headerParser.withFilter(filter);
+        return this;
+    }
+
+    @Override
+    public LineFilter getFilter()
+    {
+        return this.headerParser.getFilter();
+    }
+
+    @Override
+    public VCFParser withRawLines(boolean keepRawLines)
+    {
+        this.headerParser.withRawLines(keepRawLines);
+        return this;
+    }
+}
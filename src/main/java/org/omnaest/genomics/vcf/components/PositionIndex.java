@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.omnaest.genomics.vcf.domain.GenomicRegion;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+/**
+ * Index of {@link VCFRecord}s by chromosome and position. The {@link VCFRecord}s of each contig are kept sorted by position together with a
+ * primitive position array, so region queries are answered by binary search. Multiple regions are answered by a single merge sweep per contig.
+ * 
+ * @author omnaest
+ */
+public class PositionIndex
+{
+    private final Map<String, ContigIndex> chromosomeToContigIndex;
+    private final Function<String, String> chromosomeKeyFunction;
+
+    private PositionIndex(Map<String, ContigIndex> chromosomeToContigIndex, Function<String, String> chromosomeKeyFunction)
+    {
+        super();
+        this.chromosomeToContigIndex = chromosomeToContigIndex;
+        this.chromosomeKeyFunction = chromosomeKeyFunction;
+    }
+
+    /**
+     * Creates a {@link PositionIndex} for the given chromosome partitioned {@link VCFRecord}s. The chromosome key {@link Function} maps the
+     * queried chromosome names to the keys of the given {@link Map}.
+     * 
+     * @param chromosomeToRecords
+     * @param chromosomeKeyFunction
+     * @return
+     */
+    public static PositionIndex of(Map<String, List<VCFRecord>> chromosomeToRecords, Function<String, String> chromosomeKeyFunction)
+    {
+        Map<String, ContigIndex> chromosomeToContigIndex = new HashMap<>();
+        chromosomeToRecords.forEach((chromosome, records) -> chromosomeToContigIndex.put(chromosome, new ContigIndex(records)));
+        return new PositionIndex(chromosomeToContigIndex, chromosomeKeyFunction);
+    }
+
+    private static class ContigIndex
+    {
+        private final long[]          positions;
+        private final List<VCFRecord> records;
+
+        public ContigIndex(List<VCFRecord> records)
+        {
+            super();
+            VCFRecord[] sortedRecords = records.toArray(new VCFRecord[records.size()]);
+            long[] positions = new long[sortedRecords.length];
+            for (int ii = 0; ii < sortedRecords.length; ii++)
+            {
+                positions[ii] = sortedRecords[ii].getPositionAsLong();
+            }
+            if (!isSorted(positions))
+            {
+                Arrays.sort(sortedRecords, Comparator.comparingLong(VCFRecord::getPositionAsLong));
+                for (int ii = 0; ii < sortedRecords.length; ii++)
+                {
+                    positions[ii] = sortedRecords[ii].getPositionAsLong();
+                }
+            }
+            this.positions = positions;
+            this.records = Collections.unmodifiableList(Arrays.asList(sortedRecords));
+        }
+
+        private static boolean isSorted(long[] positions)
+        {
+            for (int ii = 1; ii < positions.length; ii++)
+            {
+                if (positions[ii - 1] > positions[ii])
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the index of the first position greater or equal to the given position, starting the search at the given index
+         * 
+         * @param position
+         * @param fromIndex
+         * @return
+         */
+        public int lowerBound(long position, int fromIndex)
+        {
+            return this.lowerBound(position, fromIndex, this.positions.length);
+        }
+
+        private int lowerBound(long position, int fromIndex, int toIndex)
+        {
+            int low = fromIndex;
+            int high = toIndex;
+            while (low < high)
+            {
+                int middle = (low + high) >>> 1;
+                if (this.positions[middle] < position)
+                {
+                    low = middle + 1;
+                }
+                else
+                {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Similar to {@link #lowerBound(long, int)} but searches with exponentially growing steps starting at the given index, before the
+         * remaining range is searched binary. For sorted queries this costs only the logarithm of the distance to the previous result, so a sweep
+         * over many close positions is as cheap as a linear merge and a sweep over sparse positions as cheap as independent binary searches.
+         * 
+         * @param position
+         * @param fromIndex
+         * @return
+         */
+        public int seek(long position, int fromIndex)
+        {
+            int low = fromIndex;
+            int high = fromIndex;
+            long step = 1;
+            while (high < this.positions.length && this.positions[high] < position)
+            {
+                low = high + 1;
+                high = (int) Math.min(this.positions.length, fromIndex + step);
+                step <<= 1;
+            }
+            return this.lowerBound(position, low, Math.min(high, this.positions.length));
+        }
+
+        public List<VCFRecord> getRecords(int fromIndex, long end)
+        {
+            int toIndex = end == Long.MAX_VALUE ? this.positions.length : this.seek(end + 1, fromIndex);
+            return this.records.subList(fromIndex, toIndex);
+        }
+    }
+
+    /**
+     * Returns the {@link VCFRecord}s of the given chromosome with a position between start and end, both inclusive
+     * 
+     * @param chromosome
+     * @param start
+     * @param end
+     * @return
+     */
+    public List<VCFRecord> getRecords(String chromosome, long start, long end)
+    {
+        ContigIndex contigIndex = this.chromosomeToContigIndex.get(this.chromosomeKeyFunction.apply(chromosome));
+        if (contigIndex == null || start > end)
+        {
+            return Collections.emptyList();
+        }
+        return contigIndex.getRecords(contigIndex.lowerBound(start, 0), end);
+    }
+
+    /**
+     * Returns the {@link VCFRecord}s of all given {@link GenomicRegion}s in the order of the regions. The regions are sorted per contig and
+     * answered by a single sweep, where the search start only moves forward by galloping search.
+     * 
+     * @param regions
+     * @return
+     */
+    public List<List<VCFRecord>> getRecords(List<GenomicRegion> regions)
+    {
+        List<List<VCFRecord>> result = new ArrayList<>(Collections.nCopies(regions.size(), Collections.emptyList()));
+
+        Map<String, List<Integer>> chromosomeToRegionIndexes = new HashMap<>();
+        for (int regionIndex = 0; regionIndex < regions.size(); regionIndex++)
+        {
+            String chromosome = this.chromosomeKeyFunction.apply(regions.get(regionIndex)
+                                                                        .getChromosome());
+            chromosomeToRegionIndexes.computeIfAbsent(chromosome, key -> new ArrayList<>())
+                                     .add(regionIndex);
+        }
+
+        chromosomeToRegionIndexes.forEach((chromosome, regionIndexes) ->
+        {
+            ContigIndex contigIndex = this.chromosomeToContigIndex.get(chromosome);
+            if (contigIndex != null)
+            {
+                regionIndexes.sort(Comparator.comparingLong(regionIndex -> regions.get(regionIndex)
+                                                                                   .getStart()));
+                int searchStart = 0;
+                for (int regionIndex : regionIndexes)
+                {
+                    GenomicRegion region = regions.get(regionIndex);
+                    searchStart = contigIndex.seek(region.getStart(), searchStart);
+                    if (region.getStart() <= region.getEnd())
+                    {
+                        result.set(regionIndex, contigIndex.getRecords(searchStart, region.getEnd()));
+                    }
+                }
+            }
+        });
+
+        return result;
+    }
+}
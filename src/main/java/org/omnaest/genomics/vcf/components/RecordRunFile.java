@@ -0,0 +1,345 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+/**
+ * Compact binary file format for runs of {@link VCFRecord}s, e.g. the sorted runs of the {@link ExternalVCFSorter}. Lengths and positions are
+ * written as variable length integers and the chromosome, FORMAT and sample names are written only once per run into an inline dictionary and
+ * afterwards referenced by their dictionary index. The raw line and the source of a {@link VCFRecord} are not stored.
+ * 
+ * @author omnaest
+ */
+public class RecordRunFile
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private RecordRunFile()
+    {
+        super();
+    }
+
+    /**
+     * Writes the given {@link VCFRecord}s into the given {@link File}
+     * 
+     * @param file
+     * @param records
+     */
+    public static void write(File file, Iterator<VCFRecord> records)
+    {
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE)))
+        {
+            RunWriter writer = new RunWriter(outputStream);
+            while (records.hasNext())
+            {
+                writer.write(records.next());
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Unable to write record run file: " + file, e);
+        }
+    }
+
+    /**
+     * Reads the {@link VCFRecord}s of the given {@link File} lazily. Closing the {@link Stream} closes the {@link File}.
+     * 
+     * @param file
+     * @return
+     */
+    public static Stream<VCFRecord> read(File file)
+    {
+        try
+        {
+            DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+            RunReader reader = new RunReader(inputStream);
+            Iterator<VCFRecord> iterator = new Iterator<VCFRecord>()
+            {
+                private VCFRecord next;
+                private boolean   endOfFile = false;
+
+                @Override
+                public boolean hasNext()
+                {
+                    if (this.next == null && !this.endOfFile)
+                    {
+                        try
+                        {
+                            this.next = reader.read();
+                            this.endOfFile = this.next == null;
+                        }
+                        catch (IOException e)
+                        {
+                            throw new UncheckedIOException("Unable to read record run file: " + file, e);
+                        }
+                    }
+                    return this.next != null;
+                }
+
+                @Override
+                public VCFRecord next()
+                {
+                    if (!this.hasNext())
+                    {
+                        throw new NoSuchElementException();
+                    }
+                    VCFRecord record = this.next;
+                    this.next = null;
+                    return record;
+                }
+            };
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                                .onClose(() ->
+                                {
+                                    try
+                                    {
+                                        inputStream.close();
+                                    }
+                                    catch (IOException e)
+                                    {
+                                        throw new UncheckedIOException(e);
+                                    }
+                                });
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Unable to open record run file: " + file, e);
+        }
+    }
+
+    private static class RunWriter
+    {
+        private final DataOutputStream     outputStream;
+        private final Map<String, Integer> dictionary = new HashMap<>();
+
+        public RunWriter(DataOutputStream outputStream)
+        {
+            super();
+            this.outputStream = outputStream;
+        }
+
+        public void write(VCFRecord record) throws IOException
+        {
+            this.writeDictionaryString(record.getChromosome());
+            String position = record.getPosition();
+            long positionAsLong = record.getPositionAsLong();
+            if (positionAsLong >= 0 && Long.toString(positionAsLong)
+                                           .equals(position))
+            {
+                this.writeVarLong(positionAsLong + 1);
+            }
+            else
+            {
+                this.writeVarLong(0);
+                this.writeString(position);
+            }
+            this.writeString(record.getId());
+            this.writeString(record.getReference());
+            this.writeString(record.getAlternativeAlleles());
+            this.writeString(record.getQuality());
+            this.writeString(record.getFilter());
+            this.writeString(record.getInfo());
+            this.writeDictionaryString(record.getFormat());
+
+            Map<String, String> sampleFields = record.getSampleFields();
+            this.writeVarLong(sampleFields == null ? 0 : sampleFields.size() + 1);
+            if (sampleFields != null)
+            {
+                for (Map.Entry<String, String> sampleNameAndField : sampleFields.entrySet())
+                {
+                    this.writeDictionaryString(sampleNameAndField.getKey());
+                    this.writeString(sampleNameAndField.getValue());
+                }
+            }
+        }
+
+        private void writeVarLong(long value) throws IOException
+        {
+            long remaining = value;
+            while ((remaining & ~0x7FL) != 0)
+            {
+                this.outputStream.write((int) ((remaining & 0x7F) | 0x80));
+                remaining >>>= 7;
+            }
+            this.outputStream.write((int) remaining);
+        }
+
+        private void writeString(String value) throws IOException
+        {
+            if (value == null)
+            {
+                this.writeVarLong(0);
+            }
+            else
+            {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                this.writeVarLong(bytes.length + 1L);
+                this.outputStream.write(bytes);
+            }
+        }
+
+        /**
+         * Writes the dictionary index of the given value, new values are appended to the dictionary and written after their index
+         * 
+         * @param value
+         * @throws IOException
+         */
+        private void writeDictionaryString(String value) throws IOException
+        {
+            if (value == null)
+            {
+                this.writeVarLong(0);
+                return;
+            }
+            Integer index = this.dictionary.get(value);
+            if (index == null)
+            {
+                index = this.dictionary.size();
+                this.dictionary.put(value, index);
+                this.writeVarLong(index + 1L);
+                this.writeString(value);
+            }
+            else
+            {
+                this.writeVarLong(index + 1L);
+            }
+        }
+    }
+
+    private static class RunReader
+    {
+        private final DataInputStream inputStream;
+        private final List<String>    dictionary = new ArrayList<>();
+
+        public RunReader(DataInputStream inputStream)
+        {
+            super();
+            this.inputStream = inputStream;
+        }
+
+        /**
+         * Returns the next {@link VCFRecord} or null at the end of the file
+         * 
+         * @return
+         * @throws IOException
+         */
+        public VCFRecord read() throws IOException
+        {
+            int firstByte = this.inputStream.read();
+            if (firstByte < 0)
+            {
+                return null;
+            }
+            String chromosome = this.readDictionaryString(this.readVarLong(firstByte));
+            long positionAsLong = this.readVarLong(this.readByte());
+            String position = positionAsLong > 0 ? Long.toString(positionAsLong - 1) : this.readString();
+            String id = this.readString();
+            String reference = this.readString();
+            String alternativeAlleles = this.readString();
+            String quality = this.readString();
+            String filter = this.readString();
+            String info = this.readString();
+            String format = this.readDictionaryString(this.readVarLong(this.readByte()));
+
+            long numberOfSampleFields = this.readVarLong(this.readByte());
+            Map<String, String> sampleFields = null;
+            if (numberOfSampleFields > 0)
+            {
+                sampleFields = new LinkedHashMap<>();
+                for (long ii = 1; ii < numberOfSampleFields; ii++)
+                {
+                    String sampleName = this.readDictionaryString(this.readVarLong(this.readByte()));
+                    sampleFields.put(sampleName, this.readString());
+                }
+            }
+            return new VCFRecord(chromosome, position, id, reference, alternativeAlleles, quality, filter, info, format, sampleFields);
+        }
+
+        private int readByte() throws IOException
+        {
+            int value = this.inputStream.read();
+            if (value < 0)
+            {
+                throw new EOFException("Record run file is truncated");
+            }
+            return value;
+        }
+
+        private long readVarLong(int firstByte) throws IOException
+        {
+            long value = firstByte & 0x7F;
+            int currentByte = firstByte;
+            int shift = 7;
+            while ((currentByte & 0x80) != 0)
+            {
+                currentByte = this.readByte();
+                value |= (long) (currentByte & 0x7F) << shift;
+                shift += 7;
+            }
+            return value;
+        }
+
+        private String readString() throws IOException
+        {
+            long length = this.readVarLong(this.readByte());
+            if (length == 0)
+            {
+                return null;
+            }
+            byte[] bytes = new byte[(int) (length - 1)];
+            this.inputStream.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private String readDictionaryString(long indexPlusOne) throws IOException
+        {
+            if (indexPlusOne == 0)
+            {
+                return null;
+            }
+            int index = (int) (indexPlusOne - 1);
+            if (index == this.dictionary.size())
+            {
+                this.dictionary.add(this.readString());
+            }
+            return this.dictionary.get(index);
+        }
+    }
+}
@@ -0,0 +1,327 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+
+/**
+ * Open addressing hash index from rs numbers to record handles, both stored as primitive longs. A handle is e.g. the index of a record within a
+ * list or the byte offset of a record line within a VCF file. Keys are probed linearly and the same rs number can map to multiple handles.<br>
+ * <br>
+ * The table is either held on heap or within a file which is memory mapped, so even tables for all dbSNP entries do not occupy the heap. The slots
+ * are split into segments of at most {@value #SEGMENT_SIZE} slots, which removes the size limit of a single array or mapped buffer.<br>
+ * <br>
+ * The capacity is fixed at creation time based on the expected number of entries. Instances are not thread safe while entries are added, lookups
+ * on a completely filled index can be done concurrently.
+ * 
+ * @see #parseRsNumber(String)
+ * @author omnaest
+ */
+public class RsIdIndex implements Closeable
+{
+    private static final long   MAGIC         = 0x5643465253494458L;
+    private static final int    VERSION       = 1;
+    private static final int    HEADER_SIZE   = 32;
+    private static final int    SLOT_SIZE     = 16;
+    private static final int    SEGMENT_SHIFT = 26;
+    private static final int    SEGMENT_SIZE  = 1 << SEGMENT_SHIFT;
+    private static final long   EMPTY         = 0;
+    private static final double LOAD_FACTOR   = 0.6;
+
+    private final LongBuffer[]       segments;
+    private final long               capacity;
+    private final long               mask;
+    private final MappedByteBuffer   header;
+    private final MappedByteBuffer[] mappedSegments;
+    private long                     size;
+
+    private RsIdIndex(LongBuffer[] segments, long capacity, long size, MappedByteBuffer header, MappedByteBuffer[] mappedSegments)
+    {
+        super();
+        this.segments = segments;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.size = size;
+        this.header = header;
+        this.mappedSegments = mappedSegments;
+    }
+
+    private RsIdIndex(MappedByteBuffer[] mappedSegments, long capacity, long size, MappedByteBuffer header)
+    {
+        this(Arrays.stream(mappedSegments)
+                   .map(segment -> segment.order(ByteOrder.LITTLE_ENDIAN)
+                                          .asLongBuffer())
+                   .toArray(LongBuffer[]::new),
+             capacity, size, header, mappedSegments);
+    }
+
+    /**
+     * Creates a heap based {@link RsIdIndex} for the given number of expected entries
+     * 
+     * @param expectedSize
+     * @return
+     */
+    public static RsIdIndex create(long expectedSize)
+    {
+        long capacity = determineCapacity(expectedSize);
+        LongBuffer[] segments = new LongBuffer[determineNumberOfSegments(capacity)];
+        for (int ii = 0; ii < segments.length; ii++)
+        {
+            segments[ii] = LongBuffer.wrap(new long[2 * (int) Math.min(SEGMENT_SIZE, capacity - ((long) ii << SEGMENT_SHIFT))]);
+        }
+        return new RsIdIndex(segments, capacity, 0, null, null);
+    }
+
+    /**
+     * Creates a {@link RsIdIndex} for the given number of expected entries, which is stored within the given {@link File}. An existing
+     * {@link File} is overwritten. The index is persisted, when it is {@link #close()}d.
+     * 
+     * @see #open(File)
+     * @param file
+     * @param expectedSize
+     * @return
+     */
+    public static RsIdIndex create(File file, long expectedSize)
+    {
+        long capacity = determineCapacity(expectedSize);
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw"))
+        {
+            randomAccessFile.setLength(0);
+            randomAccessFile.setLength(HEADER_SIZE + capacity * SLOT_SIZE);
+            FileChannel channel = randomAccessFile.getChannel();
+            MappedByteBuffer header = channel.map(MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.putLong(0, MAGIC)
+                  .putInt(8, VERSION)
+                  .putLong(16, capacity)
+                  .putLong(24, 0);
+            return new RsIdIndex(mapSegments(channel, MapMode.READ_WRITE, capacity), capacity, 0, header);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Unable to create rs id index file: " + file, e);
+        }
+    }
+
+    /**
+     * Opens a {@link RsIdIndex} which has been persisted within the given {@link File} by {@link #create(File, long)}. The returned index is read
+     * only and memory mapped.
+     * 
+     * @param file
+     * @return
+     */
+    public static RsIdIndex open(File file)
+    {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"))
+        {
+            FileChannel channel = randomAccessFile.getChannel();
+            ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getLong(0) != MAGIC || header.getInt(8) != VERSION)
+            {
+                throw new IllegalArgumentException("File is not a rs id index of version " + VERSION + ": " + file);
+            }
+            long capacity = header.getLong(16);
+            long size = header.getLong(24);
+            if (channel.size() < HEADER_SIZE + capacity * SLOT_SIZE)
+            {
+                throw new IllegalArgumentException("Rs id index file is truncated: " + file);
+            }
+            return new RsIdIndex(mapSegments(channel, MapMode.READ_ONLY, capacity), capacity, size, null);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Unable to open rs id index file: " + file, e);
+        }
+    }
+
+    private static MappedByteBuffer[] mapSegments(FileChannel channel, MapMode mapMode, long capacity) throws IOException
+    {
+        MappedByteBuffer[] segments = new MappedByteBuffer[determineNumberOfSegments(capacity)];
+        for (int ii = 0; ii < segments.length; ii++)
+        {
+            long firstSlot = (long) ii << SEGMENT_SHIFT;
+            long numberOfSlots = Math.min(SEGMENT_SIZE, capacity - firstSlot);
+            segments[ii] = channel.map(mapMode, HEADER_SIZE + firstSlot * SLOT_SIZE, numberOfSlots * SLOT_SIZE);
+        }
+        return segments;
+    }
+
+    private static long determineCapacity(long expectedSize)
+    {
+        long minimumCapacity = Math.max(16, (long) Math.ceil(Math.max(0, expectedSize) / LOAD_FACTOR));
+        return Long.highestOneBit(minimumCapacity - 1) << 1;
+    }
+
+    private static int determineNumberOfSegments(long capacity)
+    {
+        return (int) ((capacity + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+    }
+
+    /**
+     * Returns the rs number of the given id like 'rs123' or -1 if the id is not of the form rs\d+ or the number is zero or out of the long range
+     * 
+     * @param id
+     * @return
+     */
+    public static long parseRsNumber(String id)
+    {
+        if (id == null || id.length() < 3 || id.length() > 20 || id.charAt(0) != 'r' || id.charAt(1) != 's')
+        {
+            return -1;
+        }
+        long rsNumber = 0;
+        for (int ii = 2; ii < id.length(); ii++)
+        {
+            int digit = id.charAt(ii) - '0';
+            if (digit < 0 || digit > 9 || rsNumber > (Long.MAX_VALUE - digit) / 10)
+            {
+                return -1;
+            }
+            rsNumber = rsNumber * 10 + digit;
+        }
+        return rsNumber > 0 ? rsNumber : -1;
+    }
+
+    private static long hash(long key)
+    {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 29);
+    }
+
+    private long getKey(long slot)
+    {
+        return this.segments[(int) (slot >>> SEGMENT_SHIFT)].get((int) (slot & (SEGMENT_SIZE - 1)) << 1);
+    }
+
+    private long getHandle(long slot)
+    {
+        return this.segments[(int) (slot >>> SEGMENT_SHIFT)].get(((int) (slot & (SEGMENT_SIZE - 1)) << 1) + 1);
+    }
+
+    private void setSlot(long slot, long key, long handle)
+    {
+        int index = (int) (slot & (SEGMENT_SIZE - 1)) << 1;
+        this.segments[(int) (slot >>> SEGMENT_SHIFT)].put(index, key)
+                                                       .put(index + 1, handle);
+    }
+
+    /**
+     * Adds the given handle for the given rs number. Adding the same rs number multiple times keeps all handles.
+     * 
+     * @param rsNumber
+     *            must be greater than zero
+     * @param handle
+     * @return this
+     */
+    public RsIdIndex put(long rsNumber, long handle)
+    {
+        if (rsNumber <= EMPTY)
+        {
+            throw new IllegalArgumentException("Rs number must be greater than zero: " + rsNumber);
+        }
+        if (this.size >= this.capacity - 1)
+        {
+            throw new IllegalStateException("Rs id index capacity of " + this.capacity + " slots is exhausted");
+        }
+        long slot = hash(rsNumber) & this.mask;
+        while (this.getKey(slot) != EMPTY)
+        {
+            slot = (slot + 1) & this.mask;
+        }
+        this.setSlot(slot, rsNumber, handle);
+        this.size++;
+        return this;
+    }
+
+    /**
+     * Returns all handles of the given rs number in the order they have been added
+     * 
+     * @param rsNumber
+     * @return
+     */
+    public long[] get(long rsNumber)
+    {
+        long[] handles = new long[1];
+        int numberOfHandles = 0;
+        if (rsNumber > EMPTY)
+        {
+            long slot = hash(rsNumber) & this.mask;
+            long key;
+            while ((key = this.getKey(slot)) != EMPTY)
+            {
+                if (key == rsNumber)
+                {
+                    if (numberOfHandles == handles.length)
+                    {
+                        handles = Arrays.copyOf(handles, numberOfHandles * 2);
+                    }
+                    handles[numberOfHandles++] = this.getHandle(slot);
+                }
+                slot = (slot + 1) & this.mask;
+            }
+        }
+        return numberOfHandles == handles.length ? handles : Arrays.copyOf(handles, numberOfHandles);
+    }
+
+    /**
+     * Similar to {@link #get(long)} for an id like 'rs123'. Returns an empty array if the id is no rs id.
+     * 
+     * @see #parseRsNumber(String)
+     * @param id
+     * @return
+     */
+    public long[] get(String id)
+    {
+        return this.get(parseRsNumber(id));
+    }
+
+    /**
+     * Returns the number of entries
+     * 
+     * @return
+     */
+    public long size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Writes the number of entries and all modified slots back to the index file, if the index was created with {@link #create(File, long)}
+     */
+    @Override
+    public void close()
+    {
+        if (this.header != null)
+        {
+            for (MappedByteBuffer segment : this.mappedSegments)
+            {
+                segment.force();
+            }
+            this.header.putLong(24, this.size);
+            this.header.force();
+        }
+    }
+}
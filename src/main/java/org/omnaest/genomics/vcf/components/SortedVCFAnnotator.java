@@ -0,0 +1,328 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+/**
+ * Annotates coordinate sorted {@link VCFRecord}s with the ID and selected INFO fields of a coordinate sorted reference, like dbSNP or ClinVar, by
+ * a single pass merge join. Only the reference records of the current position are held in memory.<br>
+ * <br>
+ * A reference record matches a record, if contig, position and REF are equal and all ALT alleles of the record are ALT alleles of the reference
+ * record. The IDs of all matching reference records are added to the ID of the record and the selected INFO keys are copied, where values of the
+ * record are overwritten. Records without a matching reference record are returned unmodified.<br>
+ * <br>
+ * Values of INFO keys which are declared as Number=A or Number=R by {@link #withInfoNumbers(Supplier)} are reduced to the values of the ALT
+ * alleles of the record, in the order of its ALT alleles. Number=G values are only copied if the ALT alleles of the record and the reference
+ * record are equal, and per allele values which do not fit the number of reference ALT alleles are not copied at all. Values of all other INFO
+ * keys are copied unchanged.
+ * 
+ * @author omnaest
+ */
+public class SortedVCFAnnotator
+{
+    private static final String MISSING = ".";
+
+    private final Supplier<? extends Comparator<String>> contigOrder;
+    private final Set<String>                            infoKeys;
+    private final boolean                                copyId;
+    private VariantBloomFilter                           prefilter;
+    private Supplier<Map<String, String>>                infoNumbers = Collections::emptyMap;
+    private Map<String, String>                          resolvedInfoNumbers;
+
+    /**
+     * @param contigOrder
+     *            is resolved when the first record is annotated, so it can depend on the header of a streamed source
+     * @param infoKeys
+     *            INFO keys which are copied from the reference
+     * @param copyId
+     *            if true the IDs of the reference are added
+     */
+    public SortedVCFAnnotator(Supplier<? extends Comparator<String>> contigOrder, Collection<String> infoKeys, boolean copyId)
+    {
+        super();
+        this.contigOrder = contigOrder;
+        this.infoKeys = new LinkedHashSet<>(infoKeys);
+        this.copyId = copyId;
+    }
+
+    /**
+     * Records which are definitely not contained in the given {@link VariantBloomFilter} of the reference are returned unmodified without
+     * consulting the reference. Their sort order is not validated.
+     * 
+     * @param prefilter
+     * @return this
+     */
+    public SortedVCFAnnotator withPrefilter(VariantBloomFilter prefilter)
+    {
+        this.prefilter = prefilter;
+        return this;
+    }
+
+    /**
+     * Defines the Number of the INFO keys of the reference, like 'A', 'R', 'G', '1' or '.', as declared by its ##INFO header lines
+     * 
+     * @param infoNumbers
+     *            is resolved when the first matching reference record is found, so it can depend on the header of a streamed reference
+     * @return this
+     */
+    public SortedVCFAnnotator withInfoNumbers(Supplier<Map<String, String>> infoNumbers)
+    {
+        this.infoNumbers = infoNumbers;
+        return this;
+    }
+
+    /**
+     * Returns the lazily annotated {@link VCFRecord}s. Closing the returned {@link Stream} closes the reference {@link Stream} as well.
+     * 
+     * @param records
+     * @param reference
+     * @return
+     * @throws IllegalStateException
+     *             while reading, if one of the {@link Stream}s is not coordinate sorted
+     */
+    public Stream<VCFRecord> annotate(Stream<VCFRecord> records, Stream<VCFRecord> reference)
+    {
+        ReferenceCursor cursor = new ReferenceCursor(reference.iterator());
+        VariantBloomFilter prefilter = this.prefilter;
+        return records.map(record -> prefilter != null && !prefilter.mightContain(record) ? record
+                : this.annotate(record, cursor.getRecordsAt(record)))
+                      .onClose(reference::close);
+    }
+
+    private class ReferenceCursor
+    {
+        private final Iterator<VCFRecord> iterator;
+        private Comparator<String>        contigOrder;
+        private VCFRecord                 next;
+        private List<VCFRecord>           current         = new ArrayList<>();
+        private String                    currentContig   = null;
+        private long                      currentPosition = -1;
+
+        public ReferenceCursor(Iterator<VCFRecord> iterator)
+        {
+            super();
+            this.iterator = iterator;
+        }
+
+        /**
+         * Returns the reference {@link VCFRecord}s at the contig and position of the given {@link VCFRecord}
+         * 
+         * @param record
+         * @return
+         */
+        public List<VCFRecord> getRecordsAt(VCFRecord record)
+        {
+            if (this.contigOrder == null)
+            {
+                this.contigOrder = SortedVCFAnnotator.this.contigOrder.get();
+                this.next = this.iterator.hasNext() ? this.iterator.next() : null;
+            }
+
+            String contig = record.getChromosome();
+            long position = record.getPositionAsLong();
+            if (this.currentContig != null)
+            {
+                int comparison = this.compare(contig, position, this.currentContig, this.currentPosition);
+                if (comparison == 0)
+                {
+                    return this.current;
+                }
+                else if (comparison < 0)
+                {
+                    throw new IllegalStateException("VCF records are not coordinate sorted at " + contig + ":" + record.getPosition());
+                }
+            }
+
+            this.currentContig = contig;
+            this.currentPosition = position;
+            this.current = new ArrayList<>();
+            while (this.next != null)
+            {
+                int comparison = this.compare(this.next.getChromosome(), this.next.getPositionAsLong(), contig, position);
+                if (comparison > 0)
+                {
+                    break;
+                }
+                if (comparison == 0)
+                {
+                    this.current.add(this.next);
+                }
+                this.advance();
+            }
+            return this.current;
+        }
+
+        private void advance()
+        {
+            VCFRecord previous = this.next;
+            this.next = this.iterator.hasNext() ? this.iterator.next() : null;
+            if (this.next != null && this.compare(this.next.getChromosome(), this.next.getPositionAsLong(), previous.getChromosome(),
+                                                  previous.getPositionAsLong()) < 0)
+            {
+                throw new IllegalStateException("Reference VCF records are not coordinate sorted at " + this.next.getChromosome() + ":"
+                        + this.next.getPosition());
+            }
+        }
+
+        private int compare(String contig1, long position1, String contig2, long position2)
+        {
+            int comparison = this.contigOrder.compare(contig1, contig2);
+            return comparison != 0 ? comparison : Long.compare(position1, position2);
+        }
+    }
+
+    private VCFRecord annotate(VCFRecord record, List<VCFRecord> referenceRecords)
+    {
+        if (referenceRecords.isEmpty())
+        {
+            return record;
+        }
+        List<String> alternativeAlleles = splitAlleles(record.getAlternativeAlleles());
+        List<VCFRecord> matchingRecords = new ArrayList<>();
+        for (VCFRecord referenceRecord : referenceRecords)
+        {
+            if (StringUtils.equalsIgnoreCase(record.getReference(), referenceRecord.getReference())
+                    && splitAlleles(referenceRecord.getAlternativeAlleles()).containsAll(alternativeAlleles))
+            {
+                matchingRecords.add(referenceRecord);
+            }
+        }
+        if (matchingRecords.isEmpty())
+        {
+            return record;
+        }
+
+        String id = record.getId();
+        if (this.copyId)
+        {
+            Set<String> ids = new LinkedHashSet<>(splitIds(record.getId()));
+            matchingRecords.forEach(referenceRecord -> ids.addAll(splitIds(referenceRecord.getId())));
+            id = ids.isEmpty() ? MISSING : String.join(VCFRecord.SEMICOLON, ids);
+        }
+
+        String info = record.getInfo();
+        if (!this.infoKeys.isEmpty())
+        {
+            Map<String, String> keyToValue = MISSING.equals(info) ? new LinkedHashMap<>() : record.parseInfo();
+            boolean modified = false;
+            if (this.resolvedInfoNumbers == null)
+            {
+                this.resolvedInfoNumbers = this.infoNumbers.get();
+            }
+            for (VCFRecord referenceRecord : matchingRecords)
+            {
+                Map<String, String> referenceInfo = referenceRecord.parseInfo();
+                List<String> referenceAlternativeAlleles = splitAlleles(referenceRecord.getAlternativeAlleles());
+                for (String infoKey : this.infoKeys)
+                {
+                    if (referenceInfo.containsKey(infoKey))
+                    {
+                        String value = determineAlleleValue(referenceInfo.get(infoKey), this.resolvedInfoNumbers.get(infoKey),
+                                                                 referenceAlternativeAlleles, alternativeAlleles);
+                        if (value != null || referenceInfo.get(infoKey) == null)
+                        {
+                            keyToValue.put(infoKey, value);
+                            modified = true;
+                        }
+                    }
+                }
+            }
+            if (modified)
+            {
+                info = keyToValue.entrySet()
+                                 .stream()
+                                 .map(keyAndValue -> keyAndValue.getValue() != null ? keyAndValue.getKey() + "=" + keyAndValue.getValue()
+                                         : keyAndValue.getKey())
+                                 .collect(Collectors.joining(VCFRecord.SEMICOLON));
+            }
+        }
+
+        VCFRecord annotatedRecord = new VCFRecord(record.getChromosome(), record.getPosition(), id, record.getReference(),
+                                                  record.getAlternativeAlleles(), record.getQuality(), record.getFilter(), info, record.getFormat(),
+                                                  record.getSampleFields());
+        return record.getSource() != null ? annotatedRecord.withSource(record.getSource()) : annotatedRecord;
+    }
+
+    /**
+     * Returns the INFO value of a reference record reduced to the given ALT alleles of the record, or null if it can not be assigned to them
+     */
+    private static String determineAlleleValue(String value, String number, List<String> referenceAlternativeAlleles, List<String> alternativeAlleles)
+    {
+        if (value == null || number == null || referenceAlternativeAlleles.equals(alternativeAlleles))
+        {
+            return value;
+        }
+        else if ("G".equals(number))
+        {
+            return null;
+        }
+
+        boolean isPerAltAllele = "A".equals(number);
+        boolean isPerAllele = "R".equals(number);
+        if (!isPerAltAllele && !isPerAllele)
+        {
+            return value;
+        }
+
+        String[] values = StringUtils.splitPreserveAllTokens(value, ',');
+        int offset = isPerAllele ? 1 : 0;
+        if (values.length != referenceAlternativeAlleles.size() + offset)
+        {
+            return null;
+        }
+        List<String> alleleValues = new ArrayList<>();
+        if (isPerAllele)
+        {
+            alleleValues.add(values[0]);
+        }
+        for (String alternativeAllele : alternativeAlleles)
+        {
+            alleleValues.add(values[offset + referenceAlternativeAlleles.indexOf(alternativeAllele)]);
+        }
+        return String.join(",", alleleValues);
+    }
+
+    private static List<String> splitAlleles(String alleles)
+    {
+        return Arrays.stream(StringUtils.split(StringUtils.defaultString(alleles), ','))
+                     .map(StringUtils::upperCase)
+                     .collect(Collectors.toList());
+    }
+
+    private static List<String> splitIds(String ids)
+    {
+        return Arrays.stream(StringUtils.split(StringUtils.defaultString(ids), ';'))
+                     .filter(id -> !MISSING.equals(id))
+                     .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,313 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.commons.lang3.StringUtils;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+/**
+ * Streaming k-way merge of coordinate sorted {@link VCFRecord} sources. The current head record of each source is kept within a heap ordered by
+ * {@link ContigOrder} and position, so the memory is proportional to the number of sources and not to the size of the data.<br>
+ * <br>
+ * Optionally identical sites, which have the same contig, position, REF and ALT, are collapsed into a single multi sample {@link VCFRecord}. Its
+ * FORMAT is the union of the FORMAT keys of the collapsed records and it contains a sample field for each of the given sample names, where
+ * samples without a value are set to '.'.
+ * 
+ * @author omnaest
+ */
+public class SortedVCFMerger
+{
+    private static final String MISSING = ".";
+
+    private final Supplier<? extends Comparator<String>> contigOrder;
+
+    private boolean                collapseSites = false;
+    private Supplier<List<String>> sampleNames   = () -> null;
+
+    public SortedVCFMerger(Comparator<String> contigOrder)
+    {
+        this(() -> contigOrder);
+    }
+
+    /**
+     * @param contigOrder
+     *            is resolved after the first record of all sources has been read, so it can depend on the header of a streamed source
+     */
+    public SortedVCFMerger(Supplier<? extends Comparator<String>> contigOrder)
+    {
+        super();
+        this.contigOrder = contigOrder;
+    }
+
+    /**
+     * Enables collapsing of identical sites. The given sample names {@link Supplier} is resolved after the first record of all sources has been
+     * read and defines the order of the sample fields of collapsed records.
+     * 
+     * @param sampleNames
+     * @return
+     */
+    public SortedVCFMerger withCollapsedSites(Supplier<List<String>> sampleNames)
+    {
+        this.collapseSites = true;
+        this.sampleNames = sampleNames;
+        return this;
+    }
+
+    private static class Head
+    {
+        private final int                 sourceIndex;
+        private final Iterator<VCFRecord> iterator;
+        private VCFRecord                 record;
+        private long                      position;
+
+        public Head(int sourceIndex, Iterator<VCFRecord> iterator)
+        {
+            super();
+            this.sourceIndex = sourceIndex;
+            this.iterator = iterator;
+        }
+
+        /**
+         * Moves to the next {@link VCFRecord} of the source and returns true if one is available
+         * 
+         * @param contigOrder
+         *            is only used from the second {@link VCFRecord} on and can be null for the first one
+         * @return
+         * @throws IllegalStateException
+         *             if the source is not coordinate sorted
+         */
+        public boolean advance(Comparator<String> contigOrder)
+        {
+            if (this.iterator.hasNext())
+            {
+                VCFRecord previous = this.record;
+                this.record = this.iterator.next();
+                long previousPosition = this.position;
+                this.position = this.record.getPositionAsLong();
+                if (previous != null)
+                {
+                    int contigComparison = contigOrder.compare(previous.getChromosome(), this.record.getChromosome());
+                    if (contigComparison > 0 || (contigComparison == 0 && previousPosition > this.position))
+                    {
+                        throw new IllegalStateException("VCF source " + this.sourceIndex + " is not coordinate sorted at " + this.record.getChromosome()
+                                + ":" + this.record.getPosition());
+                    }
+                }
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Merges the given coordinate sorted sources lazily into a single coordinate sorted {@link Stream}. Closing the returned {@link Stream} closes
+     * all sources.
+     * 
+     * @param sources
+     * @return
+     * @throws IllegalStateException
+     *             while reading, if a source is not coordinate sorted
+     */
+    public Stream<VCFRecord> merge(List<Stream<VCFRecord>> sources)
+    {
+        Iterator<VCFRecord> iterator = new Iterator<VCFRecord>()
+        {
+            private Comparator<String>  contigOrder;
+            private PriorityQueue<Head> heap;
+            private List<VCFRecord>     collapsedRecords = new ArrayList<>();
+            private int                 collapsedIndex   = 0;
+            private List<String>        sampleNames;
+
+            private PriorityQueue<Head> getHeap()
+            {
+                if (this.heap == null)
+                {
+                    List<Head> heads = new ArrayList<>();
+                    for (int ii = 0; ii < sources.size(); ii++)
+                    {
+                        Head head = new Head(ii, sources.get(ii)
+                                                        .iterator());
+                        if (head.advance(null))
+                        {
+                            heads.add(head);
+                        }
+                    }
+                    this.contigOrder = SortedVCFMerger.this.contigOrder.get();
+                    this.heap = new PriorityQueue<>(Math.max(1, sources.size()),
+                                                    Comparator.<Head, String>comparing(head -> head.record.getChromosome(), this.contigOrder)
+                                                              .thenComparingLong(head -> head.position)
+                                                              .thenComparingInt(head -> head.sourceIndex));
+                    this.heap.addAll(heads);
+                    this.sampleNames = SortedVCFMerger.this.sampleNames.get();
+                }
+                return this.heap;
+            }
+
+            @Override
+            public boolean hasNext()
+            {
+                return this.collapsedIndex < this.collapsedRecords.size() || !this.getHeap()
+                                                                                  .isEmpty();
+            }
+
+            @Override
+            public VCFRecord next()
+            {
+                if (!this.hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                if (!SortedVCFMerger.this.collapseSites)
+                {
+                    return this.poll();
+                }
+                if (this.collapsedIndex >= this.collapsedRecords.size())
+                {
+                    this.collapsedRecords = this.pollCollapsedPosition();
+                    this.collapsedIndex = 0;
+                }
+                return this.collapsedRecords.get(this.collapsedIndex++);
+            }
+
+            private VCFRecord poll()
+            {
+                Head head = this.heap.poll();
+                VCFRecord record = head.record;
+                if (head.advance(this.contigOrder))
+                {
+                    this.heap.add(head);
+                }
+                return record;
+            }
+
+            /**
+             * Polls all records at the next position of all sources and collapses them by REF and ALT
+             * 
+             * @return
+             */
+            private List<VCFRecord> pollCollapsedPosition()
+            {
+                VCFRecord first = this.poll();
+                Map<String, List<VCFRecord>> siteToRecords = new LinkedHashMap<>();
+                siteToRecords.computeIfAbsent(first.getReference() + "\t" + first.getAlternativeAlleles(), site -> new ArrayList<>())
+                             .add(first);
+                while (!this.heap.isEmpty() && this.heap.peek().position == first.getPositionAsLong()
+                        && this.contigOrder.compare(this.heap.peek().record.getChromosome(), first.getChromosome()) == 0)
+                {
+                    VCFRecord record = this.poll();
+                    siteToRecords.computeIfAbsent(record.getReference() + "\t" + record.getAlternativeAlleles(), site -> new ArrayList<>())
+                                 .add(record);
+                }
+                return siteToRecords.values()
+                                    .stream()
+                                    .map(records -> collapse(records, this.sampleNames))
+                                    .collect(Collectors.toList());
+            }
+        };
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                            .onClose(() -> sources.forEach(Stream::close));
+    }
+
+    /**
+     * Collapses the {@link VCFRecord}s of an identical site into a single multi sample {@link VCFRecord}
+     * 
+     * @param records
+     * @param sampleNames
+     * @return
+     */
+    private static VCFRecord collapse(List<VCFRecord> records, List<String> sampleNames)
+    {
+        VCFRecord first = records.get(0);
+
+        Set<String> ids = new LinkedHashSet<>();
+        List<String> formatKeys = new ArrayList<>();
+        for (VCFRecord record : records)
+        {
+            ids.addAll(record.getIds());
+            for (String formatKey : StringUtils.split(StringUtils.defaultString(record.getFormat()), ':'))
+            {
+                if (!formatKeys.contains(formatKey))
+                {
+                    formatKeys.add(formatKey);
+                }
+            }
+        }
+        String quality = records.stream()
+                                .map(VCFRecord::getQuality)
+                                .filter(value -> StringUtils.isNotBlank(value) && !MISSING.equals(value))
+                                .findFirst()
+                                .orElse(first.getQuality());
+
+        Map<String, String> sampleToField = new LinkedHashMap<>();
+        for (VCFRecord record : records)
+        {
+            if (record.getSampleFields() != null)
+            {
+                List<String> recordFormatKeys = Arrays.asList(StringUtils.split(StringUtils.defaultString(record.getFormat()), ':'));
+                record.getSampleFields()
+                      .forEach((sampleName, field) -> sampleToField.putIfAbsent(sampleName, reformat(field, recordFormatKeys, formatKeys)));
+            }
+        }
+        Map<String, String> sampleFields = sampleToField;
+        if (sampleNames != null)
+        {
+            sampleFields = new LinkedHashMap<>();
+            for (String sampleName : sampleNames)
+            {
+                sampleFields.put(sampleName, sampleToField.getOrDefault(sampleName, MISSING));
+            }
+        }
+
+        return new VCFRecord(first.getChromosome(), first.getPosition(), ids.isEmpty() ? MISSING : String.join(VCFRecord.SEMICOLON, ids),
+                             first.getReference(), first.getAlternativeAlleles(), quality, first.getFilter(), first.getInfo(),
+                             formatKeys.isEmpty() ? null : String.join(":", formatKeys), sampleFields);
+    }
+
+    private static String reformat(String field, List<String> recordFormatKeys, List<String> formatKeys)
+    {
+        if (recordFormatKeys.equals(formatKeys))
+        {
+            return field;
+        }
+        String[] values = StringUtils.splitPreserveAllTokens(field, ':');
+        return formatKeys.stream()
+                         .map(formatKey ->
+                         {
+                             int index = recordFormatKeys.indexOf(formatKey);
+                             return index >= 0 && values != null && index < values.length ? values[index] : MISSING;
+                         })
+                         .collect(Collectors.joining(":"));
+    }
+}
@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Reactive Streams {@link Publisher} of the elements of a single pass {@link Stream}. The {@link Stream} is opened on subscription and is only
+ * advanced according to the requested demand. Emission runs as tasks on the given {@link Executor}, where a single task emits at most
+ * {@link #DEFAULT_MAX_ELEMENTS_PER_TASK} elements before it reschedules itself, so multiple publishers can share a small thread pool.<br>
+ * <br>
+ * Completion is signaled as soon as the demand is fulfilled and the {@link Stream} has no further element, which reads ahead by at most one
+ * element. Since the underlying {@link Stream} can only be consumed once, only a single {@link Subscriber} is supported.
+ * 
+ * @author omnaest
+ * @param <T>
+ */
+public class StreamPublisher<T> implements Publisher<T>
+{
+    public static final int DEFAULT_MAX_ELEMENTS_PER_TASK = 1024;
+
+    private final Supplier<Stream<T>> streamSupplier;
+    private final Executor            executor;
+    private final int                 maxElementsPerTask;
+    private final AtomicBoolean       subscribed = new AtomicBoolean();
+
+    public StreamPublisher(Supplier<Stream<T>> streamSupplier, Executor executor)
+    {
+        this(streamSupplier, executor, DEFAULT_MAX_ELEMENTS_PER_TASK);
+    }
+
+    public StreamPublisher(Supplier<Stream<T>> streamSupplier, Executor executor, int maxElementsPerTask)
+    {
+        super();
+        this.streamSupplier = streamSupplier;
+        this.executor = executor;
+        this.maxElementsPerTask = Math.max(1, maxElementsPerTask);
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber)
+    {
+        if (subscriber == null)
+        {
+            throw new NullPointerException("Subscriber must not be null");
+        }
+
+        if (!this.subscribed.compareAndSet(false, true))
+        {
+            subscriber.onSubscribe(new Subscription()
+            {
+                @Override
+                public void request(long n)
+                {
+                }
+
+                @Override
+                public void cancel()
+                {
+                }
+            });
+            subscriber.onError(new IllegalStateException("Only a single subscriber is supported"));
+            return;
+        }
+
+        subscriber.onSubscribe(new StreamSubscription(subscriber));
+    }
+
+    private class StreamSubscription implements Subscription, Runnable
+    {
+        private final Subscriber<? super T> subscriber;
+        private final AtomicLong            demand         = new AtomicLong();
+        private final AtomicInteger         workInProgress = new AtomicInteger();
+
+        private volatile boolean   cancelled  = false;
+        private volatile Throwable error;
+        private boolean            terminated = false;
+        private Stream<T>          stream;
+        private Iterator<T>        iterator;
+
+        public StreamSubscription(Subscriber<? super T> subscriber)
+        {
+            super();
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n)
+        {
+            if (n <= 0)
+            {
+                this.terminateWithError(new IllegalArgumentException("Requested demand must be positive: " + n));
+                return;
+            }
+
+            this.demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            this.schedule();
+        }
+
+        @Override
+        public void cancel()
+        {
+            this.cancelled = true;
+            this.schedule();
+        }
+
+        public void terminateWithError(Throwable error)
+        {
+            this.error = error;
+            this.cancelled = true;
+            this.schedule();
+        }
+
+        private void schedule()
+        {
+            if (this.workInProgress.getAndIncrement() == 0)
+            {
+                StreamPublisher.this.executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            int missed = 1;
+            do
+            {
+                if (!this.terminated)
+                {
+                    boolean rescheduled = this.emit();
+                    if (rescheduled)
+                    {
+                        return;
+                    }
+                }
+                missed = this.workInProgress.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * Emits elements according to the current demand and returns true if a new task has been scheduled to continue the emission
+         * 
+         * @return
+         */
+        private boolean emit()
+        {
+            try
+            {
+                if (this.cancelled)
+                {
+                    Throwable error = this.error;
+                    this.terminate();
+                    if (error != null)
+                    {
+                        this.subscriber.onError(error);
+                    }
+                    return false;
+                }
+
+                if (this.iterator == null)
+                {
+                    this.stream = StreamPublisher.this.streamSupplier.get();
+                    this.iterator = this.stream.iterator();
+                }
+
+                int emitted = 0;
+                while (this.demand.get() > 0 && !this.cancelled)
+                {
+                    if (!this.iterator.hasNext())
+                    {
+                        this.terminate();
+                        this.subscriber.onComplete();
+                        return false;
+                    }
+                    if (emitted >= StreamPublisher.this.maxElementsPerTask)
+                    {
+                        StreamPublisher.this.executor.execute(this);
+                        return true;
+                    }
+
+                    T element = this.iterator.next();
+                    this.demand.decrementAndGet();
+                    emitted++;
+                    this.subscriber.onNext(element);
+                }
+
+                if (this.cancelled)
+                {
+                    return this.emit();
+                }
+                else if (this.demand.get() == 0 && !this.iterator.hasNext())
+                {
+                    this.terminate();
+                    this.subscriber.onComplete();
+                }
+                return false;
+            }
+            catch (Throwable e)
+            {
+                this.terminate();
+                this.subscriber.onError(e);
+                return false;
+            }
+        }
+
+        private void terminate()
+        {
+            this.terminated = true;
+            this.cancelled = true;
+            if (this.stream != null)
+            {
+                this.stream.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.omnaest.genomics.translator.domain.CodeAndPosition;
+import org.omnaest.genomics.translator.domain.NucleicAcidCode;
+import org.omnaest.genomics.vcf.domain.VCFData.ConflictReport;
+import org.omnaest.genomics.vcf.domain.VCFData.GenomeApplicator.AlleleSpecificGenomeApplicator;
+import org.omnaest.genomics.vcf.domain.VCFData.GenomeApplicator.HaplotypeCodes;
+import org.omnaest.genomics.vcf.domain.VCFData.GenomeApplicator.HaplotypeGenomeApplicator;
+import org.omnaest.genomics.vcf.domain.VCFData.Replacements;
+import org.omnaest.genomics.vcf.domain.VCFData.StreamingGenomeApplicator;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+import org.omnaest.utils.ConsumerUtils;
+import org.omnaest.utils.PatternUtils;
+import org.omnaest.utils.element.bi.BiElement;
+
+/**
+ * {@link StreamingGenomeApplicator} which merges a coordinate sorted {@link Stream} of {@link VCFRecord}s with the reference sequence in lockstep.
+ * Only the {@link Replacements} of records which overlap the current reference position are held in memory.
+ * 
+ * @author omnaest
+ */
+public class StreamingGenomeApplicatorImpl implements StreamingGenomeApplicator
+{
+    private static final Pattern CONTIG_ID_PATTERN = Pattern.compile("ID\\=([^,\\>]+)");
+
+    private final Iterator<VCFRecord>    records;
+    private final Supplier<List<String>> contigs;
+    private final Set<String>            appliedChromosomes = new HashSet<>();
+    private final ConflictCollector      conflictCollector  = new ConflictCollector();
+    private List<String>                 chromosomeOrder;
+    private VCFRecord                    nextRecord;
+    private String                       nextRecordChromosome;
+
+    /**
+     * @param records
+     *            coordinate sorted {@link VCFRecord}s
+     * @param contigs
+     *            {@link Supplier} of the ##contig header values, which define the chromosome order. The {@link Supplier} is resolved lazily after the
+     *            first record has been read.
+     */
+    public StreamingGenomeApplicatorImpl(Stream<VCFRecord> records, Supplier<List<String>> contigs)
+    {
+        super();
+        this.records = records.iterator();
+        this.contigs = contigs;
+    }
+
+    @Override
+    public AlleleSpecificGenomeApplicator usingPrimaryAllele()
+    {
+        return this.usingAllele(0);
+    }
+
+    @Override
+    public AlleleSpecificGenomeApplicator usingSecondaryAllele()
+    {
+        return this.usingAllele(1);
+    }
+
+    @Override
+    public AlleleSpecificGenomeApplicator usingAllele(int allele)
+    {
+        return new AlleleSpecificGenomeApplicator()
+        {
+            @Override
+            public Stream<NucleicAcidCode> applyToChromosomeSequence(String chromosome, Stream<NucleicAcidCode> sequence)
+            {
+                AtomicLong position = new AtomicLong(1);
+                return this.applyToChromosomeCodeAndPositionSequence(chromosome, sequence.map(code -> new CodeAndPosition<>(code, position.getAndIncrement())))
+                           .map(cap -> cap.getCode());
+            }
+
+            @Override
+            public Stream<CodeAndPosition<NucleicAcidCode>> applyToChromosomeCodeAndPositionSequence(String chromosome,
+                                                                                                     Stream<CodeAndPosition<NucleicAcidCode>> sequence)
+            {
+                String normalizedChromosome = VCFRecord.normalizeChromosome(chromosome);
+                AtomicLong position = new AtomicLong(-1);
+                return StreamingGenomeApplicatorImpl.this.joinWithReplacements(chromosome,
+                                                                               sequence.peek(ConsumerUtils.consumeOnce(code ->
+                                                                               {
+                                                                                   if (position.get() < 0)
+                                                                                   {
+                                                                                       position.set(Math.max(1, code.getPosition()));
+                                                                                   }
+                                                                               })), GenomeApplicatorImpl::addReplacements)
+                                                         .flatMap(codeAndReplacements ->
+                                                         {
+                                                             CodeAndPosition<NucleicAcidCode> code = codeAndReplacements.getFirst();
+                                                             List<NucleicAcidCode> codes = GenomeApplicatorImpl.resolveCodes(normalizedChromosome, allele, code.getCode(),
+                                                                                                                             code.getPosition(),
+                                                                                                                             codeAndReplacements.getSecond(),
+                                                                                                                             StreamingGenomeApplicatorImpl.this.conflictCollector);
+                                                             return codes.stream()
+                                                                         .map(c -> new CodeAndPosition<>(c, position.getAndIncrement()));
+                                                         });
+            }
+        };
+    }
+
+    @Override
+    public HaplotypeGenomeApplicator usingHaplotypes()
+    {
+        return this.usingHaplotypes(null);
+    }
+
+    @Override
+    public HaplotypeGenomeApplicator usingHaplotypes(String sample)
+    {
+        return new HaplotypeGenomeApplicator()
+        {
+            @Override
+            public Stream<HaplotypeCodes> applyToChromosomeSequence(String chromosome, Stream<NucleicAcidCode> sequence)
+            {
+                AtomicLong position = new AtomicLong(1);
+                return this.applyToChromosomeCodeAndPositionSequence(chromosome, sequence.map(code -> new CodeAndPosition<>(code, position.getAndIncrement())));
+            }
+
+            @Override
+            public Stream<HaplotypeCodes> applyToChromosomeCodeAndPositionSequence(String chromosome, Stream<CodeAndPosition<NucleicAcidCode>> sequence)
+            {
+                String normalizedChromosome = VCFRecord.normalizeChromosome(chromosome);
+                return StreamingGenomeApplicatorImpl.this.joinWithReplacements(chromosome, sequence,
+                                                                               (positionToReplacements, record) -> GenomeApplicatorImpl.addHaplotypeReplacements(positionToReplacements,
+                                                                                                                                                                 normalizedChromosome,
+                                                                                                                                                                 record,
+                                                                                                                                                                 sample,
+                                                                                                                                                                 StreamingGenomeApplicatorImpl.this.conflictCollector))
+                                                         .map(codeAndReplacements -> GenomeApplicatorImpl.resolveHaplotypeCodes(normalizedChromosome,
+                                                                                                                                codeAndReplacements.getFirst()
+                                                                                                                                                   .getCode(),
+                                                                                                                                codeAndReplacements.getFirst()
+                                                                                                                                                   .getPosition(),
+                                                                                                                                codeAndReplacements.getSecond(),
+                                                                                                                                StreamingGenomeApplicatorImpl.this.conflictCollector));
+            }
+
+            @Override
+            public void applyToChromosomeSequence(String chromosome, Stream<NucleicAcidCode> sequence, Consumer<NucleicAcidCode> firstHaplotype,
+                                                  Consumer<NucleicAcidCode> secondHaplotype)
+            {
+                this.applyToChromosomeSequence(chromosome, sequence)
+                    .forEach(codes ->
+                    {
+                        codes.getCodes(0)
+                             .forEach(firstHaplotype);
+                        codes.getCodes(1)
+                             .forEach(secondHaplotype);
+                    });
+            }
+        };
+    }
+
+    @Override
+    public ConflictReport getConflictReport()
+    {
+        return this.conflictCollector.toReport();
+    }
+
+    /**
+     * Pairs each reference code with the {@link Replacements} at its position. The records are read from the underlying {@link Stream} as soon as
+     * the reference sequence reaches their position and the {@link Replacements} are dropped after the reference sequence has passed them.
+     * 
+     * @param chromosome
+     * @param sequence
+     * @param recordToReplacements
+     * @return
+     */
+    private Stream<BiElement<CodeAndPosition<NucleicAcidCode>, Replacements>> joinWithReplacements(String chromosome,
+                                                                                                   Stream<CodeAndPosition<NucleicAcidCode>> sequence,
+                                                                                                   BiConsumer<Map<Long, Replacements>, VCFRecord> recordToReplacements)
+    {
+        String normalizedChromosome = VCFRecord.normalizeChromosome(chromosome);
+        this.skipRecordsBefore(normalizedChromosome);
+        this.appliedChromosomes.add(normalizedChromosome);
+
+        TreeMap<Long, Replacements> positionToReplacements = new TreeMap<>();
+        AtomicLong lastRecordPosition = new AtomicLong(Long.MIN_VALUE);
+        return sequence.map(code ->
+        {
+            long position = code.getPosition();
+            while (this.hasNextRecord() && StringUtils.equals(normalizedChromosome, this.nextRecordChromosome)
+                    && this.nextRecord.getPositionAsLong() <= position)
+            {
+                VCFRecord record = this.pollNextRecord();
+                long recordPosition = record.getPositionAsLong();
+                if (recordPosition < lastRecordPosition.get())
+                {
+                    throw new IllegalStateException("VCF records are not sorted by position: " + record.getChromosome() + ":" + recordPosition + " after "
+                            + lastRecordPosition.get());
+                }
+                lastRecordPosition.set(recordPosition);
+                recordToReplacements.accept(positionToReplacements, record);
+            }
+
+            while (!positionToReplacements.isEmpty() && positionToReplacements.firstKey() < position)
+            {
+                positionToReplacements.pollFirstEntry();
+            }
+            return BiElement.of(code, positionToReplacements.get(position));
+        });
+    }
+
+    /**
+     * Skips all records of already applied chromosomes and, if a ##contig order is available, of chromosomes ordered before the given one
+     * 
+     * @param normalizedChromosome
+     * @throws IllegalStateException
+     *             if the next record belongs to another chromosome which is not applied yet and cannot be ordered relative to the given one, since
+     *             the records of the given chromosome could follow it and would otherwise be silently missed
+     */
+    private void skipRecordsBefore(String normalizedChromosome)
+    {
+        List<String> chromosomeOrder = this.getChromosomeOrder();
+        int chromosomeIndex = chromosomeOrder.indexOf(normalizedChromosome);
+        while (this.hasNextRecord())
+        {
+            String recordChromosome = this.nextRecordChromosome;
+            int recordChromosomeIndex = chromosomeOrder.indexOf(recordChromosome);
+            boolean isApplied = this.appliedChromosomes.contains(recordChromosome) && !StringUtils.equals(normalizedChromosome, recordChromosome);
+            boolean isOrderedBefore = chromosomeIndex >= 0 && recordChromosomeIndex >= 0 && recordChromosomeIndex < chromosomeIndex;
+            boolean isOrderedAfter = chromosomeIndex >= 0 && recordChromosomeIndex > chromosomeIndex;
+            if (isApplied || isOrderedBefore)
+            {
+                this.pollNextRecord();
+            }
+            else if (StringUtils.equals(normalizedChromosome, recordChromosome) || isOrderedAfter)
+            {
+                break;
+            }
+            else
+            {
+                throw new IllegalStateException("Chromosome " + normalizedChromosome + " is applied before chromosome " + recordChromosome
+                        + ", which comes first within the VCF records and is not ordered by ##contig header lines");
+            }
+        }
+    }
+
+    private List<String> getChromosomeOrder()
+    {
+        if (this.chromosomeOrder == null)
+        {
+            this.hasNextRecord();
+            this.chromosomeOrder = Optional.ofNullable(this.contigs.get())
+                                           .map(List::stream)
+                                           .orElse(Stream.empty())
+                                           .map(contig -> PatternUtils.matchToGroups(CONTIG_ID_PATTERN, contig)
+                                                                      .get(1))
+                                           .filter(StringUtils::isNotBlank)
+                                           .map(VCFRecord::normalizeChromosome)
+                                           .collect(Collectors.toList());
+        }
+        return this.chromosomeOrder;
+    }
+
+    private boolean hasNextRecord()
+    {
+        if (this.nextRecord == null && this.records.hasNext())
+        {
+            this.nextRecord = this.records.next();
+            this.nextRecordChromosome = VCFRecord.normalizeChromosome(this.nextRecord.getChromosome());
+        }
+        return this.nextRecord != null;
+    }
+
+    private VCFRecord pollNextRecord()
+    {
+        VCFRecord record = this.hasNextRecord() ? this.nextRecord : null;
+        this.nextRecord = null;
+        return record;
+    }
+}
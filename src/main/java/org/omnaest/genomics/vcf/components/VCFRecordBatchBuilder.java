@@ -0,0 +1,315 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.math.NumberUtils;
+import org.omnaest.genomics.vcf.components.parser.ColumnProjection;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+import org.omnaest.genomics.vcf.domain.VCFRecord.Column;
+import org.omnaest.genomics.vcf.domain.VCFRecordBatch;
+import org.omnaest.genomics.vcf.domain.VCFRecordBatch.ByteColumn;
+
+/**
+ * Collects {@link VCFRecord}s into columnar {@link VCFRecordBatch}es. The contig dictionary is kept across all built {@link VCFRecordBatch}es,
+ * so their contig ids are consistent.
+ * 
+ * @author omnaest
+ */
+public class VCFRecordBatchBuilder
+{
+    private static final String MISSING_VALUE            = ".";
+    private static final int    INITIAL_ARENA_SIZE_LIMIT = 1024 * 1024;
+
+    private final int   capacity;
+    private final int[] columnStarts = new int[Column.INFO.ordinal() + 1];
+    private final int[] columnEnds   = new int[Column.INFO.ordinal() + 1];
+
+    private final List<String>         contigNames  = new ArrayList<>();
+    private final Map<String, Integer> contigToId   = new HashMap<>();
+    private boolean                    contigsAdded = false;
+    private List<String>               contigNamesSnapshot;
+    private byte[]                     lastContig;
+    private int                        lastContigId;
+
+    private int               size;
+    private int[]             contigIds;
+    private long[]            positions;
+    private ByteColumnBuilder ids;
+    private ByteColumnBuilder references;
+    private ByteColumnBuilder alternativeAlleles;
+    private ByteColumnBuilder qualities;
+    private ByteColumnBuilder filters;
+    private ByteColumnBuilder infos;
+
+    public VCFRecordBatchBuilder(int capacity)
+    {
+        super();
+        if (capacity <= 0)
+        {
+            throw new IllegalArgumentException("Batch size must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.reset();
+    }
+
+    private static class ByteColumnBuilder
+    {
+        private byte[] data;
+        private int[]  offsets;
+        private int    size = 0;
+
+        public ByteColumnBuilder(int capacity, int bytesPerValue)
+        {
+            super();
+            this.data = new byte[(int) Math.min((long) capacity * bytesPerValue, INITIAL_ARENA_SIZE_LIMIT)];
+            this.offsets = new int[capacity + 1];
+        }
+
+        public void append(String value)
+        {
+            String text = value != null ? value : MISSING_VALUE;
+            int start = this.offsets[this.size];
+            int length = text.length();
+            this.ensureCapacity(start + length);
+            for (int ii = 0; ii < length; ii++)
+            {
+                char character = text.charAt(ii);
+                if (character >= 0x80)
+                {
+                    this.appendEncoded(start, text);
+                    return;
+                }
+                this.data[start + ii] = (byte) character;
+            }
+            this.offsets[++this.size] = start + length;
+        }
+
+        /**
+         * Appends the UTF-8 bytes of the given range as value, or the missing value if the range is null
+         */
+        public void append(byte[] buffer, int from, int to)
+        {
+            if (buffer == null)
+            {
+                this.append((String) null);
+                return;
+            }
+            int start = this.offsets[this.size];
+            int length = to - from;
+            this.ensureCapacity(start + length);
+            System.arraycopy(buffer, from, this.data, start, length);
+            this.offsets[++this.size] = start + length;
+        }
+
+        private void appendEncoded(int start, String text)
+        {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            this.ensureCapacity(start + bytes.length);
+            System.arraycopy(bytes, 0, this.data, start, bytes.length);
+            this.offsets[++this.size] = start + bytes.length;
+        }
+
+        private void ensureCapacity(int capacity)
+        {
+            if (capacity > this.data.length)
+            {
+                this.data = Arrays.copyOf(this.data, Math.max(capacity, this.data.length * 2));
+            }
+        }
+
+        public ByteColumn build()
+        {
+            return new ByteColumn(this.data, Arrays.copyOf(this.offsets, this.size + 1));
+        }
+    }
+
+    /**
+     * Adds the site columns of the given {@link VCFRecord}
+     * 
+     * @param record
+     * @return this
+     * @throws IllegalStateException
+     *             if the batch is already full
+     */
+    public VCFRecordBatchBuilder add(VCFRecord record)
+    {
+        if (this.isFull())
+        {
+            throw new IllegalStateException("Batch is full, capacity: " + this.capacity);
+        }
+
+        this.contigIds[this.size] = this.determineContigId(record.getChromosome());
+        this.positions[this.size] = NumberUtils.toLong(record.getPosition(), -1);
+        this.ids.append(record.getId());
+        this.references.append(record.getReference());
+        this.alternativeAlleles.append(record.getAlternativeAlleles());
+        this.qualities.append(record.getQuality());
+        this.filters.append(record.getFilter());
+        this.infos.append(record.getInfo());
+        this.size++;
+        return this;
+    }
+
+    /**
+     * Adds the site columns of a tab separated data line given as UTF-8 bytes without creating a {@link VCFRecord}. The bytes of the ID to INFO
+     * columns are copied directly into the column arenas. Columns which are missing or not part of the given {@link ColumnProjection} are added as
+     * missing value.
+     * 
+     * @param buffer
+     * @param start
+     *            of the line within the buffer, inclusive
+     * @param end
+     *            of the line within the buffer, exclusive
+     * @param tabPositions
+     *            of the line relative to its start
+     * @param numberOfTabs
+     * @param projection
+     * @return this
+     * @throws IllegalStateException
+     *             if the batch is already full
+     */
+    public VCFRecordBatchBuilder add(byte[] buffer, int start, int end, int[] tabPositions, int numberOfTabs, ColumnProjection projection)
+    {
+        if (this.isFull())
+        {
+            throw new IllegalStateException("Batch is full, capacity: " + this.capacity);
+        }
+
+        int numberOfColumns = numberOfTabs + 1;
+        int[] columnStarts = this.columnStarts;
+        int[] columnEnds = this.columnEnds;
+        for (int ii = 0; ii <= Column.INFO.ordinal(); ii++)
+        {
+            boolean isPresent = ii < numberOfColumns && projection.containsColumnIndex(ii);
+            columnStarts[ii] = isPresent ? (ii == 0 ? start : start + tabPositions[ii - 1] + 1) : -1;
+            columnEnds[ii] = isPresent ? (ii < numberOfTabs ? start + tabPositions[ii] : end) : -1;
+        }
+
+        this.contigIds[this.size] = columnStarts[0] >= 0 ? this.determineContigId(buffer, columnStarts[0], columnEnds[0])
+                : this.determineContigId(null);
+        this.positions[this.size] = columnStarts[1] >= 0 ? parsePosition(buffer, columnStarts[1], columnEnds[1]) : -1;
+        ByteColumnBuilder[] columns = { this.ids, this.references, this.alternativeAlleles, this.qualities, this.filters, this.infos };
+        for (int ii = 0; ii < columns.length; ii++)
+        {
+            int columnIndex = Column.ID.ordinal() + ii;
+            columns[ii].append(columnStarts[columnIndex] >= 0 ? buffer : null, columnStarts[columnIndex], columnEnds[columnIndex]);
+        }
+        this.size++;
+        return this;
+    }
+
+    private int determineContigId(byte[] buffer, int from, int to)
+    {
+        int length = to - from;
+        if (this.lastContig != null && this.lastContig.length == length)
+        {
+            boolean isEqual = true;
+            for (int ii = 0; ii < length && isEqual; ii++)
+            {
+                isEqual = this.lastContig[ii] == buffer[from + ii];
+            }
+            if (isEqual)
+            {
+                return this.lastContigId;
+            }
+        }
+        this.lastContig = Arrays.copyOfRange(buffer, from, to);
+        this.lastContigId = this.determineContigId(new String(this.lastContig, StandardCharsets.UTF_8));
+        return this.lastContigId;
+    }
+
+    private static long parsePosition(byte[] buffer, int from, int to)
+    {
+        long position = 0;
+        boolean isPlainNumber = from < to && to - from <= 18;
+        for (int ii = from; ii < to && isPlainNumber; ii++)
+        {
+            int digit = buffer[ii] - '0';
+            isPlainNumber = digit >= 0 && digit <= 9;
+            position = position * 10 + digit;
+        }
+        return isPlainNumber ? position : NumberUtils.toLong(new String(buffer, from, to - from, StandardCharsets.UTF_8), -1);
+    }
+
+    private int determineContigId(String chromosome)
+    {
+        String contig = chromosome != null ? chromosome : MISSING_VALUE;
+        Integer contigId = this.contigToId.get(contig);
+        if (contigId == null)
+        {
+            contigId = this.contigNames.size();
+            this.contigNames.add(contig);
+            this.contigToId.put(contig, contigId);
+            this.contigsAdded = true;
+        }
+        return contigId;
+    }
+
+    public int size()
+    {
+        return this.size;
+    }
+
+    public boolean isEmpty()
+    {
+        return this.size == 0;
+    }
+
+    public boolean isFull()
+    {
+        return this.size >= this.capacity;
+    }
+
+    /**
+     * Returns a {@link VCFRecordBatch} of all added {@link VCFRecord}s and starts a new empty batch
+     * 
+     * @return
+     */
+    public VCFRecordBatch build()
+    {
+        if (this.contigsAdded || this.contigNamesSnapshot == null)
+        {
+            this.contigNamesSnapshot = new ArrayList<>(this.contigNames);
+            this.contigsAdded = false;
+        }
+
+        VCFRecordBatch batch = new VCFRecordBatch(this.size, this.contigNamesSnapshot, Arrays.copyOf(this.contigIds, this.size),
+                                                  Arrays.copyOf(this.positions, this.size), this.ids.build(), this.references.build(),
+                                                  this.alternativeAlleles.build(), this.qualities.build(), this.filters.build(), this.infos.build());
+        this.reset();
+        return batch;
+    }
+
+    private void reset()
+    {
+        this.size = 0;
+        this.contigIds = new int[this.capacity];
+        this.positions = new long[this.capacity];
+        this.ids = new ByteColumnBuilder(this.capacity, 12);
+        this.references = new ByteColumnBuilder(this.capacity, 1);
+        this.alternativeAlleles = new ByteColumnBuilder(this.capacity, 1);
+        this.qualities = new ByteColumnBuilder(this.capacity, 1);
+        this.filters = new ByteColumnBuilder(this.capacity, 4);
+        this.infos = new ByteColumnBuilder(this.capacity, 64);
+    }
+}
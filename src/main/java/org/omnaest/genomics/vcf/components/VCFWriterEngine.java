@@ -0,0 +1,326 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.omnaest.genomics.vcf.components.parser.VCFParser_4_1;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+/**
+ * Serializes {@link VCFRecord}s directly into a reusable buffer which is flushed to the underlying {@link Writer} or {@link OutputStream} whenever
+ * the configured flush size is reached. No intermediate {@link List}s or joined {@link String}s are created per record.<br>
+ * <br>
+ * In ASCII mode the characters are written as single bytes without any charset encoding. Values which contain non ASCII characters fall back to
+ * UTF-8 encoding.
+ * 
+ * @author omnaest
+ */
+public class VCFWriterEngine implements Closeable
+{
+    public static final int DEFAULT_FLUSH_SIZE = 1024 * 1024;
+
+    private static final char   TAB                = '\t';
+    private static final char   NEW_LINE           = '\n';
+    private static final String MISSING_VALUE      = ".";
+    private static final String DEFAULT_FILEFORMAT = "##fileformat=VCFv4.3";
+
+    private final Writer       writer;
+    private final OutputStream outputStream;
+    private final char[]       charBuffer;
+    private final byte[]       byteBuffer;
+    private int                size         = 0;
+    private boolean            formatColumn = true;
+
+    private VCFWriterEngine(Writer writer, OutputStream outputStream, int flushSize)
+    {
+        super();
+        if (flushSize <= 0)
+        {
+            throw new IllegalArgumentException("Flush size must be positive: " + flushSize);
+        }
+        this.writer = writer;
+        this.outputStream = outputStream;
+        this.charBuffer = writer != null ? new char[flushSize] : null;
+        this.byteBuffer = outputStream != null ? new byte[flushSize] : null;
+    }
+
+    /**
+     * Returns a {@link VCFWriterEngine} which writes into the given {@link Writer}
+     * 
+     * @param writer
+     * @param flushSize
+     *            number of characters which are buffered before they are written to the {@link Writer}
+     * @return
+     */
+    public static VCFWriterEngine of(Writer writer, int flushSize)
+    {
+        return new VCFWriterEngine(writer, null, flushSize);
+    }
+
+    /**
+     * Returns a {@link VCFWriterEngine} which writes ASCII bytes into the given {@link OutputStream} without charset encoding
+     * 
+     * @param outputStream
+     * @param flushSize
+     *            number of bytes which are buffered before they are written to the {@link OutputStream}
+     * @return
+     */
+    public static VCFWriterEngine ofAscii(OutputStream outputStream, int flushSize)
+    {
+        return new VCFWriterEngine(null, outputStream, flushSize);
+    }
+
+    /**
+     * Writes the given meta lines and the #CHROM column header line. If no meta lines are given a default ##fileformat line is written. The FORMAT
+     * column is written if any sample names are given or if the format column is explicitly requested.
+     * 
+     * @param metaLines
+     * @param sampleNames
+     * @param formatColumn
+     * @return
+     * @throws IOException
+     */
+    public VCFWriterEngine writeHeader(List<String> metaLines, Collection<String> sampleNames, boolean formatColumn) throws IOException
+    {
+        if (metaLines == null || metaLines.isEmpty())
+        {
+            this.writeLine(DEFAULT_FILEFORMAT);
+        }
+        else
+        {
+            for (String metaLine : metaLines)
+            {
+                this.writeLine(metaLine);
+            }
+        }
+
+        this.formatColumn = formatColumn || (sampleNames != null && !sampleNames.isEmpty());
+        this.append('#');
+        List<String> fixedColumns = VCFParser_4_1.FIXED_COLUMNS;
+        int numberOfFixedColumns = this.formatColumn ? fixedColumns.size() : fixedColumns.size() - 1;
+        for (int ii = 0; ii < numberOfFixedColumns; ii++)
+        {
+            if (ii > 0)
+            {
+                this.append(TAB);
+            }
+            this.append(fixedColumns.get(ii));
+        }
+        if (sampleNames != null)
+        {
+            for (String sampleName : sampleNames)
+            {
+                this.append(TAB);
+                this.append(sampleName);
+            }
+        }
+        this.append(NEW_LINE);
+        return this;
+    }
+
+    /**
+     * Writes the given {@link VCFRecord}. Records with a {@link VCFRecord#getRawLine()} are written unmodified.
+     * 
+     * @param record
+     * @return
+     * @throws IOException
+     */
+    public VCFWriterEngine writeRecord(VCFRecord record) throws IOException
+    {
+        if (record.hasRawLine())
+        {
+            return this.writeLine(record.getRawLine());
+        }
+
+        this.appendField(record.getChromosome());
+        this.append(TAB);
+        this.appendField(record.getPosition());
+        this.append(TAB);
+        this.appendField(record.getId());
+        this.append(TAB);
+        this.appendField(record.getReference());
+        this.append(TAB);
+        this.appendField(record.getAlternativeAlleles());
+        this.append(TAB);
+        this.appendField(record.getQuality());
+        this.append(TAB);
+        this.appendField(record.getFilter());
+        this.append(TAB);
+        this.appendField(record.getInfo());
+
+        Map<String, String> sampleFields = record.getSampleFields();
+        if (this.formatColumn)
+        {
+            this.append(TAB);
+            this.appendField(record.getFormat());
+        }
+        if (sampleFields != null)
+        {
+            for (String value : sampleFields.values())
+            {
+                this.append(TAB);
+                this.appendField(value);
+            }
+        }
+        this.append(NEW_LINE);
+        return this;
+    }
+
+    public VCFWriterEngine writeLine(String line) throws IOException
+    {
+        this.append(line);
+        this.append(NEW_LINE);
+        return this;
+    }
+
+    private void appendField(String value) throws IOException
+    {
+        this.append(value != null ? value : MISSING_VALUE);
+    }
+
+    private void append(char character) throws IOException
+    {
+        if (this.charBuffer != null)
+        {
+            if (this.size >= this.charBuffer.length)
+            {
+                this.flushBuffer();
+            }
+            this.charBuffer[this.size++] = character;
+        }
+        else if (character < 0x80)
+        {
+            if (this.size >= this.byteBuffer.length)
+            {
+                this.flushBuffer();
+            }
+            this.byteBuffer[this.size++] = (byte) character;
+        }
+        else
+        {
+            this.appendBytes(String.valueOf(character)
+                                   .getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void append(String value) throws IOException
+    {
+        int length = value.length();
+        if (this.charBuffer != null)
+        {
+            if (length > this.charBuffer.length - this.size)
+            {
+                this.flushBuffer();
+                if (length > this.charBuffer.length)
+                {
+                    this.writer.write(value);
+                    return;
+                }
+            }
+            value.getChars(0, length, this.charBuffer, this.size);
+            this.size += length;
+        }
+        else
+        {
+            if (length > this.byteBuffer.length - this.size)
+            {
+                this.flushBuffer();
+                if (length > this.byteBuffer.length)
+                {
+                    this.outputStream.write(value.getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+            }
+            for (int ii = 0; ii < length; ii++)
+            {
+                char character = value.charAt(ii);
+                if (character >= 0x80)
+                {
+                    this.appendBytes(value.getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                this.byteBuffer[this.size + ii] = (byte) character;
+            }
+            this.size += length;
+        }
+    }
+
+    private void appendBytes(byte[] bytes) throws IOException
+    {
+        if (bytes.length > this.byteBuffer.length - this.size)
+        {
+            this.flushBuffer();
+            if (bytes.length > this.byteBuffer.length)
+            {
+                this.outputStream.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, this.byteBuffer, this.size, bytes.length);
+        this.size += bytes.length;
+    }
+
+    private void flushBuffer() throws IOException
+    {
+        if (this.size > 0)
+        {
+            if (this.writer != null)
+            {
+                this.writer.write(this.charBuffer, 0, this.size);
+            }
+            else
+            {
+                this.outputStream.write(this.byteBuffer, 0, this.size);
+            }
+            this.size = 0;
+        }
+    }
+
+    public void flush() throws IOException
+    {
+        this.flushBuffer();
+        if (this.writer != null)
+        {
+            this.writer.flush();
+        }
+        else
+        {
+            this.outputStream.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.flush();
+        if (this.writer != null)
+        {
+            this.writer.close();
+        }
+        else
+        {
+            this.outputStream.close();
+        }
+    }
+}
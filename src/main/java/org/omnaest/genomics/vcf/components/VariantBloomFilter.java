@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+/**
+ * Bloom filter over the (contig, position, REF, ALT) keys of the {@link VCFRecord}s of a reference VCF. A record which is not contained in the
+ * filter is definitely not part of the reference, so lookups or annotation joins can skip it before touching the disk. Multi allelic records are
+ * added per ALT allele and a record is only contained, if all of its ALT alleles are contained. Contig names are compared case insensitive and
+ * without a 'chr' prefix.<br>
+ * <br>
+ * The number of bits and hash functions is derived from the expected number of alleles and the false positive rate, optionally limited by a memory
+ * budget, which raises the false positive rate.
+ * 
+ * @author omnaest
+ */
+public class VariantBloomFilter
+{
+    private static final long MAGIC   = 0x5643464246494C54L;
+    private static final int  VERSION = 2;
+
+    private final long[] bits;
+    private final long   numberOfBits;
+    private final int    numberOfHashFunctions;
+
+    private VariantBloomFilter(long[] bits, int numberOfHashFunctions)
+    {
+        super();
+        this.bits = bits;
+        this.numberOfBits = (long) bits.length * Long.SIZE;
+        this.numberOfHashFunctions = numberOfHashFunctions;
+    }
+
+    /**
+     * Creates an empty {@link VariantBloomFilter} for the given expected number of alleles and false positive rate
+     * 
+     * @param expectedAlleles
+     * @param falsePositiveRate
+     *            e.g. 0.01
+     * @return
+     */
+    public static VariantBloomFilter create(long expectedAlleles, double falsePositiveRate)
+    {
+        return create(expectedAlleles, falsePositiveRate, Long.MAX_VALUE);
+    }
+
+    /**
+     * Similar to {@link #create(long, double)} but uses at most the given number of bytes
+     * 
+     * @param expectedAlleles
+     * @param falsePositiveRate
+     * @param memoryBudget
+     *            in bytes
+     * @return
+     */
+    public static VariantBloomFilter create(long expectedAlleles, double falsePositiveRate, long memoryBudget)
+    {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1)
+        {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+        }
+        long expected = Math.max(1, expectedAlleles);
+        double optimalNumberOfBits = -expected * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        long maxNumberOfWords = Math.min(Integer.MAX_VALUE - 8, Math.max(1, memoryBudget / Long.BYTES));
+        int numberOfWords = (int) Math.max(1, Math.min(maxNumberOfWords, (long) Math.ceil(optimalNumberOfBits / Long.SIZE)));
+        long numberOfBits = (long) numberOfWords * Long.SIZE;
+        int numberOfHashFunctions = (int) Math.max(1, Math.min(32, Math.round((double) numberOfBits / expected * Math.log(2))));
+        return new VariantBloomFilter(new long[numberOfWords], numberOfHashFunctions);
+    }
+
+    /**
+     * Builds a {@link VariantBloomFilter} in two passes over the given {@link VCFRecord}s, the first one counts the alleles to size the filter
+     * 
+     * @param records
+     *            supplies a new {@link Stream} for each pass, which is closed afterwards
+     * @param falsePositiveRate
+     * @param memoryBudget
+     *            in bytes
+     * @return
+     */
+    public static VariantBloomFilter build(Supplier<Stream<VCFRecord>> records, double falsePositiveRate, long memoryBudget)
+    {
+        long numberOfAlleles;
+        try (Stream<VCFRecord> stream = records.get())
+        {
+            numberOfAlleles = stream.mapToLong(record -> splitAlleles(record.getAlternativeAlleles()).length)
+                                    .sum();
+        }
+        VariantBloomFilter filter = create(numberOfAlleles, falsePositiveRate, memoryBudget);
+        try (Stream<VCFRecord> stream = records.get())
+        {
+            stream.forEach(filter::put);
+        }
+        return filter;
+    }
+
+    /**
+     * Reads a {@link VariantBloomFilter} written by {@link #writeTo(File)}
+     * 
+     * @param file
+     * @return
+     */
+    public static VariantBloomFilter read(File file)
+    {
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            if (inputStream.readLong() != MAGIC || inputStream.readInt() != VERSION)
+            {
+                throw new IllegalArgumentException("File is not a variant bloom filter of version " + VERSION + ": " + file);
+            }
+            int numberOfHashFunctions = inputStream.readInt();
+            long[] bits = new long[inputStream.readInt()];
+            for (int ii = 0; ii < bits.length; ii++)
+            {
+                bits[ii] = inputStream.readLong();
+            }
+            return new VariantBloomFilter(bits, numberOfHashFunctions);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Unable to read variant bloom filter: " + file, e);
+        }
+    }
+
+    /**
+     * Writes this {@link VariantBloomFilter} into the given {@link File}
+     * 
+     * @see #read(File)
+     * @param file
+     */
+    public void writeTo(File file)
+    {
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file))))
+        {
+            outputStream.writeLong(MAGIC);
+            outputStream.writeInt(VERSION);
+            outputStream.writeInt(this.numberOfHashFunctions);
+            outputStream.writeInt(this.bits.length);
+            for (long word : this.bits)
+            {
+                outputStream.writeLong(word);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Unable to write variant bloom filter: " + file, e);
+        }
+    }
+
+    /**
+     * Adds all ALT alleles of the given {@link VCFRecord}
+     * 
+     * @param record
+     * @return this
+     */
+    public VariantBloomFilter put(VCFRecord record)
+    {
+        for (String alternativeAllele : splitAlleles(record.getAlternativeAlleles()))
+        {
+            long hash = VariantKeys.hash(record.getChromosome(), record.getPositionAsLong(), record.getReference(), alternativeAllele,
+                                         VariantKeys.DEFAULT_SEED);
+            for (int ii = 1; ii <= this.numberOfHashFunctions; ii++)
+            {
+                long bit = toBitIndex(hash, ii, this.numberOfBits);
+                this.bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns false if the given {@link VCFRecord} is definitely not contained, true if all its ALT alleles might be contained
+     * 
+     * @param record
+     * @return
+     */
+    public boolean mightContain(VCFRecord record)
+    {
+        for (String alternativeAllele : splitAlleles(record.getAlternativeAlleles()))
+        {
+            if (!this.mightContain(record.getChromosome(), record.getPositionAsLong(), record.getReference(), alternativeAllele))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns false if the given allele is definitely not contained
+     * 
+     * @param chromosome
+     * @param position
+     * @param reference
+     * @param alternativeAllele
+     * @return
+     */
+    public boolean mightContain(String chromosome, long position, String reference, String alternativeAllele)
+    {
+        long hash = VariantKeys.hash(chromosome, position, reference, alternativeAllele, VariantKeys.DEFAULT_SEED);
+        for (int ii = 1; ii <= this.numberOfHashFunctions; ii++)
+        {
+            long bit = toBitIndex(hash, ii, this.numberOfBits);
+            if ((this.bits[(int) (bit >>> 6)] & (1L << bit)) == 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the bit index of the given hash function by double hashing in 64 bits, so all bits are reachable even if there are more than 2^32
+     * 
+     * @param hash
+     * @param hashFunction
+     * @param numberOfBits
+     * @return
+     */
+    static long toBitIndex(long hash, int hashFunction, long numberOfBits)
+    {
+        long combinedHash = hash + hashFunction * (hash >>> 32 | 1);
+        return ((combinedHash * 0x9E3779B97F4A7C15L) >>> 1) % numberOfBits;
+    }
+
+    /**
+     * Returns the expected false positive rate for the given number of added alleles
+     * 
+     * @param numberOfAlleles
+     * @return
+     */
+    public double getExpectedFalsePositiveRate(long numberOfAlleles)
+    {
+        return Math.pow(1 - Math.exp(-this.numberOfHashFunctions * (double) numberOfAlleles / this.numberOfBits), this.numberOfHashFunctions);
+    }
+
+    public long getNumberOfBits()
+    {
+        return this.numberOfBits;
+    }
+
+    public int getNumberOfHashFunctions()
+    {
+        return this.numberOfHashFunctions;
+    }
+
+    private static String[] splitAlleles(String alleles)
+    {
+        return StringUtils.split(StringUtils.defaultString(alleles), ',');
+    }
+}
@@ -0,0 +1,311 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import java.nio.ByteBuffer;
+import java.util.stream.Stream;
+
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+/**
+ * Removes {@link VCFRecord}s with an already seen (contig, position, REF, ALT) site key from a stream, keeping the first occurrence. Only a 128 bit
+ * fingerprint of each normalized site key is held in an off-heap open addressing table, so no {@link VCFRecord} is retained.<br>
+ * <br>
+ * For coordinate sorted input a window of positions can be defined. The fingerprints are then kept in two generations which are evicted as the
+ * position moves forward, and are dropped completely on a contig change, so the memory stays bounded by the number of sites within the window.
+ * Without a window all fingerprints are kept.
+ * 
+ * @see VariantKeys
+ * @author omnaest
+ */
+public class VariantDeduplicator
+{
+    private static final long SEED1 = VariantKeys.DEFAULT_SEED;
+    private static final long SEED2 = 0x84222325CBF29CE4L;
+
+    private final long window;
+
+    private FingerprintTable current  = new FingerprintTable();
+    private FingerprintTable previous = null;
+    private String           contig;
+    private long             generationStart;
+    private long             maxPosition;
+
+    /**
+     * Creates a {@link VariantDeduplicator} which keeps all fingerprints and accepts unsorted input
+     */
+    public VariantDeduplicator()
+    {
+        this(-1);
+    }
+
+    /**
+     * @param window
+     *            number of positions a duplicate site can lag behind the furthest position seen on the same contig. 0 requires coordinate sorted
+     *            input, a negative value keeps all fingerprints.
+     */
+    public VariantDeduplicator(long window)
+    {
+        super();
+        this.window = window;
+        if (window >= 0)
+        {
+            this.previous = new FingerprintTable();
+        }
+    }
+
+    /**
+     * Returns the lazily deduplicated {@link VCFRecord}s
+     * 
+     * @param records
+     * @return
+     * @throws IllegalStateException
+     *             while reading, if a window is defined and a {@link VCFRecord} lags behind the window
+     */
+    public Stream<VCFRecord> deduplicate(Stream<VCFRecord> records)
+    {
+        return records.filter(this::add);
+    }
+
+    /**
+     * Returns true if the site key of the given {@link VCFRecord} has not been seen before
+     * 
+     * @param record
+     * @return
+     * @throws IllegalStateException
+     *             if a window is defined and the {@link VCFRecord} lags behind the window
+     */
+    public boolean add(VCFRecord record)
+    {
+        long position = record.getPositionAsLong();
+        if (this.window >= 0)
+        {
+            this.advanceWindow(VCFRecord.normalizeChromosome(record.getChromosome()), position, record);
+        }
+
+        long hash1 = VariantKeys.hash(record.getChromosome(), position, record.getReference(), record.getAlternativeAlleles(), SEED1);
+        long hash2 = VariantKeys.hash(record.getChromosome(), position, record.getReference(), record.getAlternativeAlleles(), SEED2);
+        if (hash1 == 0 && hash2 == 0)
+        {
+            hash1 = 1;
+        }
+        if (this.previous != null && this.previous.contains(hash1, hash2))
+        {
+            return false;
+        }
+        return this.current.add(hash1, hash2);
+    }
+
+    private void advanceWindow(String contig, long position, VCFRecord record)
+    {
+        if (!contig.equals(this.contig))
+        {
+            this.contig = contig;
+            this.current.clear();
+            this.previous.clear();
+            this.generationStart = position;
+            this.maxPosition = position;
+        }
+        else if (position < this.maxPosition - this.window)
+        {
+            throw new IllegalStateException("VCF records are not coordinate sorted within a window of " + this.window + " at "
+                    + record.getChromosome() + ":" + record.getPosition());
+        }
+        else if (position > this.generationStart + this.window)
+        {
+            FingerprintTable evicted = this.previous;
+            evicted.clear();
+            this.previous = this.current;
+            this.current = evicted;
+            this.generationStart = position;
+        }
+        this.maxPosition = Math.max(this.maxPosition, position);
+    }
+
+    /**
+     * Returns the number of fingerprints currently held
+     * 
+     * @return
+     */
+    public long size()
+    {
+        return this.current.size() + (this.previous != null ? this.previous.size() : 0);
+    }
+
+    /**
+     * Open addressing set of 128 bit fingerprints with linear probing in direct {@link ByteBuffer} segments. The fingerprint (0, 0) marks an empty
+     * slot. The table doubles at a load factor of 0.5 and shrinks on {@link #clear()}, if it is mostly empty. The slots of the first
+     * {@link #TRACKED_SLOTS} fingerprints are tracked, so clearing a sparsely filled table only resets the written slots.
+     * 
+     * @author omnaest
+     */
+    private static class FingerprintTable
+    {
+        private static final int SLOT_SIZE         = 2 * Long.BYTES;
+        private static final int SEGMENT_SHIFT     = 26;
+        private static final int SEGMENT_SLOTS     = 1 << SEGMENT_SHIFT;
+        private static final int MIN_CAPACITY      = 1 << 10;
+        private static final int SEGMENT_SIZE_MASK = SEGMENT_SLOTS - 1;
+        private static final int TRACKED_SLOTS     = MIN_CAPACITY >>> 3;
+
+        private ByteBuffer[] segments;
+        private long         capacity;
+        private long         size;
+        private long[]       writtenSlots = new long[TRACKED_SLOTS];
+
+        public FingerprintTable()
+        {
+            super();
+            this.allocate(MIN_CAPACITY);
+        }
+
+        private void allocate(long capacity)
+        {
+            this.capacity = capacity;
+            this.size = 0;
+            int numberOfSegments = (int) ((capacity + SEGMENT_SLOTS - 1) >>> SEGMENT_SHIFT);
+            this.segments = new ByteBuffer[numberOfSegments];
+            for (int ii = 0; ii < numberOfSegments; ii++)
+            {
+                long slots = Math.min(SEGMENT_SLOTS, capacity - ((long) ii << SEGMENT_SHIFT));
+                this.segments[ii] = ByteBuffer.allocateDirect((int) (slots * SLOT_SIZE));
+            }
+        }
+
+        public boolean contains(long hash1, long hash2)
+        {
+            for (long slot = this.toSlot(hash1);; slot = (slot + 1) & (this.capacity - 1))
+            {
+                ByteBuffer segment = this.segments[(int) (slot >>> SEGMENT_SHIFT)];
+                int offset = (int) (slot & SEGMENT_SIZE_MASK) * SLOT_SIZE;
+                long slotHash1 = segment.getLong(offset);
+                long slotHash2 = segment.getLong(offset + Long.BYTES);
+                if (slotHash1 == hash1 && slotHash2 == hash2)
+                {
+                    return true;
+                }
+                else if (slotHash1 == 0 && slotHash2 == 0)
+                {
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * Returns true if the fingerprint was not contained before
+         * 
+         * @param hash1
+         * @param hash2
+         * @return
+         */
+        public boolean add(long hash1, long hash2)
+        {
+            for (long slot = this.toSlot(hash1);; slot = (slot + 1) & (this.capacity - 1))
+            {
+                ByteBuffer segment = this.segments[(int) (slot >>> SEGMENT_SHIFT)];
+                int offset = (int) (slot & SEGMENT_SIZE_MASK) * SLOT_SIZE;
+                long slotHash1 = segment.getLong(offset);
+                long slotHash2 = segment.getLong(offset + Long.BYTES);
+                if (slotHash1 == hash1 && slotHash2 == hash2)
+                {
+                    return false;
+                }
+                else if (slotHash1 == 0 && slotHash2 == 0)
+                {
+                    segment.putLong(offset, hash1);
+                    segment.putLong(offset + Long.BYTES, hash2);
+                    if (this.size < TRACKED_SLOTS)
+                    {
+                        this.writtenSlots[(int) this.size] = slot;
+                    }
+                    this.size++;
+                    if (this.size * 2 > this.capacity)
+                    {
+                        this.resize(this.capacity * 2);
+                    }
+                    return true;
+                }
+            }
+        }
+
+        private long toSlot(long hash)
+        {
+            return (hash * 0x9E3779B97F4A7C15L >>> 1) & (this.capacity - 1);
+        }
+
+        private void resize(long capacity)
+        {
+            ByteBuffer[] segments = this.segments;
+            this.allocate(capacity);
+            for (ByteBuffer segment : segments)
+            {
+                for (int offset = 0; offset < segment.capacity(); offset += SLOT_SIZE)
+                {
+                    long hash1 = segment.getLong(offset);
+                    long hash2 = segment.getLong(offset + Long.BYTES);
+                    if (hash1 != 0 || hash2 != 0)
+                    {
+                        this.add(hash1, hash2);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Removes all fingerprints. The costs are proportional to the number of fingerprints: a mostly empty table larger than the minimum capacity is
+         * reallocated, a table with only tracked slots resets these slots and otherwise the table is at least one eighth full.
+         */
+        public void clear()
+        {
+            if (this.size == 0)
+            {
+                return;
+            }
+            if (this.capacity > MIN_CAPACITY && this.size * 8 < this.capacity)
+            {
+                this.allocate(Math.max(MIN_CAPACITY, Long.highestOneBit(this.size * 4)));
+            }
+            else if (this.size <= TRACKED_SLOTS)
+            {
+                for (int ii = 0; ii < this.size; ii++)
+                {
+                    long slot = this.writtenSlots[ii];
+                    ByteBuffer segment = this.segments[(int) (slot >>> SEGMENT_SHIFT)];
+                    int offset = (int) (slot & SEGMENT_SIZE_MASK) * SLOT_SIZE;
+                    segment.putLong(offset, 0);
+                    segment.putLong(offset + Long.BYTES, 0);
+                }
+                this.size = 0;
+            }
+            else
+            {
+                for (ByteBuffer segment : this.segments)
+                {
+                    for (int offset = 0; offset < segment.capacity(); offset += Long.BYTES)
+                    {
+                        segment.putLong(offset, 0);
+                    }
+                }
+                this.size = 0;
+            }
+        }
+
+        public long size()
+        {
+            return this.size;
+        }
+    }
+}
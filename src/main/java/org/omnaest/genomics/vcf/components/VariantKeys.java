@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.lang3.StringUtils;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+/**
+ * Hashing of normalized variant site keys consisting of contig, position, REF and ALT. Contigs are compared case insensitive and without a 'chr'
+ * prefix, alleles case insensitive.
+ * 
+ * @see VariantBloomFilter
+ * @see VariantDeduplicator
+ * @author omnaest
+ */
+final class VariantKeys
+{
+    public static final long DEFAULT_SEED = 0xCBF29CE484222325L;
+
+    private VariantKeys()
+    {
+        super();
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the normalized key starting from the given seed followed by a final avalanche mix
+     * 
+     * @param chromosome
+     * @param position
+     * @param reference
+     * @param alternativeAlleles
+     * @param seed
+     * @return
+     */
+    public static long hash(String chromosome, long position, String reference, String alternativeAlleles, long seed)
+    {
+        String key = VCFRecord.normalizeChromosome(chromosome) + "\t" + position + "\t" + StringUtils.upperCase(reference) + "\t"
+                + StringUtils.upperCase(alternativeAlleles);
+
+        long hash = seed;
+        for (byte value : key.getBytes(StandardCharsets.UTF_8))
+        {
+            hash ^= value;
+            hash *= 0x100000001B3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components.filter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Field reference of a {@link VariantFilter} expression like CHROM, INFO/AF, FORMAT/DP or GT
+ * 
+ * @author omnaest
+ */
+class Field
+{
+    public static enum Scope
+    {
+        COLUMN(1), INFO(2), FORMAT(3);
+
+        private int cost;
+
+        private Scope(int cost)
+        {
+            this.cost = cost;
+        }
+
+        /**
+         * Relative evaluation cost, the fixed columns are cheaper than the INFO column, which is cheaper than the sample columns
+         * 
+         * @return
+         */
+        public int getCost()
+        {
+            return this.cost;
+        }
+    }
+
+    private static final List<String> STRING_COLUMNS  = Collections.unmodifiableList(Arrays.asList("CHROM", "ID", "REF", "ALT", "FILTER"));
+    private static final List<String> NUMERIC_COLUMNS = Collections.unmodifiableList(Arrays.asList("POS", "QUAL"));
+
+    private final Scope  scope;
+    private final String name;
+
+    private Field(Scope scope, String name)
+    {
+        super();
+        this.scope = scope;
+        this.name = name;
+    }
+
+    /**
+     * Parses a field reference. GT is a shortcut for FORMAT/GT.
+     * 
+     * @param reference
+     * @return
+     * @throws IllegalArgumentException
+     */
+    public static Field parse(String reference)
+    {
+        if (STRING_COLUMNS.contains(reference) || NUMERIC_COLUMNS.contains(reference))
+        {
+            return new Field(Scope.COLUMN, reference);
+        }
+        else if ("GT".equals(reference))
+        {
+            return new Field(Scope.FORMAT, reference);
+        }
+        else if (reference.startsWith("INFO/") && reference.length() > 5)
+        {
+            return new Field(Scope.INFO, reference.substring(5));
+        }
+        else if (reference.startsWith("FORMAT/") && reference.length() > 7)
+        {
+            return new Field(Scope.FORMAT, reference.substring(7));
+        }
+        throw new IllegalArgumentException("Unknown field: " + reference);
+    }
+
+    public Scope getScope()
+    {
+        return this.scope;
+    }
+
+    public String getName()
+    {
+        return this.name;
+    }
+
+    public boolean isNumericColumn()
+    {
+        return this.scope == Scope.COLUMN && NUMERIC_COLUMNS.contains(this.name);
+    }
+
+    /**
+     * Returns the separator of multiple values within a single field or 0 if the field is single valued
+     * 
+     * @return
+     */
+    public char getSeparator()
+    {
+        if (this.scope == Scope.COLUMN)
+        {
+            return "FILTER".equals(this.name) || "ID".equals(this.name) ? ';' : "ALT".equals(this.name) ? ',' : 0;
+        }
+        return "GT".equals(this.name) ? 0 : ',';
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.scope == Scope.COLUMN || "GT".equals(this.name) ? this.name : this.scope + "/" + this.name;
+    }
+}
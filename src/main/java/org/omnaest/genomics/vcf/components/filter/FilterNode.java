@@ -0,0 +1,341 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components.filter;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.math.NumberUtils;
+
+/**
+ * Node of the predicate tree of a compiled {@link VariantFilter}
+ * 
+ * @author omnaest
+ */
+abstract class FilterNode
+{
+    public abstract boolean test(RecordContext context);
+
+    /**
+     * Relative evaluation cost used to evaluate cheap conditions first
+     * 
+     * @return
+     */
+    public abstract int getCost();
+
+    /**
+     * Resolves the declared header types of the fields of this node and its children, which otherwise happens on the first
+     * {@link #test(RecordContext)}
+     * 
+     * @throws IllegalArgumentException
+     *             if a field is not declared or does not fit its comparison
+     */
+    public abstract void resolveTypes();
+
+    public static enum Operator
+    {
+        EQUALS("=="), NOT_EQUALS("!="), LESS("<"), LESS_OR_EQUAL("<="), GREATER(">"), GREATER_OR_EQUAL(">=");
+
+        private String symbol;
+
+        private Operator(String symbol)
+        {
+            this.symbol = symbol;
+        }
+
+        public String getSymbol()
+        {
+            return this.symbol;
+        }
+
+        public boolean isOrdering()
+        {
+            return this != EQUALS && this != NOT_EQUALS;
+        }
+    }
+
+    /**
+     * Conjunction or disjunction of {@link FilterNode}s which evaluates its children in the order of their cost and short circuits
+     */
+    public static class Junction extends FilterNode
+    {
+        private final boolean      conjunction;
+        private final FilterNode[] nodes;
+
+        public Junction(boolean conjunction, List<FilterNode> nodes)
+        {
+            super();
+            this.conjunction = conjunction;
+            this.nodes = nodes.stream()
+                              .sorted(Comparator.comparingInt(FilterNode::getCost))
+                              .toArray(FilterNode[]::new);
+        }
+
+        @Override
+        public boolean test(RecordContext context)
+        {
+            for (FilterNode node : this.nodes)
+            {
+                if (node.test(context) != this.conjunction)
+                {
+                    return !this.conjunction;
+                }
+            }
+            return this.conjunction;
+        }
+
+        @Override
+        public void resolveTypes()
+        {
+            for (FilterNode node : this.nodes)
+            {
+                node.resolveTypes();
+            }
+        }
+
+        @Override
+        public int getCost()
+        {
+            int cost = 0;
+            for (FilterNode node : this.nodes)
+            {
+                cost = Math.max(cost, node.getCost());
+            }
+            return cost;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "(" + Arrays.stream(this.nodes)
+                               .map(String::valueOf)
+                               .collect(Collectors.joining(this.conjunction ? " && " : " || "))
+                    + ")";
+        }
+    }
+
+    public static class Negation extends FilterNode
+    {
+        private final FilterNode node;
+
+        public Negation(FilterNode node)
+        {
+            super();
+            this.node = node;
+        }
+
+        @Override
+        public boolean test(RecordContext context)
+        {
+            return !this.node.test(context);
+        }
+
+        @Override
+        public void resolveTypes()
+        {
+            this.node.resolveTypes();
+        }
+
+        @Override
+        public int getCost()
+        {
+            return this.node.getCost();
+        }
+
+        @Override
+        public String toString()
+        {
+            return "!" + this.node;
+        }
+    }
+
+    /**
+     * Tests if a {@link Field} is present, e.g. an INFO flag. INFO and FORMAT fields have to be declared, if the header declares any field of their
+     * scope.
+     */
+    public static class Presence extends FilterNode
+    {
+        private final Field            field;
+        private final HeaderFieldTypes fieldTypes;
+        private volatile boolean       resolved = false;
+
+        public Presence(Field field, HeaderFieldTypes fieldTypes)
+        {
+            super();
+            this.field = field;
+            this.fieldTypes = fieldTypes;
+        }
+
+        @Override
+        public boolean test(RecordContext context)
+        {
+            if (!this.resolved)
+            {
+                this.resolveTypes();
+            }
+            return context.isPresent(this.field);
+        }
+
+        @Override
+        public void resolveTypes()
+        {
+            if (this.field.getScope() != Field.Scope.COLUMN)
+            {
+                this.fieldTypes.getType(this.field);
+            }
+            this.resolved = true;
+        }
+
+        @Override
+        public int getCost()
+        {
+            return this.field.getScope()
+                             .getCost();
+        }
+
+        @Override
+        public String toString()
+        {
+            return this.field.toString();
+        }
+    }
+
+    /**
+     * Compares the values of a {@link Field} with a literal. Fields with multiple values match if any of their values matches. Missing values do
+     * not match any {@link Operator}. Whether the comparison is numeric is determined by the declared header type of the {@link Field} or, if not
+     * declared, by the literal.
+     */
+    public static class Comparison extends FilterNode
+    {
+        private final Field            field;
+        private final Operator         operator;
+        private final String           literal;
+        private final double           numericLiteral;
+        private final HeaderFieldTypes fieldTypes;
+        private volatile Boolean       numeric;
+
+        public Comparison(Field field, Operator operator, String literal, boolean isNumericLiteral, HeaderFieldTypes fieldTypes)
+        {
+            super();
+            this.field = field;
+            this.operator = operator;
+            this.literal = literal;
+            this.numericLiteral = isNumericLiteral ? Double.parseDouble(literal) : Double.NaN;
+            this.fieldTypes = fieldTypes;
+
+            if ((operator.isOrdering() || field.isNumericColumn()) && !isNumericLiteral)
+            {
+                throw new IllegalArgumentException("Numeric literal expected for " + this);
+            }
+        }
+
+        @Override
+        public boolean test(RecordContext context)
+        {
+            boolean numeric = this.isNumeric();
+            switch (this.operator)
+            {
+                case EQUALS:
+                    return context.anyValueMatches(this.field, value -> this.isEqual(value, numeric));
+                case NOT_EQUALS:
+                    return context.isPresent(this.field) && !context.anyValueMatches(this.field, value -> this.isEqual(value, numeric));
+                default:
+                    return context.anyValueMatches(this.field, this::isInOrder);
+            }
+        }
+
+        private boolean isEqual(String value, boolean numeric)
+        {
+            return numeric ? NumberUtils.toDouble(value, Double.NaN) == this.numericLiteral : this.literal.equals(value);
+        }
+
+        private boolean isInOrder(String value)
+        {
+            double number = NumberUtils.toDouble(value, Double.NaN);
+            switch (this.operator)
+            {
+                case LESS:
+                    return number < this.numericLiteral;
+                case LESS_OR_EQUAL:
+                    return number <= this.numericLiteral;
+                case GREATER:
+                    return number > this.numericLiteral;
+                case GREATER_OR_EQUAL:
+                    return number >= this.numericLiteral;
+                default:
+                    throw new IllegalStateException("Unsupported operator: " + this.operator);
+            }
+        }
+
+        @Override
+        public void resolveTypes()
+        {
+            this.isNumeric();
+        }
+
+        private boolean isNumeric()
+        {
+            if (this.numeric == null)
+            {
+                this.numeric = this.resolveNumeric();
+            }
+            return this.numeric;
+        }
+
+        private boolean resolveNumeric()
+        {
+            boolean isNumericLiteral = !Double.isNaN(this.numericLiteral);
+            if (this.field.getScope() == Field.Scope.COLUMN)
+            {
+                return this.field.isNumericColumn();
+            }
+
+            String type = this.fieldTypes.getType(this.field);
+            if (HeaderFieldTypes.TYPE_FLAG.equals(type))
+            {
+                throw new IllegalArgumentException("Flag field " + this.field + " can only be tested for presence");
+            }
+            else if (HeaderFieldTypes.TYPE_INTEGER.equals(type) || HeaderFieldTypes.TYPE_FLOAT.equals(type))
+            {
+                if (!isNumericLiteral)
+                {
+                    throw new IllegalArgumentException("Numeric literal expected for " + type + " field: " + this);
+                }
+                return true;
+            }
+            else if (type != null && this.operator.isOrdering())
+            {
+                throw new IllegalArgumentException("Ordering operator used on " + type + " field: " + this);
+            }
+            return type == null && isNumericLiteral;
+        }
+
+        @Override
+        public int getCost()
+        {
+            return this.field.getScope()
+                             .getCost();
+        }
+
+        @Override
+        public String toString()
+        {
+            return this.field + this.operator.getSymbol() + "\"" + this.literal + "\"";
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components.filter;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.omnaest.genomics.vcf.domain.VCFData.VCFMetaInfo;
+
+/**
+ * Types of the INFO and FORMAT fields declared by the ##INFO and ##FORMAT meta lines of a {@link VCFMetaInfo}. The meta lines are read lazily on
+ * the first access, which allows to bind a {@link VariantFilter} to a header which is parsed together with the first record.
+ * 
+ * @author omnaest
+ */
+class HeaderFieldTypes
+{
+    public static final HeaderFieldTypes UNTYPED = new HeaderFieldTypes(() -> null);
+
+    public static final String TYPE_INTEGER = "Integer";
+    public static final String TYPE_FLOAT   = "Float";
+    public static final String TYPE_FLAG    = "Flag";
+
+    private static final Pattern DECLARATION_PATTERN = Pattern.compile("\\#\\#(INFO|FORMAT)\\=\\<ID\\=([^,\\>]+).*?Type\\=([A-Za-z]+).*");
+
+    private final Supplier<VCFMetaInfo>           metaInfoSupplier;
+    private Map<Field.Scope, Map<String, String>> scopeToIdToType;
+
+    public HeaderFieldTypes(Supplier<VCFMetaInfo> metaInfoSupplier)
+    {
+        super();
+        this.metaInfoSupplier = metaInfoSupplier;
+    }
+
+    /**
+     * Returns the declared type of the given INFO or FORMAT {@link Field} or null if the header does not declare any field of its scope
+     * 
+     * @param field
+     * @return
+     * @throws IllegalArgumentException
+     *             if other fields of the same scope are declared but not the given one
+     */
+    public String getType(Field field)
+    {
+        Map<String, String> idToType = this.getScopeToIdToType()
+                                           .get(field.getScope());
+        if (idToType == null)
+        {
+            return null;
+        }
+
+        String type = idToType.get(field.getName());
+        if (type == null)
+        {
+            throw new IllegalArgumentException("Field " + field + " is not declared within the VCF header");
+        }
+        return type;
+    }
+
+    private synchronized Map<Field.Scope, Map<String, String>> getScopeToIdToType()
+    {
+        if (this.scopeToIdToType == null)
+        {
+            Map<Field.Scope, Map<String, String>> scopeToIdToType = new EnumMap<>(Field.Scope.class);
+            VCFMetaInfo metaInfo = this.metaInfoSupplier.get();
+            if (metaInfo != null)
+            {
+                for (String metaLine : metaInfo.getMetaLines())
+                {
+                    Matcher matcher = DECLARATION_PATTERN.matcher(metaLine);
+                    if (matcher.matches())
+                    {
+                        scopeToIdToType.computeIfAbsent(Field.Scope.valueOf(matcher.group(1)), scope -> new HashMap<>())
+                                       .put(matcher.group(2), matcher.group(3));
+                    }
+                }
+            }
+            this.scopeToIdToType = scopeToIdToType;
+        }
+        return this.scopeToIdToType;
+    }
+}
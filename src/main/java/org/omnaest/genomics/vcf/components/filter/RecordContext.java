@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components.filter;
+
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.apache.commons.lang3.StringUtils;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+/**
+ * Evaluation context of a single {@link VCFRecord} which is shared by all {@link FilterNode}s of a {@link VariantFilter}. The INFO and sample
+ * fields are decoded at most once per {@link VCFRecord} and only if a {@link FilterNode} accesses them.
+ * 
+ * @author omnaest
+ */
+class RecordContext
+{
+    private static final String MISSING_VALUE = ".";
+
+    private final VCFRecord record;
+
+    private Map<String, String>              info;
+    private Map<String, Map<String, String>> sampleFields;
+
+    public RecordContext(VCFRecord record)
+    {
+        super();
+        this.record = record;
+    }
+
+    /**
+     * Returns true if any non missing value of the given {@link Field} matches the given {@link Predicate}. Multi value columns and fields are
+     * split into their single values before.
+     * 
+     * @param field
+     * @param predicate
+     * @return
+     */
+    public boolean anyValueMatches(Field field, Predicate<String> predicate)
+    {
+        switch (field.getScope())
+        {
+            case COLUMN:
+                return this.anyTokenMatches(this.getColumnValue(field.getName()), field.getSeparator(), predicate);
+            case INFO:
+                return this.anyTokenMatches(this.getInfo()
+                                                .get(field.getName()),
+                                            field.getSeparator(), predicate);
+            case FORMAT:
+                for (Map<String, String> sampleFieldToValue : this.getSampleFields()
+                                                                  .values())
+                {
+                    if (this.anyTokenMatches(sampleFieldToValue.get(field.getName()), field.getSeparator(), predicate))
+                    {
+                        return true;
+                    }
+                }
+                return false;
+            default:
+                throw new IllegalStateException("Unsupported field scope: " + field.getScope());
+        }
+    }
+
+    /**
+     * Returns true if the given {@link Field} is present. INFO flags are present without a value.
+     * 
+     * @param field
+     * @return
+     */
+    public boolean isPresent(Field field)
+    {
+        if (field.getScope() == Field.Scope.INFO)
+        {
+            return this.getInfo()
+                       .containsKey(field.getName());
+        }
+        return this.anyValueMatches(field, value -> true);
+    }
+
+    private boolean anyTokenMatches(String value, char separator, Predicate<String> predicate)
+    {
+        if (value == null || value.isEmpty())
+        {
+            return false;
+        }
+        else if (separator == 0 || value.indexOf(separator) < 0)
+        {
+            return !MISSING_VALUE.equals(value) && predicate.test(value);
+        }
+
+        for (String token : StringUtils.split(value, separator))
+        {
+            if (!MISSING_VALUE.equals(token) && predicate.test(token))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String getColumnValue(String column)
+    {
+        switch (column)
+        {
+            case "CHROM":
+                return this.record.getChromosome();
+            case "POS":
+                return this.record.getPosition();
+            case "ID":
+                return this.record.getId();
+            case "REF":
+                return this.record.getReference();
+            case "ALT":
+                return this.record.getAlternativeAlleles();
+            case "QUAL":
+                return this.record.getQuality();
+            case "FILTER":
+                return this.record.getFilter();
+            default:
+                throw new IllegalStateException("Unsupported column: " + column);
+        }
+    }
+
+    private Map<String, String> getInfo()
+    {
+        if (this.info == null)
+        {
+            this.info = this.record.parseInfo();
+        }
+        return this.info;
+    }
+
+    private Map<String, Map<String, String>> getSampleFields()
+    {
+        if (this.sampleFields == null)
+        {
+            this.sampleFields = this.record.parseSampleFields()
+                                           .get();
+        }
+        return this.sampleFields;
+    }
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components.filter;
+
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import org.omnaest.genomics.vcf.domain.VCFData.VCFMetaInfo;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+/**
+ * {@link Predicate} on {@link VCFRecord}s compiled from a filter expression like
+ * 
+ * <pre>
+ * FILTER=="PASS" && INFO/AF < 0.01 && GT=="0/1"
+ * </pre>
+ * 
+ * Supported fields are the columns CHROM, POS, ID, REF, ALT, QUAL and FILTER, INFO/&lt;key&gt;, FORMAT/&lt;key&gt; and GT as shortcut for
+ * FORMAT/GT. Fields can be compared by ==, !=, &lt;, &lt;=, &gt; and &gt;= with quoted or numeric literals, or tested for presence by their name
+ * alone, e.g. INFO/DB. Conditions are combined by &&, || and ! and grouped by parentheses.<br>
+ * <br>
+ * Multi value fields like ALT, FILTER or INFO/AF and the FORMAT fields of all samples match if any single value matches, while missing values
+ * never match. The expression is compiled once into a predicate tree which evaluates the cheap column conditions before the INFO and the sample
+ * conditions and decodes the INFO and sample fields at most once per {@link VCFRecord}.<br>
+ * <br>
+ * If a {@link VCFMetaInfo} is given, the ##INFO and ##FORMAT declarations determine whether a field is compared numerically and fields which
+ * are not declared are rejected, already by {@link #compile(String, VCFMetaInfo)}. Otherwise numeric literals are compared numerically.
+ * 
+ * @author omnaest
+ */
+public class VariantFilter implements Predicate<VCFRecord>
+{
+    private final String     expression;
+    private final FilterNode root;
+
+    private VariantFilter(String expression, FilterNode root)
+    {
+        super();
+        this.expression = expression;
+        this.root = root;
+    }
+
+    /**
+     * Compiles the given expression without header type information
+     * 
+     * @param expression
+     * @return
+     * @throws IllegalArgumentException
+     *             for invalid expressions
+     */
+    public static VariantFilter compile(String expression)
+    {
+        return compile(expression, HeaderFieldTypes.UNTYPED).resolveTypes();
+    }
+
+    /**
+     * Compiles the given expression against the field types declared by the given {@link VCFMetaInfo}
+     * 
+     * @param expression
+     * @param metaInfo
+     * @return
+     * @throws IllegalArgumentException
+     *             for invalid expressions, including fields which are not declared or do not fit their comparison
+     */
+    public static VariantFilter compile(String expression, VCFMetaInfo metaInfo)
+    {
+        return compile(expression, new HeaderFieldTypes(() -> metaInfo)).resolveTypes();
+    }
+
+    /**
+     * Similar to {@link #compile(String, VCFMetaInfo)} but resolves the {@link VCFMetaInfo} not before the first {@link VCFRecord} is tested,
+     * which allows to compile a filter before a streamed header is parsed. Type errors are then raised by the first {@link #test(VCFRecord)}.
+     * 
+     * @param expression
+     * @param metaInfo
+     * @return
+     * @throws IllegalArgumentException
+     *             for invalid expressions
+     */
+    public static VariantFilter compile(String expression, Supplier<VCFMetaInfo> metaInfo)
+    {
+        return compile(expression, new HeaderFieldTypes(metaInfo));
+    }
+
+    private static VariantFilter compile(String expression, HeaderFieldTypes fieldTypes)
+    {
+        return new VariantFilter(expression, new VariantFilterParser(expression, fieldTypes).parse());
+    }
+
+    private VariantFilter resolveTypes()
+    {
+        this.root.resolveTypes();
+        return this;
+    }
+
+    @Override
+    public boolean test(VCFRecord record)
+    {
+        return this.root.test(new RecordContext(record));
+    }
+
+    public String getExpression()
+    {
+        return this.expression;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "VariantFilter [expression=" + this.expression + ", tree=" + this.root + "]";
+    }
+}
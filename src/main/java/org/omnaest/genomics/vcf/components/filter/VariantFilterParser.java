@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.omnaest.genomics.vcf.components.filter.FilterNode.Operator;
+
+/**
+ * Recursive descent parser of {@link VariantFilter} expressions:
+ * 
+ * <pre>
+ * expression := and ( '||' and )*
+ * and        := unary ( '&&' unary )*
+ * unary      := '!' unary | '(' expression ')' | field ( operator literal )?
+ * operator   := '==' | '!=' | '<' | '<=' | '>' | '>='
+ * literal    := '"' text '"' | '\'' text '\'' | number
+ * </pre>
+ * 
+ * @author omnaest
+ */
+class VariantFilterParser
+{
+    private final String           expression;
+    private final HeaderFieldTypes fieldTypes;
+    private int                    position = 0;
+
+    public VariantFilterParser(String expression, HeaderFieldTypes fieldTypes)
+    {
+        super();
+        this.expression = expression;
+        this.fieldTypes = fieldTypes;
+    }
+
+    public FilterNode parse()
+    {
+        FilterNode node = this.parseDisjunction();
+        this.skipWhitespaces();
+        if (this.position < this.expression.length())
+        {
+            throw this.newSyntaxException("Unexpected character '" + this.expression.charAt(this.position) + "'");
+        }
+        return node;
+    }
+
+    private FilterNode parseDisjunction()
+    {
+        List<FilterNode> nodes = new ArrayList<>();
+        nodes.add(this.parseConjunction());
+        while (this.consume("||"))
+        {
+            nodes.add(this.parseConjunction());
+        }
+        return nodes.size() == 1 ? nodes.get(0) : new FilterNode.Junction(false, nodes);
+    }
+
+    private FilterNode parseConjunction()
+    {
+        List<FilterNode> nodes = new ArrayList<>();
+        nodes.add(this.parseUnary());
+        while (this.consume("&&"))
+        {
+            nodes.add(this.parseUnary());
+        }
+        return nodes.size() == 1 ? nodes.get(0) : new FilterNode.Junction(true, nodes);
+    }
+
+    private FilterNode parseUnary()
+    {
+        if (this.consume("!="))
+        {
+            throw this.newSyntaxException("Field expected before '!='");
+        }
+        else if (this.consume("!"))
+        {
+            return new FilterNode.Negation(this.parseUnary());
+        }
+        else if (this.consume("("))
+        {
+            FilterNode node = this.parseDisjunction();
+            if (!this.consume(")"))
+            {
+                throw this.newSyntaxException("')' expected");
+            }
+            return node;
+        }
+
+        Field field = Field.parse(this.parseIdentifier());
+        Operator operator = this.parseOperator();
+        if (operator == null)
+        {
+            return new FilterNode.Presence(field, this.fieldTypes);
+        }
+
+        this.skipWhitespaces();
+        boolean isQuoted = this.position < this.expression.length() && (this.current() == '"' || this.current() == '\'');
+        String literal = isQuoted ? this.parseQuotedLiteral() : this.parseNumberLiteral();
+        return new FilterNode.Comparison(field, operator, literal, !isQuoted || isNumber(literal), this.fieldTypes);
+    }
+
+    private String parseIdentifier()
+    {
+        this.skipWhitespaces();
+        int start = this.position;
+        while (this.position < this.expression.length() && isIdentifierCharacter(this.current()))
+        {
+            this.position++;
+        }
+        if (start == this.position)
+        {
+            throw this.newSyntaxException("Field expected");
+        }
+        return this.expression.substring(start, this.position);
+    }
+
+    private Operator parseOperator()
+    {
+        for (Operator operator : new Operator[] { Operator.EQUALS, Operator.NOT_EQUALS, Operator.LESS_OR_EQUAL, Operator.GREATER_OR_EQUAL,
+                                                  Operator.LESS, Operator.GREATER })
+        {
+            if (this.consume(operator.getSymbol()))
+            {
+                return operator;
+            }
+        }
+        return null;
+    }
+
+    private String parseQuotedLiteral()
+    {
+        char quote = this.current();
+        int end = this.expression.indexOf(quote, this.position + 1);
+        if (end < 0)
+        {
+            throw this.newSyntaxException("Unterminated literal");
+        }
+        String literal = this.expression.substring(this.position + 1, end);
+        this.position = end + 1;
+        return literal;
+    }
+
+    private String parseNumberLiteral()
+    {
+        int start = this.position;
+        while (this.position < this.expression.length() && (isIdentifierCharacter(this.current()) || this.current() == '-' || this.current() == '+'))
+        {
+            this.position++;
+        }
+        String literal = this.expression.substring(start, this.position);
+        if (!isNumber(literal))
+        {
+            throw this.newSyntaxException("Quoted or numeric literal expected");
+        }
+        return literal;
+    }
+
+    private boolean consume(String token)
+    {
+        this.skipWhitespaces();
+        if (this.expression.startsWith(token, this.position))
+        {
+            this.position += token.length();
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespaces()
+    {
+        while (this.position < this.expression.length() && Character.isWhitespace(this.current()))
+        {
+            this.position++;
+        }
+    }
+
+    private char current()
+    {
+        return this.expression.charAt(this.position);
+    }
+
+    private IllegalArgumentException newSyntaxException(String message)
+    {
+        return new IllegalArgumentException(message + " at position " + this.position + " of filter expression: " + this.expression);
+    }
+
+    private static boolean isIdentifierCharacter(char character)
+    {
+        return Character.isLetterOrDigit(character) || character == '_' || character == '/' || character == '.';
+    }
+
+    private static boolean isNumber(String literal)
+    {
+        try
+        {
+            return !literal.isEmpty() && !Double.isNaN(Double.parseDouble(literal));
+        }
+        catch (NumberFormatException e)
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components.parser;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.omnaest.genomics.vcf.domain.VCFRecord.Column;
+
+/**
+ * Defines the {@link Column}s of a VCF data line which are materialized into a {@link org.omnaest.genomics.vcf.domain.VCFRecord}. Tokenizers stop
+ * scanning a line after the last requested {@link Column}, so sample columns are never touched if {@link Column#SAMPLES} is not part of the
+ * projection. Requesting {@link Column#SAMPLES} implies the {@link Column#FORMAT} column. The sample columns can be further restricted to a subset
+ * of samples, see {@link #withSamples(Set)}.
+ * 
+ * @author omnaest
+ */
+public class ColumnProjection
+{
+    private static final char TAB = '\t';
+
+    private static final ColumnProjection ALL = new ColumnProjection(EnumSet.allOf(Column.class));
+
+    private final Set<Column> columns;
+    private final Set<String> samples;
+    private final BitSet      sampleColumnIndexes;
+    private final int         numberOfColumnsToScan;
+
+    private ColumnProjection(Set<Column> columns)
+    {
+        this(columns, null, null);
+    }
+
+    private ColumnProjection(Set<Column> columns, Set<String> samples, BitSet sampleColumnIndexes)
+    {
+        super();
+        this.columns = Collections.unmodifiableSet(columns);
+        this.samples = samples;
+        this.sampleColumnIndexes = sampleColumnIndexes;
+        if (sampleColumnIndexes != null)
+        {
+            this.numberOfColumnsToScan = Math.max(Column.SAMPLES.ordinal(), sampleColumnIndexes.length());
+        }
+        else
+        {
+            this.numberOfColumnsToScan = columns.contains(Column.SAMPLES) ? Integer.MAX_VALUE
+                    : columns.stream()
+                             .mapToInt(column -> column.ordinal() + 1)
+                             .max()
+                             .orElse(0);
+        }
+    }
+
+    /**
+     * Returns the {@link ColumnProjection} containing all {@link Column}s
+     * 
+     * @return
+     */
+    public static ColumnProjection all()
+    {
+        return ALL;
+    }
+
+    /**
+     * Returns the {@link ColumnProjection} of the fixed site {@link Column}s {@link Column#CHROM} to {@link Column#INFO}
+     * 
+     * @return
+     */
+    public static ColumnProjection sitesOnly()
+    {
+        return of(EnumSet.range(Column.CHROM, Column.INFO));
+    }
+
+    public static ColumnProjection of(Column... columns)
+    {
+        return of(Arrays.asList(columns));
+    }
+
+    public static ColumnProjection of(Collection<Column> columns)
+    {
+        if (columns == null || columns.isEmpty())
+        {
+            throw new IllegalArgumentException("At least one column has to be projected");
+        }
+
+        EnumSet<Column> columnSet = EnumSet.copyOf(columns);
+        if (columnSet.contains(Column.SAMPLES))
+        {
+            columnSet.add(Column.FORMAT);
+        }
+        return columnSet.size() == Column.values().length ? ALL : new ColumnProjection(columnSet);
+    }
+
+    /**
+     * Returns a new {@link ColumnProjection} which additionally restricts the sample columns to the given sample names. The sample columns are
+     * determined by {@link #resolve(List)} using the column names of the header line.
+     * 
+     * @param samples
+     * @return
+     */
+    public ColumnProjection withSamples(Set<String> samples)
+    {
+        EnumSet<Column> columnSet = EnumSet.copyOf(this.columns);
+        columnSet.add(Column.FORMAT);
+        columnSet.add(Column.SAMPLES);
+        return new ColumnProjection(columnSet, Collections.unmodifiableSet(new LinkedHashSet<>(samples)), null);
+    }
+
+    /**
+     * Resolves the sample names of {@link #withSamples(Set)} to the indexes of the given header column names. Returns this instance if no sample
+     * restriction is defined.
+     * 
+     * @param columnNames
+     * @return
+     * @throws IllegalArgumentException
+     *             if a requested sample is not present
+     */
+    public ColumnProjection resolve(List<String> columnNames)
+    {
+        if (this.samples == null)
+        {
+            return this;
+        }
+
+        BitSet sampleColumnIndexes = new BitSet();
+        Set<String> unknownSamples = new LinkedHashSet<>(this.samples);
+        for (int ii = Column.SAMPLES.ordinal(); ii < columnNames.size(); ii++)
+        {
+            if (unknownSamples.remove(columnNames.get(ii)))
+            {
+                sampleColumnIndexes.set(ii);
+            }
+        }
+        if (!unknownSamples.isEmpty())
+        {
+            throw new IllegalArgumentException("Samples not present within the header line: " + unknownSamples);
+        }
+        return new ColumnProjection(EnumSet.copyOf(this.columns), this.samples, sampleColumnIndexes);
+    }
+
+    public Set<Column> getColumns()
+    {
+        return this.columns;
+    }
+
+    /**
+     * Returns the selected sample names or null if all samples are included
+     * 
+     * @return
+     */
+    public Set<String> getSamples()
+    {
+        return this.samples;
+    }
+
+    public boolean isAll()
+    {
+        return this == ALL;
+    }
+
+    public boolean contains(Column column)
+    {
+        return this.columns.contains(column);
+    }
+
+    /**
+     * Returns true if the column at the given index of a data line is part of this {@link ColumnProjection}. All indexes after the
+     * {@link Column#FORMAT} column are sample columns, which are restricted to the resolved sample columns if {@link #withSamples(Set)} is used.
+     * 
+     * @param columnIndex
+     * @return
+     */
+    public boolean containsColumnIndex(int columnIndex)
+    {
+        if (columnIndex < Column.SAMPLES.ordinal())
+        {
+            return this.contains(Column.values()[columnIndex]);
+        }
+        else if (this.sampleColumnIndexes != null)
+        {
+            return this.sampleColumnIndexes.get(columnIndex);
+        }
+        else
+        {
+            return this.contains(Column.SAMPLES);
+        }
+    }
+
+    /**
+     * Returns the number of leading columns of a data line which have to be scanned to cover all projected {@link Column}s
+     * 
+     * @return
+     */
+    public int getNumberOfColumnsToScan()
+    {
+        return this.numberOfColumnsToScan;
+    }
+
+    /**
+     * Splits the given data line at tabs until the last projected column. Tokens of columns which are not projected are null.
+     * 
+     * @param line
+     * @return
+     */
+    public String[] tokenize(String line)
+    {
+        if (this.isAll())
+        {
+            return StringUtils.splitPreserveAllTokens(line, TAB);
+        }
+        return this.tokenize((CharSequence) line);
+    }
+
+    /**
+     * Similar to {@link #tokenize(String)} but for any projection. The line is never read behind the end of the last projected column. For a bounded
+     * projection the tokens are collected into an array of the number of columns to scan, otherwise the array grows with the number of columns.
+     * 
+     * @param line
+     * @return
+     */
+    String[] tokenize(CharSequence line)
+    {
+        boolean isBounded = this.numberOfColumnsToScan < Integer.MAX_VALUE;
+        String[] tokens = new String[isBounded ? this.numberOfColumnsToScan : Column.values().length];
+        int numberOfTokens = 0;
+        int start = 0;
+        while (numberOfTokens < this.numberOfColumnsToScan)
+        {
+            int end = StringUtils.indexOf(line, TAB, start);
+            boolean isLastToken = end < 0;
+            if (isLastToken)
+            {
+                end = line.length();
+            }
+            if (numberOfTokens == tokens.length)
+            {
+                tokens = Arrays.copyOf(tokens, tokens.length * 2);
+            }
+            if (this.containsColumnIndex(numberOfTokens))
+            {
+                tokens[numberOfTokens] = line.subSequence(start, end)
+                                             .toString();
+            }
+            numberOfTokens++;
+            if (isLastToken)
+            {
+                break;
+            }
+            start = end + 1;
+        }
+        return numberOfTokens < tokens.length ? Arrays.copyOf(tokens, numberOfTokens) : tokens;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ColumnProjection [columns=" + this.columns + ", samples=" + this.samples + "]";
+    }
+}
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components.parser;
+
+import java.util.Collection;
+
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+import org.omnaest.genomics.vcf.domain.VCFRecord.Column;
+
+/**
+ * Predicate on a {@link RawLine} which is evaluated by the {@link VCFParser}s before a line is mapped to a
+ * {@link org.omnaest.genomics.vcf.domain.VCFRecord}. Rejected lines are skipped without creating a record.
+ * 
+ * @see VCFParser#withFilter(LineFilter)
+ * @author omnaest
+ */
+@FunctionalInterface
+public interface LineFilter
+{
+    /**
+     * {@link LineFilter} accepting all lines
+     */
+    public static final LineFilter ALL = line -> true;
+
+    public boolean test(RawLine line);
+
+    /**
+     * Returns a {@link LineFilter} which accepts a line only if this and the given {@link LineFilter} accept it
+     * 
+     * @param filter
+     * @return
+     */
+    public default LineFilter and(LineFilter filter)
+    {
+        if (this == ALL)
+        {
+            return filter;
+        }
+        else if (filter == ALL)
+        {
+            return this;
+        }
+        return line -> this.test(line) && filter.test(line);
+    }
+
+    /**
+     * Returns a {@link LineFilter} which accepts lines with the given exact value of a fixed {@link Column}
+     * 
+     * @param column
+     * @param value
+     * @return
+     */
+    public static LineFilter columnEquals(Column column, String value)
+    {
+        return line -> line.columnEquals(column, value);
+    }
+
+    /**
+     * Returns a {@link LineFilter} which accepts lines having PASS as {@link Column#FILTER}
+     * 
+     * @return
+     */
+    public static LineFilter passOnly()
+    {
+        return columnEquals(Column.FILTER, "PASS");
+    }
+
+    /**
+     * Returns a {@link LineFilter} which accepts lines with one of the given {@link Column#CHROM} values. Like in
+     * {@link org.omnaest.genomics.vcf.domain.VCFData} the chromosomes are compared case insensitive and without a 'chr' prefix, so e.g. '1' accepts
+     * lines of 'chr1'.
+     * 
+     * @param chromosomes
+     * @return
+     */
+    public static LineFilter chromosomes(Collection<String> chromosomes)
+    {
+        String[] values = chromosomes.stream()
+                                     .map(VCFRecord::normalizeChromosome)
+                                     .toArray(String[]::new);
+        return line ->
+        {
+            for (String value : values)
+            {
+                if (line.chromosomeEquals(value))
+                {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    /**
+     * Returns a {@link LineFilter} which accepts lines with a {@link Column#POS} within the given range
+     * 
+     * @param from
+     *            inclusive
+     * @param to
+     *            inclusive
+     * @return
+     */
+    public static LineFilter positionRange(long from, long to)
+    {
+        return line ->
+        {
+            long position = line.getPosition();
+            return position >= from && position <= to;
+        };
+    }
+
+    /**
+     * Returns a {@link LineFilter} which accepts lines with the given key within the {@link Column#INFO} column
+     * 
+     * @param key
+     * @return
+     */
+    public static LineFilter infoHasKey(String key)
+    {
+        return line -> line.hasInfoKey(key);
+    }
+}
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components.parser;
+
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+import org.omnaest.genomics.vcf.domain.VCFRecord.Column;
+
+/**
+ * View on a single unparsed VCF data line which locates the columns lazily by their tab offsets. The column values can be compared without
+ * creating substrings, which allows {@link LineFilter}s to reject lines before any {@link org.omnaest.genomics.vcf.domain.VCFRecord} is
+ * created.<br>
+ * <br>
+ * Instances can be reused for multiple lines by {@link #reset(String)} and are not thread safe.
+ * 
+ * @author omnaest
+ */
+public class RawLine
+{
+    private static final char TAB       = '\t';
+    private static final char SEMICOLON = ';';
+    private static final char EQUALS    = '=';
+
+    private static final int NUMBER_OF_FIXED_COLUMNS = Column.SAMPLES.ordinal();
+
+    private String  line;
+    private int[]   columnStarts           = new int[NUMBER_OF_FIXED_COLUMNS];
+    private int[]   columnEnds             = new int[NUMBER_OF_FIXED_COLUMNS];
+    private int     numberOfLocatedColumns = 0;
+    private boolean endOfLineReached       = false;
+
+    public RawLine()
+    {
+        super();
+    }
+
+    public RawLine(String line)
+    {
+        super();
+        this.reset(line);
+    }
+
+    /**
+     * Switches this {@link RawLine} to the given line
+     * 
+     * @param line
+     * @return this
+     */
+    public RawLine reset(String line)
+    {
+        this.line = line;
+        this.numberOfLocatedColumns = 0;
+        this.endOfLineReached = false;
+        return this;
+    }
+
+    public String getLine()
+    {
+        return this.line;
+    }
+
+    public boolean hasColumn(Column column)
+    {
+        return this.locate(column);
+    }
+
+    /**
+     * Returns the value of the given fixed {@link Column} or null if the line has no such column
+     * 
+     * @param column
+     * @return
+     */
+    public String getColumn(Column column)
+    {
+        if (!this.locate(column))
+        {
+            return null;
+        }
+        return this.line.substring(this.columnStarts[column.ordinal()], this.columnEnds[column.ordinal()]);
+    }
+
+    /**
+     * Returns true if the value of the given fixed {@link Column} is equal to the given value
+     * 
+     * @param column
+     * @param value
+     * @return
+     */
+    public boolean columnEquals(Column column, String value)
+    {
+        if (!this.locate(column))
+        {
+            return false;
+        }
+        int start = this.columnStarts[column.ordinal()];
+        int length = this.columnEnds[column.ordinal()] - start;
+        return value.length() == length && this.line.regionMatches(start, value, 0, length);
+    }
+
+    /**
+     * Returns true if the {@link Column#CHROM} value is equal to the given contig, ignoring the case and a 'chr' prefix of the column value. This
+     * is the allocation free equivalent of comparing {@link VCFRecord#normalizeChromosome(String)} of the column value.
+     * 
+     * @param contig
+     *            normalized by {@link VCFRecord#normalizeChromosome(String)}
+     * @return
+     */
+    public boolean chromosomeEquals(String contig)
+    {
+        if (!this.locate(Column.CHROM))
+        {
+            return false;
+        }
+        int start = this.columnStarts[Column.CHROM.ordinal()];
+        int end = this.columnEnds[Column.CHROM.ordinal()];
+        String prefix = VCFRecord.CHROMOSOME_PREFIX;
+        if (end - start >= prefix.length() && this.line.regionMatches(true, start, prefix, 0, prefix.length()))
+        {
+            start += prefix.length();
+        }
+        int length = end - start;
+        return contig.length() == length && this.line.regionMatches(true, start, contig, 0, length);
+    }
+
+    /**
+     * Returns the {@link Column#POS} value or -1 if it is missing or not a number
+     * 
+     * @return
+     */
+    public long getPosition()
+    {
+        if (!this.locate(Column.POS))
+        {
+            return -1;
+        }
+
+        int start = this.columnStarts[Column.POS.ordinal()];
+        int end = this.columnEnds[Column.POS.ordinal()];
+        if (start == end)
+        {
+            return -1;
+        }
+
+        long position = 0;
+        for (int ii = start; ii < end; ii++)
+        {
+            char character = this.line.charAt(ii);
+            if (character < '0' || character > '9')
+            {
+                return -1;
+            }
+            position = position * 10 + (character - '0');
+        }
+        return position;
+    }
+
+    /**
+     * Returns true if the {@link Column#INFO} column contains the given key either as flag or as key=value entry
+     * 
+     * @param key
+     * @return
+     */
+    public boolean hasInfoKey(String key)
+    {
+        if (!this.locate(Column.INFO))
+        {
+            return false;
+        }
+
+        int end = this.columnEnds[Column.INFO.ordinal()];
+        int entryStart = this.columnStarts[Column.INFO.ordinal()];
+        while (entryStart < end)
+        {
+            int keyEnd = entryStart + key.length();
+            if (keyEnd <= end && this.line.regionMatches(entryStart, key, 0, key.length())
+                    && (keyEnd == end || this.line.charAt(keyEnd) == SEMICOLON || this.line.charAt(keyEnd) == EQUALS))
+            {
+                return true;
+            }
+
+            int nextEntryStart = this.line.indexOf(SEMICOLON, entryStart);
+            if (nextEntryStart < 0 || nextEntryStart >= end)
+            {
+                break;
+            }
+            entryStart = nextEntryStart + 1;
+        }
+        return false;
+    }
+
+    private boolean locate(Column column)
+    {
+        int columnIndex = column.ordinal();
+        if (columnIndex >= NUMBER_OF_FIXED_COLUMNS)
+        {
+            throw new IllegalArgumentException("Only fixed columns can be located: " + column);
+        }
+
+        while (this.numberOfLocatedColumns <= columnIndex && !this.endOfLineReached)
+        {
+            int start = this.numberOfLocatedColumns == 0 ? 0 : this.columnEnds[this.numberOfLocatedColumns - 1] + 1;
+            int end = this.line.indexOf(TAB, start);
+            if (end < 0)
+            {
+                end = this.line.length();
+                this.endOfLineReached = true;
+            }
+            this.columnStarts[this.numberOfLocatedColumns] = start;
+            this.columnEnds[this.numberOfLocatedColumns] = end;
+            this.numberOfLocatedColumns++;
+        }
+        return columnIndex < this.numberOfLocatedColumns;
+    }
+}
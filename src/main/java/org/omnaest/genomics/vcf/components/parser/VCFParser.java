@@ -44,6 +44,70 @@ public interface VCFParser
 
     public Stream<VCFRecord> getRecords();
 
+    /**
+     * Maps a single data line into a {@link VCFRecord}. This does not take comment lines into account and can be called concurrently.
+     * 
+     * @param line
+     * @return
+     */
+    public VCFRecord mapToRecord(String line);
+
+    /**
+     * Similar to {@link #mapToRecord(String)} but with the already tab separated column tokens of the given line
+     * 
+     * @param tokens
+     * @param line
+     * @return
+     */
+    public VCFRecord mapToRecord(String[] tokens, String line);
+
     public Map<String, List<String>> getComments();
 
+    /**
+     * Returns the meta information lines starting with ## in their original order. The lines are collected while the {@link #getRecords()}
+     * {@link Stream} is consumed.
+     * 
+     * @return
+     */
+    public List<String> getMetaLines();
+
+    /**
+     * Returns the sample column names of the #CHROM header line. If the {@link ColumnProjection} does not contain the sample columns, no sample
+     * names are returned.
+     * 
+     * @return
+     */
+    public List<String> getSampleNames();
+
+    /**
+     * Restricts the columns which are materialized into the {@link VCFRecord}s to the given {@link ColumnProjection}. Columns outside of the
+     * projection are null and their {@link VCFRecord}s have no raw line.
+     * 
+     * @param projection
+     * @return this
+     */
+    public VCFParser withProjection(ColumnProjection projection);
+
+    public ColumnProjection getProjection();
+
+    /**
+     * Skips all data lines which are rejected by the given {@link LineFilter} before they are mapped to a {@link VCFRecord}. This applies to
+     * {@link #getRecords()} but not to {@link #mapToRecord(String)}.
+     * 
+     * @param filter
+     * @return this
+     */
+    public VCFParser withFilter(LineFilter filter);
+
+    public LineFilter getFilter();
+
+    /**
+     * Defines if the {@link VCFRecord}s keep a reference to the line they were parsed from, see {@link VCFRecord#getRawLine()}. Default is false,
+     * since the raw line roughly doubles the memory of a retained {@link VCFRecord}.
+     * 
+     * @param keepRawLines
+     * @return this
+     */
+    public VCFParser withRawLines(boolean keepRawLines);
+
 }
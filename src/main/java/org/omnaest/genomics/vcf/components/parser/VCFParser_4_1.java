@@ -34,16 +34,21 @@
 package org.omnaest.genomics.vcf.components.parser;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
 import org.omnaest.genomics.vcf.domain.VCFRecord;
+import org.omnaest.genomics.vcf.domain.VCFRecord.Column;
 import org.omnaest.utils.MatcherUtils;
 import org.omnaest.utils.MatcherUtils.Match;
 import org.omnaest.utils.PatternUtils;
@@ -54,9 +59,15 @@ public class VCFParser_4_1 implements VCFParserFactory
 {
     private static final Logger LOG = LoggerFactory.getLogger(VCFParser_4_1.class);
 
+    public static final List<String> FIXED_COLUMNS = Collections.unmodifiableList(Arrays.asList("CHROM", "POS", "ID", "REF", "ALT", "QUAL", "FILTER",
+                                                                                                "INFO", "FORMAT"));
+
     protected static class CommentFilter implements Predicate<String>
     {
+        private static final Pattern COMMENT_PATTERN = Pattern.compile("\\#\\#([a-zA-Z0-9]+)\\=(.*)");
+
         private Map<String, List<String>> commentMap = new ConcurrentHashMap<>();
+        private List<String>              metaLines  = new CopyOnWriteArrayList<>();
 
         @Override
         public boolean test(String line)
@@ -64,9 +75,13 @@ public class VCFParser_4_1 implements VCFParserFactory
             boolean isCommentLine = StringUtils.startsWith(line, "#");
             if (isCommentLine)
             {
-                Pattern pattern = Pattern.compile("\\#\\#([a-zA-Z0-9]+)\\=(.*)");
+                if (StringUtils.startsWith(line, "##"))
+                {
+                    this.metaLines.add(line);
+                }
+
                 MatcherUtils.matcher()
-                            .of(pattern)
+                            .of(COMMENT_PATTERN)
                             .matchAgainst(line)
                             .map(Match::getGroups)
                             .ifPresent(match ->
@@ -83,6 +98,11 @@ public class VCFParser_4_1 implements VCFParserFactory
             return this.commentMap;
         }
 
+        public List<String> getMetaLines()
+        {
+            return this.metaLines;
+        }
+
     }
 
     public VCFParser_4_1()
@@ -101,6 +121,10 @@ public class VCFParser_4_1 implements VCFParserFactory
     {
         String version = this.determineVersion(headers);
         Map<Integer, String> columnIndexToField = this.determineColumns(headers);
+        List<String> columnNames = new ArrayList<>(columnIndexToField.values());
+        List<String> sampleNames = columnNames.stream()
+                                              .skip(FIXED_COLUMNS.size())
+                                              .collect(Collectors.toList());
         return new VCFParserFactoryWithHeader()
         {
             @Override
@@ -114,12 +138,17 @@ public class VCFParser_4_1 implements VCFParserFactory
             {
                 return new VCFParser()
                 {
-                    private CommentFilter commentFilter = new CommentFilter();
+                    private CommentFilter    commentFilter = new CommentFilter();
+                    private ColumnProjection projection    = ColumnProjection.all();
+                    private LineFilter       filter        = LineFilter.ALL;
+                    private boolean          keepRawLines  = false;
 
                     @Override
                     public Stream<VCFRecord> getRecords()
                     {
+                        RawLine rawLine = new RawLine();
                         return lines.filter(this.commentFilter)
+                                    .filter(line -> this.filter == LineFilter.ALL || this.filter.test(rawLine.reset(line)))
                                     .map(this::mapToRecord);
                     }
 
@@ -129,14 +158,76 @@ public class VCFParser_4_1 implements VCFParserFactory
                         return this.commentFilter.getCommentMap();
                     }
 
-                    private VCFRecord mapToRecord(String line)
+                    @Override
+                    public List<String> getMetaLines()
+                    {
+                        return this.commentFilter.getMetaLines();
+                    }
+
+                    @Override
+                    public List<String> getSampleNames()
+                    {
+                        if (!this.projection.contains(Column.SAMPLES))
+                        {
+                            return Collections.emptyList();
+                        }
+                        return sampleNames.stream()
+                                          .filter(sampleName -> this.projection.getSamples() == null || this.projection.getSamples()
+                                                                                                                       .contains(sampleName))
+                                          .collect(Collectors.toList());
+                    }
+
+                    @Override
+                    public VCFParser withProjection(ColumnProjection projection)
+                    {
+                        this.projection = projection.resolve(columnNames);
+                        return this;
+                    }
+
+                    @Override
+                    public ColumnProjection getProjection()
+                    {
+                        return this.projection;
+                    }
+
+                    @Override
+                    public VCFParser withFilter(LineFilter filter)
+                    {
+                        this.filter = filter;
+                        return this;
+                    }
+
+                    @Override
+                    public LineFilter getFilter()
+                    {
+                        return this.filter;
+                    }
+
+                    @Override
+                    public VCFParser withRawLines(boolean keepRawLines)
+                    {
+                        this.keepRawLines = keepRawLines;
+                        return this;
+                    }
+
+                    @Override
+                    public VCFRecord mapToRecord(String line)
+                    {
+                        return this.mapToRecord(this.projection.tokenize(line), line);
+                    }
+
+                    @Override
+                    public VCFRecord mapToRecord(String[] tokens, String line)
                     {
                         Map<String, String> retmap = new LinkedHashMap<>();
-                        String[] tokens = StringUtils.splitPreserveAllTokens(line, "\t");
                         for (int ii = 0; ii < tokens.length; ii++)
                         {
                             String field = columnIndexToField.get(ii);
                             String value = tokens[ii];
+                            if (value == null)
+                            {
+                                continue;
+                            }
                             if (StringUtils.isBlank(field))
                             {
                                 LOG.warn("Unmapped field value: " + value + "(" + line + ")");
@@ -158,7 +249,9 @@ public class VCFParser_4_1 implements VCFParserFactory
                         String info = retmap.remove("INFO");
                         String format = retmap.remove("FORMAT");
                         Map<String, String> sampleFields = retmap;
-                        return new VCFRecord(chromosome, position, id, reference, alternativeAlleles, quality, filter, info, format, sampleFields);
+                        String rawLine = this.keepRawLines && this.projection.isAll() ? line : null;
+                        return new VCFRecord(chromosome, position, id, reference, alternativeAlleles, quality, filter, info, format, sampleFields,
+                                             rawLine);
                     }
                 };
             }
@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.domain;
+
+/**
+ * Single position of a chromosome
+ * 
+ * @see GenomicRegion
+ * @author omnaest
+ */
+public class GenomicPosition
+{
+    private final String chromosome;
+    private final long   position;
+
+    public GenomicPosition(String chromosome, long position)
+    {
+        super();
+        this.chromosome = chromosome;
+        this.position = position;
+    }
+
+    public static GenomicPosition of(String chromosome, long position)
+    {
+        return new GenomicPosition(chromosome, position);
+    }
+
+    public String getChromosome()
+    {
+        return this.chromosome;
+    }
+
+    public long getPosition()
+    {
+        return this.position;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.chromosome + ":" + this.position;
+    }
+}
@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.domain;
+
+/**
+ * Genomic region of a chromosome between a start and an end position, both inclusive
+ * 
+ * @author omnaest
+ */
+public class GenomicRegion
+{
+    private final String chromosome;
+    private final long   start;
+    private final long   end;
+
+    public GenomicRegion(String chromosome, long start, long end)
+    {
+        super();
+        this.chromosome = chromosome;
+        this.start = start;
+        this.end = end;
+    }
+
+    public static GenomicRegion of(String chromosome, long start, long end)
+    {
+        return new GenomicRegion(chromosome, start, end);
+    }
+
+    public String getChromosome()
+    {
+        return this.chromosome;
+    }
+
+    public long getStart()
+    {
+        return this.start;
+    }
+
+    public long getEnd()
+    {
+        return this.end;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.chromosome + ":" + this.start + "-" + this.end;
+    }
+}
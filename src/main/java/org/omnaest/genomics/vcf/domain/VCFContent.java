@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.domain;
+
+import java.util.stream.Stream;
+
+import org.omnaest.genomics.vcf.domain.VCFData.VCFMetaInfo;
+
+/**
+ * {@link VCFRecord}s together with the {@link VCFMetaInfo} of their source. In contrast to the in memory {@link VCFData} a {@link VCFContent}
+ * might be backed by a single pass {@link Stream}, in which case its {@link VCFMetaInfo} is only complete after the first {@link VCFRecord} has
+ * been read.
+ * 
+ * @author omnaest
+ */
+public interface VCFContent
+{
+    public Stream<VCFRecord> getRecords();
+
+    public VCFMetaInfo getMetaInfo();
+}
@@ -33,15 +33,22 @@
 */
 package org.omnaest.genomics.vcf.domain;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 import org.omnaest.genomics.translator.domain.CodeAndPosition;
 import org.omnaest.genomics.translator.domain.NucleicAcidCode;
+import org.omnaest.genomics.vcf.domain.VCFData.GenomeApplicator.AlleleSpecificGenomeApplicator;
+import org.omnaest.genomics.vcf.domain.VCFData.GenomeApplicator.HaplotypeGenomeApplicator;
 import org.omnaest.utils.element.lar.UnaryLeftAndRight;
 
-public interface VCFData
+public interface VCFData extends VCFContent
 {
 
     public static interface GenomeApplicator
@@ -72,6 +79,80 @@ public interface VCFData
 
         }
 
+        /**
+         * Applicator which reconstructs both haplotypes of a sample within a single pass over the reference sequence
+         * 
+         * @see GenomeApplicator#usingHaplotypes()
+         * @author omnaest
+         */
+        public static interface HaplotypeGenomeApplicator
+        {
+            /**
+             * Applies the {@link VCFData} to a given reference {@link Stream} of {@link NucleicAcidCode}s and returns for each reference position the
+             * resulting {@link HaplotypeCodes} of both haplotypes. The given reference {@link Stream} is only read once.
+             * 
+             * @param chromosome
+             * @param sequence
+             * @return
+             */
+            public Stream<HaplotypeCodes> applyToChromosomeSequence(String chromosome, Stream<NucleicAcidCode> sequence);
+
+            /**
+             * Similar to {@link #applyToChromosomeSequence(String, Stream)} but with a {@link Stream} of {@link CodeAndPosition} as data source
+             * 
+             * @param chromosome
+             * @param sequence
+             * @return
+             */
+            public Stream<HaplotypeCodes> applyToChromosomeCodeAndPositionSequence(String chromosome, Stream<CodeAndPosition<NucleicAcidCode>> sequence);
+
+            /**
+             * Similar to {@link #applyToChromosomeSequence(String, Stream)} but forwards the {@link NucleicAcidCode}s of the first and second haplotype
+             * to the given {@link Consumer}s
+             * 
+             * @param chromosome
+             * @param sequence
+             * @param firstHaplotype
+             * @param secondHaplotype
+             */
+            public void applyToChromosomeSequence(String chromosome, Stream<NucleicAcidCode> sequence, Consumer<NucleicAcidCode> firstHaplotype,
+                                                  Consumer<NucleicAcidCode> secondHaplotype);
+        }
+
+        /**
+         * The resulting {@link NucleicAcidCode}s of both haplotypes for a single reference position
+         * 
+         * @author omnaest
+         */
+        public static interface HaplotypeCodes
+        {
+            /**
+             * Returns the position within the reference sequence
+             * 
+             * @return
+             */
+            public long getPosition();
+
+            public NucleicAcidCode getReferenceCode();
+
+            /**
+             * Returns the {@link NucleicAcidCode}s which replace the reference code for the given haplotype = 0,1. The {@link List} is empty for
+             * deletions and contains more than one code for insertions.
+             * 
+             * @param haplotype
+             * @return
+             */
+            public List<NucleicAcidCode> getCodes(int haplotype);
+
+            /**
+             * Returns the phase set (PS) of the variant applied at this position. Haplotypes of variants within different phase sets are not phased
+             * against each other. Returns null if no variant is applied or the variant is not phased.
+             * 
+             * @return
+             */
+            public Long getPhaseSet();
+        }
+
         /**
          * Similar to {@link #usingAllele(int)} with value = 0
          * 
@@ -95,6 +176,23 @@ public interface VCFData
          */
         public AlleleSpecificGenomeApplicator usingAllele(int allele);
 
+        /**
+         * Returns a {@link HaplotypeGenomeApplicator} which uses the genotype (GT) and phase set (PS) of the first sample column to assign the
+         * variants to the haplotypes. Phased genotypes like 0|1 are honored and multi allelic genotypes like 1|2 resolve the respective ALT allele.
+         * 
+         * @see #usingHaplotypes(String)
+         * @return
+         */
+        public HaplotypeGenomeApplicator usingHaplotypes();
+
+        /**
+         * Similar to {@link #usingHaplotypes()} but for the given sample column
+         * 
+         * @param sample
+         * @return
+         */
+        public HaplotypeGenomeApplicator usingHaplotypes(String sample);
+
         public Map<Long, Replacements> getPositionToReplacementForChromosome(String chromosome);
 
         public Stream<ChromosomeAndPositionReplacement> getPositionToReplacements();
@@ -112,6 +210,133 @@ public interface VCFData
          * @return
          */
         public int getNumberOfAlleles();
+
+        /**
+         * Returns the {@link ConflictReport} of all conflicts which occurred so far while applying the {@link VCFData} using this
+         * {@link GenomeApplicator} instance
+         * 
+         * @return
+         */
+        public ConflictReport getConflictReport();
+    }
+
+    /**
+     * Aggregated report of the conflicts which occurred while applying {@link VCFRecord}s to a reference sequence. Conflicts are counted per
+     * chromosome and {@link ConflictType} and only a bounded number of {@link Conflict} examples is kept.
+     * 
+     * @author omnaest
+     */
+    public static interface ConflictReport
+    {
+        public enum ConflictType
+        {
+            /** More than one replacement is available for the same position and allele */
+            MULTIPLE_REPLACEMENTS,
+            /** An ALT allele like a symbolic allele &lt;DEL&gt; could not be applied */
+            UNSUPPORTED_ALLELE
+        }
+
+        public static interface Conflict
+        {
+            public ConflictType getType();
+
+            public String getChromosome();
+
+            public long getPosition();
+
+            /**
+             * Returns the allele or haplotype index = 0,1,... the conflict occurred for
+             * 
+             * @return
+             */
+            public int getAllele();
+
+            public String getDescription();
+        }
+
+        /**
+         * Returns the total number of conflicts
+         * 
+         * @return
+         */
+        public long getNumberOfConflicts();
+
+        /**
+         * Returns the number of conflicts of the given {@link ConflictType} over all chromosomes
+         * 
+         * @param conflictType
+         * @return
+         */
+        public long getNumberOfConflicts(ConflictType conflictType);
+
+        /**
+         * Returns the number of conflicts per chromosome and {@link ConflictType}
+         * 
+         * @return
+         */
+        public Map<String, Map<ConflictType, Long>> getChromosomeToConflictTypeToCount();
+
+        /**
+         * Returns the sampled {@link Conflict} examples, which are limited to a maximum number per {@link ConflictType}
+         * 
+         * @return
+         */
+        public List<Conflict> getExamples();
+
+        public boolean hasConflicts();
+    }
+
+    /**
+     * {@link GenomeApplicator} variant which is backed by a coordinate sorted {@link Stream} of {@link VCFRecord}s instead of the in memory
+     * {@link VCFData}. Only the variants overlapping the current reference position are held in memory.<br>
+     * <br>
+     * The chromosomes have to be applied in the order they occur within the VCF records and each returned {@link Stream} has to be consumed before
+     * the next chromosome is applied. Chromosomes ordered by ##contig header lines may be skipped, otherwise applying a chromosome while records of an
+     * earlier, not yet applied chromosome are pending fails with an {@link IllegalStateException}. Instances are not thread safe.
+     * 
+     * @author omnaest
+     */
+    public static interface StreamingGenomeApplicator
+    {
+        /**
+         * Similar to {@link #usingAllele(int)} with value = 0
+         * 
+         * @return
+         */
+        public AlleleSpecificGenomeApplicator usingPrimaryAllele();
+
+        /**
+         * Similar to {@link #usingAllele(int)} with value = 1
+         * 
+         * @return
+         */
+        public AlleleSpecificGenomeApplicator usingSecondaryAllele();
+
+        /**
+         * @see GenomeApplicator#usingAllele(int)
+         * @param allele
+         * @return
+         */
+        public AlleleSpecificGenomeApplicator usingAllele(int allele);
+
+        /**
+         * @see GenomeApplicator#usingHaplotypes()
+         * @return
+         */
+        public HaplotypeGenomeApplicator usingHaplotypes();
+
+        /**
+         * @see GenomeApplicator#usingHaplotypes(String)
+         * @param sample
+         * @return
+         */
+        public HaplotypeGenomeApplicator usingHaplotypes(String sample);
+
+        /**
+         * @see GenomeApplicator#getConflictReport()
+         * @return
+         */
+        public ConflictReport getConflictReport();
     }
 
     public static interface Replacements
@@ -167,10 +392,136 @@ public interface VCFData
          * @return
          */
         public SampleInfos getSampleInfos();
+
+        /**
+         * Returns all meta information lines starting with ## in their original order
+         * 
+         * @return
+         */
+        public List<String> getMetaLines();
+
+        /**
+         * Returns the sample column names of the #CHROM header line
+         * 
+         * @return
+         */
+        public List<String> getSampleNames();
     }
 
+    @Override
     public Stream<VCFRecord> getRecords();
 
+    /**
+     * Returns the {@link VCFRecord}s matching the given filter expression, e.g. FILTER=="PASS" && INFO/AF < 0.01. The expression is compiled
+     * once against the field types of the {@link VCFMetaInfo}.
+     * 
+     * @see org.omnaest.genomics.vcf.components.filter.VariantFilter
+     * @param filterExpression
+     * @return
+     * @throws IllegalArgumentException
+     *             if the expression is invalid
+     */
+    public Stream<VCFRecord> getRecords(String filterExpression);
+
+    /**
+     * Returns the {@link VCFRecord}s of the given chromosome with a position between start and end, both inclusive, sorted by position. The
+     * query uses a per contig position index, which is created on the first region query.
+     * 
+     * @param chromosome
+     * @param start
+     * @param end
+     * @return
+     */
+    public Stream<VCFRecord> getRecords(String chromosome, long start, long end);
+
+    /**
+     * Returns the {@link VCFRecord}s of each of the given {@link GenomicRegion}s in the order of the given regions. All regions are answered by a
+     * single sweep over each contig, which is much faster than individual queries for thousands of regions.
+     * 
+     * @see #getRecords(String, long, long)
+     * @param regions
+     * @return
+     */
+    public List<List<VCFRecord>> getRecords(List<GenomicRegion> regions);
+
+    /**
+     * Looks up the {@link VCFRecord}s at each of the given {@link GenomicPosition}s and returns them in the order of the given positions. The
+     * positions are sorted per contig and answered by a single forward sweep over the position sorted records, which is much faster than single
+     * lookups for e.g. the hundreds of thousands of positions of a genotyping chip.
+     * 
+     * @see #getRecords(List)
+     * @param positions
+     * @return
+     */
+    public default List<List<VCFRecord>> lookupAll(Iterator<GenomicPosition> positions)
+    {
+        List<GenomicRegion> regions = new ArrayList<>();
+        positions.forEachRemaining(position -> regions.add(GenomicRegion.of(position.getChromosome(), position.getPosition(), position.getPosition())));
+        return this.getRecords(regions);
+    }
+
+    /**
+     * Similar to {@link #lookupAll(Iterator)}
+     * 
+     * @param positions
+     * @return
+     */
+    public default List<List<VCFRecord>> lookupAll(Stream<GenomicPosition> positions)
+    {
+        return this.lookupAll(positions.iterator());
+    }
+
+    /**
+     * Returns all {@link VCFRecord}s of the given chromosome whose span overlaps the positions between start and end, both inclusive, sorted by
+     * position. In contrast to {@link #getRecords(String, long, long)} this includes records starting before the given start, like structural
+     * variants or deletions. The span of a record is determined by {@link VCFRecord#getEndPositionAsLong()}.
+     * 
+     * @param chromosome
+     * @param start
+     * @param end
+     * @return
+     */
+    public Stream<VCFRecord> getOverlappingRecords(String chromosome, long start, long end);
+
+    /**
+     * Similar to {@link #getOverlappingRecords(String, long, long)} for a {@link GenomicRegion}
+     * 
+     * @param region
+     * @return
+     */
+    public default Stream<VCFRecord> getOverlappingRecords(GenomicRegion region)
+    {
+        return this.getOverlappingRecords(region.getChromosome(), region.getStart(), region.getEnd());
+    }
+
+    /**
+     * Returns all {@link VCFRecord}s which contain the given id like 'rs123' within their ID column, see {@link VCFRecord#getIds()}. The query uses
+     * an id index, which is created on the first lookup.
+     * 
+     * @param id
+     * @return
+     */
+    public Stream<VCFRecord> getRecordsById(String id);
+
+    /**
+     * Returns all {@link VCFRecord}s of the given gene symbol, see {@link VCFRecord#getGenes(int)}. The query uses an inverted gene index, which is
+     * created on the first lookup by a single pass over all records. The position of the CSQ SYMBOL is taken from the CSQ header line.
+     * 
+     * @param gene
+     * @return
+     */
+    public Stream<VCFRecord> getRecordsByGene(String gene);
+
+    /**
+     * Returns all {@link VCFRecord}s of the given gene symbols, like the genes of a gene panel. Records belonging to multiple of the given genes are
+     * returned only once.
+     * 
+     * @see #getRecordsByGene(String)
+     * @param genes
+     * @return
+     */
+    public Stream<VCFRecord> getRecordsByGenes(Collection<String> genes);
+
     /**
      * Returns the {@link GenomeApplicator} instance to apply the {@link VCFRecord}s to its reference genome
      * 
@@ -178,6 +529,7 @@ public interface VCFData
      */
     public GenomeApplicator applicator();
 
+    @Override
     public VCFMetaInfo getMetaInfo();
 
 }
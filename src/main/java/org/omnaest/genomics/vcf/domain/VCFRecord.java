@@ -36,6 +36,7 @@ package org.omnaest.genomics.vcf.domain;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -63,6 +64,16 @@ public class VCFRecord
     public static final String SEMICOLON = ";";
     public static final String DOT       = ".";
 
+    /**
+     * Position of the SYMBOL within the '|' separated {@link AdditionalInfo#CSQ} values of the default VEP format
+     */
+    public static final int DEFAULT_CSQ_SYMBOL_INDEX = 3;
+
+    /**
+     * Prefix of chromosome names like 'chr1', which is ignored by {@link #normalizeChromosome(String)}
+     */
+    public static final String CHROMOSOME_PREFIX = "CHR";
+
     private String              chromosome;
     private String              position;
     private String              id;
@@ -73,9 +84,23 @@ public class VCFRecord
     private String              info;
     private String              format;
     private Map<String, String> sampleFields;
+    private String              rawLine;
+    private String              source;
 
     public VCFRecord(String chromosome, String position, String id, String reference, String alternativeAlleles, String quality, String filter, String info,
                      String format, Map<String, String> sampleFields)
+    {
+        this(chromosome, position, id, reference, alternativeAlleles, quality, filter, info, format, sampleFields, null);
+    }
+
+    /**
+     * Similar to {@link #VCFRecord(String, String, String, String, String, String, String, String, String, Map)} but additionally keeps a reference
+     * to the unmodified source line the record was parsed from
+     * 
+     * @see #getRawLine()
+     */
+    public VCFRecord(String chromosome, String position, String id, String reference, String alternativeAlleles, String quality, String filter, String info,
+                     String format, Map<String, String> sampleFields, String rawLine)
     {
         super();
         this.chromosome = chromosome;
@@ -88,6 +113,62 @@ public class VCFRecord
         this.info = info;
         this.format = format;
         this.sampleFields = sampleFields;
+        this.rawLine = rawLine;
+    }
+
+    /**
+     * Returns the unmodified source line this {@link VCFRecord} was parsed from or null if the record was not created by a streaming parse, see
+     * VCFReader#parseOnce(). Writers use the raw line to emit unmodified records without rebuilding them from their fields.
+     * 
+     * @return
+     */
+    public String getRawLine()
+    {
+        return this.rawLine;
+    }
+
+    public boolean hasRawLine()
+    {
+        return this.rawLine != null;
+    }
+
+    /**
+     * Returns the name of the source this {@link VCFRecord} was read from or null if it is not tagged with a source
+     * 
+     * @see #withSource(String)
+     * @return
+     */
+    public String getSource()
+    {
+        return this.source;
+    }
+
+    /**
+     * Returns a copy of this {@link VCFRecord} tagged with the given source name
+     * 
+     * @param source
+     * @return
+     */
+    public VCFRecord withSource(String source)
+    {
+        VCFRecord record = new VCFRecord(this.chromosome, this.position, this.id, this.reference, this.alternativeAlleles, this.quality, this.filter,
+                                         this.info, this.format, this.sampleFields, this.rawLine);
+        record.source = source;
+        return record;
+    }
+
+    /**
+     * Returns a copy of this {@link VCFRecord} without the raw line, e.g. to reduce the memory of buffered records
+     * 
+     * @see #getRawLine()
+     * @return
+     */
+    public VCFRecord withoutRawLine()
+    {
+        VCFRecord record = new VCFRecord(this.chromosome, this.position, this.id, this.reference, this.alternativeAlleles, this.quality, this.filter,
+                                         this.info, this.format, this.sampleFields);
+        record.source = this.source;
+        return record;
     }
 
     public String getChromosome()
@@ -95,6 +176,18 @@ public class VCFRecord
         return this.chromosome;
     }
 
+    /**
+     * Returns the given chromosome name trimmed, in upper case and without a leading 'chr' prefix, e.g. 'chrX' and 'X' both result in 'X'. All
+     * chromosome comparisons, indexes and contig orders use this key.
+     * 
+     * @param chromosome
+     * @return
+     */
+    public static String normalizeChromosome(String chromosome)
+    {
+        return StringUtils.removeStart(StringUtils.upperCase(StringUtils.trim(chromosome)), CHROMOSOME_PREFIX);
+    }
+
     /**
      * Returns the POS column
      * 
@@ -197,7 +290,10 @@ public class VCFRecord
     }
 
     /**
-     * Returns the additional sample columns and their {@link String} value. Please consider using {@link #parseSampleFields()}.
+     * Returns the additional sample columns and their {@link String} value. Please consider using {@link #parseSampleFields()}.<br>
+     * <br>
+     * Modifications of the returned {@link Map} are not reflected by the {@link #getRawLine()}, so a record with a raw line should be copied by
+     * {@link #withoutRawLine()} before its sample fields are modified.
      * 
      * @see #parseSampleFields()
      * @return
@@ -221,20 +317,20 @@ public class VCFRecord
 
         public enum GenoType
         {
-            /** 0/0 or 0 */
-            REFERENCE_BOTH("0/0", "0"),
-            /** 1/0 or 0/1 */
-            REFERENCE_AND_ALTERNATIVE("1/0", "0/1"),
-            /** 1/1 or 1 */
-            ALTERNATIVE_BOTH("1", "1/1"),
+            /** 0/0, 0|0 or 0 */
+            REFERENCE_BOTH("0/0", "0|0", "0"),
+            /** 1/0, 0/1, 1|0 or 0|1 */
+            REFERENCE_AND_ALTERNATIVE("1/0", "0/1", "1|0", "0|1"),
+            /** 1/1, 1|1 or 1 */
+            ALTERNATIVE_BOTH("1", "1/1", "1|1"),
             /**
-             * 1/0
+             * 1/0 or 1|0
              */
-            FIRST_ALLELE_ALTERNATIVE("1/0"),
+            FIRST_ALLELE_ALTERNATIVE("1/0", "1|0"),
             /**
-             * 0/1
+             * 0/1 or 0|1
              */
-            SECOND_ALLELE_ALTERNATIVE("0/1");
+            SECOND_ALLELE_ALTERNATIVE("0/1", "0|1");
 
             private String[] matchingCodes;
 
@@ -251,6 +347,91 @@ public class VCFRecord
             }
         }
 
+        /**
+         * Parsed genotype (GT) value like 0/1, 1|0 or 1|2 which holds the allele index per haplotype and the phasing information. Allele index 0 is the
+         * REF allele, 1,2,... are the ALT alleles and -1 represents a missing allele '.'
+         * 
+         * @author omnaest
+         */
+        public static class GenoTypeCall
+        {
+            public static final char PHASED   = '|';
+            public static final char UNPHASED = '/';
+
+            private int[]   alleles;
+            private boolean phased;
+
+            private GenoTypeCall(int[] alleles, boolean phased)
+            {
+                super();
+                this.alleles = alleles;
+                this.phased = phased;
+            }
+
+            /**
+             * Parses a GT code like 0/1 or 1|0. Returns null if the given code is blank.
+             * 
+             * @param code
+             * @return
+             */
+            public static GenoTypeCall parse(String code)
+            {
+                if (StringUtils.isBlank(code))
+                {
+                    return null;
+                }
+
+                String[] tokens = StringUtils.split(code, "" + PHASED + UNPHASED);
+                int[] alleles = new int[tokens.length];
+                for (int ii = 0; ii < tokens.length; ii++)
+                {
+                    alleles[ii] = NumberUtils.toInt(tokens[ii], -1);
+                }
+                boolean phased = StringUtils.contains(code, PHASED) && !StringUtils.contains(code, UNPHASED);
+                return new GenoTypeCall(alleles, phased);
+            }
+
+            /**
+             * Returns true if the alleles are separated by the phased separator '|'. Haploid calls are considered as phased.
+             * 
+             * @return
+             */
+            public boolean isPhased()
+            {
+                return this.phased || this.alleles.length == 1;
+            }
+
+            public int getPloidy()
+            {
+                return this.alleles.length;
+            }
+
+            /**
+             * Returns the allele index for the given haplotype = 0,1,... where 0 is the REF allele. For haploid calls the single allele is returned
+             * for all haplotypes. Returns -1 if the allele is missing.
+             * 
+             * @param haplotype
+             * @return
+             */
+            public int getAlleleIndex(int haplotype)
+            {
+                if (this.alleles.length == 0 || haplotype < 0)
+                {
+                    return -1;
+                }
+                return this.alleles[Math.min(haplotype, this.alleles.length - 1)];
+            }
+
+            @Override
+            public String toString()
+            {
+                return Arrays.stream(this.alleles)
+                             .mapToObj(allele -> allele < 0 ? DOT : String.valueOf(allele))
+                             .collect(Collectors.joining(String.valueOf(this.phased ? PHASED : UNPHASED)));
+            }
+
+        }
+
         /**
          * Returns a {@link Map} of samples and the value of the given {@link SampleInfo} field
          * 
@@ -292,6 +473,22 @@ public class VCFRecord
          */
         public boolean hasGenoType(GenoType genoType);
 
+        /**
+         * Returns the parsed {@link GenoTypeCall} of the GT field for the given sample or null if not available
+         * 
+         * @param sample
+         * @return
+         */
+        public GenoTypeCall getGenoTypeCall(String sample);
+
+        /**
+         * Returns the phase set (PS) of the given sample or null if not available
+         * 
+         * @param sample
+         * @return
+         */
+        public Long getPhaseSet(String sample);
+
         public enum Allele
         {
             REFERENCE, ALTERNATIVE
@@ -373,6 +570,27 @@ public class VCFRecord
                            .anyMatch(code -> genoType.matches(code));
             }
 
+            @Override
+            public GenoTypeCall getGenoTypeCall(String sample)
+            {
+                return GenoTypeCall.parse(this.getValue(sample, SampleInfo.GT));
+            }
+
+            @Override
+            public Long getPhaseSet(String sample)
+            {
+                String phaseSet = this.getValue(sample, SampleInfo.PS);
+                return NumberUtils.isDigits(phaseSet) ? Long.valueOf(phaseSet) : null;
+            }
+
+            private String getValue(String sample, SampleInfo sampleInfo)
+            {
+                return Optional.ofNullable(this.get()
+                                               .get(sample))
+                               .map(fieldToValue -> fieldToValue.get(sampleInfo.name()))
+                               .orElse(null);
+            }
+
             @Override
             public Map<String, String> filterByField(SampleInfo sampleInfo)
             {
@@ -494,6 +712,14 @@ public class VCFRecord
         Allele, Annotation, Annotation_Impact, Gene_Name, Gene_ID, Feature_Type, Feature_ID, Transcript_BioType, Rank
     }
 
+    /**
+     * Columns of a VCF data line in their file order. {@link #SAMPLES} represents all sample columns following the {@link #FORMAT} column.
+     */
+    public enum Column
+    {
+        CHROM, POS, ID, REF, ALT, QUAL, FILTER, INFO, FORMAT, SAMPLES
+    }
+
     public enum SampleInfo
     {
         /** Order of alleles */
@@ -524,7 +750,9 @@ public class VCFRecord
         MMQ,
         /** Number of small insertions at this location */
         INS,
-        PWF
+        PWF,
+        /** Phase set */
+        PS
     }
 
     public String getInfo(AdditionalInfo additionalInfo)
@@ -665,6 +893,59 @@ public class VCFRecord
         return gene;
     }
 
+    /**
+     * Returns all upper case gene symbols of this record from the {@link AdditionalInfo#Gene}, {@link AdditionalInfo#GENEINFO},
+     * {@link AdditionalInfo#ANN} and {@link AdditionalInfo#CSQ} info fields. The INFO column is parsed only once, multi gene entries like
+     * 'GENEINFO=PROK2:60675|PROK3:60676' and all annotations of ANN and CSQ are included. For CSQ the SYMBOL is expected at the fourth position
+     * like in the default VEP format.<br>
+     * <br>
+     * Example: "PROK2", "PROK3"
+     * 
+     * @see #getGene()
+     * @see #getGenes(int)
+     * @return
+     */
+    public Set<String> getGenes()
+    {
+        return this.getGenes(DEFAULT_CSQ_SYMBOL_INDEX);
+    }
+
+    /**
+     * Similar to {@link #getGenes()} but expects the SYMBOL of the {@link AdditionalInfo#CSQ} values at the given index, which is defined by the
+     * 'Format: ...' description of the CSQ header line
+     * 
+     * @param csqSymbolIndex
+     * @return
+     */
+    public Set<String> getGenes(int csqSymbolIndex)
+    {
+        Set<String> genes = new LinkedHashSet<>();
+        Map<String, String> info = this.parseInfo();
+        genes.addAll(this.getInfoTokens(info.get(AdditionalInfo.Gene.name()), '/'));
+        for (String geneInfo : this.getInfoTokens(info.get(AdditionalInfo.GENEINFO.name()), '|'))
+        {
+            genes.add(StringUtils.substringBefore(geneInfo, ":"));
+        }
+        for (String annotation : this.getInfoTokens(info.get(AdditionalInfo.ANN.name()), ','))
+        {
+            genes.add(this.getInfoToken(annotation, '|', 3));
+        }
+        for (String consequence : this.getInfoTokens(info.get(AdditionalInfo.CSQ.name()), ','))
+        {
+            genes.add(this.getInfoToken(consequence, '|', csqSymbolIndex));
+        }
+        return genes.stream()
+                    .filter(StringUtils::isNotBlank)
+                    .map(StringUtils::upperCase)
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    private String getInfoToken(String info, char separator, int index)
+    {
+        List<String> tokens = this.getInfoTokens(info, separator);
+        return tokens.size() > index ? tokens.get(index) : null;
+    }
+
     public boolean hasGene()
     {
         return StringUtils.isNotBlank(this.getGene());
@@ -740,6 +1021,23 @@ public class VCFRecord
         return NumberUtils.toLong(this.getPosition());
     }
 
+    /**
+     * Returns the last position, inclusive, the record spans. This is the value of {@link AdditionalInfo#END} if present, e.g. for structural
+     * variants, otherwise the position plus the length of the {@link #getReference()} allele minus one.
+     * 
+     * @return
+     */
+    public long getEndPositionAsLong()
+    {
+        long position = this.getPositionAsLong();
+        long end = NumberUtils.toLong(this.getInfo(AdditionalInfo.END), -1);
+        if (end < position)
+        {
+            end = position + Math.max(1, StringUtils.length(this.getReference())) - 1;
+        }
+        return end;
+    }
+
     public boolean hasInsertion()
     {
         int referenceLength = this.getReference()
@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.domain;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Columnar batch of {@link VCFRecord} site columns. The contigs are given as ids into a contig dictionary, the positions as primitive long values
+ * and the ID, REF, ALT, QUAL, FILTER and INFO columns as {@link ByteColumn}s, where all values of a column share one byte arena. Sample columns
+ * are not part of a {@link VCFRecordBatch}.<br>
+ * <br>
+ * The contig ids of all {@link VCFRecordBatch}es of a single parse are consistent, since the contig dictionary is only appended to.
+ * 
+ * @author omnaest
+ */
+public class VCFRecordBatch
+{
+    private final int          size;
+    private final List<String> contigNames;
+    private final int[]        contigIds;
+    private final long[]       positions;
+    private final ByteColumn   ids;
+    private final ByteColumn   references;
+    private final ByteColumn   alternativeAlleles;
+    private final ByteColumn   qualities;
+    private final ByteColumn   filters;
+    private final ByteColumn   infos;
+
+    public VCFRecordBatch(int size, List<String> contigNames, int[] contigIds, long[] positions, ByteColumn ids, ByteColumn references,
+                          ByteColumn alternativeAlleles, ByteColumn qualities, ByteColumn filters, ByteColumn infos)
+    {
+        super();
+        this.size = size;
+        this.contigNames = Collections.unmodifiableList(contigNames);
+        this.contigIds = contigIds;
+        this.positions = positions;
+        this.ids = ids;
+        this.references = references;
+        this.alternativeAlleles = alternativeAlleles;
+        this.qualities = qualities;
+        this.filters = filters;
+        this.infos = infos;
+    }
+
+    /**
+     * Column of variable length byte values which are stored consecutively within a single byte arena. The value at index i spans from offset i
+     * inclusive to offset i + 1 exclusive. The arena might be larger than the last offset.
+     * 
+     * @author omnaest
+     */
+    public static class ByteColumn
+    {
+        private final byte[] data;
+        private final int[]  offsets;
+
+        public ByteColumn(byte[] data, int[] offsets)
+        {
+            super();
+            this.data = data;
+            this.offsets = offsets;
+        }
+
+        public byte[] getData()
+        {
+            return this.data;
+        }
+
+        /**
+         * Returns the offsets into {@link #getData()}, which has one more element than the number of values
+         * 
+         * @return
+         */
+        public int[] getOffsets()
+        {
+            return this.offsets;
+        }
+
+        public int getStart(int index)
+        {
+            return this.offsets[index];
+        }
+
+        public int getEnd(int index)
+        {
+            return this.offsets[index + 1];
+        }
+
+        public int getLength(int index)
+        {
+            return this.offsets[index + 1] - this.offsets[index];
+        }
+
+        /**
+         * Returns true if the value at the given index is equal to the given bytes
+         * 
+         * @param index
+         * @param value
+         * @return
+         */
+        public boolean equals(int index, byte[] value)
+        {
+            int start = this.offsets[index];
+            int length = this.offsets[index + 1] - start;
+            if (length != value.length)
+            {
+                return false;
+            }
+            for (int ii = 0; ii < length; ii++)
+            {
+                if (this.data[start + ii] != value[ii])
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the UTF-8 decoded value at the given index
+         * 
+         * @param index
+         * @return
+         */
+        public String getString(int index)
+        {
+            return new String(this.data, this.offsets[index], this.getLength(index), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "ByteColumn [bytes=" + this.offsets[this.offsets.length - 1] + ", offsets=" + Arrays.toString(this.offsets) + "]";
+        }
+    }
+
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Returns the contig dictionary the {@link #getContigIds()} refer to
+     * 
+     * @return
+     */
+    public List<String> getContigNames()
+    {
+        return this.contigNames;
+    }
+
+    public int[] getContigIds()
+    {
+        return this.contigIds;
+    }
+
+    public String getContig(int index)
+    {
+        return this.contigNames.get(this.contigIds[index]);
+    }
+
+    /**
+     * Returns the positions, where an invalid position is given as -1
+     * 
+     * @return
+     */
+    public long[] getPositions()
+    {
+        return this.positions;
+    }
+
+    public ByteColumn getIds()
+    {
+        return this.ids;
+    }
+
+    public ByteColumn getReferences()
+    {
+        return this.references;
+    }
+
+    public ByteColumn getAlternativeAlleles()
+    {
+        return this.alternativeAlleles;
+    }
+
+    public ByteColumn getQualities()
+    {
+        return this.qualities;
+    }
+
+    public ByteColumn getFilters()
+    {
+        return this.filters;
+    }
+
+    public ByteColumn getInfos()
+    {
+        return this.infos;
+    }
+
+    /**
+     * Creates a {@link VCFRecord} of the site columns at the given index
+     * 
+     * @param index
+     * @return
+     */
+    public VCFRecord getRecord(int index)
+    {
+        return new VCFRecord(this.getContig(index), String.valueOf(this.positions[index]), this.ids.getString(index), this.references.getString(index),
+                             this.alternativeAlleles.getString(index), this.qualities.getString(index), this.filters.getString(index),
+                             this.infos.getString(index), null, Collections.emptyMap());
+    }
+
+    @Override
+    public String toString()
+    {
+        return "VCFRecordBatch [size=" + this.size + "]";
+    }
+}
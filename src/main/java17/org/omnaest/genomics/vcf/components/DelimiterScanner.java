@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+/**
+ * Java 17+ variant of the {@link DelimiterScanner} within the multi-release jar. If the jdk.incubator.vector module is resolved, e.g. by
+ * '--add-modules jdk.incubator.vector', ranges are scanned by {@link VectorizedScan} one vector of 32 or 64 bytes at a time. Otherwise the plain
+ * byte loops of the Java 8 variant are used.<br>
+ * <br>
+ * Instances are bound to a single byte array and are not thread safe, see {@link #forBuffer(byte[])} to switch to another array.
+ * 
+ * @author omnaest
+ */
+public class DelimiterScanner
+{
+    private static final boolean VECTORIZED = ModuleLayer.boot()
+                                                         .findModule("jdk.incubator.vector")
+                                                         .isPresent();
+
+    private final byte[] buffer;
+
+    public DelimiterScanner(byte[] buffer)
+    {
+        super();
+        this.buffer = buffer;
+    }
+
+    /**
+     * Returns this {@link DelimiterScanner} if it is bound to the given buffer, otherwise a new instance for the given buffer
+     * 
+     * @param buffer
+     * @return
+     */
+    public DelimiterScanner forBuffer(byte[] buffer)
+    {
+        return this.buffer == buffer ? this : new DelimiterScanner(buffer);
+    }
+
+    /**
+     * Returns the index of the first occurrence of the given value within the range or -1 if not present
+     * 
+     * @param value
+     * @param from
+     *            inclusive
+     * @param to
+     *            exclusive
+     * @return
+     */
+    public int indexOf(byte value, int from, int to)
+    {
+        if (VECTORIZED)
+        {
+            return VectorizedScan.indexOf(this.buffer, value, from, to);
+        }
+
+        byte[] buffer = this.buffer;
+        for (int ii = from; ii < to; ii++)
+        {
+            if (buffer[ii] == value)
+            {
+                return ii;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns true if the given range contains a byte outside of the ASCII range
+     * 
+     * @param from
+     *            inclusive
+     * @param to
+     *            exclusive
+     * @return
+     */
+    public boolean containsNonAscii(int from, int to)
+    {
+        if (VECTORIZED)
+        {
+            return VectorizedScan.containsNonAscii(this.buffer, from, to);
+        }
+
+        byte[] buffer = this.buffer;
+        for (int ii = from; ii < to; ii++)
+        {
+            if (buffer[ii] < 0)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API scans of the {@link DelimiterScanner}. Each step compares a whole vector of the preferred species against the delimiter and reduces
+ * the resulting bit mask, the remainder of the range is scanned byte by byte. This class must only be loaded if the jdk.incubator.vector module
+ * is resolved.
+ * 
+ * @author omnaest
+ */
+class VectorizedScan
+{
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    private VectorizedScan()
+    {
+        super();
+    }
+
+    public static int indexOf(byte[] buffer, byte value, int from, int to)
+    {
+        int ii = from;
+        for (int bound = to - SPECIES.length(); ii <= bound; ii += SPECIES.length())
+        {
+            VectorMask<Byte> matches = ByteVector.fromArray(SPECIES, buffer, ii)
+                                                 .eq(value);
+            if (matches.anyTrue())
+            {
+                return ii + matches.firstTrue();
+            }
+        }
+        for (; ii < to; ii++)
+        {
+            if (buffer[ii] == value)
+            {
+                return ii;
+            }
+        }
+        return -1;
+    }
+
+    public static boolean containsNonAscii(byte[] buffer, int from, int to)
+    {
+        int ii = from;
+        for (int bound = to - SPECIES.length(); ii <= bound; ii += SPECIES.length())
+        {
+            if (ByteVector.fromArray(SPECIES, buffer, ii)
+                          .compare(VectorOperators.LT, (byte) 0)
+                          .anyTrue())
+            {
+                return true;
+            }
+        }
+        for (; ii < to; ii++)
+        {
+            if (buffer[ii] < 0)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
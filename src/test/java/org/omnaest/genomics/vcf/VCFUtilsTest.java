@@ -35,29 +35,56 @@ package org.omnaest.genomics.vcf;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.omnaest.genomics.translator.domain.CodeAndPosition;
 import org.omnaest.genomics.translator.domain.NucleicAcidCode;
 import org.omnaest.genomics.translator.domain.NucleicAcidCodeSequence;
+import org.omnaest.genomics.vcf.components.IdIndexedVCFFile;
+import org.omnaest.genomics.vcf.components.VariantBloomFilter;
+import org.omnaest.genomics.vcf.components.parser.LineFilter;
+import org.omnaest.genomics.vcf.domain.GenomicPosition;
+import org.omnaest.genomics.vcf.domain.GenomicRegion;
+import org.omnaest.genomics.vcf.domain.VCFContent;
 import org.omnaest.genomics.vcf.domain.VCFData;
+import org.omnaest.genomics.vcf.domain.VCFData.ConflictReport;
+import org.omnaest.genomics.vcf.domain.VCFData.ConflictReport.ConflictType;
+import org.omnaest.genomics.vcf.domain.VCFData.GenomeApplicator;
+import org.omnaest.genomics.vcf.domain.VCFData.GenomeApplicator.HaplotypeCodes;
 import org.omnaest.genomics.vcf.domain.VCFData.Replacements;
+import org.omnaest.genomics.vcf.domain.VCFData.StreamingGenomeApplicator;
 import org.omnaest.genomics.vcf.domain.VCFRecord;
 import org.omnaest.genomics.vcf.domain.VCFRecord.AdditionalInfo;
+import org.omnaest.genomics.vcf.domain.VCFRecord.Column;
 import org.omnaest.genomics.vcf.domain.VCFRecord.SampleFields.Allele;
 import org.omnaest.genomics.vcf.domain.VCFRecord.SampleFields.GenoType;
 import org.omnaest.genomics.vcf.domain.VCFRecord.SampleInfo;
+import org.omnaest.genomics.vcf.domain.VCFRecordBatch;
 
 public class VCFUtilsTest
 {
@@ -270,6 +297,51 @@ public class VCFUtilsTest
 
     }
 
+    @Test
+    public void testApplicatorConflictReport() throws Exception
+    {
+        GenomeApplicator applicator = VCFUtils.read()
+                                              .from("##fileformat=VCFv4.1\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n1\t3\t.\tC\tG\t.\tPASS\tDP=100\n1\t3\t.\tC\tA\t.\tPASS\tDP=100\n1\t3\t.\tC\tT\t.\tPASS\tDP=100")
+                                              .parse()
+                                              .applicator();
+
+        NucleicAcidCodeSequence referenceSequence = NucleicAcidCodeSequence.valueOf("atCga".toUpperCase());
+        applicator.usingSecondaryAllele()
+                  .applyToChromosomeSequence("1", referenceSequence.stream())
+                  .count();
+
+        ConflictReport conflictReport = applicator.getConflictReport();
+        assertTrue(conflictReport.hasConflicts());
+        assertEquals(1, conflictReport.getNumberOfConflicts(ConflictType.MULTIPLE_REPLACEMENTS));
+        assertEquals(Long.valueOf(1), conflictReport.getChromosomeToConflictTypeToCount()
+                                                    .get("1")
+                                                    .get(ConflictType.MULTIPLE_REPLACEMENTS));
+        assertEquals(3, conflictReport.getExamples()
+                                      .get(0)
+                                      .getPosition());
+    }
+
+    @Test
+    public void testHaplotypeApplicatorConflictReportChromosome() throws Exception
+    {
+        GenomeApplicator applicator = VCFUtils.read()
+                                              .from("##fileformat=VCFv4.1\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tSAMPLE01\n"
+                                                      + "chr1\t3\t.\tC\t<DEL>,G\t.\tPASS\tDP=100\tGT\t1|2\nchr1\t3\t.\tC\tA\t.\tPASS\tDP=100\tGT\t0|1")
+                                              .parse()
+                                              .applicator();
+
+        applicator.usingHaplotypes()
+                  .applyToChromosomeSequence("chr1", NucleicAcidCodeSequence.valueOf("ATCGA")
+                                                                            .stream())
+                  .collect(Collectors.toList());
+
+        ConflictReport conflictReport = applicator.getConflictReport();
+        assertEquals(1, conflictReport.getNumberOfConflicts(ConflictType.UNSUPPORTED_ALLELE));
+        assertEquals(1, conflictReport.getNumberOfConflicts(ConflictType.MULTIPLE_REPLACEMENTS));
+        assertEquals(Collections.singleton("1"), conflictReport.getChromosomeToConflictTypeToCount()
+                                                               .keySet());
+    }
+
     @Test
     public void testApplicatorPosition() throws Exception
     {
@@ -329,6 +401,937 @@ public class VCFUtilsTest
                                          .hasReplacementForAllele(1));
     }
 
+    @Test
+    public void testHaplotypeApplicator() throws Exception
+    {
+        VCFData vcfData = VCFUtils.read()
+                                  .from(this.getClass()
+                                            .getResourceAsStream("/example6.vcf"))
+                                  .parse();
+
+        NucleicAcidCodeSequence referenceSequence = NucleicAcidCodeSequence.valueOf("ATCGAATCGA");
+
+        List<NucleicAcidCode> firstHaplotype = new ArrayList<>();
+        List<NucleicAcidCode> secondHaplotype = new ArrayList<>();
+        vcfData.applicator()
+               .usingHaplotypes()
+               .applyToChromosomeSequence("1", referenceSequence.stream(), firstHaplotype::add, secondHaplotype::add);
+
+        assertEquals("ATCGACATCA", NucleicAcidCodeSequence.valueOf(firstHaplotype)
+                                                          .toString());
+        assertEquals("ATGGTATCGA", NucleicAcidCodeSequence.valueOf(secondHaplotype)
+                                                          .toString());
+
+        List<HaplotypeCodes> haplotypeCodes = vcfData.applicator()
+                                                     .usingHaplotypes("SAMPLE01")
+                                                     .applyToChromosomeSequence("1", referenceSequence.stream())
+                                                     .collect(Collectors.toList());
+        assertEquals(10, haplotypeCodes.size());
+        assertEquals(Long.valueOf(3), haplotypeCodes.get(2)
+                                                    .getPhaseSet());
+        assertEquals(null, haplotypeCodes.get(7)
+                                         .getPhaseSet());
+        assertEquals(0, haplotypeCodes.get(8)
+                                      .getCodes(0)
+                                      .size());
+    }
+
+    @Test
+    public void testStreamingApplicator() throws Exception
+    {
+        StreamingGenomeApplicator applicator = VCFUtils.read()
+                                                       .from(this.getClass()
+                                                                 .getResourceAsStream("/example2.vcf"))
+                                                       .applicator();
+
+        NucleicAcidCodeSequence referenceSequence = NucleicAcidCodeSequence.valueOf("atCga".toUpperCase());
+
+        assertEquals("atga".toUpperCase(), NucleicAcidCodeSequence.valueOf(applicator.usingPrimaryAllele()
+                                                                                     .applyToChromosomeSequence("2", referenceSequence.stream())
+                                                                                     .collect(Collectors.toList()))
+                                                                  .toString());
+        assertEquals("atGga".toUpperCase(), NucleicAcidCodeSequence.valueOf(applicator.usingPrimaryAllele()
+                                                                                      .applyToChromosomeSequence("chr1", referenceSequence.stream())
+                                                                                      .collect(Collectors.toList()))
+                                                                   .toString());
+        assertEquals("atCAga".toUpperCase(), NucleicAcidCodeSequence.valueOf(applicator.usingPrimaryAllele()
+                                                                                       .applyToChromosomeSequence("3", referenceSequence.stream())
+                                                                                       .collect(Collectors.toList()))
+                                                                    .toString());
+        assertEquals("atCga".toUpperCase(), NucleicAcidCodeSequence.valueOf(applicator.usingPrimaryAllele()
+                                                                                      .applyToChromosomeSequence("X", referenceSequence.stream())
+                                                                                      .collect(Collectors.toList()))
+                                                                   .toString());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testStreamingApplicatorWithUnorderedChromosome() throws Exception
+    {
+        VCFUtils.read()
+                .from(this.getClass()
+                          .getResourceAsStream("/example2.vcf"))
+                .applicator()
+                .usingPrimaryAllele()
+                .applyToChromosomeSequence("chr1", NucleicAcidCodeSequence.valueOf("ATCGA")
+                                                                          .stream());
+    }
+
+    @Test
+    public void testStreamingHaplotypeApplicator() throws Exception
+    {
+        List<NucleicAcidCode> firstHaplotype = new ArrayList<>();
+        List<NucleicAcidCode> secondHaplotype = new ArrayList<>();
+        VCFUtils.read()
+                .from(this.getClass()
+                          .getResourceAsStream("/example6.vcf"))
+                .applicator()
+                .usingHaplotypes()
+                .applyToChromosomeSequence("1", NucleicAcidCodeSequence.valueOf("ATCGAATCGA")
+                                                                       .stream(),
+                                           firstHaplotype::add, secondHaplotype::add);
+
+        assertEquals("ATCGACATCA", NucleicAcidCodeSequence.valueOf(firstHaplotype)
+                                                          .toString());
+        assertEquals("ATGGTATCGA", NucleicAcidCodeSequence.valueOf(secondHaplotype)
+                                                          .toString());
+    }
+
+    @Test
+    public void testWriteUnmodifiedRecords() throws Exception
+    {
+        String content = IOUtils.toString(this.getClass()
+                                              .getResourceAsStream("/example.vcf"),
+                                          StandardCharsets.UTF_8);
+        StringWriter writer = new StringWriter();
+        VCFUtils.write(VCFUtils.read()
+                               .from(content)
+                               .parseOnce()
+                               .filter(record -> StringUtils.equals("PASS", record.getFilter())))
+                .into(writer);
+
+        List<String> expectedLines = Arrays.asList(StringUtils.split(content, "\n"))
+                                           .stream()
+                                           .filter(line -> !StringUtils.startsWith(line, "#"))
+                                           .filter(line -> StringUtils.contains(line, "\tPASS\t"))
+                                           .collect(Collectors.toList());
+        List<String> writtenLines = Arrays.asList(StringUtils.split(writer.toString(), "\n"))
+                                          .stream()
+                                          .filter(line -> !StringUtils.startsWith(line, "#"))
+                                          .collect(Collectors.toList());
+        assertEquals(expectedLines, writtenLines);
+    }
+
+    @Test
+    public void testWriteRoundTrip() throws Exception
+    {
+        String content = IOUtils.toString(this.getClass()
+                                              .getResourceAsStream("/example.vcf"),
+                                          StandardCharsets.UTF_8);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        VCFUtils.write(VCFUtils.read()
+                               .from(content)
+                               .parseOnceWithMetaInfo())
+                .asAscii()
+                .withFlushSize(64)
+                .into(outputStream);
+        assertEquals(StringUtils.trim(content), StringUtils.trim(new String(outputStream.toByteArray(), StandardCharsets.UTF_8)));
+
+        StringWriter writer = new StringWriter();
+        VCFData vcfData = VCFUtils.read()
+                                  .from(content)
+                                  .parse();
+        VCFUtils.write(vcfData.getRecords()
+                              .map(record -> new VCFRecord(record.getChromosome(), record.getPosition(), record.getId(), record.getReference(),
+                                                           record.getAlternativeAlleles(), record.getQuality(), record.getFilter(), record.getInfo(),
+                                                           record.getFormat(), record.getSampleFields())))
+                .withMetaInfo(vcfData.getMetaInfo())
+                .into(writer);
+        assertEquals(StringUtils.trim(content), StringUtils.trim(writer.toString()));
+        assertEquals(Arrays.asList("NA00001", "NA00002", "NA00003"), vcfData.getMetaInfo()
+                                                                            .getSampleNames());
+    }
+
+    @Test
+    public void testColumnProjection() throws Exception
+    {
+        String content = IOUtils.toString(this.getClass()
+                                              .getResourceAsStream("/example.vcf"),
+                                          StandardCharsets.UTF_8);
+        for (boolean ascii : new boolean[] { false, true })
+        {
+            VCFUtils.VCFReader reader = VCFUtils.read()
+                                                .from(content.getBytes(StandardCharsets.UTF_8))
+                                                .columns(Column.CHROM, Column.POS, Column.ID, Column.INFO);
+            List<VCFRecord> records = (ascii ? reader.asAscii() : reader).parseOnce()
+                                                                         .collect(Collectors.toList());
+            assertEquals(5, records.size());
+            VCFRecord record = records.get(0);
+            assertEquals("20", record.getChromosome());
+            assertEquals(14370, record.getPositionAsLong());
+            assertEquals("rs6054257", record.getId());
+            assertEquals("NS=3;DP=14;AF=0.5;DB;H2", record.getInfo());
+            assertNull(record.getReference());
+            assertNull(record.getFormat());
+            assertTrue(record.getSampleFields()
+                             .isEmpty());
+            assertFalse(record.hasRawLine());
+        }
+
+        StringWriter writer = new StringWriter();
+        VCFUtils.write(VCFUtils.read()
+                               .from(content)
+                               .sitesOnly()
+                               .parseOnceWithMetaInfo())
+                .into(writer);
+        String expected = Arrays.stream(StringUtils.split(content, "\n"))
+                                .filter(line -> !StringUtils.isBlank(line))
+                                .map(line -> StringUtils.startsWith(line, "##") ? line
+                                        : Arrays.stream(StringUtils.splitPreserveAllTokens(line, "\t"))
+                                                .limit(8)
+                                                .collect(Collectors.joining("\t")))
+                                .collect(Collectors.joining("\n"));
+        assertEquals(expected, StringUtils.trim(writer.toString()));
+    }
+
+    @Test
+    public void testParseKeepsNoRawLines() throws Exception
+    {
+        byte[] content = IOUtils.toByteArray(this.getClass()
+                                                 .getResourceAsStream("/example.vcf"));
+        for (int mode = 0; mode < 3; mode++)
+        {
+            VCFUtils.VCFReader reader = VCFUtils.read()
+                                                .from(content);
+            reader = mode == 1 ? reader.asAscii() : mode == 2 ? reader.pipelined(2) : reader;
+            List<VCFRecord> records = reader.parse()
+                                            .getRecords()
+                                            .collect(Collectors.toList());
+            assertEquals(5, records.size());
+            assertTrue(records.stream()
+                              .noneMatch(VCFRecord::hasRawLine));
+        }
+    }
+
+    @Test
+    public void testParseOnceKeepsRawLines() throws Exception
+    {
+        byte[] content = IOUtils.toByteArray(this.getClass()
+                                                 .getResourceAsStream("/example.vcf"));
+        for (int mode = 0; mode < 3; mode++)
+        {
+            VCFUtils.VCFReader reader = VCFUtils.read()
+                                                .from(content);
+            reader = mode == 1 ? reader.asAscii() : mode == 2 ? reader.pipelined(2) : reader;
+            try (Stream<VCFRecord> records = reader.parseOnce())
+            {
+                List<VCFRecord> recordList = records.collect(Collectors.toList());
+                assertEquals(5, recordList.size());
+                assertTrue(recordList.stream()
+                                     .allMatch(VCFRecord::hasRawLine));
+            }
+        }
+    }
+
+    @Test
+    public void testSampleFieldsStayModifiable() throws Exception
+    {
+        try (Stream<VCFRecord> records = VCFUtils.read()
+                                                 .from(this.getClass()
+                                                           .getResourceAsStream("/example.vcf"))
+                                                 .parseOnce())
+        {
+            VCFRecord record = records.findFirst()
+                                      .get()
+                                      .withoutRawLine();
+            try
+            {
+                record.getSampleFields()
+                      .put("NA00001", "1|1");
+            }
+            catch (UnsupportedOperationException e)
+            {
+                fail("Sample fields must stay modifiable");
+            }
+            assertEquals("1|1", record.getSampleFields()
+                                      .get("NA00001"));
+        }
+    }
+
+    @Test
+    public void testColumnProjectionWithSamples() throws Exception
+    {
+        byte[] content = IOUtils.toByteArray(this.getClass()
+                                                 .getResourceAsStream("/example.vcf"));
+        for (int mode = 0; mode < 3; mode++)
+        {
+            VCFUtils.VCFReader reader = VCFUtils.read()
+                                                .from(content)
+                                                .columns(Column.CHROM, Column.POS, Column.SAMPLES);
+            if (mode == 1)
+            {
+                reader.asAscii();
+            }
+            else if (mode == 2)
+            {
+                reader.pipelined(2);
+            }
+            List<VCFRecord> records = reader.parseOnce()
+                                            .collect(Collectors.toList());
+            assertEquals(5, records.size());
+            VCFRecord record = records.get(0);
+            assertEquals("20", record.getChromosome());
+            assertEquals(14370, record.getPositionAsLong());
+            assertNull(record.getId());
+            assertEquals("GT:GQ:DP:HQ", record.getFormat());
+            assertEquals("1/1:43:5:.,.", record.getSampleFields()
+                                               .get("NA00003"));
+        }
+    }
+
+    @Test
+    public void testSampleSubsetting() throws Exception
+    {
+        byte[] content = IOUtils.toByteArray(this.getClass()
+                                                 .getResourceAsStream("/example.vcf"));
+        Set<String> samples = new HashSet<>(Arrays.asList("NA00003", "NA00001"));
+        for (boolean ascii : new boolean[] { false, true })
+        {
+            VCFUtils.VCFReader reader = VCFUtils.read()
+                                                .from(content)
+                                                .samples(samples);
+            List<VCFRecord> records = (ascii ? reader.asAscii() : reader).parseOnce()
+                                                                         .collect(Collectors.toList());
+            assertEquals(5, records.size());
+            VCFRecord record = records.get(0);
+            assertEquals("rs6054257", record.getId());
+            assertEquals("GT:GQ:DP:HQ", record.getFormat());
+            assertEquals(Arrays.asList("NA00001", "NA00003"), new ArrayList<>(record.getSampleFields()
+                                                                                    .keySet()));
+            assertEquals("1/1:43:5:.,.", record.getSampleFields()
+                                               .get("NA00003"));
+            assertEquals("1/1", record.parseSampleFields()
+                                      .getGenoTypeCall("NA00003")
+                                      .toString());
+        }
+
+        StringWriter writer = new StringWriter();
+        VCFUtils.write(VCFUtils.read()
+                               .from(content)
+                               .samples(Collections.singleton("NA00002"))
+                               .columns(Column.CHROM, Column.POS)
+                               .parseOnceWithMetaInfo())
+                .into(writer);
+        List<String> lines = Arrays.asList(StringUtils.split(writer.toString(), "\n"));
+        assertTrue(lines.contains("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tNA00002"));
+        assertTrue(lines.contains("20\t14370\t.\t.\t.\t.\t.\t.\tGT:GQ:DP:HQ\t1|0:48:8:51,51"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSampleSubsettingUnknownSample() throws Exception
+    {
+        VCFUtils.read()
+                .from(this.getClass()
+                          .getResourceAsStream("/example.vcf"))
+                .samples(Collections.singleton("UNKNOWN"))
+                .parseOnce()
+                .count();
+    }
+
+    @Test
+    public void testPushdownChromosomeFilterIgnoresChrPrefix() throws Exception
+    {
+        String content = "##fileformat=VCFv4.1\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n" + "chr1\t100\ta\tA\tG\t.\tPASS\t.\n"
+                + "CHR1\t200\tb\tA\tG\t.\tPASS\t.\n" + "1\t300\tc\tA\tG\t.\tPASS\t.\n" + "chr10\t400\td\tA\tG\t.\tPASS\t.\n"
+                + "chrX\t500\te\tA\tG\t.\tPASS\t.\n";
+        assertEquals(Arrays.asList("a", "b", "c", "e"), VCFUtils.read()
+                                                                .from(content)
+                                                                .filter(LineFilter.chromosomes(Arrays.asList("1", "chrx")))
+                                                                .parseOnce()
+                                                                .map(VCFRecord::getId)
+                                                                .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testPushdownFilter() throws Exception
+    {
+        byte[] content = IOUtils.toByteArray(this.getClass()
+                                                 .getResourceAsStream("/example.vcf"));
+        for (int mode = 0; mode < 3; mode++)
+        {
+            VCFUtils.VCFReader reader = VCFUtils.read()
+                                                .from(content);
+            if (mode == 1)
+            {
+                reader.asAscii();
+            }
+            else if (mode == 2)
+            {
+                reader.pipelined(2);
+            }
+            List<String> ids = reader.filter(LineFilter.passOnly())
+                                     .filter(LineFilter.chromosomes(Arrays.asList("19", "20")))
+                                     .filter(LineFilter.positionRange(10000, 1200000))
+                                     .filter(LineFilter.infoHasKey("DB"))
+                                     .parseOnce()
+                                     .map(VCFRecord::getId)
+                                     .collect(Collectors.toList());
+            assertEquals(Arrays.asList("rs6054257", "rs6040355"), ids);
+        }
+
+        assertEquals(3, VCFUtils.read()
+                                .from(content)
+                                .filter(LineFilter.infoHasKey("AA"))
+                                .parseOnce()
+                                .count());
+        assertEquals(0, VCFUtils.read()
+                                .from(content)
+                                .filter(LineFilter.chromosomes(Arrays.asList("2")))
+                                .parseOnce()
+                                .count());
+    }
+
+    @Test
+    public void testParseBatches() throws Exception
+    {
+        List<VCFRecord> records = VCFUtils.read()
+                                          .from(this.getClass()
+                                                    .getResourceAsStream("/example.vcf"))
+                                          .parseOnce()
+                                          .collect(Collectors.toList());
+        List<VCFRecordBatch> batches = VCFUtils.read()
+                                               .from(this.getClass()
+                                                         .getResourceAsStream("/example.vcf"))
+                                               .sitesOnly()
+                                               .parseBatches(2)
+                                               .collect(Collectors.toList());
+        assertEquals(3, batches.size());
+        assertEquals(Arrays.asList(2, 2, 1), batches.stream()
+                                                    .map(VCFRecordBatch::size)
+                                                    .collect(Collectors.toList()));
+
+        VCFRecordBatch batch = batches.get(1);
+        assertEquals(1110696, batch.getPositions()[0]);
+        assertEquals(0, batch.getContigIds()[1]);
+        assertEquals("20", batch.getContig(1));
+        assertEquals("G,T", batch.getAlternativeAlleles()
+                                 .getString(0));
+        assertTrue(batch.getReferences()
+                        .equals(1, "T".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(3, batch.getInfos()
+                             .getOffsets().length);
+
+        for (int ii = 0; ii < records.size(); ii++)
+        {
+            VCFRecord record = records.get(ii);
+            VCFRecord batchRecord = batches.get(ii / 2)
+                                           .getRecord(ii % 2);
+            assertEquals(record.getPosition(), batchRecord.getPosition());
+            assertEquals(record.getId(), batchRecord.getId());
+            assertEquals(record.getInfo(), batchRecord.getInfo());
+            assertEquals(record.getQuality(), batchRecord.getQuality());
+            assertEquals(record.getFilter(), batchRecord.getFilter());
+        }
+    }
+
+    @Test
+    public void testParseBatchesFromBytes() throws Exception
+    {
+        byte[] content = ("##fileformat=VCFv4.1\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n" + "chr1\t100\trs1\tA\tG\t10\tPASS\tDP=5\n"
+                + "chr1\t200\t.\tC\tT,A\t.\tq10\tNOTE=\u00FC\n" + "chr2\t007\trs3\tG\tA\t.\tPASS\n"
+                + "chr2\tx\trs4\tG\tA\t.\tPASS\t.\n").getBytes(StandardCharsets.UTF_8);
+        for (boolean sitesOnly : new boolean[] { false, true })
+        {
+            VCFUtils.VCFReader recordReader = VCFUtils.read()
+                                                      .from(content);
+            VCFUtils.VCFReader byteReader = VCFUtils.read()
+                                                    .from(content)
+                                                    .asAscii();
+            if (sitesOnly)
+            {
+                recordReader.columns(Column.CHROM, Column.POS, Column.INFO);
+                byteReader.columns(Column.CHROM, Column.POS, Column.INFO);
+            }
+            List<VCFRecordBatch> expectedBatches = recordReader.parseBatches(3)
+                                                               .collect(Collectors.toList());
+            List<VCFRecordBatch> batches = byteReader.parseBatches(3)
+                                                     .collect(Collectors.toList());
+            assertEquals(2, batches.size());
+            for (int batchIndex = 0; batchIndex < batches.size(); batchIndex++)
+            {
+                VCFRecordBatch expectedBatch = expectedBatches.get(batchIndex);
+                VCFRecordBatch batch = batches.get(batchIndex);
+                assertEquals(expectedBatch.size(), batch.size());
+                assertEquals(Arrays.toString(expectedBatch.getPositions()), Arrays.toString(batch.getPositions()));
+                assertEquals(Arrays.toString(expectedBatch.getContigIds()), Arrays.toString(batch.getContigIds()));
+                for (int ii = 0; ii < batch.size(); ii++)
+                {
+                    VCFRecord expectedRecord = expectedBatch.getRecord(ii);
+                    VCFRecord record = batch.getRecord(ii);
+                    assertEquals(expectedRecord.getChromosome(), record.getChromosome());
+                    assertEquals(expectedRecord.getId(), record.getId());
+                    assertEquals(expectedRecord.getReference(), record.getReference());
+                    assertEquals(expectedRecord.getAlternativeAlleles(), record.getAlternativeAlleles());
+                    assertEquals(expectedRecord.getQuality(), record.getQuality());
+                    assertEquals(expectedRecord.getFilter(), record.getFilter());
+                    assertEquals(expectedRecord.getInfo(), record.getInfo());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIngest() throws Exception
+    {
+        VCFUtils.VCFIngest ingest = VCFUtils.ingest()
+                                            .withMaxOpenFiles(2)
+                                            .withMaxInFlightRecords(1);
+        for (int ii = 1; ii <= 5; ii++)
+        {
+            int sample = ii;
+            String sampleName = "SAMPLE0" + sample;
+            String content = "##fileformat=VCFv4.1\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\t" + sampleName + "\n"
+                    + IntStream.rangeClosed(1, 3000)
+                               .mapToObj(position -> (position % 2 == 0 ? "chr1" : "2") + "\t" + (position * 10 + sample)
+                                       + "\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n")
+                               .collect(Collectors.joining());
+            ingest.from(sampleName + ".vcf", () -> new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+        }
+        VCFData vcfData = ingest.parse();
+
+        assertEquals(15000, vcfData.getRecords()
+                                   .count());
+        assertEquals(Arrays.asList("SAMPLE01", "SAMPLE02", "SAMPLE03", "SAMPLE04", "SAMPLE05"), vcfData.getMetaInfo()
+                                                                                                   .getSampleNames());
+        List<VCFRecord> records = vcfData.getRecords()
+                                         .filter(record -> record.getChromosome()
+                                                                 .equals("chr1"))
+                                         .collect(Collectors.toList());
+        assertEquals(7500, records.size());
+        assertEquals("22", records.get(1)
+                                  .getPosition());
+        assertEquals("SAMPLE02.vcf", records.get(1)
+                                            .getSource());
+        assertTrue(records.get(1)
+                          .getSampleFields()
+                          .containsKey("SAMPLE02"));
+    }
+
+    @Test
+    public void testIngestSamePositionInSourceOrder() throws Exception
+    {
+        String content = "##fileformat=VCFv4.1\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n1\t5\t.\tA\tG\t.\tPASS\t.\n1\t5\t.\tA\tT\t.\tPASS\t.\n";
+        VCFData vcfData = VCFUtils.ingest()
+                                  .from("slow.vcf", () ->
+                                  {
+                                      try
+                                      {
+                                          Thread.sleep(200);
+                                      }
+                                      catch (InterruptedException e)
+                                      {
+                                          throw new IllegalStateException(e);
+                                      }
+                                      return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+                                  })
+                                  .from("fast.vcf", () -> new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)))
+                                  .parse();
+
+        assertEquals(Arrays.asList("slow.vcf:G", "slow.vcf:T", "fast.vcf:G", "fast.vcf:T"), vcfData.getRecords()
+                                                                                                .map(record -> record.getSource() + ":"
+                                                                                                        + record.getAlternativeAlleles())
+                                                                                                .collect(Collectors.toList()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testIngestFailingSource() throws Exception
+    {
+        VCFUtils.ingest()
+                .from("example.vcf", () -> this.getClass()
+                                               .getResourceAsStream("/example.vcf"))
+                .from("missing.vcf", () ->
+                {
+                    throw new IllegalArgumentException("missing");
+                })
+                .parse();
+    }
+
+    @Test
+    public void testRangeQueries() throws Exception
+    {
+        VCFData vcfData = VCFUtils.read()
+                                  .from(this.getClass()
+                                            .getResourceAsStream("/example.vcf"))
+                                  .parse();
+
+        assertEquals(Arrays.asList("rs6054257", ".", "rs6040355"), vcfData.getRecords("20", 14000, 1200000)
+                                                                          .map(VCFRecord::getId)
+                                                                          .collect(Collectors.toList()));
+        assertEquals(0, vcfData.getRecords("21", 1, Long.MAX_VALUE)
+                               .count());
+
+        List<List<VCFRecord>> regionRecords = vcfData.getRecords(Arrays.asList(GenomicRegion.of("chr20", 1230237, Long.MAX_VALUE),
+                                                                               GenomicRegion.of("20", 14370, 14370), GenomicRegion.of("20", 1, 100),
+                                                                               GenomicRegion.of("20", 17330, 1230237)));
+        assertEquals(4, regionRecords.size());
+        assertEquals(Arrays.asList("1230237", "1234567"), regionRecords.get(0)
+                                                                       .stream()
+                                                                       .map(VCFRecord::getPosition)
+                                                                       .collect(Collectors.toList()));
+        assertEquals("rs6054257", regionRecords.get(1)
+                                               .get(0)
+                                               .getId());
+        assertTrue(regionRecords.get(2)
+                                .isEmpty());
+        assertEquals(3, regionRecords.get(3)
+                                     .size());
+    }
+
+    @Test
+    public void testIdIndexWithMultipleIdsPerRecord() throws Exception
+    {
+        String content = "##fileformat=VCFv4.1\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n" + IntStream.rangeClosed(1, 9)
+                                                                                                          .mapToObj(ii -> "1\t" + ii + "\trs" + ii
+                                                                                                                  + ";rs" + (100 + ii)
+                                                                                                                  + "\tA\tG\t.\tPASS\t.\n")
+                                                                                                          .collect(Collectors.joining());
+        VCFData vcfData = VCFUtils.read()
+                                  .from(content)
+                                  .parse();
+        for (int ii = 1; ii <= 9; ii++)
+        {
+            assertEquals(Arrays.asList("" + ii), vcfData.getRecordsById("rs" + (100 + ii))
+                                                        .map(VCFRecord::getPosition)
+                                                        .collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testIdIndex() throws Exception
+    {
+        VCFData vcfData = VCFUtils.read()
+                                  .from(this.getClass()
+                                            .getResourceAsStream("/example.vcf"))
+                                  .parse();
+        assertEquals(Arrays.asList("14370"), vcfData.getRecordsById("rs6054257")
+                                                    .map(VCFRecord::getPosition)
+                                                    .collect(Collectors.toList()));
+        assertEquals(Arrays.asList("1234567"), vcfData.getRecordsById("microsat1")
+                                                      .map(VCFRecord::getPosition)
+                                                      .collect(Collectors.toList()));
+        assertEquals(0, vcfData.getRecordsById("rs1")
+                               .count());
+
+        File vcfFile = File.createTempFile("example", ".vcf");
+        vcfFile.deleteOnExit();
+        IdIndexedVCFFile.getIndexFile(vcfFile)
+                        .deleteOnExit();
+        FileUtils.copyInputStreamToFile(this.getClass()
+                                            .getResourceAsStream("/example.vcf"),
+                                        vcfFile);
+        try (IdIndexedVCFFile indexedFile = VCFUtils.openIdIndexed(vcfFile))
+        {
+            assertTrue(IdIndexedVCFFile.getIndexFile(vcfFile)
+                                       .exists());
+            List<VCFRecord> records = indexedFile.getRecords("rs6040355");
+            assertEquals(1, records.size());
+            assertEquals("1110696", records.get(0)
+                                           .getPosition());
+            assertEquals(vcfData.getRecordsById("rs6040355")
+                                .findFirst()
+                                .get()
+                                .getSampleFields(),
+                         records.get(0)
+                                .getSampleFields());
+            assertTrue(indexedFile.getRecords("rs1")
+                                  .isEmpty());
+        }
+    }
+
+    @Test
+    public void testLookupAll() throws Exception
+    {
+        VCFData vcfData = VCFUtils.ingest()
+                                  .from("sites.vcf", () -> new ByteArrayInputStream(("##fileformat=VCFv4.1\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n"
+                                          + IntStream.rangeClosed(1, 10000)
+                                                     .mapToObj(position -> (position % 3 == 0 ? "2" : "1") + "\t" + position * 10 + "\trs" + position
+                                                             + "\tA\tG\t.\tPASS\t.\n")
+                                                     .collect(Collectors.joining())).getBytes(StandardCharsets.UTF_8)))
+                                  .parse();
+
+        List<GenomicPosition> positions = IntStream.range(0, 5000)
+                                                   .mapToObj(ii -> GenomicPosition.of(ii % 2 == 0 ? "chr1" : "2", (long) (ii * 7919 % 100003)))
+                                                   .collect(Collectors.toList());
+        List<List<VCFRecord>> matches = vcfData.lookupAll(positions.stream());
+
+        assertEquals(positions.size(), matches.size());
+        for (int ii = 0; ii < positions.size(); ii++)
+        {
+            GenomicPosition position = positions.get(ii);
+            long number = position.getPosition() / 10;
+            boolean expectMatch = position.getPosition() % 10 == 0 && number >= 1 && number <= 10000
+                    && (number % 3 == 0) == position.getChromosome()
+                                                    .equals("2");
+            assertEquals(expectMatch ? Arrays.asList("rs" + number) : Arrays.asList(), matches.get(ii)
+                                                                                      .stream()
+                                                                                      .map(VCFRecord::getId)
+                                                                                      .collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testGeneIndex() throws Exception
+    {
+        String content = "##fileformat=VCFv4.1\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n"
+                + "3\t100\trs1\tG\tT\t.\t.\tGENEINFO=PROK2:60675|PROK3:60676\n"
+                + "3\t200\trs2\tG\tT\t.\t.\tANN=T|missense_variant|MODERATE|Prok2|ID1|transcript,T|upstream_gene_variant|MODIFIER|BHMT|ID2\n"
+                + "3\t300\trs3\tG\tT\t.\t.\tCSQ=T|intron_variant|MODIFIER|BRCA1|672\n" + "3\t400\trs4\tG\tT\t.\t.\tGene=mthfr/1\n"
+                + "3\t500\trs5\tG\tT\t.\t.\tDP=3\n";
+        VCFData vcfData = VCFUtils.read()
+                                  .from(content)
+                                  .parse();
+
+        assertEquals(Arrays.asList("rs1", "rs2"), vcfData.getRecordsByGene("prok2")
+                                                         .map(VCFRecord::getId)
+                                                         .collect(Collectors.toList()));
+        assertEquals(Arrays.asList("rs1"), vcfData.getRecordsByGene("PROK3")
+                                                  .map(VCFRecord::getId)
+                                                  .collect(Collectors.toList()));
+        assertEquals(Arrays.asList("rs1", "rs2", "rs3", "rs4"), vcfData.getRecordsByGenes(Arrays.asList("MTHFR", "BRCA1", "PROK2", "BHMT", "PROK3"))
+                                                                       .map(VCFRecord::getId)
+                                                                       .collect(Collectors.toList()));
+        assertEquals(0, vcfData.getRecordsByGene("TP53")
+                               .count());
+    }
+
+    @Test
+    public void testGeneIndexWithCsqFormatFromHeader() throws Exception
+    {
+        String content = "##fileformat=VCFv4.1\n"
+                + "##INFO=<ID=CSQ,Number=.,Type=String,Description=\"Consequence annotations. Format: Allele|SYMBOL|Consequence|Gene\">\n"
+                + "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n" + "3\t300\trs3\tG\tT\t.\t.\tCSQ=T|BRCA1|intron_variant|672\n"
+                + "3\t400\trs4\tG\tT\t.\t.\tCSQ=T|TP53|missense_variant|7157,T||upstream_gene_variant|\n";
+        VCFData vcfData = VCFUtils.read()
+                                  .from(content)
+                                  .parse();
+
+        assertEquals(Arrays.asList("rs3"), vcfData.getRecordsByGene("BRCA1")
+                                                  .map(VCFRecord::getId)
+                                                  .collect(Collectors.toList()));
+        assertEquals(Arrays.asList("rs4"), vcfData.getRecordsByGene("tp53")
+                                                  .map(VCFRecord::getId)
+                                                  .collect(Collectors.toList()));
+        assertEquals(0, vcfData.getRecordsByGene("672")
+                               .count());
+    }
+
+    @Test
+    public void testMerge() throws Exception
+    {
+        String header = "##fileformat=VCFv4.1\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\t";
+        VCFContent content = VCFUtils.merge()
+                                     .from(VCFUtils.read()
+                                                   .from(header + "SAMPLE1\n" + "1\t100\trs1\tA\tG\t50\tPASS\t.\tGT\t0/1\n"
+                                                           + "1\t200\t.\tC\tT\t.\tPASS\t.\tGT\t1/1\n")
+                                                   .parseOnceWithMetaInfo())
+                                     .from(VCFUtils.read()
+                                                   .from(header + "SAMPLE2\n" + "1\t100\trs1\tA\tG\t40\tPASS\t.\tGT:DP\t0/0:12\n"
+                                                           + "1\t100\t.\tA\tC\t.\tPASS\t.\tGT\t0/1\n" + "2\t5\t.\tG\tA\t.\tPASS\t.\tGT\t0/1\n")
+                                                   .parseOnceWithMetaInfo())
+                                     .collapseSites()
+                                     .merge();
+        List<VCFRecord> records = content.getRecords()
+                                         .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList("SAMPLE1", "SAMPLE2"), content.getMetaInfo()
+                                                                 .getSampleNames());
+        assertEquals(Arrays.asList("1:100:G", "1:100:C", "1:200:T", "2:5:A"), records.stream()
+                                                                             .map(record -> record.getChromosome() + ":" + record.getPosition() + ":"
+                                                                                     + record.getAlternativeAlleles())
+                                                                             .collect(Collectors.toList()));
+        VCFRecord collapsed = records.get(0);
+        assertEquals("rs1", collapsed.getId());
+        assertEquals("50", collapsed.getQuality());
+        assertEquals("GT:DP", collapsed.getFormat());
+        assertEquals("0/1:.", collapsed.getSampleFields()
+                                       .get("SAMPLE1"));
+        assertEquals("0/0:12", collapsed.getSampleFields()
+                                        .get("SAMPLE2"));
+        assertEquals(".", records.get(2)
+                                 .getSampleFields()
+                                 .get("SAMPLE2"));
+    }
+
+    @Test
+    public void testMergeWithHeaderContigOrder() throws Exception
+    {
+        String header = "##fileformat=VCFv4.1\n##contig=<ID=chrM,length=16569>\n##contig=<ID=chr1,length=1000>\n"
+                + "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n";
+        List<String> ids = VCFUtils.merge()
+                                   .from(VCFUtils.read()
+                                                 .from(header + "chrM\t10\ta\tA\tG\t.\tPASS\t.\n" + "chr1\t5\tb\tA\tG\t.\tPASS\t.\n")
+                                                 .parseOnceWithMetaInfo())
+                                   .from(VCFUtils.read()
+                                                 .from(header + "chrM\t20\tc\tA\tG\t.\tPASS\t.\n" + "chr1\t1\td\tA\tG\t.\tPASS\t.\n")
+                                                 .parseOnceWithMetaInfo())
+                                   .merge()
+                                   .getRecords()
+                                   .map(VCFRecord::getId)
+                                   .collect(Collectors.toList());
+        assertEquals(Arrays.asList("a", "c", "d", "b"), ids);
+    }
+
+    @Test
+    public void testSort() throws Exception
+    {
+        String content = "##fileformat=VCFv4.1\n##contig=<ID=2,length=1000>\n##contig=<ID=1,length=1000>\n"
+                + "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tSAMPLE1\n" + "1\t30\ta\tA\tG\t.\tPASS\t.\tGT\t0/1\n"
+                + "2\t20\tb\tA\tG\t.\tPASS\t.\tGT\t0/1\n" + "1\t10\tc\tA\tG\t.\tPASS\t.\tGT\t0/1\n"
+                + "2\t5\td\tA\tG\t.\tPASS\t.\tGT\t1/1\n";
+        StringWriter writer = new StringWriter();
+        VCFUtils.sort(VCFUtils.read()
+                              .from(content)
+                              .parseOnceWithMetaInfo())
+                .withMemoryBudget(1)
+                .into(writer);
+
+        List<VCFRecord> records = VCFUtils.read()
+                                          .from(writer.toString())
+                                          .parseOnce()
+                                          .collect(Collectors.toList());
+        assertEquals(Arrays.asList("d", "b", "c", "a"), records.stream()
+                                                               .map(VCFRecord::getId)
+                                                               .collect(Collectors.toList()));
+        assertEquals("1/1", records.get(0)
+                                   .getSampleFields()
+                                   .get("SAMPLE1"));
+        assertTrue(writer.toString()
+                         .contains("##contig=<ID=2,length=1000>"));
+    }
+
+    @Test
+    public void testAnnotate() throws Exception
+    {
+        String sample = "##fileformat=VCFv4.1\n##INFO=<ID=DP,Number=1,Type=Integer,Description=\"Depth\">\n"
+                + "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tSAMPLE1\n" + "1\t100\t.\tA\tG\t.\tPASS\tDP=5\tGT\t0/1\n"
+                + "1\t100\t.\tA\tT\t.\tPASS\tDP=6\tGT\t0/1\n" + "1\t150\t.\tC\tT\t.\tPASS\t.\tGT\t1/1\n"
+                + "2\t10\tmy1\tG\tA\t.\tPASS\tDP=7\tGT\t0/1\n" + "2\t20\t.\tG\tA\t.\tPASS\tDP=8\tGT\t0/1\n";
+        String reference = "##fileformat=VCFv4.1\n##INFO=<ID=CAF,Number=.,Type=String,Description=\"Allele frequencies\">\n"
+                + "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n" + "1\t50\trs1\tA\tG\t.\t.\tCAF=0.9,0.1\n"
+                + "1\t100\trs2\tA\tG,C\t.\t.\tCAF=0.8,0.1,0.1;COMMON\n" + "1\t150\trs3\tC\tT\t.\t.\tCAF=0.5,0.5\n"
+                + "2\t10\trs4\tG\tA\t.\t.\tCAF=0.7,0.3\n" + "3\t10\trs5\tG\tA\t.\t.\tCAF=0.7,0.3\n";
+
+        VCFContent annotated = VCFUtils.annotate(VCFUtils.read()
+                                                         .from(sample)
+                                                         .parseOnceWithMetaInfo())
+                                       .from(VCFUtils.read()
+                                                     .from(reference)
+                                                     .parseOnceWithMetaInfo())
+                                       .copyInfo("CAF", "COMMON")
+                                       .annotate();
+        List<VCFRecord> records = annotated.getRecords()
+                                           .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList("rs2", ".", "rs3", "my1;rs4", "."), records.stream()
+                                                                          .map(VCFRecord::getId)
+                                                                          .collect(Collectors.toList()));
+        assertEquals(Arrays.asList("DP=5;CAF=0.8,0.1,0.1;COMMON", "DP=6", "CAF=0.5,0.5", "DP=7;CAF=0.7,0.3", "DP=8"), records.stream()
+                                                                                                                      .map(VCFRecord::getInfo)
+                                                                                                                      .collect(Collectors.toList()));
+        assertEquals("0/1", records.get(0)
+                                   .getSampleFields()
+                                   .get("SAMPLE1"));
+        assertTrue(annotated.getMetaInfo()
+                            .getMetaLines()
+                            .contains("##INFO=<ID=CAF,Number=.,Type=String,Description=\"Allele frequencies\">"));
+    }
+
+    @Test
+    public void testAnnotateWithPrefilter() throws Exception
+    {
+        String content = "##fileformat=VCFv4.1\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n";
+        String reference = content + "1\t100\trs1\tA\tG\t.\t.\tCAF=0.9,0.1\n" + "1\t200\trs2\tC\tT\t.\t.\tCAF=0.5,0.5\n";
+        File referenceFile = File.createTempFile("reference", ".vcf");
+        referenceFile.deleteOnExit();
+        File filterFile = new File(referenceFile.getPath() + ".bloom");
+        filterFile.deleteOnExit();
+        FileUtils.writeStringToFile(referenceFile, reference, StandardCharsets.UTF_8);
+
+        VariantBloomFilter prefilter = VCFUtils.openBloomFilter(referenceFile, 0.01, 1024 * 1024);
+        assertTrue(filterFile.exists());
+
+        List<VCFRecord> records = VCFUtils.annotate(VCFUtils.read()
+                                                            .from(content + "1\t100\t.\tA\tG\t.\tPASS\t.\n" + "1\t150\t.\tA\tG\t.\tPASS\t.\n"
+                                                                    + "1\t200\t.\tC\tT\t.\tPASS\t.\n")
+                                                            .parseOnceWithMetaInfo())
+                                          .from(referenceFile)
+                                          .copyInfo("CAF")
+                                          .withPrefilter(prefilter)
+                                          .annotate()
+                                          .getRecords()
+                                          .collect(Collectors.toList());
+        assertEquals(Arrays.asList("rs1", ".", "rs2"), records.stream()
+                                                              .map(VCFRecord::getId)
+                                                              .collect(Collectors.toList()));
+        assertEquals("CAF=0.5,0.5", records.get(2)
+                                           .getInfo());
+        assertEquals(prefilter.getNumberOfBits(), VCFUtils.openBloomFilter(referenceFile, 0.01, 1024 * 1024)
+                                                          .getNumberOfBits());
+    }
+
+    @Test
+    public void testDeduplicate() throws Exception
+    {
+        String content = "##fileformat=VCFv4.1\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n" + "1\t100\trs1\tA\tG\t.\tPASS\t.\n"
+                + "1\t100\trs2\tA\tG\t.\tPASS\t.\n" + "1\t100\trs3\tA\tT\t.\tPASS\t.\n" + "1\t200\trs4\tA\tG\t.\tPASS\t.\n"
+                + "2\t100\trs5\tA\tG\t.\tPASS\t.\n" + "2\t100\trs6\tA\tG\t.\tPASS\t.\n";
+        assertEquals(Arrays.asList("rs1", "rs3", "rs4", "rs5"), VCFUtils.deduplicate(VCFUtils.read()
+                                                                                              .from(content)
+                                                                                              .parseOnce())
+                                                                         .withSortedWindow(0)
+                                                                         .deduplicated()
+                                                                         .map(VCFRecord::getId)
+                                                                         .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testAnnotateMultiAllelicReference() throws Exception
+    {
+        String content = "##fileformat=VCFv4.1\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n";
+        String reference = "##fileformat=VCFv4.1\n##INFO=<ID=CAF,Number=R,Type=String,Description=\"Allele frequencies\">\n"
+                + "##INFO=<ID=AC,Number=A,Type=Integer,Description=\"Allele count\">\n"
+                + "##INFO=<ID=GC,Number=G,Type=Integer,Description=\"Genotype counts\">\n"
+                + "##INFO=<ID=DP,Number=1,Type=Integer,Description=\"Depth\">\n" + "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n"
+                + "1\t100\trs1\tA\tG,C,T\t.\t.\tCAF=0.7,0.1,0.15,0.05;AC=1,2,3;GC=1,2,3,4,5,6,7,8,9,10;DP=9\n"
+                + "1\t200\trs2\tA\tG,C\t.\t.\tCAF=0.8,0.1,0.1;AC=4,5;GC=1,2,3,4,5,6\n";
+        List<String> infos = VCFUtils.annotate(VCFUtils.read()
+                                                       .from(content + "1\t100\t.\tA\tT,G\t.\tPASS\t.\n" + "1\t200\t.\tA\tG,C\t.\tPASS\t.\n")
+                                                       .parseOnceWithMetaInfo())
+                                     .from(VCFUtils.read()
+                                                   .from(reference)
+                                                   .parseOnceWithMetaInfo())
+                                     .copyInfo("CAF", "AC", "GC", "DP")
+                                     .annotate()
+                                     .getRecords()
+                                     .map(VCFRecord::getInfo)
+                                     .collect(Collectors.toList());
+        assertEquals(Arrays.asList("CAF=0.7,0.05,0.1;AC=3,1;DP=9", "CAF=0.8,0.1,0.1;AC=4,5;GC=1,2,3,4,5,6"), infos);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAnnotateUnsortedReference() throws Exception
+    {
+        String content = "##fileformat=VCFv4.1\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n";
+        VCFUtils.annotate(VCFUtils.read()
+                                  .from(content + "1\t300\t.\tA\tG\t.\tPASS\t.\n")
+                                  .parseOnceWithMetaInfo())
+                .from(VCFUtils.read()
+                              .from(content + "1\t200\trs1\tA\tG\t.\t.\t.\n" + "1\t100\trs2\tA\tG\t.\t.\t.\n")
+                              .parseOnceWithMetaInfo())
+                .annotate()
+                .getRecords()
+                .count();
+    }
+
     @Test
     public void testDBSnpRecordParsing()
     {
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.omnaest.genomics.vcf.VCFUtils;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+public class AsciiVCFParserTest
+{
+
+    @Test
+    public void testGetRecords() throws Exception
+    {
+        String content = "##fileformat=VCFv4.1\n##source=test\n\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tSAMPLE01\n"
+                + IntStream.rangeClosed(1, 2000)
+                           .mapToObj(position -> "1\t" + position + "\trs" + position + "\tA\tG\t.\tPASS\tDP=" + position + "\tGT\t0/1\r\n")
+                           .collect(Collectors.joining())
+                + "\n2\t10\t.\tC\tT\t.\tPASS\tNOTE=Gr\u00FC\u00DFe\tGT\t1|1";
+        byte[] data = content.getBytes(StandardCharsets.UTF_8);
+
+        List<String> expected = VCFUtils.read()
+                                        .from(content)
+                                        .parseOnce()
+                                        .map(VCFRecord::toString)
+                                        .collect(Collectors.toList());
+        assertEquals(2001, expected.size());
+
+        AsciiVCFParser parser = new AsciiVCFParser(VCFUtils.getParserManager(), new ByteArrayInputStream(data));
+        try (Stream<VCFRecord> records = parser.getRecords())
+        {
+            assertEquals(expected, records.map(VCFRecord::toString)
+                                          .collect(Collectors.toList()));
+        }
+        assertEquals("test", parser.getComments()
+                                   .get("source")
+                                   .get(0));
+        assertEquals(expected, VCFUtils.read()
+                                       .from(data)
+                                       .asAscii()
+                                       .pipelined(2)
+                                       .parseOnce()
+                                       .map(VCFRecord::toString)
+                                       .collect(Collectors.toList()));
+    }
+}
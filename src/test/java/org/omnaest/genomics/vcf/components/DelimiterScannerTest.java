@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class DelimiterScannerTest
+{
+
+    @Test
+    public void testIndexOf() throws Exception
+    {
+        byte[] line = "1\t10177\trs367896724\tA\tAC\t100\tPASS\tAC=2130;AF=0.425319\tGT\t1|0".getBytes(StandardCharsets.US_ASCII);
+        DelimiterScanner scanner = new DelimiterScanner(line);
+        assertEquals(1, scanner.indexOf((byte) '\t', 0, line.length));
+        assertEquals(7, scanner.indexOf((byte) '\t', 2, line.length));
+        assertEquals(53, scanner.indexOf((byte) '\t', 36, line.length));
+        assertEquals(-1, scanner.indexOf((byte) '\t', 59, line.length));
+        assertEquals(41, scanner.indexOf((byte) ';', 0, line.length));
+        assertEquals(-1, scanner.indexOf((byte) ';', 0, 41));
+        assertEquals(58, scanner.indexOf((byte) '|', 0, line.length));
+        assertEquals(-1, scanner.indexOf((byte) '\n', 0, line.length));
+    }
+
+    @Test
+    public void testIndexOfAtEveryOffset() throws Exception
+    {
+        for (int length = 1; length <= 200; length++)
+        {
+            for (int position = 0; position < length; position++)
+            {
+                byte[] buffer = new byte[length];
+                Arrays.fill(buffer, (byte) 'A');
+                buffer[position] = '\t';
+                DelimiterScanner scanner = new DelimiterScanner(buffer);
+                assertEquals(position, scanner.indexOf((byte) '\t', 0, length));
+                assertEquals(position, scanner.indexOf((byte) '\t', position, length));
+                assertEquals(-1, scanner.indexOf((byte) '\t', 0, position));
+                assertEquals(-1, scanner.indexOf((byte) '\t', position + 1, length));
+            }
+        }
+    }
+
+    @Test
+    public void testContainsNonAsciiAtEveryOffset() throws Exception
+    {
+        for (int length = 1; length <= 200; length++)
+        {
+            for (int position = 0; position < length; position++)
+            {
+                byte[] buffer = new byte[length];
+                Arrays.fill(buffer, (byte) 0x7F);
+                buffer[position] = (byte) 0x80;
+                DelimiterScanner scanner = new DelimiterScanner(buffer);
+                assertTrue(scanner.containsNonAscii(0, length));
+                assertTrue(scanner.containsNonAscii(position, position + 1));
+                assertFalse(scanner.containsNonAscii(0, position));
+                assertFalse(scanner.containsNonAscii(position + 1, length));
+            }
+        }
+    }
+
+    @Test
+    public void testContainsNonAscii() throws Exception
+    {
+        byte[] line = "ID=abcdefghijklmnop\u00FCqrstuvw".getBytes(StandardCharsets.UTF_8);
+        DelimiterScanner scanner = new DelimiterScanner(line);
+        assertTrue(scanner.containsNonAscii(0, line.length));
+        assertTrue(scanner.containsNonAscii(19, 20));
+        assertFalse(scanner.containsNonAscii(0, 19));
+        assertFalse(scanner.containsNonAscii(21, line.length));
+        assertTrue(scanner.forBuffer(line) == scanner);
+    }
+}
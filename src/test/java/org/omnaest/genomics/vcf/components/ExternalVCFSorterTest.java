@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+public class ExternalVCFSorterTest
+{
+
+    @Test
+    public void testSortInMemory() throws Exception
+    {
+        List<VCFRecord> records = VCFRecordFixtures.read("/exampleUnsorted.vcf");
+        List<String> ids = new ExternalVCFSorter(ContigOrder::natural, ExternalVCFSorter.DEFAULT_MEMORY_BUDGET, null, 1).sort(records.stream())
+                                                                                                                     .map(VCFRecord::getId)
+                                                                                                                     .collect(Collectors.toList());
+        assertEquals(Arrays.asList("c", "b", "a"), ids);
+    }
+
+    @Test
+    public void testSortWithSpilledRuns() throws Exception
+    {
+        Random random = new Random(1);
+        List<VCFRecord> records = new ArrayList<>();
+        for (int ii = 0; ii < 20000; ii++)
+        {
+            String chromosome = random.nextBoolean() ? "chr" + (1 + random.nextInt(3)) : "X";
+            records.add(VCFRecordFixtures.createRecord(chromosome, random.nextInt(1000), "id" + ii, "A", "G", "DP=10"));
+        }
+
+        File tempDirectory = Files.createTempDirectory("sortTest")
+                                  .toFile();
+        try
+        {
+            ExternalVCFSorter sorter = new ExternalVCFSorter(() -> ContigOrder.of(Arrays.asList("X", "3", "2", "1")), 150000, tempDirectory, 2);
+            List<VCFRecord> sorted;
+            try (Stream<VCFRecord> sortedRecords = sorter.sort(records.stream()))
+            {
+                sorted = sortedRecords.collect(Collectors.toList());
+            }
+
+            List<VCFRecord> expected = new ArrayList<>(records);
+            expected.sort(Comparator.<VCFRecord, String>comparing(VCFRecord::getChromosome, ContigOrder.of(Arrays.asList("X", "3", "2", "1")))
+                                    .thenComparingLong(VCFRecord::getPositionAsLong));
+            assertEquals(expected.stream()
+                                 .map(VCFRecord::getId)
+                                 .collect(Collectors.toList()),
+                         sorted.stream()
+                               .map(VCFRecord::getId)
+                               .collect(Collectors.toList()));
+            assertEquals(expected.get(0)
+                                 .getSampleFields(),
+                         sorted.get(0)
+                               .getSampleFields());
+            assertEquals(0, tempDirectory.listFiles().length);
+        }
+        finally
+        {
+            FileUtils.deleteQuietly(tempDirectory);
+        }
+    }
+
+    @Test
+    public void testRecordRunFile() throws Exception
+    {
+        Map<String, String> sampleFields = new LinkedHashMap<>();
+        sampleFields.put("NA00001", "0|1:48");
+        sampleFields.put("NA00002", "1/1:\u00FC");
+        List<VCFRecord> records = Arrays.asList(new VCFRecord("20", "14370", "rs6054257", "G", "A", "29", "PASS", "NS=3;DP=14", "GT:GQ", sampleFields),
+                                                new VCFRecord("20", "007", null, "T", ".", ".", "q10", null, null, null),
+                                                new VCFRecord("20", "1234567", ".", "GTC", "G,GTCT", "50", "PASS", ".", "GT:GQ",
+                                                              Collections.emptyMap()));
+        File file = File.createTempFile("records", ".bin");
+        file.deleteOnExit();
+        RecordRunFile.write(file, records.iterator());
+
+        List<VCFRecord> readRecords;
+        try (Stream<VCFRecord> stream = RecordRunFile.read(file))
+        {
+            readRecords = stream.collect(Collectors.toList());
+        }
+        assertEquals(records.toString(), readRecords.toString());
+        assertTrue(file.length() < 200);
+    }
+}
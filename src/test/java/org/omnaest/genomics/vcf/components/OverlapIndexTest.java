@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.omnaest.genomics.vcf.domain.GenomicRegion;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+public class OverlapIndexTest
+{
+
+    @Test
+    public void testGetOverlappingRecords() throws Exception
+    {
+        List<VCFRecord> records = VCFRecordFixtures.read("/exampleOverlaps.vcf");
+        OverlapIndex index = OverlapIndex.of(Collections.singletonMap("1", records), Function.identity());
+
+        assertEquals(Arrays.asList("3", "2"), this.getIds(index.getOverlappingRecords("1", 155, 160)));
+        assertEquals(Arrays.asList("3", "1", "2", "5"), this.getIds(index.getOverlappingRecords(GenomicRegion.of("1", 100, 200))));
+        assertEquals(Arrays.asList("3"), this.getIds(index.getOverlappingRecords("1", 4000, 6000)));
+        assertEquals(Arrays.asList(), this.getIds(index.getOverlappingRecords("1", 5001, 6000)));
+        assertEquals(Arrays.asList(), this.getIds(index.getOverlappingRecords("2", 1, 6000)));
+    }
+
+    @Test
+    public void testGetOverlappingRecordsMatchesLinearScan() throws Exception
+    {
+        Random random = new Random(1);
+        List<VCFRecord> records = new ArrayList<>();
+        for (int ii = 0; ii < 2000; ii++)
+        {
+            int position = 1 + random.nextInt(100000);
+            String info = random.nextInt(10) == 0 ? "END=" + (position + random.nextInt(5000)) : ".";
+            records.add(VCFRecordFixtures.createRecord("1", position, "" + ii, "ACGT".substring(random.nextInt(4)), "A", info));
+        }
+        Map<String, List<VCFRecord>> chromosomeToRecords = new HashMap<>();
+        chromosomeToRecords.put("1", records);
+        OverlapIndex index = OverlapIndex.of(chromosomeToRecords, Function.identity());
+
+        for (int ii = 0; ii < 500; ii++)
+        {
+            long start = 1 + random.nextInt(100000);
+            long end = start + random.nextInt(1000);
+            List<String> expected = records.stream()
+                                           .filter(record -> record.getPositionAsLong() <= end && record.getEndPositionAsLong() >= start)
+                                           .map(VCFRecord::getId)
+                                           .sorted()
+                                           .collect(Collectors.toList());
+            List<String> actual = this.getIds(index.getOverlappingRecords("1", start, end));
+            Collections.sort(actual);
+            assertEquals(expected, actual);
+        }
+    }
+
+    private List<String> getIds(List<VCFRecord> records)
+    {
+        return records.stream()
+                      .map(VCFRecord::getId)
+                      .collect(Collectors.toList());
+    }
+}
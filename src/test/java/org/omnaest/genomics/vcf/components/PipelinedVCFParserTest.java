@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.omnaest.genomics.vcf.VCFUtils;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+public class PipelinedVCFParserTest
+{
+
+    @Test
+    public void testGetRecords() throws Exception
+    {
+        String content = "##fileformat=VCFv4.1\n##source=test\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tSAMPLE01\n"
+                + IntStream.rangeClosed(1, 5000)
+                           .mapToObj(position -> "1\t" + position + "\trs" + position + "\tA\tG\t.\tPASS\tDP=" + position + "\tGT\t0/1\r\n")
+                           .collect(Collectors.joining());
+
+        List<String> expected = VCFUtils.read()
+                                        .from(content)
+                                        .parseOnce()
+                                        .map(VCFRecord::toString)
+                                        .collect(Collectors.toList());
+
+        PipelinedVCFParser parser = new PipelinedVCFParser(VCFUtils.getParserManager(),
+                                                           new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8,
+                                                           3, 1000);
+        try (Stream<VCFRecord> records = parser.getRecords())
+        {
+            assertEquals(expected, records.map(VCFRecord::toString)
+                                          .collect(Collectors.toList()));
+        }
+        assertEquals("test", parser.getComments()
+                                   .get("source")
+                                   .get(0));
+        assertEquals(5000, VCFUtils.read()
+                                   .from(content.getBytes(StandardCharsets.UTF_8))
+                                   .pipelined(2)
+                                   .parseOnce()
+                                   .count());
+    }
+
+    @Test
+    public void testExhaustedRecordsCloseTheInputStream() throws Exception
+    {
+        String content = "##fileformat=VCFv4.1\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n"
+                + IntStream.rangeClosed(1, 5000)
+                           .mapToObj(position -> "1\t" + position + "\t.\tA\tG\t.\tPASS\t.\n")
+                           .collect(Collectors.joining());
+        AtomicBoolean closed = new AtomicBoolean();
+        ByteArrayInputStream inputStream = new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8))
+        {
+            @Override
+            public void close()
+            {
+                closed.set(true);
+            }
+        };
+
+        PipelinedVCFParser parser = new PipelinedVCFParser(VCFUtils.getParserManager(), inputStream, StandardCharsets.UTF_8, 2, 1000);
+        Iterator<VCFRecord> records = parser.getRecords()
+                                            .iterator();
+        for (int ii = 0; ii < 5000; ii++)
+        {
+            records.next();
+        }
+        assertFalse(closed.get());
+        assertFalse(records.hasNext());
+        assertTrue(closed.get());
+    }
+}
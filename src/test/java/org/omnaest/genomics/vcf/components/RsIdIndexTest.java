@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.junit.Test;
+
+public class RsIdIndexTest
+{
+
+    @Test
+    public void testParseRsNumber() throws Exception
+    {
+        assertEquals(6054257, RsIdIndex.parseRsNumber("rs6054257"));
+        assertEquals(-1, RsIdIndex.parseRsNumber("rs"));
+        assertEquals(-1, RsIdIndex.parseRsNumber("rs0"));
+        assertEquals(-1, RsIdIndex.parseRsNumber("rs12a"));
+        assertEquals(-1, RsIdIndex.parseRsNumber("microsat1"));
+        assertEquals(-1, RsIdIndex.parseRsNumber("rs99999999999999999999"));
+        assertEquals(-1, RsIdIndex.parseRsNumber(null));
+    }
+
+    @Test
+    public void testPutAndGet() throws Exception
+    {
+        RsIdIndex index = RsIdIndex.create(1000);
+        for (long ii = 1; ii <= 1000; ii++)
+        {
+            index.put(ii * 7919, ii);
+        }
+        index.put(7919, 5000);
+
+        assertEquals(1001, index.size());
+        assertArrayEquals(new long[] { 1, 5000 }, index.get(7919));
+        assertArrayEquals(new long[] { 1000 }, index.get("rs" + 1000 * 7919));
+        assertArrayEquals(new long[0], index.get(7918));
+        assertArrayEquals(new long[0], index.get("microsat1"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCapacityExhausted() throws Exception
+    {
+        RsIdIndex index = RsIdIndex.create(1);
+        for (long ii = 1; ii <= 100; ii++)
+        {
+            index.put(ii, ii);
+        }
+    }
+
+    @Test
+    public void testPersistence() throws Exception
+    {
+        File file = File.createTempFile("rsIdIndex", RsIdIndex.class.getSimpleName());
+        file.deleteOnExit();
+        try (RsIdIndex index = RsIdIndex.create(file, 10000))
+        {
+            for (long ii = 1; ii <= 10000; ii++)
+            {
+                index.put(ii * 31, ii * 100);
+            }
+        }
+
+        try (RsIdIndex index = RsIdIndex.open(file))
+        {
+            assertEquals(10000, index.size());
+            for (long ii = 1; ii <= 10000; ii++)
+            {
+                assertArrayEquals(new long[] { ii * 100 }, index.get(ii * 31));
+            }
+            assertArrayEquals(new long[0], index.get(32));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+public class SortedVCFMergerTest
+{
+
+    @Test
+    public void testMerge() throws Exception
+    {
+        Stream<VCFRecord> source1 = VCFRecordFixtures.read("/exampleMerge1.vcf")
+                                                     .stream();
+        Stream<VCFRecord> source2 = VCFRecordFixtures.read("/exampleMerge2.vcf")
+                                                     .stream();
+        Stream<VCFRecord> source3 = Stream.empty();
+
+        List<String> ids = new SortedVCFMerger(ContigOrder.natural()).merge(Arrays.asList(source1, source2, source3))
+                                                                     .map(VCFRecord::getId)
+                                                                     .collect(Collectors.toList());
+        assertEquals(Arrays.asList("d", "a", "e", "f", "b", "c"), ids);
+    }
+
+    @Test
+    public void testMergeWithContigOrder() throws Exception
+    {
+        Stream<VCFRecord> source1 = VCFRecordFixtures.read("/exampleMerge3.vcf")
+                                                     .stream();
+        Stream<VCFRecord> source2 = VCFRecordFixtures.read("/exampleMerge4.vcf")
+                                                     .stream();
+
+        List<String> ids = new SortedVCFMerger(ContigOrder.of(Arrays.asList("X", "1", "2"))).merge(Arrays.asList(source1, source2))
+                                                                                            .map(VCFRecord::getId)
+                                                                                            .collect(Collectors.toList());
+        assertEquals(Arrays.asList("c", "a", "b", "d"), ids);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnsortedSource() throws Exception
+    {
+        Stream<VCFRecord> source = VCFRecordFixtures.read("/exampleMerge3.vcf")
+                                                    .stream();
+        new SortedVCFMerger(ContigOrder.natural()).merge(Collections.singletonList(source))
+                                                  .count();
+    }
+}
@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+import org.omnaest.genomics.vcf.VCFUtils;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+public class StreamPublisherTest
+{
+
+    @Test
+    public void testDemand() throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try
+        {
+            AtomicBoolean closed = new AtomicBoolean();
+            List<Integer> pulled = new CopyOnWriteArrayList<>();
+            StreamPublisher<Integer> publisher = new StreamPublisher<>(() -> IntStream.range(0, 10000)
+                                                                                      .boxed()
+                                                                                      .peek(pulled::add)
+                                                                                      .onClose(() -> closed.set(true)),
+                                                                       executor, 100);
+
+            List<Integer> received = new CopyOnWriteArrayList<>();
+            AtomicReference<Subscription> subscriptionReference = new AtomicReference<>();
+            AtomicReference<Throwable> error = new AtomicReference<>();
+            CountDownLatch firstDemand = new CountDownLatch(1);
+            CountDownLatch completed = new CountDownLatch(1);
+            publisher.subscribe(new Subscriber<Integer>()
+            {
+                @Override
+                public void onSubscribe(Subscription subscription)
+                {
+                    subscriptionReference.set(subscription);
+                    subscription.request(250);
+                }
+
+                @Override
+                public void onNext(Integer element)
+                {
+                    received.add(element);
+                    if (received.size() == 250)
+                    {
+                        firstDemand.countDown();
+                    }
+                }
+
+                @Override
+                public void onError(Throwable throwable)
+                {
+                    error.set(throwable);
+                }
+
+                @Override
+                public void onComplete()
+                {
+                    completed.countDown();
+                }
+            });
+
+            assertTrue(firstDemand.await(10, TimeUnit.SECONDS));
+            Thread.sleep(50);
+            assertEquals(250, received.size());
+            assertTrue(pulled.size() <= 251);
+
+            subscriptionReference.get()
+                                 .request(Long.MAX_VALUE);
+            assertTrue(completed.await(10, TimeUnit.SECONDS));
+            assertEquals(IntStream.range(0, 10000)
+                                  .boxed()
+                                  .collect(Collectors.toList()),
+                         received);
+            assertTrue(closed.get());
+            assertNull(error.get());
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testPublishRecords() throws Exception
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            List<String> ids = new CopyOnWriteArrayList<>();
+            CountDownLatch completed = new CountDownLatch(1);
+            VCFUtils.read()
+                    .from(this.getClass()
+                              .getResourceAsStream("/example.vcf"))
+                    .publish(executor)
+                    .subscribe(new Subscriber<VCFRecord>()
+                    {
+                        private Subscription subscription;
+
+                        @Override
+                        public void onSubscribe(Subscription subscription)
+                        {
+                            this.subscription = subscription;
+                            subscription.request(1);
+                        }
+
+                        @Override
+                        public void onNext(VCFRecord record)
+                        {
+                            ids.add(record.getId());
+                            this.subscription.request(1);
+                        }
+
+                        @Override
+                        public void onError(Throwable throwable)
+                        {
+                        }
+
+                        @Override
+                        public void onComplete()
+                        {
+                            completed.countDown();
+                        }
+                    });
+            assertTrue(completed.await(10, TimeUnit.SECONDS));
+            assertEquals(5, ids.size());
+            assertEquals("rs6054257", ids.get(0));
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSecondSubscriberIsRejected() throws Exception
+    {
+        AtomicInteger numberOfStreams = new AtomicInteger();
+        StreamPublisher<Integer> publisher = new StreamPublisher<>(() ->
+        {
+            numberOfStreams.incrementAndGet();
+            return IntStream.range(0, 10)
+                            .boxed();
+        }, Runnable::run, 100);
+
+        List<Integer> received = new CopyOnWriteArrayList<>();
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        Subscriber<Integer> subscriber = new Subscriber<Integer>()
+        {
+            @Override
+            public void onSubscribe(Subscription subscription)
+            {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(Integer element)
+            {
+                received.add(element);
+            }
+
+            @Override
+            public void onError(Throwable throwable)
+            {
+                errors.add(throwable);
+            }
+
+            @Override
+            public void onComplete()
+            {
+            }
+        };
+        publisher.subscribe(subscriber);
+        publisher.subscribe(subscriber);
+
+        assertEquals(1, numberOfStreams.get());
+        assertEquals(10, received.size());
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0) instanceof IllegalStateException);
+    }
+}
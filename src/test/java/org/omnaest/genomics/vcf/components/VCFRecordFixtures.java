@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.omnaest.genomics.vcf.VCFUtils;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+/**
+ * Shared {@link VCFRecord} fixtures of the component tests. Fixed record sets are read from the test resources using {@link VCFUtils#read()},
+ * while generated records are created by {@link #createRecord(String, long, String, String, String, String)}.
+ * 
+ * @author omnaest
+ */
+public class VCFRecordFixtures
+{
+    /**
+     * Reads the {@link VCFRecord}s of the given test resource in the order of the file
+     * 
+     * @param resource
+     * @return
+     */
+    public static List<VCFRecord> read(String resource)
+    {
+        try (Stream<VCFRecord> records = VCFUtils.read()
+                                                 .from(VCFRecordFixtures.class.getResourceAsStream(resource))
+                                                 .parseOnce())
+        {
+            return records.collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Creates a {@link VCFRecord} with a single SAMPLE1 column of genotype 0/1
+     * 
+     * @param chromosome
+     * @param position
+     * @param id
+     * @param reference
+     * @param alternativeAlleles
+     * @param info
+     * @return
+     */
+    public static VCFRecord createRecord(String chromosome, long position, String id, String reference, String alternativeAlleles, String info)
+    {
+        Map<String, String> sampleFields = new LinkedHashMap<>();
+        sampleFields.put("SAMPLE1", "0/1");
+        return new VCFRecord(chromosome, "" + position, id, reference, alternativeAlleles, ".", "PASS", info, "GT", sampleFields);
+    }
+}
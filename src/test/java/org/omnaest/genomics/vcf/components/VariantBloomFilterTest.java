@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Random;
+import java.util.stream.LongStream;
+
+import org.junit.Test;
+
+public class VariantBloomFilterTest
+{
+
+    @Test
+    public void testMightContain() throws Exception
+    {
+        VariantBloomFilter filter = VariantBloomFilter.create(10, 0.01);
+        filter.put(VCFRecordFixtures.createRecord("chr1", 100, ".", "A", "G,T", "."));
+
+        assertTrue(filter.mightContain(VCFRecordFixtures.createRecord("1", 100, ".", "a", "G", ".")));
+        assertTrue(filter.mightContain(VCFRecordFixtures.createRecord("CHR1", 100, ".", "A", "T,G", ".")));
+        assertFalse(filter.mightContain(VCFRecordFixtures.createRecord("1", 100, ".", "A", "G,C", ".")));
+        assertFalse(filter.mightContain(VCFRecordFixtures.createRecord("1", 101, ".", "A", "G", ".")));
+        assertFalse(filter.mightContain(VCFRecordFixtures.createRecord("2", 100, ".", "A", "G", ".")));
+    }
+
+    @Test
+    public void testFalsePositiveRate() throws Exception
+    {
+        int numberOfRecords = 100000;
+        VariantBloomFilter filter = VariantBloomFilter.build(() -> LongStream.rangeClosed(1, numberOfRecords)
+                                                                             .mapToObj(position -> VCFRecordFixtures.createRecord("1", position, ".", "A",
+                                                                                                                                  "G", ".")),
+                                                             0.01, Long.MAX_VALUE);
+        assertTrue(LongStream.rangeClosed(1, numberOfRecords)
+                             .allMatch(position -> filter.mightContain("1", position, "A", "G")));
+
+        long falsePositives = LongStream.rangeClosed(1, numberOfRecords)
+                                        .filter(position -> filter.mightContain("2", position, "A", "G"))
+                                        .count();
+        assertTrue(falsePositives < numberOfRecords * 0.02);
+        assertEquals(0.01, filter.getExpectedFalsePositiveRate(numberOfRecords), 0.001);
+    }
+
+    @Test
+    public void testMemoryBudget() throws Exception
+    {
+        VariantBloomFilter filter = VariantBloomFilter.create(1000000, 0.001, 1024);
+        assertEquals(1024 * 8, filter.getNumberOfBits());
+        assertTrue(filter.getExpectedFalsePositiveRate(1000000) > 0.001);
+    }
+
+    @Test
+    public void testPersistence() throws Exception
+    {
+        File file = File.createTempFile("variants", ".bloom");
+        file.deleteOnExit();
+        VariantBloomFilter filter = VariantBloomFilter.create(1000, 0.01);
+        LongStream.rangeClosed(1, 1000)
+                  .forEach(position -> filter.put(VCFRecordFixtures.createRecord("X", position * 3, ".", "C", "T", ".")));
+        filter.writeTo(file);
+
+        VariantBloomFilter readFilter = VariantBloomFilter.read(file);
+        assertEquals(filter.getNumberOfBits(), readFilter.getNumberOfBits());
+        assertEquals(filter.getNumberOfHashFunctions(), readFilter.getNumberOfHashFunctions());
+        assertTrue(LongStream.rangeClosed(1, 1000)
+                             .allMatch(position -> readFilter.mightContain("X", position * 3, "C", "T")));
+    }
+
+    @Test
+    public void testBitIndexesBeyond32Bit() throws Exception
+    {
+        long numberOfBits = 1L << 40;
+        Random random = new Random(42);
+        long numberOfHighIndexes = 0;
+        for (int ii = 0; ii < 10000; ii++)
+        {
+            long hash = random.nextLong();
+            for (int hashFunction = 1; hashFunction <= 7; hashFunction++)
+            {
+                long bitIndex = VariantBloomFilter.toBitIndex(hash, hashFunction, numberOfBits);
+                assertTrue(bitIndex >= 0 && bitIndex < numberOfBits);
+                if (bitIndex >= 1L << 32)
+                {
+                    numberOfHighIndexes++;
+                }
+            }
+        }
+        assertTrue(numberOfHighIndexes > 10000 * 7 * 0.99);
+    }
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.junit.Test;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+public class VariantDeduplicatorTest
+{
+
+    @Test
+    public void testDeduplicate() throws Exception
+    {
+        List<VCFRecord> records = new VariantDeduplicator().deduplicate(VCFRecordFixtures.read("/exampleDuplicates.vcf")
+                                                                                         .stream())
+                                                           .collect(Collectors.toList());
+        assertEquals(Arrays.asList("first", "third", "fourth"), records.stream()
+                                                                       .map(VCFRecord::getId)
+                                                                       .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testManyDistinctSites() throws Exception
+    {
+        VariantDeduplicator deduplicator = new VariantDeduplicator();
+        assertTrue(LongStream.rangeClosed(1, 100000)
+                             .allMatch(position -> deduplicator.add(VCFRecordFixtures.createRecord("1", position, ".", "A", "G", "."))));
+        assertTrue(LongStream.rangeClosed(1, 100000)
+                             .noneMatch(position -> deduplicator.add(VCFRecordFixtures.createRecord("1", position, ".", "A", "G", "."))));
+        assertEquals(100000, deduplicator.size());
+    }
+
+    @Test
+    public void testSortedWindow() throws Exception
+    {
+        VariantDeduplicator deduplicator = new VariantDeduplicator(2);
+        for (long position = 1; position <= 100000; position++)
+        {
+            assertTrue(deduplicator.add(VCFRecordFixtures.createRecord("1", position, ".", "A", "G", ".")));
+            assertFalse(deduplicator.add(VCFRecordFixtures.createRecord("1", position, ".", "A", "G", ".")));
+            assertFalse(deduplicator.add(VCFRecordFixtures.createRecord("1", Math.max(1, position - 2), ".", "A", "G", ".")));
+        }
+        assertTrue(deduplicator.size() <= 8);
+
+        assertTrue(deduplicator.add(VCFRecordFixtures.createRecord("2", 1, ".", "A", "G", ".")));
+        assertEquals(1, deduplicator.size());
+    }
+
+    @Test
+    public void testSortedWindowWithVaryingSitesPerPosition() throws Exception
+    {
+        VariantDeduplicator deduplicator = new VariantDeduplicator(0);
+        for (String contig : new String[] { "1", "2", "1" })
+        {
+            int previousNumberOfSites = 0;
+            for (long position = 1; position <= 300; position++)
+            {
+                int numberOfSites = position % 7 == 0 ? 2000 : position % 5 == 0 ? 200 : 3;
+                for (int ii = 0; ii < numberOfSites; ii++)
+                {
+                    assertTrue(deduplicator.add(VCFRecordFixtures.createRecord(contig, position, ".", "A", "G" + ii, ".")));
+                }
+                for (int ii = 0; ii < numberOfSites; ii++)
+                {
+                    assertFalse(deduplicator.add(VCFRecordFixtures.createRecord(contig, position, ".", "A", "G" + ii, ".")));
+                }
+                assertEquals(numberOfSites + previousNumberOfSites, deduplicator.size());
+                previousNumberOfSites = numberOfSites;
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnsortedWithinWindow() throws Exception
+    {
+        VariantDeduplicator deduplicator = new VariantDeduplicator(0);
+        deduplicator.add(VCFRecordFixtures.createRecord("1", 200, ".", "A", "G", "."));
+        deduplicator.add(VCFRecordFixtures.createRecord("1", 100, ".", "A", "G", "."));
+    }
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.omnaest.genomics.vcf.VCFUtils;
+import org.omnaest.genomics.vcf.components.parser.LineFilter;
+import org.omnaest.genomics.vcf.domain.VCFData;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+public class VariantFilterTest
+{
+
+    private VCFData vcfData = VCFUtils.read()
+                                      .from(this.getClass()
+                                                .getResourceAsStream("/example.vcf"))
+                                      .parse();
+
+    @Test
+    public void testCompile() throws Exception
+    {
+        assertEquals(Arrays.asList("rs6040355"), this.filter("FILTER==\"PASS\" && INFO/AF < 0.4"));
+        assertEquals(Arrays.asList("17330"), this.filter("INFO/AF<0.02"));
+        assertEquals(Arrays.asList("microsat1"), this.filter("GT=='0/1'"));
+        assertEquals(Arrays.asList("rs6040355"), this.filter("INFO/DB && !(QUAL < 50)"));
+        assertEquals(Arrays.asList("rs6040355", "1230237"), this.filter("ALT==\"T\" || FORMAT/GQ >= 60"));
+        assertEquals(Arrays.asList("rs6040355", "1230237"), this.filter("INFO/AA==\"T\""));
+        assertEquals(Arrays.asList("1230237", "microsat1"), this.filter("CHROM==\"20\" && POS > 1200000"));
+        assertEquals(Arrays.asList("rs6054257", "rs6040355", "1230237", "microsat1"), this.filter("FILTER!=\"q10\""));
+    }
+
+    @Test
+    public void testCompileUntyped() throws Exception
+    {
+        VCFRecord record = new VCFRecord("1", "100", ".", "A", "G", ".", "PASS", "DP=14;SOURCE=abc;X", "GT:DP",
+                                         Collections.singletonMap("S1", "0|1:7"));
+        assertTrue(VariantFilter.compile("INFO/DP >= 14 && INFO/SOURCE == 'abc' && INFO/X && FORMAT/DP == 7")
+                                .test(record));
+        assertFalse(VariantFilter.compile("QUAL > 0 || INFO/Y || GT == \"0/1\"")
+                                 .test(record));
+    }
+
+    @Test
+    public void testParseOnceWithFilter() throws Exception
+    {
+        assertEquals(Arrays.asList("rs6040355"), VCFUtils.read()
+                                                         .from(this.getClass()
+                                                                   .getResourceAsStream("/example.vcf"))
+                                                         .filter(LineFilter.passOnly())
+                                                         .filter("INFO/DB")
+                                                         .filter("GT==\"2/2\"")
+                                                         .parseOnce()
+                                                         .map(VCFRecord::getId)
+                                                         .collect(Collectors.toList()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompileSyntaxError() throws Exception
+    {
+        VariantFilter.compile("FILTER== && POS > 1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompileUndeclaredField() throws Exception
+    {
+        VariantFilter.compile("INFO/XYZ == 1", this.vcfData.getMetaInfo());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompileUndeclaredPresenceField() throws Exception
+    {
+        VariantFilter.compile("INFO/DB || INFO/UNDECLARED", this.vcfData.getMetaInfo());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRecordsOfUndeclaredFieldAreRejectedBeforeStreaming() throws Exception
+    {
+        this.vcfData.getRecords("FORMAT/XYZ");
+    }
+
+    @Test
+    public void testCompileLazilyWithSupplier() throws Exception
+    {
+        VariantFilter filter = VariantFilter.compile("INFO/UNDECLARED", () -> this.vcfData.getMetaInfo());
+        try
+        {
+            filter.test(this.vcfData.getRecords()
+                                    .findFirst()
+                                    .get());
+            fail("Undeclared field expected to be rejected by the first test");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompileFlagComparison() throws Exception
+    {
+        this.filter("INFO/DB == 1");
+    }
+
+    private List<String> filter(String expression)
+    {
+        return this.vcfData.getRecords(expression)
+                           .map(record -> VCFRecord.DOT.equals(record.getId()) ? record.getPosition() : record.getId())
+                           .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+import org.omnaest.genomics.vcf.domain.VCFRecord.Column;
+
+public class ColumnProjectionTest
+{
+
+    @Test
+    public void testTokenizeStopsAtLastProjectedColumn() throws Exception
+    {
+        String line = "20\t14370\trs6054257\tG\tA\t29\tPASS\tNS=3;DP=14\tGT:GQ\t0|0:48\t1|0:48\t1/1:43";
+        int tailStart = line.indexOf("\tG\t");
+        CharSequence guardedLine = new CharSequence()
+        {
+            @Override
+            public int length()
+            {
+                return line.length();
+            }
+
+            @Override
+            public char charAt(int index)
+            {
+                if (index > tailStart)
+                {
+                    throw new IllegalStateException("Tail of the line was read at index " + index);
+                }
+                return line.charAt(index);
+            }
+
+            @Override
+            public CharSequence subSequence(int start, int end)
+            {
+                if (end > tailStart)
+                {
+                    throw new IllegalStateException("Tail of the line was read up to index " + end);
+                }
+                return line.subSequence(start, end);
+            }
+
+            @Override
+            public String toString()
+            {
+                return line;
+            }
+        };
+
+        assertArrayEquals(new String[] { "20", null, "rs6054257" }, ColumnProjection.of(Column.CHROM, Column.ID)
+                                                                             .tokenize(guardedLine));
+    }
+
+    @Test
+    public void testTokenize() throws Exception
+    {
+        String line = "20\t14370\trs6054257\tG\tA\t29\tPASS\tNS=3;DP=14\tGT:GQ\t0|0:48\t1|0:48\t1/1:43";
+        assertArrayEquals(new String[] { "20", "14370" }, ColumnProjection.of(Column.CHROM, Column.POS)
+                                                                          .tokenize(line));
+        assertArrayEquals(new String[] { "20", null, null, null, null, null, null, null, "GT:GQ", "0|0:48", "1|0:48", "1/1:43" },
+                          ColumnProjection.of(Column.CHROM, Column.FORMAT, Column.SAMPLES)
+                                          .tokenize(line));
+        assertArrayEquals(new String[] { "20", null, null }, ColumnProjection.of(Column.CHROM, Column.INFO)
+                                                                             .tokenize("20\t14370\trs6054257"));
+    }
+}
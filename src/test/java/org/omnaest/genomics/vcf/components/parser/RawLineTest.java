@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.vcf.components.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.omnaest.genomics.vcf.domain.VCFRecord.Column;
+
+public class RawLineTest
+{
+
+    @Test
+    public void testColumns() throws Exception
+    {
+        RawLine rawLine = new RawLine("X\t123\trs1\tA\tG\t.\tPASS\tDB;DP=14;AF=0.5\tGT\t0/1");
+        assertEquals("X", rawLine.getColumn(Column.CHROM));
+        assertEquals("DB;DP=14;AF=0.5", rawLine.getColumn(Column.INFO));
+        assertEquals(123, rawLine.getPosition());
+        assertTrue(rawLine.columnEquals(Column.FILTER, "PASS"));
+        assertFalse(rawLine.columnEquals(Column.FILTER, "PAS"));
+        assertTrue(rawLine.hasInfoKey("DB"));
+        assertTrue(rawLine.hasInfoKey("DP"));
+        assertTrue(rawLine.hasInfoKey("AF"));
+        assertFalse(rawLine.hasInfoKey("D"));
+        assertFalse(rawLine.hasInfoKey("14"));
+        assertFalse(rawLine.hasInfoKey("GT"));
+
+        rawLine.reset("1\tabc\t.\tA\tG\t.\tq10\tAA=T");
+        assertEquals(-1, rawLine.getPosition());
+        assertTrue(rawLine.hasInfoKey("AA"));
+        assertFalse(rawLine.hasColumn(Column.FORMAT));
+        assertNull(rawLine.getColumn(Column.FORMAT));
+        assertFalse(LineFilter.passOnly()
+                              .test(rawLine));
+    }
+}
@@ -24,6 +24,8 @@ import java.util.stream.Collectors;
 
 import org.junit.Test;
 import org.omnaest.genomics.vcf.VCFUtils;
+import org.omnaest.genomics.vcf.domain.VCFRecord.SampleFields.GenoType;
+import org.omnaest.genomics.vcf.domain.VCFRecord.SampleFields.GenoTypeCall;
 
 public class VCFRecordTest
 {
@@ -80,6 +82,21 @@ public class VCFRecordTest
         assertFalse(record.hasInsertion());
     }
 
+    @Test
+    public void testGenoTypeCall() throws Exception
+    {
+        GenoTypeCall phased = GenoTypeCall.parse("1|2");
+        assertTrue(phased.isPhased());
+        assertEquals(1, phased.getAlleleIndex(0));
+        assertEquals(2, phased.getAlleleIndex(1));
+
+        GenoTypeCall unphased = GenoTypeCall.parse("0/.");
+        assertFalse(unphased.isPhased());
+        assertEquals(-1, unphased.getAlleleIndex(1));
+
+        assertTrue(GenoType.SECOND_ALLELE_ALTERNATIVE.matches("0|1"));
+    }
+
     @Test
     public void testGetIds() throws Exception
     {
@@ -94,4 +111,15 @@ public class VCFRecordTest
                            .collect(Collectors.toSet()),
                      record.getIds());
     }
+
+    @Test
+    public void testNormalizeChromosome() throws Exception
+    {
+        assertEquals("1", VCFRecord.normalizeChromosome("chr1"));
+        assertEquals("1", VCFRecord.normalizeChromosome("Chr1"));
+        assertEquals("X", VCFRecord.normalizeChromosome(" chrX "));
+        assertEquals("MT", VCFRecord.normalizeChromosome("MT"));
+        assertEquals("UN_GL000220V1", VCFRecord.normalizeChromosome("chrUn_GL000220v1"));
+        assertEquals("HLA-CHR6", VCFRecord.normalizeChromosome("HLA-chr6"));
+    }
 }